@@ -0,0 +1,499 @@
+package de.timroes.axmlrpc.transport.httpclient;
+
+import de.timroes.axmlrpc.XMLRPCClient;
+import de.timroes.axmlrpc.transport.Transport;
+import de.timroes.axmlrpc.transport.TransportConnection;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * A {@link Transport} sending the requests with the {@link HttpClient} of
+ * Java 11 and later. All requests of a transport share the connections of its
+ * HttpClient, so concurrent calls to an HTTP/2 server are multiplexed over a
+ * single connection instead of each opening its own socket. HTTP/2 is only
+ * requested on https, plain http requests use HTTP/1.1. Requests are sent
+ * with {@link HttpClient#sendAsync}, the calling thread only waits when it
+ * reads the response.
+ *
+ * The status code, forward and cookie handling of the {@link XMLRPCClient}
+ * (FLAGS_IGNORE_STATUSCODE, FLAGS_FORWARD, FLAGS_ENABLE_COOKIES) work on top
+ * of this transport like on the default one. The HttpClient doesn't allow to
+ * disable the hostname verification per client, so FLAGS_SSL_IGNORE_INVALID_HOST
+ * has no effect on this transport.
+ */
+public class HttpClientTransport implements Transport {
+
+	private final Proxy proxy;
+	private final SSLContext sslContext;
+	private final Executor executor;
+
+	/** The HttpClient given by the user, used for all connect timeouts. */
+	private final HttpClient client;
+	/** The HttpClients built by this transport, by connect timeout. */
+	private final ConcurrentMap<Integer, HttpClient> clients = new ConcurrentHashMap<>();
+
+	/**
+	 * Create a new transport using an HttpClient configured with the given
+	 * flags of the {@link XMLRPCClient}.
+	 *
+	 * @param flags A combination of flags to be set.
+	 */
+	public HttpClientTransport(int flags) {
+		this(flags, null, null, null);
+	}
+
+	/**
+	 * Create a new transport using an HttpClient configured with the given
+	 * flags of the {@link XMLRPCClient}.
+	 *
+	 * @param flags A combination of flags to be set.
+	 * @param proxy An http proxy to use for the connections, or null to
+	 *     connect directly.
+	 * @param sslContext The SSLContext to use for https connections, or null
+	 *     for the default one.
+	 * @param executor The executor running the asynchronous tasks of the
+	 *     HttpClient, or null for the default executor of the HttpClient.
+	 */
+	public HttpClientTransport(int flags, Proxy proxy, SSLContext sslContext, Executor executor) {
+		if(proxy != null && proxy.type() != Proxy.Type.HTTP && proxy.type() != Proxy.Type.DIRECT) {
+			throw new IllegalArgumentException("The HttpClient only supports http proxies.");
+		}
+		this.proxy = proxy;
+		this.executor = executor;
+		this.client = null;
+		if(sslContext == null && (flags & XMLRPCClient.FLAGS_SSL_IGNORE_INVALID_CERT) != 0) {
+			this.sslContext = trustAllContext();
+		} else {
+			this.sslContext = sslContext;
+		}
+	}
+
+	/**
+	 * Create a new transport using the given HttpClient. The HttpClient must
+	 * not follow redirects, since forwards are handled by the {@link XMLRPCClient}.
+	 * Its connect timeout is used instead of the one of the XMLRPCClient.
+	 *
+	 * @param client The HttpClient to send the requests with.
+	 */
+	public HttpClientTransport(HttpClient client) {
+		this.proxy = null;
+		this.sslContext = null;
+		this.executor = null;
+		this.client = client;
+	}
+
+	public TransportConnection openConnection(URL url, int connectTimeout, int readTimeout) throws IOException {
+		HttpRequest.Builder request;
+		try {
+			request = HttpRequest.newBuilder(url.toURI());
+		} catch(URISyntaxException ex) {
+			throw new IOException("The URL is not valid for a http connection.", ex);
+		}
+		if(readTimeout > 0) {
+			request.timeout(Duration.ofMillis(readTimeout));
+		}
+		if(client == null && !"https".equalsIgnoreCase(url.getProtocol())) {
+			// HTTP/2 is negotiated through ALPN on https. On plain http it would
+			// take an h2c upgrade, which servers often refuse for large bodies.
+			request.version(HttpClient.Version.HTTP_1_1);
+		}
+		return new Connection(getClient(connectTimeout), request);
+	}
+
+	/**
+	 * Returns the HttpClient for the given connect timeout. The HttpClient only
+	 * supports a connect timeout per client, so a client is built for each
+	 * timeout used. Most applications use a single timeout, hence a single
+	 * client and connection pool.
+	 *
+	 * @param connectTimeout The connect timeout in milliseconds, or zero for no timeout.
+	 * @return The HttpClient to use.
+	 */
+	private HttpClient getClient(int connectTimeout) {
+		if(client != null) {
+			return client;
+		}
+		HttpClient c = clients.get(connectTimeout);
+		if(c == null) {
+			HttpClient.Builder builder = HttpClient.newBuilder()
+					.version(HttpClient.Version.HTTP_2)
+					.followRedirects(HttpClient.Redirect.NEVER);
+			if(connectTimeout > 0) {
+				builder.connectTimeout(Duration.ofMillis(connectTimeout));
+			}
+			if(proxy != null && proxy.type() == Proxy.Type.HTTP) {
+				builder.proxy(ProxySelector.of((InetSocketAddress)proxy.address()));
+			}
+			if(sslContext != null) {
+				builder.sslContext(sslContext);
+			}
+			if(executor != null) {
+				builder.executor(executor);
+			}
+			c = builder.build();
+			HttpClient previous = clients.putIfAbsent(connectTimeout, c);
+			if(previous != null) {
+				c = previous;
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Returns an SSLContext trusting all certificates, for FLAGS_SSL_IGNORE_INVALID_CERT.
+	 *
+	 * @return The SSLContext.
+	 */
+	private static SSLContext trustAllContext() {
+		TrustManager[] trustManagers = new TrustManager[] {
+			new X509TrustManager() {
+				public void checkClientTrusted(X509Certificate[] xcs, String string) { }
+
+				public void checkServerTrusted(X509Certificate[] xcs, String string) { }
+
+				public X509Certificate[] getAcceptedIssuers() {
+					return new X509Certificate[0];
+				}
+			}
+		};
+		try {
+			SSLContext sc = SSLContext.getInstance("TLS");
+			sc.init(null, trustManagers, new SecureRandom());
+			return sc;
+		} catch(GeneralSecurityException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * A connection sending a single request with an HttpClient. Request bodies
+	 * up to 64 KB are buffered and the request is sent when the body is closed.
+	 * Longer bodies, and bodies of unknown length, are streamed to the HttpClient
+	 * while they are written.
+	 */
+	private static class Connection implements TransportConnection {
+
+		/** The longest request body buffered. */
+		private static final int MAX_BUFFERED = 65536;
+
+		private final HttpClient client;
+		private final HttpRequest.Builder request;
+
+		private long requestLength = -2;
+		private volatile BodyPipe pipe;
+		private volatile CompletableFuture<HttpResponse<InputStream>> future;
+		private volatile boolean disconnected;
+		private HttpResponse<InputStream> response;
+		/** Guards the response. It isn't synchronized, to not pin virtual threads while waiting. */
+		private final ReentrantLock lock = new ReentrantLock();
+
+		Connection(HttpClient client, HttpRequest.Builder request) {
+			this.client = client;
+			this.request = request;
+		}
+
+		public void setRequestHeader(String name, String value) {
+			request.setHeader(name, value);
+		}
+
+		public void setRequestBodyLength(long length) {
+			requestLength = length;
+		}
+
+		public OutputStream getRequestBody() throws IOException {
+			if(requestLength == -1 || requestLength > MAX_BUFFERED) {
+				return stream();
+			}
+			return new ByteArrayOutputStream() {
+				private boolean closed;
+
+				@Override
+				public void close() throws IOException {
+					if(closed) {
+						return;
+					}
+					closed = true;
+					send(toByteArray());
+				}
+			};
+		}
+
+		private void send(byte[] body) throws IOException {
+			if(disconnected) {
+				throw new IOException("The connection has been closed.");
+			}
+			HttpRequest r = request.POST(HttpRequest.BodyPublishers.ofByteArray(body)).build();
+			future = client.sendAsync(r, HttpResponse.BodyHandlers.ofInputStream());
+			if(disconnected) {
+				future.cancel(true);
+			}
+		}
+
+		/**
+		 * Send the request with a body streamed through a pipe.
+		 *
+		 * @return The stream to write the body to.
+		 * @throws IOException Will be thrown if the connection has been closed.
+		 */
+		private OutputStream stream() throws IOException {
+			if(disconnected) {
+				throw new IOException("The connection has been closed.");
+			}
+			BodyPipe p = new BodyPipe();
+			HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.ofInputStream(() -> p.in);
+			if(requestLength >= 0) {
+				publisher = HttpRequest.BodyPublishers.fromPublisher(publisher, requestLength);
+			}
+			pipe = p;
+			future = client.sendAsync(request.POST(publisher).build(), HttpResponse.BodyHandlers.ofInputStream());
+			if(disconnected) {
+				disconnect();
+			}
+			return p.out;
+		}
+
+		private HttpResponse<InputStream> getResponse() throws IOException {
+			lock.lock();
+			try {
+				return waitForResponse();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private HttpResponse<InputStream> waitForResponse() throws IOException {
+			if(response != null) {
+				return response;
+			}
+			CompletableFuture<HttpResponse<InputStream>> f = future;
+			if(f == null) {
+				throw new IOException("The request body must be written and closed before the response is read.");
+			}
+			try {
+				response = f.get();
+				return response;
+			} catch(CancellationException ex) {
+				throw new IOException("The connection has been closed.", ex);
+			} catch(InterruptedException ex) {
+				f.cancel(true);
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the response.");
+			} catch(ExecutionException ex) {
+				Throwable cause = ex.getCause();
+				if(cause instanceof HttpTimeoutException) {
+					// Report timeouts like the default transport
+					SocketTimeoutException timeout = new SocketTimeoutException(cause.getMessage());
+					timeout.initCause(cause);
+					throw timeout;
+				}
+				if(cause instanceof IOException) {
+					throw (IOException)cause;
+				}
+				throw new IOException(cause);
+			}
+		}
+
+		public int getStatusCode() throws IOException {
+			return getResponse().statusCode();
+		}
+
+		public String getHeaderField(String name) {
+			HttpHeaders headers = headers();
+			return headers == null ? null : headers.firstValue(name).orElse(null);
+		}
+
+		public Map<String, List<String>> getHeaderFields() {
+			HttpHeaders headers = headers();
+			return headers == null ? Map.<String, List<String>>of() : headers.map();
+		}
+
+		private HttpHeaders headers() {
+			try {
+				return getResponse().headers();
+			} catch(IOException ex) {
+				return null;
+			}
+		}
+
+		public InputStream getResponseBody() throws IOException {
+			return getResponse().body();
+		}
+
+		public void disconnect() {
+			disconnected = true;
+			BodyPipe p = pipe;
+			if(p != null) {
+				p.abort();
+			}
+			CompletableFuture<HttpResponse<InputStream>> f = future;
+			if(f == null) {
+				return;
+			}
+			if(!f.cancel(true) && f.isDone() && !f.isCompletedExceptionally()) {
+				// The response has been received, close its body to release the stream
+				try {
+					f.join().body().close();
+				} catch(IOException ex) {
+					// Ignore this
+				}
+			}
+		}
+
+		/**
+		 * Hands the chunks of a streamed request body from the writing thread
+		 * to the HttpClient. Only a few chunks are queued, the writing thread
+		 * waits for the HttpClient to take them.
+		 */
+		private class BodyPipe {
+
+			private static final int CHUNK_SIZE = 8192;
+			private final byte[] end = new byte[0];
+			private final byte[] aborted = new byte[0];
+			private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(4);
+
+			final OutputStream out = new OutputStream() {
+				private byte[] chunk = new byte[CHUNK_SIZE];
+				private int length;
+				private boolean closed;
+
+				@Override
+				public void write(int b) throws IOException {
+					write(new byte[] { (byte)b }, 0, 1);
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					if(closed) {
+						throw new IOException("The request body has been closed.");
+					}
+					while(len > 0) {
+						int n = Math.min(len, chunk.length - length);
+						System.arraycopy(b, off, chunk, length, n);
+						length += n;
+						off += n;
+						len -= n;
+						if(length == chunk.length) {
+							put(chunk);
+							chunk = new byte[CHUNK_SIZE];
+							length = 0;
+						}
+					}
+				}
+
+				@Override
+				public void close() throws IOException {
+					if(closed) {
+						return;
+					}
+					closed = true;
+					if(length > 0) {
+						put(Arrays.copyOf(chunk, length));
+					}
+					put(end);
+				}
+			};
+
+			final InputStream in = new InputStream() {
+				private byte[] current;
+				private int position;
+
+				@Override
+				public int read() throws IOException {
+					byte[] one = new byte[1];
+					int n = read(one, 0, 1);
+					return n == -1 ? -1 : one[0] & 0xFF;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					if(current == end) {
+						return -1;
+					}
+					if(len == 0) {
+						return 0;
+					}
+					if(current == null || position == current.length) {
+						try {
+							current = chunks.take();
+						} catch(InterruptedException ex) {
+							Thread.currentThread().interrupt();
+							throw new InterruptedIOException("Interrupted while waiting for the request body.");
+						}
+						position = 0;
+						if(current == aborted) {
+							chunks.offer(aborted);
+							throw new IOException("The request has been aborted.");
+						}
+						if(current == end) {
+							return -1;
+						}
+					}
+					int n = Math.min(len, current.length - position);
+					System.arraycopy(current, position, b, off, n);
+					position += n;
+					return n;
+				}
+			};
+
+			private void put(byte[] chunk) throws IOException {
+				try {
+					while(!chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+						CompletableFuture<HttpResponse<InputStream>> f = future;
+						if(disconnected || (f != null && f.isDone())) {
+							throw new IOException("The request has ended before its body has been sent.");
+						}
+					}
+				} catch(InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while sending the request body.");
+				}
+			}
+
+			/**
+			 * Stop the HttpClient from waiting for more of the body.
+			 */
+			void abort() {
+				while(!chunks.offer(aborted)) {
+					chunks.poll();
+				}
+			}
+
+		}
+
+	}
+
+}
@@ -0,0 +1,113 @@
+package de.timroes.axmlrpc.transport.httpclient;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import de.timroes.axmlrpc.XMLRPCClient;
+import de.timroes.axmlrpc.XMLRPCException;
+import de.timroes.axmlrpc.XMLRPCServerException;
+import java.net.URL;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestHttpClientTransport {
+	private final int port = 8080;
+	private final String endPoint = "/dummyEndPoint";
+
+	@Rule
+	public WireMockRule wireMockRule = new WireMockRule(port);
+
+	@Test
+	public void canMakeACall() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.withRequestBody(containing("<methodName>add</methodName>"))
+				.willReturn(xmlRpcResponse("<params><param><value><i4>15</i4></value></param></params>")));
+
+		assertEquals(15, newClient(XMLRPCClient.FLAGS_NONE).call("add", 5, 10));
+	}
+
+	@Test
+	public void streamsLargeRequests() throws Exception {
+		streamLargeRequest(XMLRPCClient.FLAGS_NONE);
+		verify(postRequestedFor(urlEqualTo(endPoint))
+				.withHeader("Content-Length", matching("[0-9]+"))
+				.withoutHeader("Transfer-Encoding"));
+	}
+
+	@Test
+	public void streamsLargeChunkedRequests() throws Exception {
+		streamLargeRequest(XMLRPCClient.FLAGS_CHUNKED_REQUESTS);
+		verify(postRequestedFor(urlEqualTo(endPoint)).withHeader("Transfer-Encoding", equalTo("chunked")));
+	}
+
+	private void streamLargeRequest(int flags) throws Exception {
+		StringBuilder large = new StringBuilder();
+		while(large.length() < 200000) {
+			large.append("0123456789");
+		}
+		stubFor(post(urlEqualTo(endPoint))
+				.withRequestBody(containing(large.toString()))
+				.willReturn(xmlRpcResponse("<params><param><value><i4>15</i4></value></param></params>")));
+
+		assertEquals(15, newClient(flags).call("echo", large.toString()));
+	}
+
+	@Test
+	public void canReceiveAFault() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(xmlRpcResponse("<fault><value><struct>"
+						+ "<member><name>faultCode</name><value><int>4</int></value></member>"
+						+ "<member><name>faultString</name><value><string>Too many parameters.</string></value></member>"
+						+ "</struct></value></fault>")));
+
+		try {
+			newClient(XMLRPCClient.FLAGS_NONE).call("add");
+			fail("Should have thrown a server exception");
+		} catch(XMLRPCServerException ex) {
+			assertEquals(4, ex.getErrorNr());
+		}
+	}
+
+	@Test
+	public void canForwardAndReadCookies() throws Exception {
+		stubFor(post(urlEqualTo("/moved"))
+				.willReturn(aResponse().withStatus(302).withHeader("Location", "http://localhost:" + port + endPoint)));
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(xmlRpcResponse("<params><param><value><string>toto</string></value></param></params>")
+						.withHeader("Set-Cookie", "session=42; Path=/")));
+
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + "/moved"),
+				XMLRPCClient.FLAGS_FORWARD | XMLRPCClient.FLAGS_ENABLE_COOKIES);
+		client.setTransport(new HttpClientTransport(XMLRPCClient.FLAGS_FORWARD | XMLRPCClient.FLAGS_ENABLE_COOKIES));
+
+		assertEquals("toto", client.call("test"));
+		assertEquals("42", client.getCookies().get("session"));
+	}
+
+	@Test
+	public void rejectsErrorStatusCodes() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(500)));
+
+		try {
+			newClient(XMLRPCClient.FLAGS_NONE).call("test");
+			fail("Should have thrown because of the status code");
+		} catch(XMLRPCException ex) {
+			assertFalse(ex instanceof XMLRPCServerException);
+		}
+	}
+
+	private XMLRPCClient newClient(int flags) throws Exception {
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint), flags);
+		client.setTransport(new HttpClientTransport(flags));
+		return client;
+	}
+
+	private static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder xmlRpcResponse(String content) {
+		return aResponse()
+				.withStatus(200)
+				.withHeader("Content-Type", "text/xml; charset=utf-8")
+				.withBody("<?xml version=\"1.0\"?><methodResponse>" + content + "</methodResponse>");
+	}
+}
@@ -0,0 +1,472 @@
+package de.timroes.axmlrpc.processor;
+
+import de.timroes.axmlrpc.serializer.StructCodec;
+import de.timroes.axmlrpc.serializer.XMLRPCStruct;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.SimpleTypeVisitor8;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * The StructCodecProcessor generates a {@link StructCodec} for every type
+ * marked with {@link XMLRPCStruct}. The codecs read and write the members
+ * by their fields, getters and setters, or record components, so no
+ * reflection is used at runtime. The generated code compiles with Java 7,
+ * so it can be used on Android. All generated codecs are listed in
+ * META-INF/services/de.timroes.axmlrpc.serializer.StructCodec, from where
+ * {@link de.timroes.axmlrpc.serializer.SerializerHandler#loadCodecs(java.lang.ClassLoader)}
+ * registers them.
+ */
+@SupportedAnnotationTypes("de.timroes.axmlrpc.serializer.XMLRPCStruct")
+public class StructCodecProcessor extends AbstractProcessor {
+
+	private static final String SERVICES = "META-INF/services/" + StructCodec.class.getName();
+	private static final String SUFFIX = "Codec";
+
+	/** The qualified names of the codecs generated in all rounds. */
+	private final List<String> codecs = new ArrayList<String>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+
+		for(Element element : roundEnv.getElementsAnnotatedWith(XMLRPCStruct.class)) {
+			try {
+				generate(element);
+			} catch(InvalidStructException ex) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, ex.getMessage(), ex.element);
+			} catch(IOException ex) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"Cannot write the codec: " + ex.getMessage(), element);
+			}
+		}
+
+		if(roundEnv.processingOver() && !codecs.isEmpty()) {
+			try {
+				FileObject services = processingEnv.getFiler()
+						.createResource(StandardLocation.CLASS_OUTPUT, "", SERVICES);
+				Writer out = services.openWriter();
+				try {
+					for(String codec : codecs) {
+						out.write(codec);
+						out.write('\n');
+					}
+				} finally {
+					out.close();
+				}
+			} catch(IOException ex) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"Cannot write " + SERVICES + ": " + ex.getMessage());
+			}
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * Generates the codec of a marked type.
+	 *
+	 * @param element The marked type.
+	 * @throws InvalidStructException Will be thrown if the type can't be a struct.
+	 * @throws IOException Will be thrown if the codec can't be written.
+	 */
+	private void generate(Element element) throws InvalidStructException, IOException {
+
+		boolean record = "RECORD".equals(element.getKind().name());
+		if(element.getKind() != ElementKind.CLASS && !record) {
+			throw new InvalidStructException("@XMLRPCStruct can only be used on classes and records.", element);
+		}
+		TypeElement type = (TypeElement)element;
+		Set<Modifier> modifiers = type.getModifiers();
+		if(modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.ABSTRACT)
+				|| type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS
+				|| (type.getNestingKind() == NestingKind.MEMBER && !modifiers.contains(Modifier.STATIC) && !record)) {
+			throw new InvalidStructException("A struct must be a concrete top level or static nested type, "
+					+ "which is not private.", type);
+		}
+		if(!type.getTypeParameters().isEmpty()) {
+			throw new InvalidStructException("A struct must not have type parameters.", type);
+		}
+
+		PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+		String codecName = SUFFIX;
+		for(Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+			codecName = e.getSimpleName() + (codecName.equals(SUFFIX) ? "" : "_") + codecName;
+		}
+		String qualifiedCodecName = pkg.isUnnamed() ? codecName : pkg.getQualifiedName() + "." + codecName;
+
+		List<Member> members = record ? recordMembers(type) : classMembers(type, pkg);
+
+		Writer out = processingEnv.getFiler().createSourceFile(qualifiedCodecName, type).openWriter();
+		try {
+			out.write(new CodeWriter(type, pkg, codecName, record, members).write());
+		} finally {
+			out.close();
+		}
+		codecs.add(qualifiedCodecName);
+
+	}
+
+	private List<Member> recordMembers(TypeElement type) {
+		List<Member> members = new ArrayList<Member>();
+		for(Element e : type.getEnclosedElements()) {
+			if("RECORD_COMPONENT".equals(e.getKind().name())) {
+				String name = e.getSimpleName().toString();
+				members.add(new Member(name, e.asType(), "object." + name + "()", null));
+			}
+		}
+		return members;
+	}
+
+	private List<Member> classMembers(TypeElement type, PackageElement pkg) throws InvalidStructException {
+
+		boolean constructor = false;
+		for(ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if(c.getParameters().isEmpty() && isAccessible(c, pkg)) {
+				constructor = true;
+			}
+		}
+		if(!constructor) {
+			throw new InvalidStructException("A struct must have a constructor without arguments, "
+					+ "which is not private.", type);
+		}
+
+		List<Member> members = new ArrayList<Member>();
+		Set<String> names = new HashSet<String>();
+		for(TypeElement c = type; c != null; c = superclass(c)) {
+			for(VariableElement field : ElementFilter.fieldsIn(c.getEnclosedElements())) {
+				Set<Modifier> modifiers = field.getModifiers();
+				String name = field.getSimpleName().toString();
+				if(modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)
+						|| !names.add(name)) {
+					continue;
+				}
+				// The type of the field as seen from the struct, e.g. of a field inherited from a generic class
+				TypeMirror fieldType = processingEnv.getTypeUtils().asMemberOf((DeclaredType)type.asType(), field);
+				if(!modifiers.contains(Modifier.FINAL) && isAccessible(field, pkg)) {
+					members.add(new Member(name, fieldType, "object." + name, "object." + name + " = %s"));
+					continue;
+				}
+				// Otherwise the field is read and written by its getter and setter
+				String property = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+				ExecutableElement getter = findMethod(type, pkg, "get" + property, null);
+				if(getter == null && fieldType.getKind() == TypeKind.BOOLEAN) {
+					getter = findMethod(type, pkg, "is" + property, null);
+				}
+				ExecutableElement setter = findMethod(type, pkg, "set" + property, fieldType);
+				if(getter == null || setter == null) {
+					throw new InvalidStructException("The field " + name + " of a struct must be accessible "
+							+ "and not final, or have a getter and a setter.", field);
+				}
+				members.add(new Member(name, fieldType, "object." + getter.getSimpleName() + "()",
+						"object." + setter.getSimpleName() + "(%s)"));
+			}
+		}
+		return members;
+
+	}
+
+	private TypeElement superclass(TypeElement type) {
+		TypeMirror superclass = type.getSuperclass();
+		if(superclass.getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+		TypeElement element = (TypeElement)((DeclaredType)superclass).asElement();
+		return element.getQualifiedName().contentEquals("java.lang.Object") ? null : element;
+	}
+
+	/**
+	 * Finds a method of a type, which can be called from the codec.
+	 *
+	 * @param parameter The type of the only parameter, or null if the
+	 *		method has no parameters.
+	 */
+	private ExecutableElement findMethod(TypeElement type, PackageElement pkg, String name, TypeMirror parameter) {
+		for(ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+			if(!method.getSimpleName().contentEquals(name) || method.getModifiers().contains(Modifier.STATIC)
+					|| !isAccessible(method, pkg)) {
+				continue;
+			}
+			List<? extends VariableElement> parameters = method.getParameters();
+			if(parameter == null ? parameters.isEmpty()
+					: parameters.size() == 1 && processingEnv.getTypeUtils().isSameType(parameters.get(0).asType(), parameter)) {
+				return method;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks whether a member can be used from a codec in the given package.
+	 */
+	private boolean isAccessible(Element member, PackageElement pkg) {
+		Set<Modifier> modifiers = member.getModifiers();
+		if(modifiers.contains(Modifier.PRIVATE)) {
+			return false;
+		}
+		return modifiers.contains(Modifier.PUBLIC)
+				|| processingEnv.getElementUtils().getPackageOf(member).equals(pkg);
+	}
+
+	/**
+	 * A member of a struct.
+	 */
+	private static class Member {
+
+		final String name;
+		final TypeMirror type;
+		/** The expression reading the member from the object. */
+		final String read;
+		/** The statement writing a value (%s) to the object, null for records. */
+		final String write;
+
+		Member(String name, TypeMirror type, String read, String write) {
+			this.name = name;
+			this.type = type;
+			this.read = read;
+			this.write = write;
+		}
+
+	}
+
+	/**
+	 * Writes the source code of a codec.
+	 */
+	private class CodeWriter {
+
+		private final TypeElement type;
+		private final PackageElement pkg;
+		private final String codecName;
+		private final boolean record;
+		private final List<Member> members;
+		private final StringBuilder out = new StringBuilder();
+
+		CodeWriter(TypeElement type, PackageElement pkg, String codecName, boolean record, List<Member> members) {
+			this.type = type;
+			this.pkg = pkg;
+			this.codecName = codecName;
+			this.record = record;
+			this.members = members;
+		}
+
+		String write() {
+
+			String typeName = type.getQualifiedName().toString();
+
+			if(!pkg.isUnnamed()) {
+				line(0, "package " + pkg.getQualifiedName() + ";");
+				line(0, "");
+			}
+			line(0, "import de.timroes.axmlrpc.XMLRPCException;");
+			line(0, "import de.timroes.axmlrpc.serializer.StructCodec;");
+			line(0, "import java.io.IOException;");
+			line(0, "import java.lang.reflect.Type;");
+			line(0, "");
+			line(0, "/**");
+			line(0, " * The codec of {@link " + typeName + "}, generated by the aXMLRPC annotation processor.");
+			line(0, " */");
+			line(0, "public final class " + codecName + " extends StructCodec<" + typeName + "> {");
+			line(0, "");
+			for(int i = 0; i < members.size(); i++) {
+				line(1, "private static final Type TYPE_" + i + " = " + typeLiteral(members.get(i).type) + ";");
+			}
+			if(!members.isEmpty()) {
+				line(0, "");
+			}
+
+			line(1, "public " + codecName + "() {");
+			line(2, "super(" + typeName + ".class);");
+			line(1, "}");
+			line(0, "");
+
+			line(1, "@Override");
+			line(1, "protected void writeMembers(" + typeName + " object, MemberWriter out) throws XMLRPCException, IOException {");
+			for(Member member : members) {
+				line(2, "out.member(\"" + member.name + "\", " + member.read + ");");
+			}
+			line(1, "}");
+			line(0, "");
+
+			line(1, "@Override");
+			line(1, "protected Type getMemberType(String name) {");
+			line(2, "switch(name) {");
+			for(int i = 0; i < members.size(); i++) {
+				line(3, "case \"" + members.get(i).name + "\": return TYPE_" + i + ";");
+			}
+			line(3, "default: return null;");
+			line(2, "}");
+			line(1, "}");
+			line(0, "");
+
+			line(1, "@Override");
+			line(1, "protected Object start() {");
+			if(record) {
+				StringBuilder defaults = new StringBuilder();
+				for(Member member : members) {
+					defaults.append(defaults.length() == 0 ? "" : ", ").append(defaultValue(member.type));
+				}
+				line(2, "return new Object[] { " + defaults + " };");
+			} else {
+				line(2, "return new " + typeName + "();");
+			}
+			line(1, "}");
+			line(0, "");
+
+			line(1, "@Override");
+			line(1, "@SuppressWarnings(\"unchecked\")");
+			line(1, "protected void setMember(Object target, String name, Object value) {");
+			if(record) {
+				line(2, "Object[] values = (Object[])target;");
+			} else {
+				line(2, typeName + " object = (" + typeName + ")target;");
+			}
+			line(2, "switch(name) {");
+			for(int i = 0; i < members.size(); i++) {
+				Member member = members.get(i);
+				String value = "(" + castType(member.type) + ")value";
+				line(3, "case \"" + member.name + "\": "
+						+ (record ? "values[" + i + "] = value" : String.format(member.write, value)) + "; break;");
+			}
+			line(3, "default: break;");
+			line(2, "}");
+			line(1, "}");
+			line(0, "");
+
+			line(1, "@Override");
+			if(record) {
+				line(1, "@SuppressWarnings(\"unchecked\")");
+			}
+			line(1, "protected " + typeName + " finish(Object target) {");
+			if(record) {
+				StringBuilder arguments = new StringBuilder();
+				for(int i = 0; i < members.size(); i++) {
+					arguments.append(i == 0 ? "" : ", ")
+							.append("(").append(castType(members.get(i).type)).append(")values[").append(i).append("]");
+				}
+				line(2, "Object[] values = (Object[])target;");
+				line(2, "return new " + typeName + "(" + arguments + ");");
+			} else {
+				line(2, "return (" + typeName + ")target;");
+			}
+			line(1, "}");
+			line(0, "");
+			line(0, "}");
+
+			return out.toString();
+
+		}
+
+		private void line(int indent, String text) {
+			for(int i = 0; i < indent; i++) {
+				out.append('\t');
+			}
+			out.append(text).append('\n');
+		}
+
+		/**
+		 * Returns an expression of the java.lang.reflect.Type of a type.
+		 */
+		private String typeLiteral(TypeMirror type) {
+			return type.accept(new SimpleTypeVisitor8<String, Void>() {
+				@Override
+				public String visitDeclared(DeclaredType t, Void p) {
+					if(t.getTypeArguments().isEmpty()) {
+						return defaultAction(t, p);
+					}
+					StringBuilder literal = new StringBuilder("parameterized(").append(erasure(t)).append(".class");
+					for(TypeMirror argument : t.getTypeArguments()) {
+						literal.append(", ").append(argument.accept(this, null));
+					}
+					return literal.append(")").toString();
+				}
+
+				@Override
+				public String visitWildcard(WildcardType t, Void p) {
+					return t.getExtendsBound() != null ? t.getExtendsBound().accept(this, null) : "Object.class";
+				}
+
+				@Override
+				protected String defaultAction(TypeMirror t, Void p) {
+					// Primitives, arrays and type variables are bound to their erasure
+					return erasure(t) + ".class";
+				}
+			}, null);
+		}
+
+		/**
+		 * Returns the type to cast a value of a member to.
+		 */
+		private String castType(TypeMirror type) {
+			if(type.getKind().isPrimitive()) {
+				return processingEnv.getTypeUtils().boxedClass((PrimitiveType)type).getQualifiedName().toString();
+			}
+			return type.getKind() == TypeKind.DECLARED && !((DeclaredType)type).getTypeArguments().isEmpty()
+					? type.toString() : erasure(type);
+		}
+
+		private String erasure(TypeMirror type) {
+			return processingEnv.getTypeUtils().erasure(type).toString();
+		}
+
+		private String defaultValue(TypeMirror type) {
+			switch(type.getKind()) {
+				case BOOLEAN: return "false";
+				case CHAR: return "(char)0";
+				case BYTE: return "(byte)0";
+				case SHORT: return "(short)0";
+				case INT: return "0";
+				case LONG: return "0L";
+				case FLOAT: return "0f";
+				case DOUBLE: return "0d";
+				default: return "null";
+			}
+		}
+
+	}
+
+	/**
+	 * Thrown if a marked type can't be a struct.
+	 */
+	private static class InvalidStructException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		final Element element;
+
+		InvalidStructException(String message, Element element) {
+			super(message);
+			this.element = element;
+		}
+
+	}
+
+}
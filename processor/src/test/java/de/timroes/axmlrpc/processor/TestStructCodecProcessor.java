@@ -0,0 +1,108 @@
+package de.timroes.axmlrpc.processor;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import de.timroes.axmlrpc.XMLRPCClient;
+import de.timroes.axmlrpc.serializer.SerializerHandler;
+import de.timroes.axmlrpc.serializer.XMLRPCStruct;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestStructCodecProcessor {
+	private final int port = 8080;
+	private final String endPoint = "/dummyEndPoint";
+
+	/** The flags selecting each of the response parsers. */
+	private static final int[] PARSER_FLAGS = { XMLRPCClient.FLAGS_NONE, XMLRPCClient.FLAGS_STREAMING_PARSER,
+			XMLRPCClient.FLAGS_BYTE_PARSER };
+
+	@Rule
+	public WireMockRule wireMockRule = new WireMockRule(port);
+
+	@XMLRPCStruct
+	public static class Point {
+		int x;
+		int y;
+		private String label;
+		transient int setterCalls;
+
+		public String getLabel() {
+			return label;
+		}
+
+		public void setLabel(String label) {
+			this.label = label;
+			setterCalls++;
+		}
+	}
+
+	@XMLRPCStruct
+	public static class Line {
+		String name;
+		List<Point> points;
+		Map<String, Long> weights;
+	}
+
+	@Test
+	public void serializesWithGeneratedCodecs() throws Exception {
+		SerializerHandler handler = new SerializerHandler(XMLRPCClient.FLAGS_NONE);
+		assertEquals(2, handler.loadCodecs(getClass().getClassLoader()));
+
+		Point point = new Point();
+		point.x = 1;
+		point.y = 2;
+		point.setLabel("a");
+		Line line = new Line();
+		line.name = "l";
+		line.points = Arrays.asList(point, new Point());
+
+		String xml = handler.serialize(line).toString().replaceAll("\\s", "");
+		assertTrue(xml, xml.startsWith("<struct><member><name>name</name><value><string>l</string></value></member>"
+				+ "<member><name>points</name><value><array><data><value><struct>"
+				+ "<member><name>x</name><value><int>1</int></value></member>"
+				+ "<member><name>y</name><value><int>2</int></value></member>"
+				+ "<member><name>label</name><value><string>a</string></value></member>"
+				+ "</struct></value><value><struct>"
+				+ "<member><name>x</name><value><int>0</int></value></member>"
+				+ "<member><name>y</name><value><int>0</int></value></member>"
+				+ "</struct></value></data></array></value></member>"));
+		// Null members are left out
+		assertFalse(xml, xml.contains("weights"));
+	}
+
+	@Test
+	public void bindsResultsWithGeneratedCodecs() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(200).withBody("<methodResponse><params><param><value><struct>"
+						+ "<member><name>name</name><value><string>l</string></value></member>"
+						+ "<member><name>points</name><value><array><data><value><struct>"
+						+ "<member><name>x</name><value><i4>1</i4></value></member>"
+						+ "<member><name>label</name><value><string>a</string></value></member>"
+						+ "<member><name>z</name><value><i4>3</i4></value></member>"
+						+ "</struct></value></data></array></value></member>"
+						+ "<member><name>weights</name><value><struct>"
+						+ "<member><name>w</name><value><i4>4</i4></value></member>"
+						+ "</struct></value></member>"
+						+ "</struct></value></param></params></methodResponse>")));
+
+		for(int flags : PARSER_FLAGS) {
+			XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint), flags);
+			client.loadCodecs(getClass().getClassLoader());
+			Line line = client.call(Line.class, "dummy_method");
+			assertEquals("l", line.name);
+			assertEquals(1, line.points.size());
+			Point point = line.points.get(0);
+			assertEquals(1, point.x);
+			assertEquals("a", point.getLabel());
+			// The label is set through its setter by the codec, not through reflection
+			assertEquals(1, point.setterCalls);
+			assertEquals(Long.valueOf(4), line.weights.get("w"));
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package de.timroes.axmlrpc;
 
+import de.timroes.axmlrpc.transport.TransportConnection;
 import de.timroes.base64.Base64;
 import java.net.HttpURLConnection;
 
@@ -51,5 +52,23 @@ public class AuthenticationManager {
 		http.addRequestProperty("Authorization", "Basic " + base64login);
 		
 	}
-	
-}
\ No newline at end of file
+
+	/**
+	 * Set the authentication at a connection of a transport.
+	 *
+	 * @param connection The connection to set authentication.
+	 */
+	public void setAuthentication(TransportConnection connection) {
+
+		if(user == null || pass == null
+				|| user.length() <= 0 || pass.length() <= 0) {
+			return;
+		}
+
+		String base64login = Base64.encode(user + ":" + pass);
+
+		connection.setRequestHeader("Authorization", "Basic " + base64login);
+
+	}
+
+}
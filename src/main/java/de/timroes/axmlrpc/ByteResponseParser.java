@@ -0,0 +1,909 @@
+package de.timroes.axmlrpc;
+
+import de.timroes.axmlrpc.serializer.SerializerHandler;
+import de.timroes.axmlrpc.serializer.TypedValueBuilder;
+import de.timroes.axmlrpc.serializer.ValueBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The ByteResponseParser parses the response of an XMLRPC server to an object,
+ * without using any XML library. It reads the UTF-8 encoded bytes of the
+ * response directly from the stream and only understands the small subset of
+ * XML used by XML-RPC responses. Tags are matched on their bytes, and
+ * &lt;int&gt;, &lt;i4&gt; and &lt;boolean&gt; values are decoded without
+ * creating a String.
+ * Like the {@link ResponseParser}, it refuses responses containing a DOCTYPE
+ * declaration (see CWE-611). Only UTF-8 (or ASCII) encoded responses are supported.
+ */
+public class ByteResponseParser extends ResponseParser {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final byte[] METHOD_RESPONSE = bytes(XMLRPCClient.METHOD_RESPONSE);
+	private static final byte[] PARAMS = bytes(XMLRPCClient.PARAMS);
+	private static final byte[] PARAM = bytes(XMLRPCClient.PARAM);
+	private static final byte[] FAULT = bytes(XMLRPCClient.FAULT);
+	private static final byte[] VALUE = bytes(XMLRPCClient.VALUE);
+	private static final byte[] MEMBER = bytes(XMLRPCClient.STRUCT_MEMBER);
+	private static final byte[] NAME = bytes("name");
+	private static final byte[] DATA = bytes("data");
+
+	/**
+	 * The known type tags. The names are looked up in this table, so no String
+	 * has to be created for them.
+	 */
+	private static final String[] TYPES = {
+		SerializerHandler.TYPE_STRING, SerializerHandler.TYPE_INT, SerializerHandler.TYPE_INT2,
+		SerializerHandler.TYPE_BOOLEAN, SerializerHandler.TYPE_DOUBLE, SerializerHandler.TYPE_STRUCT,
+		SerializerHandler.TYPE_ARRAY, SerializerHandler.TYPE_LONG, SerializerHandler.TYPE_DATETIME,
+		SerializerHandler.TYPE_BASE64, SerializerHandler.TYPE_NULL
+	};
+	private static final byte[][] TYPE_BYTES = new byte[TYPES.length][];
+
+	static {
+		for(int i = 0; i < TYPES.length; i++) {
+			TYPE_BYTES[i] = bytes(TYPES[i]);
+		}
+	}
+
+	/**
+	 * The given InputStream must contain the xml response from an xmlrpc server.
+	 * This method extract the content of it as an object.
+	 *
+	 * @param serializerHandler You can inject an arbitrary one if you want to use your own transport protocol.
+	 *     See the README (section "Using an arbitrary transport") for more info on this feature.
+	 * @param response The InputStream of the server response.
+	 * @param debugMode This prints data on System.out to make it easy to debug
+	 * @param resultType The type to bind the returned value to, or null to return it as it is.
+	 * @return The returned object.
+	 * @throws XMLRPCException Will be thrown whenever something fails.
+	 * @throws XMLRPCServerException Will be thrown, if the server returns an error.
+	 */
+	@Override
+	public Object parse(SerializerHandler serializerHandler, InputStream response, boolean debugMode,
+			Type resultType) throws XMLRPCException {
+
+		Decoder decoder = null;
+		boolean done = false;
+		try {
+			if(debugMode) {
+				response = printResponse(response);
+			}
+
+			decoder = new Decoder(serializerHandler, new Lexer(response));
+			Object result = decoder.parseResponse(resultType);
+			done = true;
+			return result;
+
+		} catch(XMLRPCServerException e) {
+			throw e;
+		} catch (Exception ex) {
+			throw new XMLRPCException("Error getting result from server.", ex);
+		} finally {
+			if(!done && decoder != null) {
+				decoder.abort();
+			}
+		}
+
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(UTF8);
+	}
+
+	/**
+	 * Builds the returned object from the tokens of the lexer.
+	 */
+	private static class Decoder {
+
+		private final SerializerHandler serializerHandler;
+		private final Lexer lexer;
+		private final boolean ignoreNamespaces;
+		private final boolean sinking;
+
+		/** The builders of the type elements still open. */
+		private final List<ValueBuilder> open = new ArrayList<ValueBuilder>();
+		/** The builders of the base64 values decoded to a sink, aborted if the response fails. */
+		private final List<ValueBuilder> sunk = new ArrayList<ValueBuilder>();
+
+		Decoder(SerializerHandler serializerHandler, Lexer lexer) {
+			this.serializerHandler = serializerHandler;
+			this.lexer = lexer;
+			this.ignoreNamespaces = (serializerHandler.getFlags() & XMLRPCClient.FLAGS_IGNORE_NAMESPACES) != 0;
+			this.sinking = serializerHandler.getBase64Sink() != null;
+		}
+
+		/**
+		 * Aborts the builders of the elements still open and of the base64
+		 * values decoded to a sink, once the response has failed.
+		 */
+		void abort() {
+			for(ValueBuilder builder : open) {
+				builder.abort();
+			}
+			for(ValueBuilder builder : sunk) {
+				builder.abort();
+			}
+		}
+
+		Object parseResponse(Type resultType) throws XMLRPCException, IOException {
+
+			int token = lexer.next();
+			if(token == Lexer.TEXT && XMLUtil.isWhitespace(lexer.text, 0, lexer.textLength)) {
+				token = lexer.next();
+			}
+
+			// Check for root tag
+			if(token != Lexer.START_TAG || !lexer.isName(METHOD_RESPONSE)) {
+				throw new XMLRPCException("MethodResponse root tag is missing.");
+			}
+
+			if(nextElementToken() != Lexer.START_TAG) {
+				throw new XMLRPCException("The methodResponse tag must contain a fault or params tag.");
+			}
+
+			if(lexer.isName(PARAMS)) {
+
+				if(nextElementToken() != Lexer.START_TAG || !lexer.isName(PARAM)) {
+					throw new XMLRPCException("The params tag must contain a param tag.");
+				}
+				Object result = parseValueIn(resultType);
+				expectEnd(PARAMS);
+				expectEnd(METHOD_RESPONSE);
+				return result;
+
+			} else if(lexer.isName(FAULT)) {
+
+				// Faults are never bound to the result type
+				Object fault = parseValueIn(null);
+				expectEnd(METHOD_RESPONSE);
+				throw toServerException(fault);
+
+			}
+
+			throw new XMLRPCException("The methodResponse tag must contain a fault or params tag.");
+
+		}
+
+		/**
+		 * Parses the value element inside the current param or fault element,
+		 * up to the end tag of this element.
+		 */
+		private Object parseValueIn(Type target) throws XMLRPCException, IOException {
+			if(nextElementToken() != Lexer.START_TAG || !lexer.isName(VALUE)) {
+				throw new XMLRPCException("Value tag is missing around value.");
+			}
+			Object value = parseValue(target);
+			if(nextElementToken() != Lexer.END_TAG) {
+				throw new XMLRPCException("Element has more than one children.");
+			}
+			return value;
+		}
+
+		/**
+		 * Parses a value element, whose start tag has just been read, and
+		 * binds it to the target type (if not null).
+		 */
+		private Object parseValue(Type target) throws XMLRPCException, IOException {
+
+			int token = lexer.next();
+			char[] untyped = null;
+			int untypedLength = 0;
+
+			if(token == Lexer.TEXT) {
+				// The text stays untouched in the lexer while the following tag is read.
+				untyped = lexer.text;
+				untypedLength = lexer.textLength;
+				token = lexer.next();
+			}
+
+			if(token == Lexer.END_TAG) {
+				// Value element doesn't contain a child element
+				ValueBuilder builder = serializerHandler.newValueBuilder(null, target);
+				if(untyped != null) {
+					builder.characters(untyped, 0, untypedLength);
+				}
+				return builder.build();
+			}
+
+			if(token != Lexer.START_TAG) {
+				throw new XMLRPCException("Value tag is missing around value.");
+			}
+			if(untyped != null && !XMLUtil.isWhitespace(untyped, 0, untypedLength)) {
+				throw new XMLRPCException("Only element nodes allowed.");
+			}
+
+			Object value = parseType(target);
+
+			if(nextElementToken() != Lexer.END_TAG) {
+				throw new XMLRPCException("Element has more than one children.");
+			}
+			return value;
+
+		}
+
+		/**
+		 * Parses a type element, whose start tag has just been read.
+		 */
+		private Object parseType(Type target) throws XMLRPCException, IOException {
+
+			String type = lexer.typeName(ignoreNamespaces);
+
+			if(SerializerHandler.TYPE_INT.equals(type) || SerializerHandler.TYPE_INT2.equals(type)) {
+				if(lexer.next() == Lexer.TEXT) {
+					Integer i = parseInt(lexer.text, lexer.textLength);
+					if(i != null) {
+						expectEnd();
+						return serializerHandler.convert(i, target);
+					}
+				}
+				return parseText(type, target);
+			} else if(SerializerHandler.TYPE_BOOLEAN.equals(type)) {
+				boolean b = false;
+				int token = lexer.next();
+				if(token == Lexer.TEXT) {
+					b = lexer.textLength == 1 && lexer.text[0] == '1';
+					token = lexer.next();
+				}
+				if(token != Lexer.END_TAG) {
+					throw new XMLRPCException("Element must contain only text elements.");
+				}
+				return serializerHandler.convert(b ? Boolean.TRUE : Boolean.FALSE, target);
+			}
+
+			ValueBuilder builder = serializerHandler.newValueBuilder(type, target);
+			open.add(builder);
+
+			if(SerializerHandler.TYPE_STRUCT.equals(type)) {
+				parseStruct(builder);
+			} else if(SerializerHandler.TYPE_ARRAY.equals(type)) {
+				parseArray(builder);
+			} else {
+				// Long text is handed to the builder in parts while it is read
+				lexer.textBuilder = builder;
+				int token = lexer.next();
+				lexer.textBuilder = null;
+				if(token == Lexer.TEXT) {
+					builder.characters(lexer.text, 0, lexer.textLength);
+					token = lexer.next();
+				}
+				if(token != Lexer.END_TAG) {
+					throw new XMLRPCException("Element must contain only text elements.");
+				}
+			}
+
+			Object value = builder.build();
+			open.remove(open.size() - 1);
+			if(sinking && SerializerHandler.TYPE_BASE64.equals(type)) {
+				sunk.add(builder);
+			}
+			return value;
+
+		}
+
+		/**
+		 * Parses the text of a type element through its builder, when the
+		 * current token is the text (if any) of the element.
+		 */
+		private Object parseText(String type, Type target) throws XMLRPCException, IOException {
+			ValueBuilder builder = serializerHandler.newValueBuilder(type, target);
+			int token = lexer.token;
+			if(token == Lexer.TEXT) {
+				builder.characters(lexer.text, 0, lexer.textLength);
+				token = lexer.next();
+			}
+			if(token != Lexer.END_TAG) {
+				throw new XMLRPCException("Element must contain only text elements.");
+			}
+			return builder.build();
+		}
+
+		private void parseStruct(ValueBuilder builder) throws XMLRPCException, IOException {
+
+			while(nextElementToken() == Lexer.START_TAG) {
+
+				if(!lexer.isName(MEMBER)) {
+					throw new XMLRPCException("Only struct members allowed within a struct.");
+				}
+
+				String name = null;
+				Object value = null;
+				boolean hasName = false, hasValue = false;
+
+				while(nextElementToken() == Lexer.START_TAG) {
+					if(lexer.isName(NAME)) {
+						if(hasName) {
+							throw new XMLRPCException("Name of a struct member cannot be set twice.");
+						}
+						int token = lexer.next();
+						name = "";
+						if(token == Lexer.TEXT) {
+							name = new String(lexer.text, 0, lexer.textLength);
+							token = lexer.next();
+						}
+						if(token != Lexer.END_TAG) {
+							throw new XMLRPCException("Element must contain only text elements.");
+						}
+						hasName = true;
+					} else if(lexer.isName(VALUE)) {
+						if(hasValue) {
+							throw new XMLRPCException("Value of a struct member cannot be set twice.");
+						}
+						// The member type is known if the name came first
+						value = parseValue(hasName && builder instanceof TypedValueBuilder
+								? ((TypedValueBuilder)builder).getMemberType(name) : null);
+						hasValue = true;
+					} else {
+						throw new XMLRPCException("A struct member must only contain one name and one value.");
+					}
+				}
+
+				builder.member(name, value);
+
+			}
+
+		}
+
+		private void parseArray(ValueBuilder builder) throws XMLRPCException, IOException {
+
+			if(nextElementToken() != Lexer.START_TAG || !lexer.isName(DATA)) {
+				throw new XMLRPCException("The array must contain one data tag.");
+			}
+
+			Type elementType = builder instanceof TypedValueBuilder
+					? ((TypedValueBuilder)builder).getElementType() : null;
+			while(nextElementToken() == Lexer.START_TAG) {
+				if(!lexer.isName(VALUE)) {
+					throw new XMLRPCException("Value tag is missing around value.");
+				}
+				builder.element(parseValue(elementType));
+			}
+
+			if(nextElementToken() != Lexer.END_TAG) {
+				throw new XMLRPCException("Element has more than one children.");
+			}
+
+		}
+
+		/**
+		 * Returns the next token which is not whitespace. Any other text is
+		 * refused, since only elements are allowed at that position.
+		 */
+		private int nextElementToken() throws XMLRPCException, IOException {
+			int token = lexer.next();
+			if(token == Lexer.TEXT) {
+				if(!XMLUtil.isWhitespace(lexer.text, 0, lexer.textLength)) {
+					throw new XMLRPCException("Only element nodes allowed.");
+				}
+				token = lexer.next();
+			}
+			if(token == Lexer.EOF) {
+				throw new XMLRPCException("Unexpected end of the response.");
+			}
+			return token;
+		}
+
+		private void expectEnd() throws XMLRPCException, IOException {
+			if(lexer.next() != Lexer.END_TAG) {
+				throw new XMLRPCException("Element must contain only text elements.");
+			}
+		}
+
+		private void expectEnd(byte[] name) throws XMLRPCException, IOException {
+			if(nextElementToken() != Lexer.END_TAG || !lexer.isName(name)) {
+				throw new XMLRPCException("Element has more than one children.");
+			}
+		}
+
+		/**
+		 * Parses a decimal integer without creating a String.
+		 *
+		 * @return The integer, or null if the text isn't a plain decimal integer
+		 *		in the range of an int.
+		 */
+		private static Integer parseInt(char[] text, int length) {
+			int i = 0;
+			boolean negative = false;
+			if(length > 0 && (text[0] == '-' || text[0] == '+')) {
+				negative = text[0] == '-';
+				i++;
+			}
+			if(i == length || length - i > 10) {
+				return null;
+			}
+			long result = 0;
+			for(; i < length; i++) {
+				char c = text[i];
+				if(c < '0' || c > '9') {
+					return null;
+				}
+				result = result * 10 + (c - '0');
+			}
+			result = negative ? -result : result;
+			if(result > Integer.MAX_VALUE || result < Integer.MIN_VALUE) {
+				return null;
+			}
+			return Integer.valueOf((int)result);
+		}
+
+	}
+
+	/**
+	 * Splits the bytes of the response into start tags, end tags and text.
+	 * Comments and processing instructions are skipped, entity references
+	 * and CDATA sections are resolved into the text. Each end tag is checked
+	 * against the name of the element it closes.
+	 */
+	private static class Lexer {
+
+		static final int EOF = 0;
+		static final int START_TAG = 1;
+		static final int END_TAG = 2;
+		static final int TEXT = 3;
+
+		private final InputStream in;
+		private final byte[] buffer = new byte[8192];
+		private int position;
+		private int limit;
+
+		/** The current token. */
+		int token;
+
+		/** The name of the current tag. */
+		private byte[] name = new byte[32];
+		private int nameLength;
+		private boolean selfClosing;
+
+		/** The names of the open elements, one after the other. */
+		private byte[] openNames = new byte[256];
+		private int openLength;
+		private int[] openStarts = new int[16];
+		private int depth;
+
+		/** The text of the current text token. */
+		char[] text = new char[256];
+		int textLength;
+
+		/**
+		 * If set, the text read so far is handed to this builder whenever it
+		 * gets longer than {@link #MAX_TEXT_LENGTH}, only the rest of the text
+		 * is left in the token.
+		 */
+		ValueBuilder textBuilder;
+		private static final int MAX_TEXT_LENGTH = 8192;
+
+		Lexer(InputStream in) throws IOException, XMLRPCException {
+			this.in = in;
+			skipByteOrderMark();
+		}
+
+		/**
+		 * Reads the next token.
+		 *
+		 * @return The type of the token.
+		 */
+		int next() throws IOException, XMLRPCException {
+
+			if(selfClosing) {
+				// Emit the end tag of an empty element.
+				selfClosing = false;
+				return token = END_TAG;
+			}
+
+			textLength = 0;
+			boolean hasText = false;
+
+			while(true) {
+				int b = peek();
+				if(b == -1) {
+					return token = hasText ? TEXT : EOF;
+				}
+
+				if(b != '<') {
+					readText();
+					hasText = true;
+					continue;
+				}
+
+				position++;
+				b = read();
+				if(b == '?') {
+					skipProcessingInstruction();
+				} else if(b == '!') {
+					if(startsWith("--")) {
+						skipUntil("-->");
+					} else if(startsWith("[CDATA[")) {
+						readCData();
+						hasText = true;
+					} else {
+						throw new XMLRPCException("DOCTYPE is disallowed in XML-RPC responses.");
+					}
+				} else if(b == -1) {
+					throw new XMLRPCException("Unexpected end of the response.");
+				} else if(hasText) {
+					// Return the text first, the tag will be read on the next call.
+					position -= 2;
+					return token = TEXT;
+				} else if(b == '/') {
+					readName(read());
+					skipWhitespace();
+					if(read() != '>') {
+						throw new XMLRPCException("Malformed end tag.");
+					}
+					close();
+					return token = END_TAG;
+				} else {
+					readName(b);
+					skipAttributes();
+					if(!selfClosing) {
+						open();
+					}
+					return token = START_TAG;
+				}
+			}
+
+		}
+
+		/**
+		 * Checks whether the current tag has the given name.
+		 */
+		boolean isName(byte[] expected) {
+			if(nameLength != expected.length) {
+				return false;
+			}
+			for(int i = 0; i < nameLength; i++) {
+				if(name[i] != expected[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Returns the name of the current tag as a type name. Known types are
+		 * looked up in a table, so no String is created for them.
+		 */
+		String typeName(boolean ignoreNamespaces) {
+			int start = 0;
+			if(ignoreNamespaces) {
+				for(int i = 0; i < nameLength; i++) {
+					if(name[i] == ':') {
+						start = i + 1;
+					}
+				}
+			}
+			int length = nameLength - start;
+			for(int t = 0; t < TYPE_BYTES.length; t++) {
+				byte[] type = TYPE_BYTES[t];
+				if(type.length != length) {
+					continue;
+				}
+				int i = 0;
+				while(i < length && type[i] == name[start + i]) {
+					i++;
+				}
+				if(i == length) {
+					return TYPES[t];
+				}
+			}
+			return new String(name, start, length, UTF8);
+		}
+
+		/**
+		 * Remembers the name of the current start tag as an open element.
+		 */
+		private void open() {
+			if(depth == openStarts.length) {
+				int[] grown = new int[depth * 2];
+				System.arraycopy(openStarts, 0, grown, 0, depth);
+				openStarts = grown;
+			}
+			if(openLength + nameLength > openNames.length) {
+				byte[] grown = new byte[Math.max(openNames.length * 2, openLength + nameLength)];
+				System.arraycopy(openNames, 0, grown, 0, openLength);
+				openNames = grown;
+			}
+			openStarts[depth++] = openLength;
+			System.arraycopy(name, 0, openNames, openLength, nameLength);
+			openLength += nameLength;
+		}
+
+		/**
+		 * Checks that the current end tag closes the innermost open element.
+		 */
+		private void close() throws XMLRPCException {
+			if(depth == 0) {
+				throw new XMLRPCException("End tag without a start tag.");
+			}
+			int start = openStarts[depth - 1];
+			boolean matches = openLength - start == nameLength;
+			for(int i = 0; matches && i < nameLength; i++) {
+				matches = openNames[start + i] == name[i];
+			}
+			if(!matches) {
+				throw new XMLRPCException("The end tag " + new String(name, 0, nameLength, UTF8)
+						+ " doesn't match the start tag " + new String(openNames, start, openLength - start, UTF8) + ".");
+			}
+			depth--;
+			openLength = start;
+		}
+
+		private void readName(int b) throws IOException, XMLRPCException {
+			nameLength = 0;
+			while(b != -1 && b != '>' && b != '/' && b > ' ') {
+				if(nameLength == name.length) {
+					byte[] grown = new byte[name.length * 2];
+					System.arraycopy(name, 0, grown, 0, nameLength);
+					name = grown;
+				}
+				name[nameLength++] = (byte)b;
+				b = read();
+			}
+			if(b == -1 || nameLength == 0) {
+				throw new XMLRPCException("Malformed tag.");
+			}
+			// Give the delimiter back, it's handled by the caller.
+			position--;
+		}
+
+		private void skipAttributes() throws IOException, XMLRPCException {
+			int quote = 0;
+			while(true) {
+				int b = read();
+				if(b == -1) {
+					throw new XMLRPCException("Malformed tag.");
+				}
+				if(quote != 0) {
+					if(b == quote) {
+						quote = 0;
+					}
+				} else if(b == '"' || b == '\'') {
+					quote = b;
+				} else if(b == '/') {
+					selfClosing = true;
+				} else if(b == '>') {
+					return;
+				} else if(b > ' ') {
+					selfClosing = false;
+				}
+			}
+		}
+
+		private void skipWhitespace() throws IOException {
+			while(peek() != -1 && peek() <= ' ') {
+				position++;
+			}
+		}
+
+		private void skipProcessingInstruction() throws IOException, XMLRPCException {
+			int start = textLength;
+			// Collect the instruction as text to check the declared encoding.
+			while(!startsWith("?>")) {
+				int b = read();
+				if(b == -1) {
+					throw new XMLRPCException("Unexpected end of the response.");
+				}
+				appendChar((char)b);
+			}
+			String instruction = new String(text, start, textLength - start);
+			textLength = start;
+			int encoding = instruction.indexOf("encoding");
+			if(instruction.startsWith("xml") && encoding >= 0) {
+				String declared = instruction.substring(encoding + 8).replaceAll("[\\s=\"']", " ").trim();
+				declared = declared.split(" ")[0];
+				if(!"UTF-8".equalsIgnoreCase(declared) && !"US-ASCII".equalsIgnoreCase(declared)
+						&& !"ASCII".equalsIgnoreCase(declared)) {
+					throw new XMLRPCException("Only UTF-8 encoded responses are supported.");
+				}
+			}
+		}
+
+		private void skipUntil(String end) throws IOException, XMLRPCException {
+			while(!startsWith(end)) {
+				if(read() == -1) {
+					throw new XMLRPCException("Unexpected end of the response.");
+				}
+			}
+		}
+
+		private void readCData() throws IOException, XMLRPCException {
+			while(!startsWith("]]>")) {
+				if(textBuilder != null && textLength >= MAX_TEXT_LENGTH) {
+					textBuilder.characters(text, 0, textLength);
+					textLength = 0;
+				}
+				int b = read();
+				if(b == -1) {
+					throw new XMLRPCException("Unexpected end of the response.");
+				}
+				appendByte(b);
+			}
+		}
+
+		/**
+		 * Reads character data up to the next tag, resolving entity references.
+		 */
+		private void readText() throws IOException, XMLRPCException {
+			int b;
+			while((b = peek()) != -1 && b != '<') {
+				if(textBuilder != null && textLength >= MAX_TEXT_LENGTH) {
+					textBuilder.characters(text, 0, textLength);
+					textLength = 0;
+				}
+				position++;
+				if(b == '&') {
+					readEntity();
+				} else if(b == '\r') {
+					// Normalize line endings like any XML parser does
+					if(peek() == '\n') {
+						position++;
+					}
+					appendChar('\n');
+				} else {
+					appendByte(b);
+				}
+			}
+		}
+
+		private void readEntity() throws IOException, XMLRPCException {
+			int start = textLength;
+			int b;
+			while((b = read()) != ';') {
+				if(b == -1 || b == '<' || textLength - start > 10) {
+					throw new XMLRPCException("Malformed entity reference.");
+				}
+				appendChar((char)b);
+			}
+			String entity = new String(text, start, textLength - start);
+			textLength = start;
+
+			if(entity.equals("lt")) {
+				appendChar('<');
+			} else if(entity.equals("gt")) {
+				appendChar('>');
+			} else if(entity.equals("amp")) {
+				appendChar('&');
+			} else if(entity.equals("quot")) {
+				appendChar('"');
+			} else if(entity.equals("apos")) {
+				appendChar('\'');
+			} else if(entity.startsWith("#")) {
+				int codePoint;
+				try {
+					codePoint = entity.startsWith("#x")
+							? Integer.parseInt(entity.substring(2), 16)
+							: Integer.parseInt(entity.substring(1));
+				} catch(NumberFormatException ex) {
+					throw new XMLRPCException("Malformed entity reference.", ex);
+				}
+				appendCodePoint(codePoint);
+			} else {
+				throw new XMLRPCException("The entity \"" + entity + "\" was referenced, but not declared.");
+			}
+		}
+
+		/**
+		 * Decodes one UTF-8 encoded character, starting with the given byte.
+		 */
+		private void appendByte(int b) throws IOException, XMLRPCException {
+			if(b < 0x80) {
+				appendChar((char)b);
+				return;
+			}
+			int codePoint, more;
+			if((b & 0xE0) == 0xC0) {
+				codePoint = b & 0x1F;
+				more = 1;
+			} else if((b & 0xF0) == 0xE0) {
+				codePoint = b & 0x0F;
+				more = 2;
+			} else if((b & 0xF8) == 0xF0) {
+				codePoint = b & 0x07;
+				more = 3;
+			} else {
+				throw new XMLRPCException("Invalid UTF-8 sequence in the response.");
+			}
+			while(more-- > 0) {
+				int c = read();
+				if(c == -1 || (c & 0xC0) != 0x80) {
+					throw new XMLRPCException("Invalid UTF-8 sequence in the response.");
+				}
+				codePoint = (codePoint << 6) | (c & 0x3F);
+			}
+			appendCodePoint(codePoint);
+		}
+
+		private void appendCodePoint(int codePoint) throws XMLRPCException {
+			if(!Character.isValidCodePoint(codePoint)) {
+				throw new XMLRPCException("Invalid character in the response.");
+			}
+			if(Character.isSupplementaryCodePoint(codePoint)) {
+				appendChar(Character.highSurrogate(codePoint));
+				appendChar(Character.lowSurrogate(codePoint));
+			} else {
+				appendChar((char)codePoint);
+			}
+		}
+
+		private void appendChar(char c) {
+			if(textLength == text.length) {
+				char[] grown = new char[text.length * 2];
+				System.arraycopy(text, 0, grown, 0, textLength);
+				text = grown;
+			}
+			text[textLength++] = c;
+		}
+
+		private void skipByteOrderMark() throws IOException, XMLRPCException {
+			int b = peek();
+			if(b == 0xFE || b == 0xFF || b == 0) {
+				throw new XMLRPCException("Only UTF-8 encoded responses are supported.");
+			}
+			if(b == 0xEF) {
+				startsWith("\u00EF\u00BB\u00BF");
+			}
+		}
+
+		/**
+		 * Checks whether the next bytes are the given ASCII string, and skips
+		 * them if so.
+		 */
+		private boolean startsWith(String s) throws IOException {
+			if(!ensure(s.length())) {
+				return false;
+			}
+			for(int i = 0; i < s.length(); i++) {
+				if((buffer[position + i] & 0xFF) != s.charAt(i)) {
+					return false;
+				}
+			}
+			position += s.length();
+			return true;
+		}
+
+		private int peek() throws IOException {
+			if(!ensure(1)) {
+				return -1;
+			}
+			return buffer[position] & 0xFF;
+		}
+
+		private int read() throws IOException {
+			if(!ensure(1)) {
+				return -1;
+			}
+			return buffer[position++] & 0xFF;
+		}
+
+		/**
+		 * Makes sure that the given number of bytes is available in the buffer.
+		 * The last two bytes already read are kept, so they can be given back.
+		 */
+		private boolean ensure(int count) throws IOException {
+			if(limit - position >= count) {
+				return true;
+			}
+			int keep = Math.min(position, 2);
+			int remaining = limit - position;
+			System.arraycopy(buffer, position - keep, buffer, 0, keep + remaining);
+			position = keep;
+			limit = keep + remaining;
+			while(limit - position < count) {
+				int read = in.read(buffer, limit, buffer.length - limit);
+				if(read == -1) {
+					return false;
+				}
+				limit += read;
+			}
+			return true;
+		}
+
+	}
+
+}
@@ -2,14 +2,21 @@ package de.timroes.axmlrpc;
 
 import de.timroes.axmlrpc.serializer.Serializer;
 import de.timroes.axmlrpc.serializer.SerializerHandler;
+import de.timroes.axmlrpc.serializer.StreamingSerializer;
 import de.timroes.axmlrpc.xmlcreator.SimpleXMLCreator;
 import de.timroes.axmlrpc.xmlcreator.XmlElement;
+import de.timroes.axmlrpc.xmlcreator.XmlWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * A Call object represents a call of a remote methode.
  * It contains the name of the method to be called and the parameters to use
  * in this remote procedure call. To send it over the network the method getXML
  * returns an xml representation according to the XML-RPC specification as a String.
+ * The method writeXML writes the same xml directly to a stream, without
+ * building it in memory first.
  *
  * @author Tim Roes
  */
@@ -19,6 +26,11 @@ public class Call {
 	private Object[] params;
 	private final SerializerHandler serializerHandler;
 
+	/** The xml written before the parameters, null if it is written from the method name. */
+	private final byte[] prefix;
+	/** The serializer of each parameter, null where it is looked up by the value. */
+	private final Serializer[] serializers;
+
 	/**
 	 * Create a new method call with the given name and no parameters.
 	 * @param serializerHandler You can inject an arbitrary one if you want to use your own transport protocol.
@@ -37,9 +49,53 @@ public class Call {
 	 * @param params An array of parameters for the method.
 	 */
 	public Call(SerializerHandler serializerHandler, String method, Object[] params) {
+		this(serializerHandler, method, params, null, null);
+	}
+
+	/**
+	 * Create a new method call, for which the beginning of the xml and the
+	 * serializers of the parameters have been prepared before.
+	 *
+	 * @param serializerHandler The serializer handler.
+	 * @param method The method to be called.
+	 * @param params An array of parameters for the method.
+	 * @param prefix The xml up to the parameters, as returned by {@link #prefix(java.lang.String)}.
+	 * @param serializers The serializer of each parameter, null where it
+	 *		should be looked up by the value, or null to look up all of them.
+	 */
+	Call(SerializerHandler serializerHandler, String method, Object[] params,
+			byte[] prefix, Serializer[] serializers) {
 		this.method = method;
 		this.params = params;
 		this.serializerHandler = serializerHandler;
+		this.prefix = prefix;
+		this.serializers = serializers;
+	}
+
+	/**
+	 * Returns the UTF-8 encoded xml written by {@link #writeXML(java.io.OutputStream, boolean)}
+	 * before the parameters of a call of the given method.
+	 *
+	 * @param method The method to be called.
+	 * @return The beginning of the xml.
+	 */
+	static byte[] prefix(String method) {
+		try {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			XmlWriter writer = new XmlWriter(buffer);
+			writeStart(writer, method);
+			writer.flush();
+			return buffer.toByteArray();
+		} catch(IOException ex) {
+			// Not thrown by a ByteArrayOutputStream
+			throw new XMLRPCRuntimeException(ex);
+		}
+	}
+
+	private static void writeStart(XmlWriter writer, String method) throws IOException {
+		writer.writeDeclaration();
+		writer.startElement(XMLRPCClient.METHOD_CALL);
+		writer.element(XMLRPCClient.METHOD_NAME, method);
 	}
 
 	/**
@@ -83,6 +139,91 @@ public class Call {
 		return result;
 	}
 
+	/**
+	 * Write the xml representation of the method call, as returned by
+	 * {@link #getXML(boolean)}, UTF-8 encoded to the given stream. Neither
+	 * an xml tree nor the whole xml string is built in memory.
+	 *
+	 * @param out The stream to write the xml to. It won't be closed.
+	 * @param debugMode This prints data on System.out to make it easy to debug
+	 * @throws XMLRPCException Will be thrown whenever the xml representation cannot
+	 * 		be build without errors.
+	 * @throws IOException Will be thrown if writing to the stream fails.
+	 */
+	public void writeXML(OutputStream out, boolean debugMode) throws XMLRPCException, IOException {
+
+		if(debugMode) {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			writeXML(buffer, false);
+			System.out.println(buffer.toString("UTF-8"));
+			buffer.writeTo(out);
+			return;
+		}
+
+		XmlWriter writer;
+		if(prefix != null) {
+			out.write(prefix);
+			writer = new XmlWriter(out);
+		} else {
+			writer = new XmlWriter(out);
+			writeStart(writer, method);
+		}
+		writeEnd(writer);
+
+	}
+
+	/**
+	 * Returns the length of the xml written by {@link #writeXML(java.io.OutputStream, boolean)},
+	 * without writing it. Binary data sources are not read for this, their
+	 * length is taken from their size.
+	 *
+	 * @return The length of the UTF-8 encoded xml in bytes, or -1 if it isn't
+	 *		known before the xml is written, e.g. if an InputStream is passed.
+	 * @throws XMLRPCException Will be thrown whenever the xml representation cannot
+	 * 		be build without errors.
+	 * @throws IOException Will be thrown if the size of a data source can't be read.
+	 */
+	long getLength() throws XMLRPCException, IOException {
+		XmlWriter writer = XmlWriter.counting();
+		if(prefix != null) {
+			writer.skip(prefix.length);
+		} else {
+			writeStart(writer, method);
+		}
+		writeEnd(writer);
+		return writer.getLength();
+	}
+
+	/**
+	 * Write the parameters and the end of the method call.
+	 */
+	private void writeEnd(XmlWriter writer) throws XMLRPCException, IOException {
+
+		if(params != null && params.length > 0) {
+			writer.startElement(XMLRPCClient.PARAMS);
+			for(int i = 0; i < params.length; i++) {
+				Object o = params[i];
+				Serializer s = serializers == null || o == null ? null : serializers[i];
+				writer.startElement(XMLRPCClient.PARAM);
+				writer.startElement(XMLRPCClient.VALUE);
+				if(s == null) {
+					serializerHandler.serialize(writer, o);
+				} else if(s instanceof StreamingSerializer) {
+					((StreamingSerializer)s).serialize(writer, o);
+				} else {
+					writer.element(s.serialize(o));
+				}
+				writer.endElement(XMLRPCClient.VALUE);
+				writer.endElement(XMLRPCClient.PARAM);
+			}
+			writer.endElement(XMLRPCClient.PARAMS);
+		}
+
+		writer.endElement(XMLRPCClient.METHOD_CALL);
+		writer.flush();
+
+	}
+
 	/**
 	 * Generates the param xml tag for a specific parameter object.
 	 *
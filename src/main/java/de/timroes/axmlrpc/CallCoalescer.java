@@ -0,0 +1,263 @@
+package de.timroes.axmlrpc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A CallCoalescer collects the calls made by many threads during a short
+ * window, and sends them to the server as a single {@code system.multicall}
+ * (see {@link XMLRPCClient#multicall(de.timroes.axmlrpc.Multicall)}). Each
+ * caller gets a future for the result of its own call.
+ *
+ * A batch is sent when the window after its first call has elapsed, or as
+ * soon as it contains the maximum number of calls. Batches are sent by the
+ * executor of the client, with the timeouts of the client. If the batch request
+ * fails, e.g. because it timed out, the futures of all its calls fail with
+ * the same exception. A future can be canceled as long as its batch hasn't
+ * been sent, the call is then removed from the batch. Once the batch has been
+ * sent, canceling the future won't stop the call on the server.
+ *
+ * A coalescer must be closed when it isn't used anymore.
+ */
+public class CallCoalescer {
+
+	private final XMLRPCClient client;
+	private final long window;
+	private final int maxCalls;
+
+	private final ScheduledExecutorService timer;
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** The batch collecting the calls, guarded by the lock. */
+	private Batch pending;
+	private boolean closed;
+
+	/**
+	 * Create a new coalescer sending its calls with the given client.
+	 *
+	 * @param client The client to send the batches with.
+	 * @param window The time in milliseconds calls are collected before they are sent.
+	 * @param maxCalls The maximum number of calls sent in one batch.
+	 */
+	public CallCoalescer(XMLRPCClient client, long window, int maxCalls) {
+		if(window < 0 || maxCalls < 1) {
+			throw new IllegalArgumentException("The window must not be negative and at least one call must fit in a batch.");
+		}
+		this.client = client;
+		this.window = window;
+		this.maxCalls = maxCalls;
+		this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "aXMLRPC-coalescer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Add a call to the current batch. This method returns immediately.
+	 * If the server returns an error for this call, the {@code get} method of
+	 * the returned future throws an {@link java.util.concurrent.ExecutionException}
+	 * caused by an {@link XMLRPCServerException}, and by an {@link XMLRPCException}
+	 * if anything else fails.
+	 *
+	 * @param method A method name to call on the server.
+	 * @param params An array of parameters for the method.
+	 * @return The future result of the call.
+	 * @throws IllegalStateException Will be thrown if the coalescer has been closed.
+	 */
+	public Future<Object> call(String method, Object... params) {
+		client.checkMethodName(method);
+		PendingCall call = new PendingCall(method, params);
+		Batch full = null;
+		lock.lock();
+		try {
+			if(closed) {
+				throw new IllegalStateException("The coalescer has been closed.");
+			}
+			if(pending == null) {
+				pending = new Batch();
+				final Batch batch = pending;
+				batch.timeout = timer.schedule(new Runnable() {
+					public void run() {
+						flush(batch);
+					}
+				}, window, TimeUnit.MILLISECONDS);
+			}
+			pending.calls.add(call);
+			if(pending.calls.size() >= maxCalls) {
+				full = pending;
+				pending = null;
+			}
+		} finally {
+			lock.unlock();
+		}
+		if(full != null) {
+			full.timeout.cancel(false);
+			send(full);
+		}
+		return call;
+	}
+
+	/**
+	 * Send the current batch right away, without waiting for its window to elapse.
+	 */
+	public void flush() {
+		Batch batch;
+		lock.lock();
+		try {
+			batch = pending;
+		} finally {
+			lock.unlock();
+		}
+		if(batch != null) {
+			flush(batch);
+		}
+	}
+
+	/**
+	 * Send the pending calls and stop the coalescer. No calls can be added
+	 * after the coalescer has been closed.
+	 */
+	public void close() {
+		flush();
+		lock.lock();
+		try {
+			closed = true;
+		} finally {
+			lock.unlock();
+		}
+		flush();
+		timer.shutdown();
+	}
+
+	/**
+	 * Send the given batch, if it is still the current batch.
+	 *
+	 * @param batch The batch to send.
+	 */
+	private void flush(Batch batch) {
+		lock.lock();
+		try {
+			if(pending != batch) {
+				// The batch has already been sent
+				return;
+			}
+			pending = null;
+		} finally {
+			lock.unlock();
+		}
+		batch.timeout.cancel(false);
+		send(batch);
+	}
+
+	/**
+	 * Send a batch with the executor of the client.
+	 *
+	 * @param batch The batch to send.
+	 */
+	private void send(final Batch batch) {
+		try {
+			client.getExecutorService().execute(new Runnable() {
+				public void run() {
+					batch.run();
+				}
+			});
+		} catch(RejectedExecutionException ex) {
+			batch.fail(new XMLRPCException("The batch of calls has been rejected.", ex));
+		}
+	}
+
+	/**
+	 * The calls sent in one request.
+	 */
+	private class Batch {
+
+		private final List<PendingCall> calls = new ArrayList<PendingCall>();
+		private ScheduledFuture<?> timeout;
+
+		void run() {
+			// Calls canceled before the batch is sent are left out
+			List<PendingCall> sent = new ArrayList<PendingCall>(calls.size());
+			Multicall multicall = new Multicall();
+			for(PendingCall call : calls) {
+				if(!call.isCancelled()) {
+					sent.add(call);
+					multicall.add(call.method, call.params);
+				}
+			}
+			if(sent.isEmpty()) {
+				return;
+			}
+
+			Object[] results;
+			try {
+				results = client.multicall(multicall);
+			} catch(Throwable ex) {
+				// Errors too, or the callers would wait forever
+				fail(sent, ex);
+				return;
+			}
+			for(int i = 0; i < results.length; i++) {
+				if(results[i] instanceof XMLRPCServerException) {
+					sent.get(i).setException((XMLRPCServerException)results[i]);
+				} else {
+					sent.get(i).set(results[i]);
+				}
+			}
+		}
+
+		void fail(Exception ex) {
+			fail(calls, ex);
+		}
+
+		private void fail(List<PendingCall> failed, Throwable ex) {
+			for(PendingCall call : failed) {
+				call.setException(ex);
+			}
+		}
+
+	}
+
+	/**
+	 * The future of a call waiting for its batch.
+	 */
+	private static class PendingCall extends FutureTask<Object> {
+
+		private final String method;
+		private final Object[] params;
+
+		PendingCall(String method, Object[] params) {
+			super(new Callable<Object>() {
+				public Object call() {
+					throw new IllegalStateException("A coalesced call is never run on its own.");
+				}
+			});
+			this.method = method;
+			this.params = params;
+		}
+
+		@Override
+		protected void set(Object v) {
+			super.set(v);
+		}
+
+		@Override
+		protected void setException(Throwable t) {
+			super.setException(t);
+		}
+
+	}
+
+}
@@ -0,0 +1,76 @@
+package de.timroes.axmlrpc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decompresses response bodies while they are streamed. Request bodies are
+ * compressed by the {@link RequestBody}.
+ */
+class Compression {
+
+	static final String ACCEPT_ENCODING = "Accept-Encoding";
+	static final String CONTENT_ENCODING = "Content-Encoding";
+	static final String GZIP = "gzip";
+	static final String DEFLATE = "deflate";
+
+	static final int BUFFER_SIZE = 8192;
+
+	private Compression() {}
+
+	/**
+	 * Wraps a response body to decompress it according to its Content-Encoding.
+	 *
+	 * @param in The response body.
+	 * @param contentEncoding The Content-Encoding of the response, or null.
+	 * @return A stream returning the decompressed response body.
+	 * @throws IOException Will be thrown if the encoding isn't supported or
+	 *     the compressed header is invalid.
+	 */
+	static InputStream decode(InputStream in, String contentEncoding) throws IOException {
+
+		if(in == null || contentEncoding == null) {
+			return in;
+		}
+
+		String encoding = contentEncoding.trim().toLowerCase();
+		if(encoding.length() == 0 || encoding.equals("identity")) {
+			return in;
+		}
+		if(encoding.equals(GZIP) || encoding.equals("x-gzip")) {
+			return new GZIPInputStream(in, BUFFER_SIZE);
+		}
+		if(encoding.equals(DEFLATE)) {
+			// Deflate should be zlib wrapped, but some servers send raw deflate data
+			PushbackInputStream pushback = new PushbackInputStream(in, 2);
+			byte[] header = new byte[2];
+			int length = 0;
+			int n;
+			while(length < 2 && (n = pushback.read(header, length, 2 - length)) != -1) {
+				length += n;
+			}
+			pushback.unread(header, 0, length);
+			boolean zlib = length == 2 && (header[0] & 0x0F) == 8
+					&& (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0;
+			final Inflater inflater = new Inflater(!zlib);
+			// InflaterInputStream only ends the inflaters it created itself
+			return new InflaterInputStream(pushback, inflater, BUFFER_SIZE) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						inflater.end();
+					}
+				}
+			};
+		}
+		throw new IOException("Unsupported Content-Encoding: " + contentEncoding);
+
+	}
+
+}
@@ -1,6 +1,7 @@
 package de.timroes.axmlrpc;
 
-import java.net.HttpURLConnection;
+import de.timroes.axmlrpc.transport.TransportConnection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -50,23 +51,24 @@ class CookieManager {
 	 *
 	 * @param http A http connection.
 	 */
-	public void readCookies(HttpURLConnection http) {
+	public void readCookies(TransportConnection http) {
 
 		// Only save cookies if FLAGS_ENABLE_COOKIES has been set.
 		if((flags & XMLRPCClient.FLAGS_ENABLE_COOKIES) == 0)
 			return;
 
-		String cookie, key;
+		String cookie;
 		String[] split;
 
 		// Extract every Set-Cookie field and put the cookie to the cookies map.
-		for(int i = 0; i < http.getHeaderFields().size(); i++) {
-			key = http.getHeaderFieldKey(i);
-			if(key != null && SET_COOKIE.equalsIgnoreCase(key.toLowerCase())) {
-				cookie = http.getHeaderField(i).split(";")[0];
-				split = cookie.split("=");
-				if(split.length >= 2)
-					cookies.put(split[0], split[1]);
+		for(Map.Entry<String,List<String>> header : http.getHeaderFields().entrySet()) {
+			if(header.getKey() != null && SET_COOKIE.equalsIgnoreCase(header.getKey())) {
+				for(String value : header.getValue()) {
+					cookie = value.split(";")[0];
+					split = cookie.split("=");
+					if(split.length >= 2)
+						cookies.put(split[0], split[1]);
+				}
 			}
 		}
 
@@ -78,7 +80,7 @@ class CookieManager {
 	 *
 	 * @param http A http connection.
 	 */
-	public void setCookies(HttpURLConnection http) {
+	public void setCookies(TransportConnection http) {
 
 		// Only save cookies if FLAGS_ENABLE_COOKIES has been set.
 		if((flags & XMLRPCClient.FLAGS_ENABLE_COOKIES) == 0)
@@ -88,7 +90,7 @@ class CookieManager {
 		for(Map.Entry<String,String> cookie : cookies.entrySet()) {
 			concat += cookie.getKey() + "=" + cookie.getValue() + "; ";
 		}
-		http.setRequestProperty(COOKIE, concat);
+		http.setRequestHeader(COOKIE, concat);
 
 	}
 
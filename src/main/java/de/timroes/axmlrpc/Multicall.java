@@ -0,0 +1,114 @@
+package de.timroes.axmlrpc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Multicall collects several method calls, to send them to the server in a
+ * single request with {@link XMLRPCClient#multicall(de.timroes.axmlrpc.Multicall)}.
+ * The calls are packed into one call of the {@code system.multicall} method,
+ * which is supported by most XML-RPC servers.
+ */
+public class Multicall {
+
+	static final String METHOD_NAME = "methodName";
+	static final String PARAMS = "params";
+
+	private final List<String> methods = new ArrayList<String>();
+	private final List<Object[]> params = new ArrayList<Object[]>();
+
+	/**
+	 * Add a method call to this multicall.
+	 *
+	 * @param method A method name to call.
+	 * @param params An array of parameters for the method.
+	 * @return The index of the result of this call, in the array returned
+	 *     by {@link XMLRPCClient#multicall(de.timroes.axmlrpc.Multicall)}.
+	 */
+	public int add(String method, Object... params) {
+		this.methods.add(method);
+		this.params.add(params == null ? new Object[0] : params);
+		return this.methods.size() - 1;
+	}
+
+	/**
+	 * Returns the number of calls in this multicall.
+	 *
+	 * @return The number of calls.
+	 */
+	public int size() {
+		return methods.size();
+	}
+
+	/**
+	 * Returns the method name of a call.
+	 *
+	 * @param index The index of the call.
+	 * @return The method name.
+	 */
+	String getMethod(int index) {
+		return methods.get(index);
+	}
+
+	/**
+	 * Returns the parameters of a call.
+	 *
+	 * @param index The index of the call.
+	 * @return The parameters, never null.
+	 */
+	Object[] getParams(int index) {
+		return params.get(index);
+	}
+
+	/**
+	 * Returns the parameter of the {@code system.multicall} method: an array
+	 * with a struct for each call, containing its method name and parameters.
+	 *
+	 * @return The parameter of the multicall.
+	 */
+	Object[] toParameter() {
+		Object[] calls = new Object[methods.size()];
+		for(int i = 0; i < calls.length; i++) {
+			Map<String,Object> call = new HashMap<String,Object>();
+			call.put(METHOD_NAME, methods.get(i));
+			call.put(PARAMS, params.get(i));
+			calls[i] = call;
+		}
+		return calls;
+	}
+
+	/**
+	 * Splits the result of the {@code system.multicall} method into the results
+	 * of the calls. Each result of the server is either an array containing the
+	 * returned value, or a fault struct.
+	 *
+	 * @param response The result of the multicall.
+	 * @return The result of each call, or an {@link XMLRPCServerException} for
+	 *     the calls which failed.
+	 * @throws XMLRPCException Will be thrown if the result doesn't match the calls.
+	 */
+	Object[] toResults(Object response) throws XMLRPCException {
+
+		if(!(response instanceof Object[]) || ((Object[])response).length != methods.size()) {
+			throw new XMLRPCException("The result of system.multicall must contain a value for each call.");
+		}
+
+		Object[] responses = (Object[])response;
+		Object[] results = new Object[responses.length];
+		for(int i = 0; i < responses.length; i++) {
+			Object r = responses[i];
+			if(r instanceof Object[] && ((Object[])r).length == 1) {
+				results[i] = ((Object[])r)[0];
+			} else if(r instanceof Map && ((Map<?,?>)r).containsKey(ResponseParser.FAULT_CODE)) {
+				results[i] = ResponseParser.toServerException(r);
+			} else {
+				throw new XMLRPCException("Each result of system.multicall must be an array with one value or a fault.");
+			}
+		}
+		return results;
+
+	}
+
+}
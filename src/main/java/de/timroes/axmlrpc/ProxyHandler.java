@@ -0,0 +1,140 @@
+package de.timroes.axmlrpc;
+
+import de.timroes.axmlrpc.serializer.Serializer;
+import de.timroes.axmlrpc.serializer.SerializerHandler;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The InvocationHandler of the proxies returned by
+ * {@link XMLRPCClient#proxy(java.lang.Class)}. Everything a call needs
+ * besides its arguments is prepared once per method when the proxy is
+ * created: the checked method name, the beginning of the request, the
+ * serializers of the parameters and the type of the result.
+ */
+class ProxyHandler implements InvocationHandler {
+
+	private static final Object[] NO_PARAMS = new Object[0];
+
+	private final XMLRPCClient client;
+	private final Class<?> api;
+	private final Map<Method, RemoteMethod> methods = new HashMap<Method, RemoteMethod>();
+
+	/**
+	 * Create the handler of a proxy.
+	 *
+	 * @param client The client making the calls.
+	 * @param serializerHandler The serializer handler of the client.
+	 * @param api The interface implemented by the proxy.
+	 */
+	ProxyHandler(XMLRPCClient client, SerializerHandler serializerHandler, Class<?> api) {
+		this.client = client;
+		this.api = api;
+		for(Method method : api.getMethods()) {
+			if(Modifier.isStatic(method.getModifiers())) {
+				continue;
+			}
+			if(!Modifier.isAbstract(method.getModifiers())) {
+				throw new IllegalArgumentException("The method " + method.getName()
+						+ " of a proxied interface must not have a default implementation.");
+			}
+			methods.put(method, new RemoteMethod(client, serializerHandler, method));
+		}
+	}
+
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+		if(method.getDeclaringClass() == Object.class) {
+			String name = method.getName();
+			if("equals".equals(name)) {
+				return proxy == args[0];
+			} else if("hashCode".equals(name)) {
+				return System.identityHashCode(proxy);
+			}
+			return "XML-RPC proxy of " + api.getName();
+		}
+
+		RemoteMethod remote = methods.get(method);
+		try {
+			Object result = client.callPrepared(remote.resultType, remote.name, remote.prefix,
+					remote.serializers, args == null ? NO_PARAMS : args);
+			return remote.resultType == null ? null : result;
+		} catch(XMLRPCException ex) {
+			for(Class<?> declared : remote.exceptionTypes) {
+				if(declared.isInstance(ex)) {
+					throw ex;
+				}
+			}
+			throw new XMLRPCRuntimeException(ex);
+		}
+
+	}
+
+	/**
+	 * A method of the interface, prepared to be called.
+	 */
+	private static class RemoteMethod {
+
+		final String name;
+		final byte[] prefix;
+		/** The serializer of each parameter, null where it depends on the argument. */
+		final Serializer[] serializers;
+		/** The generic return type, null for void methods. */
+		final Type resultType;
+		final Class<?>[] exceptionTypes;
+
+		RemoteMethod(XMLRPCClient client, SerializerHandler serializerHandler, Method method) {
+
+			XMLRPCMethod annotation = method.getAnnotation(XMLRPCMethod.class);
+			name = annotation != null ? annotation.value() : method.getName();
+			client.checkMethodName(name);
+			prefix = Call.prefix(name);
+
+			Class<?>[] parameterTypes = method.getParameterTypes();
+			serializers = new Serializer[parameterTypes.length];
+			for(int i = 0; i < parameterTypes.length; i++) {
+				Class<?> type = box(parameterTypes[i]);
+				// Only the arguments of final classes are always of the declared class
+				if(Modifier.isFinal(type.getModifiers()) && !type.isArray()) {
+					try {
+						serializers[i] = serializerHandler.getSerializer(type);
+					} catch(XMLRPCException ex) {
+						// Looked up again by each argument, to throw the error on the call
+						serializers[i] = null;
+					}
+				}
+			}
+
+			resultType = method.getReturnType() == void.class ? null : method.getGenericReturnType();
+			exceptionTypes = method.getExceptionTypes();
+
+		}
+
+		private static Class<?> box(Class<?> type) {
+			if(!type.isPrimitive()) {
+				return type;
+			} else if(type == int.class) {
+				return Integer.class;
+			} else if(type == long.class) {
+				return Long.class;
+			} else if(type == boolean.class) {
+				return Boolean.class;
+			} else if(type == double.class) {
+				return Double.class;
+			} else if(type == float.class) {
+				return Float.class;
+			} else if(type == short.class) {
+				return Short.class;
+			} else if(type == byte.class) {
+				return Byte.class;
+			}
+			return Character.class;
+		}
+
+	}
+
+}
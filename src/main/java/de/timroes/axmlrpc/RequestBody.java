@@ -0,0 +1,155 @@
+package de.timroes.axmlrpc;
+
+import de.timroes.axmlrpc.transport.TransportConnection;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The body of a request, streamed to a {@link TransportConnection}. The start
+ * of the body is kept in memory up to a limit. If the whole body fits, it is
+ * sent with its exact Content-Length. Once it gets longer, the length of the
+ * call is counted without writing it (binary data sources are not read for
+ * this), and the body is streamed with this Content-Length. If the length
+ * can't be counted, e.g. for an InputStream parameter, the whole body is kept
+ * in memory.
+ *
+ * Only if chunked requests are enabled, a body longer than the limit is
+ * streamed with chunked transfer encoding instead, since not every server
+ * accepts chunked requests.
+ *
+ * Bodies longer than the compression threshold are compressed with gzip.
+ * With chunked requests, they are compressed while they are streamed.
+ * Without, the compressed length must be known before the body is sent, so
+ * only bodies kept in memory are compressed. Longer bodies are streamed
+ * uncompressed with their counted length.
+ */
+class RequestBody extends OutputStream {
+
+	/**
+	 * The default length of a body kept in memory.
+	 */
+	static final int DEFAULT_BUFFER_LIMIT = 65536;
+
+	private final TransportConnection http;
+	private final Call call;
+	private final boolean chunked;
+	private final int compressionThreshold;
+	private int limit;
+
+	private ByteArrayOutputStream buffer;
+	private OutputStream out;
+	private boolean closed;
+
+	/**
+	 * Create a new request body.
+	 *
+	 * @param http The connection to send the body with.
+	 * @param call The call written to the body, to count its length.
+	 * @param bufferLimit The length in bytes up to which the body is kept in memory.
+	 * @param compressionThreshold The length in bytes from which on the body
+	 *     is compressed, or a negative number to never compress it.
+	 * @param chunked Whether the body may be sent with chunked transfer encoding.
+	 */
+	RequestBody(TransportConnection http, Call call, int bufferLimit, int compressionThreshold,
+			boolean chunked) {
+		this.http = http;
+		this.call = call;
+		this.chunked = chunked;
+		this.compressionThreshold = compressionThreshold;
+		// Chunked bodies are compressed while they are streamed, from the threshold on
+		this.limit = chunked && compressionThreshold >= 0 ? Math.min(bufferLimit, compressionThreshold) : bufferLimit;
+		this.buffer = new ByteArrayOutputStream(Math.min(limit, Compression.BUFFER_SIZE) + 1);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte)b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if(out == null) {
+			if(buffer.size() + len <= limit) {
+				buffer.write(b, off, len);
+				return;
+			}
+			if(!stream(buffer.size() + len)) {
+				// The length isn't known, keep the whole body
+				limit = Integer.MAX_VALUE;
+				buffer.write(b, off, len);
+				return;
+			}
+			buffer.writeTo(out);
+			buffer = null;
+		}
+		out.write(b, off, len);
+	}
+
+	/**
+	 * Start to stream the body, once it is too long to be kept.
+	 *
+	 * @param length The length of the body written so far.
+	 * @return Whether the body is streamed, false if it must be kept in
+	 *		memory to know its length.
+	 */
+	private boolean stream(long written) throws IOException {
+		if(chunked && isCompressed(written)) {
+			http.setRequestHeader(Compression.CONTENT_ENCODING, Compression.GZIP);
+			http.setRequestBodyLength(-1);
+			out = new GZIPOutputStream(http.getRequestBody(), Compression.BUFFER_SIZE);
+			return true;
+		}
+		long length = -1;
+		if(!chunked) {
+			try {
+				length = call.getLength();
+			} catch(XMLRPCException ex) {
+				throw new IOException(ex);
+			}
+			if(length < 0) {
+				return false;
+			}
+		}
+		http.setRequestBodyLength(length);
+		out = http.getRequestBody();
+		return true;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if(out != null) {
+			out.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(closed) {
+			return;
+		}
+		closed = true;
+		if(out == null) {
+			// The whole body has been kept, its length is known
+			if(isCompressed(buffer.size())) {
+				ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.min(buffer.size(), Compression.BUFFER_SIZE));
+				GZIPOutputStream gzip = new GZIPOutputStream(compressed, Compression.BUFFER_SIZE);
+				buffer.writeTo(gzip);
+				gzip.close();
+				buffer = compressed;
+				http.setRequestHeader(Compression.CONTENT_ENCODING, Compression.GZIP);
+			}
+			http.setRequestBodyLength(buffer.size());
+			out = http.getRequestBody();
+			buffer.writeTo(out);
+			buffer = null;
+		}
+		out.close();
+	}
+
+	private boolean isCompressed(long length) {
+		return compressionThreshold >= 0 && length > compressionThreshold;
+	}
+
+}
@@ -2,10 +2,13 @@ package de.timroes.axmlrpc;
 
 import de.timroes.axmlrpc.serializer.SerializerHandler;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.lang.reflect.Type;
 import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -28,8 +31,8 @@ import org.w3c.dom.Element;
  */
 public class ResponseParser {
 
-	private static final String FAULT_CODE = "faultCode";
-	private static final String FAULT_STRING = "faultString";
+	static final String FAULT_CODE = "faultCode";
+	static final String FAULT_STRING = "faultString";
 
 	/**
 	 * The given InputStream must contain the xml response from an xmlrpc server.
@@ -44,6 +47,26 @@ public class ResponseParser {
 	 * @throws XMLRPCServerException Will be thrown, if the server returns an error.
 	 */
 	public Object parse(SerializerHandler serializerHandler, InputStream response, boolean debugMode) throws XMLRPCException {
+		return parse(serializerHandler, response, debugMode, null);
+	}
+
+	/**
+	 * The given InputStream must contain the xml response from an xmlrpc server.
+	 * This method extract the content of it as an object of the given type.
+	 * See {@link SerializerHandler#deserialize(org.w3c.dom.Element, java.lang.reflect.Type)}
+	 * for how the value is bound to the type.
+	 *
+	 * @param serializerHandler You can inject an arbitrary one if you want to use your own transport protocol.
+	 *     See the README (section "Using an arbitrary transport") for more info on this feature.
+	 * @param response The InputStream of the server response.
+	 * @param debugMode This prints data on System.out to make it easy to debug
+	 * @param resultType The type to bind the returned value to, or null to return it as it is.
+	 * @return The returned object.
+	 * @throws XMLRPCException Will be thrown whenever something fails.
+	 * @throws XMLRPCServerException Will be thrown, if the server returns an error.
+	 */
+	public Object parse(SerializerHandler serializerHandler, InputStream response, boolean debugMode,
+			Type resultType) throws XMLRPCException {
 
 		try {
 			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
@@ -80,14 +103,11 @@ public class ResponseParser {
 					throw new XMLRPCException("The params tag must contain a param tag.");
 				}
 
-				return getReturnValueFromElement(serializerHandler, e);
+				return getReturnValueFromElement(serializerHandler, e, resultType);
 
 			} else if(e.getNodeName().equals(XMLRPCClient.FAULT)) {
 
-				@SuppressWarnings("unchecked")
-				Map<String,Object> o = (Map<String,Object>)getReturnValueFromElement(serializerHandler, e);
-
-				throw new XMLRPCServerException((String)o.get(FAULT_STRING), (Integer)o.get(FAULT_CODE));
+				throw toServerException(getReturnValueFromElement(serializerHandler, e, null));
 
 			}
 
@@ -114,6 +134,36 @@ public class ResponseParser {
 				new StreamResult(new OutputStreamWriter(out, "UTF-8")));
 	}
 
+	/**
+	 * Prints the whole response on System.out and returns a stream to parse it.
+	 *
+	 * @param response The InputStream of the server response.
+	 * @return A stream containing the same response.
+	 * @throws IOException Will be thrown if the response cannot be read.
+	 */
+	static InputStream printResponse(InputStream response) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		byte[] chunk = new byte[4096];
+		int read;
+		while((read = response.read(chunk)) != -1) {
+			buffer.write(chunk, 0, read);
+		}
+		System.out.println(buffer.toString("UTF-8"));
+		return new ByteArrayInputStream(buffer.toByteArray());
+	}
+
+	/**
+	 * Converts the value of a fault element to the exception to throw.
+	 *
+	 * @param fault The deserialized value of the fault element.
+	 * @return The exception representing the fault.
+	 */
+	static XMLRPCServerException toServerException(Object fault) {
+		@SuppressWarnings("unchecked")
+		Map<String,Object> o = (Map<String,Object>)fault;
+		return new XMLRPCServerException((String)o.get(FAULT_STRING), (Integer)o.get(FAULT_CODE));
+	}
+
 	/**
 	 * This method takes an element (must be a param or fault element) and
 	 * returns the deserialized object of this param tag.
@@ -123,11 +173,12 @@ public class ResponseParser {
 	 * @throws XMLRPCException Will be thrown when the structure of the document
 	 *		doesn't match the XML-RPC specification.
 	 */
-	private Object getReturnValueFromElement(SerializerHandler serializerHandler, Element element) throws XMLRPCException {
+	private Object getReturnValueFromElement(SerializerHandler serializerHandler, Element element,
+			Type resultType) throws XMLRPCException {
 
 		Element childElement = XMLUtil.getOnlyChildElement(element.getChildNodes());
 
-		return serializerHandler.deserialize(childElement);
+		return serializerHandler.deserialize(childElement, resultType);
 	}
 
 }
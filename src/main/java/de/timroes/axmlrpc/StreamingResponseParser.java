@@ -0,0 +1,423 @@
+package de.timroes.axmlrpc;
+
+import de.timroes.axmlrpc.serializer.SerializerHandler;
+import de.timroes.axmlrpc.serializer.TypedValueBuilder;
+import de.timroes.axmlrpc.serializer.ValueBuilder;
+
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The StreamingResponseParser parses the response of an XMLRPC server to an
+ * object, without building a DOM of the whole response first. The response is
+ * read event by event and the values are built directly, using the
+ * {@link de.timroes.axmlrpc.serializer.StreamingSerializer StreamingSerializers}
+ * of the given {@link SerializerHandler}.
+ * It returns the same objects and throws the same exceptions as the
+ * {@link ResponseParser}.
+ */
+public class StreamingResponseParser extends ResponseParser {
+
+	private static final String STRUCT_NAME = "name";
+	private static final String ARRAY_DATA = "data";
+
+	/**
+	 * The given InputStream must contain the xml response from an xmlrpc server.
+	 * This method extract the content of it as an object.
+	 *
+	 * @param serializerHandler You can inject an arbitrary one if you want to use your own transport protocol.
+	 *     See the README (section "Using an arbitrary transport") for more info on this feature.
+	 * @param response The InputStream of the server response.
+	 * @param debugMode This prints data on System.out to make it easy to debug
+	 * @param resultType The type to bind the returned value to, or null to return it as it is.
+	 * @return The returned object.
+	 * @throws XMLRPCException Will be thrown whenever something fails.
+	 * @throws XMLRPCServerException Will be thrown, if the server returns an error.
+	 */
+	@Override
+	public Object parse(SerializerHandler serializerHandler, InputStream response, boolean debugMode,
+			Type resultType) throws XMLRPCException {
+
+		ResponseHandler handler = null;
+		boolean done = false;
+		try {
+			SAXParserFactory factory = SAXParserFactory.newInstance();
+
+			// Ensure the xml parser won't allow exploitation of the vuln CWE-611
+			// (described on https://cwe.mitre.org/data/definitions/611.html )
+			factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+			factory.setNamespaceAware(true);
+			factory.setXIncludeAware(false);
+			// End of the configuration of the parser for CWE-611
+
+			if(debugMode) {
+				response = printResponse(response);
+			}
+
+			handler = new ResponseHandler(serializerHandler, resultType);
+			factory.newSAXParser().parse(response, handler);
+
+			Object result = handler.getResult();
+			done = true;
+			return result;
+
+		} catch(XMLRPCServerException e) {
+			throw e;
+		} catch(SAXException ex) {
+			// Unwrap the exceptions thrown by our own handler
+			Exception cause = ex.getException() instanceof XMLRPCException ? ex.getException() : ex;
+			throw new XMLRPCException("Error getting result from server.", cause);
+		} catch (Exception ex) {
+			throw new XMLRPCException("Error getting result from server.", ex);
+		} finally {
+			if(!done && handler != null) {
+				handler.abort();
+			}
+		}
+
+	}
+
+	/**
+	 * The elements of an XML-RPC response the handler can be in.
+	 */
+	private enum Context {
+		RESPONSE, PARAMS, PARAM, FAULT, VALUE, TYPE, MEMBER, NAME, DATA
+	}
+
+	/**
+	 * An element currently open in the response.
+	 */
+	private static class Frame {
+
+		private final Context context;
+		private int children;
+
+		/** The builder of the type element (TYPE, DATA). */
+		private ValueBuilder builder;
+		/** The name of the type element (TYPE). */
+		private String type;
+		/** The type to bind the value to, null if it is built as it is (VALUE, TYPE). */
+		private Type target;
+		/** The text content of the element (VALUE, NAME). */
+		private StringBuilder text;
+
+		/** The deserialized value (VALUE, MEMBER). */
+		private Object value;
+		private boolean hasValue;
+		/** The name of the member (MEMBER). */
+		private String name;
+		private boolean hasName;
+
+		Frame(Context context) {
+			this.context = context;
+		}
+
+	}
+
+	/**
+	 * The SAX handler building the returned object while the response is read.
+	 */
+	private static class ResponseHandler extends DefaultHandler {
+
+		private final SerializerHandler serializerHandler;
+		private final Type resultType;
+		private final boolean ignoreNamespaces;
+
+		private final List<Frame> stack = new ArrayList<Frame>();
+		/** The builders of the base64 values decoded to a sink, aborted if the response fails. */
+		private final List<ValueBuilder> sunk = new ArrayList<ValueBuilder>();
+		private final boolean sinking;
+
+		private Object result;
+		private boolean hasResult;
+		private boolean fault;
+
+		ResponseHandler(SerializerHandler serializerHandler, Type resultType) {
+			this.serializerHandler = serializerHandler;
+			this.resultType = resultType;
+			this.ignoreNamespaces = (serializerHandler.getFlags() & XMLRPCClient.FLAGS_IGNORE_NAMESPACES) != 0;
+			this.sinking = serializerHandler.getBase64Sink() != null;
+		}
+
+		/**
+		 * Aborts the builders of the elements still open and of the base64
+		 * values decoded to a sink, once the response has failed.
+		 */
+		void abort() {
+			for(Frame frame : stack) {
+				if(frame.context == Context.TYPE) {
+					frame.builder.abort();
+				}
+			}
+			for(ValueBuilder builder : sunk) {
+				builder.abort();
+			}
+		}
+
+		/**
+		 * Returns the object returned by the server, once the whole response
+		 * has been read.
+		 *
+		 * @return The returned object.
+		 * @throws XMLRPCException Will be thrown if the response didn't contain a result.
+		 * @throws XMLRPCServerException Will be thrown, if the server returned an error.
+		 */
+		Object getResult() throws XMLRPCException {
+			if(!hasResult) {
+				throw new XMLRPCException("The methodResponse tag must contain a fault or params tag.");
+			}
+			if(fault) {
+				throw toServerException(result);
+			}
+			return result;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			try {
+				if(stack.isEmpty()) {
+					// Check for root tag
+					if(!XMLRPCClient.METHOD_RESPONSE.equals(qName)) {
+						throw new XMLRPCException("MethodResponse root tag is missing.");
+					}
+					push(Context.RESPONSE);
+					return;
+				}
+
+				Frame top = stack.get(stack.size() - 1);
+				switch(top.context) {
+					case RESPONSE:
+						checkOnlyChild(top);
+						if(XMLRPCClient.PARAMS.equals(qName)) {
+							push(Context.PARAMS);
+						} else if(XMLRPCClient.FAULT.equals(qName)) {
+							push(Context.FAULT);
+						} else {
+							throw new XMLRPCException("The methodResponse tag must contain a fault or params tag.");
+						}
+						break;
+					case PARAMS:
+						checkOnlyChild(top);
+						if(!XMLRPCClient.PARAM.equals(qName)) {
+							throw new XMLRPCException("The params tag must contain a param tag.");
+						}
+						push(Context.PARAM);
+						break;
+					case PARAM:
+					case FAULT:
+						checkOnlyChild(top);
+						// Faults are never bound to the result type
+						pushValue(qName).target = top.context == Context.PARAM ? resultType : null;
+						break;
+					case VALUE:
+						checkOnlyChild(top);
+						if(top.text != null && !isWhitespace(top.text)) {
+							throw new XMLRPCException("Only element nodes allowed.");
+						}
+						String type = ignoreNamespaces && localName != null && localName.length() > 0
+								? localName : qName;
+						Frame typeFrame = push(Context.TYPE);
+						typeFrame.type = type;
+						typeFrame.target = top.target;
+						typeFrame.builder = serializerHandler.newValueBuilder(type, top.target);
+						break;
+					case TYPE:
+						if(SerializerHandler.TYPE_STRUCT.equals(top.type)) {
+							if(!XMLRPCClient.STRUCT_MEMBER.equals(qName)) {
+								throw new XMLRPCException("Only struct members allowed within a struct.");
+							}
+							push(Context.MEMBER);
+						} else if(SerializerHandler.TYPE_ARRAY.equals(top.type)) {
+							checkOnlyChild(top);
+							if(!ARRAY_DATA.equals(qName)) {
+								throw new XMLRPCException("The array must contain one data tag.");
+							}
+							push(Context.DATA).builder = top.builder;
+						} else {
+							throw new XMLRPCException("Element must contain only text elements.");
+						}
+						break;
+					case MEMBER:
+						if(STRUCT_NAME.equals(qName)) {
+							if(top.hasName) {
+								throw new XMLRPCException("Name of a struct member cannot be set twice.");
+							}
+							push(Context.NAME).text = new StringBuilder();
+						} else if(XMLRPCClient.VALUE.equals(qName)) {
+							if(top.hasValue) {
+								throw new XMLRPCException("Value of a struct member cannot be set twice.");
+							}
+							// The member type is known if the name came first
+							ValueBuilder struct = stack.get(stack.size() - 2).builder;
+							Frame value = pushValue(qName);
+							if(top.hasName && struct instanceof TypedValueBuilder) {
+								value.target = ((TypedValueBuilder)struct).getMemberType(top.name);
+							}
+						} else {
+							throw new XMLRPCException("A struct member must only contain one name and one value.");
+						}
+						break;
+					case DATA:
+						Frame element = pushValue(qName);
+						if(top.builder instanceof TypedValueBuilder) {
+							element.target = ((TypedValueBuilder)top.builder).getElementType();
+						}
+						break;
+					default:
+						throw new XMLRPCException("Element must contain only text elements.");
+				}
+			} catch(XMLRPCException ex) {
+				throw new SAXException(ex);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			try {
+				Frame frame = stack.remove(stack.size() - 1);
+				Frame parent = stack.isEmpty() ? null : stack.get(stack.size() - 1);
+
+				switch(frame.context) {
+					case PARAMS:
+						if(frame.children == 0) {
+							throw new XMLRPCException("The params tag must contain a param tag.");
+						}
+						break;
+					case PARAM:
+					case FAULT:
+						if(frame.children == 0) {
+							throw new XMLRPCException("Value tag is missing around value.");
+						}
+						break;
+					case TYPE:
+						if(sinking && SerializerHandler.TYPE_BASE64.equals(frame.type)) {
+							sunk.add(frame.builder);
+						}
+						parent.value = frame.builder.build();
+						parent.hasValue = true;
+						break;
+					case VALUE:
+						Object value;
+						if(frame.hasValue) {
+							value = frame.value;
+						} else {
+							ValueBuilder builder = serializerHandler.newValueBuilder(null, frame.target);
+							String text = frame.text == null ? "" : frame.text.toString();
+							builder.characters(text.toCharArray(), 0, text.length());
+							value = builder.build();
+						}
+						deliverValue(parent, value);
+						break;
+					case NAME:
+						parent.name = frame.text.toString();
+						parent.hasName = true;
+						break;
+					case MEMBER:
+						parent.builder.member(frame.name, frame.value);
+						break;
+					case DATA:
+						break;
+					case RESPONSE:
+						break;
+				}
+			} catch(XMLRPCException ex) {
+				throw new SAXException(ex);
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			try {
+				if(stack.isEmpty()) {
+					return;
+				}
+
+				Frame top = stack.get(stack.size() - 1);
+				switch(top.context) {
+					case VALUE:
+						if(top.children > 0) {
+							if(!XMLUtil.isWhitespace(ch, start, length)) {
+								throw new XMLRPCException("Only element nodes allowed.");
+							}
+						} else {
+							if(top.text == null) {
+								top.text = new StringBuilder();
+							}
+							top.text.append(ch, start, length);
+						}
+						break;
+					case TYPE:
+						top.builder.characters(ch, start, length);
+						break;
+					case NAME:
+						top.text.append(ch, start, length);
+						break;
+					default:
+						if(!XMLUtil.isWhitespace(ch, start, length)) {
+							throw new XMLRPCException("Only element nodes allowed.");
+						}
+				}
+			} catch(XMLRPCException ex) {
+				throw new SAXException(ex);
+			}
+		}
+
+		private Frame push(Context context) {
+			Frame frame = new Frame(context);
+			stack.add(frame);
+			return frame;
+		}
+
+		private Frame pushValue(String qName) throws XMLRPCException {
+			if(!XMLRPCClient.VALUE.equals(qName)) {
+				throw new XMLRPCException("Value tag is missing around value.");
+			}
+			return push(Context.VALUE);
+		}
+
+		private void checkOnlyChild(Frame frame) throws XMLRPCException {
+			if(++frame.children > 1) {
+				throw new XMLRPCException("Element has more than one children.");
+			}
+		}
+
+		private void deliverValue(Frame parent, Object value) throws XMLRPCException {
+			switch(parent.context) {
+				case PARAM:
+				case FAULT:
+					result = value;
+					hasResult = true;
+					fault = parent.context == Context.FAULT;
+					break;
+				case MEMBER:
+					parent.value = value;
+					parent.hasValue = true;
+					break;
+				case DATA:
+					parent.builder.element(value);
+					break;
+				default:
+					throw new XMLRPCException("Value tag is missing around value.");
+			}
+		}
+
+		private static boolean isWhitespace(StringBuilder text) {
+			for(int i = 0; i < text.length(); i++) {
+				if(text.charAt(i) > ' ') {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
+}
@@ -1,17 +1,40 @@
 package de.timroes.axmlrpc;
 
+import de.timroes.axmlrpc.serializer.Base64Sink;
+import de.timroes.axmlrpc.serializer.BinaryValue;
+import de.timroes.axmlrpc.serializer.Serializer;
 import de.timroes.axmlrpc.serializer.SerializerHandler;
+import de.timroes.axmlrpc.serializer.StructCodec;
+import de.timroes.axmlrpc.transport.HandshakeStatistics;
+import de.timroes.axmlrpc.transport.HttpURLConnectionTransport;
+import de.timroes.axmlrpc.transport.Transport;
+import de.timroes.axmlrpc.transport.TransportConnection;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
 import java.net.*;
-import java.security.SecureRandom;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-import javax.net.ssl.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.TrustManager;
 
 /**
  * An XMLRPCClient is a client used to make XML-RPC (Extensible Markup Language
@@ -28,6 +51,22 @@ public class XMLRPCClient {
 
 	private static final String DEFAULT_USER_AGENT = "aXMLRPC";
 
+	/**
+	 * The number of threads of the default executor for asynchronous calls.
+	 */
+	public static final int DEFAULT_ASYNC_THREADS = 16;
+
+	/**
+	 * The number of asynchronous calls the default executor queues, when all
+	 * its threads are busy.
+	 */
+	public static final int DEFAULT_ASYNC_QUEUE_SIZE = 1024;
+
+	/**
+	 * The time in seconds an idle thread of the default executor is kept.
+	 */
+	private static final int ASYNC_KEEP_ALIVE = 5;
+
 	/**
 	 * Constants from the http protocol.
 	 */
@@ -36,7 +75,6 @@ public class XMLRPCClient {
 	static final String TYPE_XML = "text/xml; charset=utf-8";
 	static final String HOST = "Host";
 	static final String CONTENT_LENGTH = "Content-Length";
-	static final String HTTP_POST = "POST";
 
 	/**
 	 * XML elements to be used.
@@ -50,6 +88,22 @@ public class XMLRPCClient {
 	static final String METHOD_NAME = "methodName";
 	static final String STRUCT_MEMBER = "member";
 
+	/**
+	 * The method used to send several calls in one request.
+	 */
+	static final String SYSTEM_MULTICALL = "system.multicall";
+
+	/**
+	 * The fault code for an unknown method, from the specification for fault
+	 * code interoperability.
+	 */
+	static final int FAULT_METHOD_NOT_FOUND = -32601;
+
+	/**
+	 * The characters allowed in method names with FLAGS_STRICT, compiled once.
+	 */
+	private static final Pattern METHOD_NAME_PATTERN = Pattern.compile("[A-Za-z0-9\\._:/]*");
+
 	/**
 	 * No flags should be set.
 	 */
@@ -162,6 +216,55 @@ public class XMLRPCClient {
 	 */
 	public static final int FLAGS_ACCEPT_NULL_DATES = 0x4000;
 
+	/**
+	 * With this flag enabled, responses are parsed while they are read from
+	 * the server, without building a DOM of the whole response first.
+	 * This lowers the memory used for large responses. The returned objects
+	 * are the same as without this flag.
+	 */
+	public static final int FLAGS_STREAMING_PARSER = 0x8000;
+
+	/**
+	 * With this flag enabled, responses are parsed by a small parser reading
+	 * the UTF-8 bytes of the response directly, instead of a general purpose
+	 * XML parser. It only supports UTF-8 encoded responses. If this flag is
+	 * set, {@link #FLAGS_STREAMING_PARSER} is ignored.
+	 */
+	public static final int FLAGS_BYTE_PARSER = 0x10000;
+
+	/**
+	 * With this flag enabled, asynchronous calls are run on virtual threads,
+	 * one per call, if the runtime supports them (Java 21 and later). Else the
+	 * default bounded executor is used. This has no effect if an executor has
+	 * been set with {@link #setExecutorService(java.util.concurrent.ExecutorService)}.
+	 */
+	public static final int FLAGS_VIRTUAL_THREADS = 0x20000;
+
+	/**
+	 * With this flag enabled, the client asks the server for gzip or deflate
+	 * compressed responses, which are decompressed while they are parsed.
+	 * See {@link #setRequestCompressionThreshold(int)} to compress the requests.
+	 */
+	public static final int FLAGS_COMPRESSION = 0x40000;
+
+	/**
+	 * With this flag enabled, dateTime.iso8601 values are returned as
+	 * java.time.LocalDateTime, or as java.time.OffsetDateTime if they have a
+	 * time zone, instead of a Date. This has no effect if the runtime doesn't
+	 * have java.time (before Java 8 and Android API level 26). Instant,
+	 * LocalDateTime and OffsetDateTime parameters are always supported.
+	 */
+	public static final int FLAGS_JAVA_TIME = 0x80000;
+
+	/**
+	 * With this flag enabled, requests longer than the limit set with
+	 * {@link #setRequestBufferLimit(int)} are sent with chunked transfer
+	 * encoding while they are written. Without it, every request is sent with
+	 * its Content-Length. Only set this flag if the server accepts chunked
+	 * requests, many XML-RPC servers don't.
+	 */
+	public static final int FLAGS_CHUNKED_REQUESTS = 0x100000;
+
 	/**
 	 * This flag disables all SSL warnings. It is an alternative to use
 	 * FLAGS_SSL_IGNORE_INVALID_CERT | FLAGS_SSL_IGNORE_INVALID_HOST. There
@@ -185,19 +288,24 @@ public class XMLRPCClient {
 	private URL url;
 	private Map<String,String> httpParameters = new ConcurrentHashMap<String, String>();
 
-	private Map<Long,Caller> backgroundCalls = new ConcurrentHashMap<Long, Caller>();
+	private ConcurrentMap<Long,CallFuture> backgroundCalls = new ConcurrentHashMap<Long, CallFuture>();
+	private final AtomicLong lastCallId = new AtomicLong();
+
+	private volatile boolean multicallSupported = true;
+
+	private final AtomicReference<ExecutorService> executor = new AtomicReference<ExecutorService>();
 
 	private ResponseParser responseParser;
 	private CookieManager cookieManager;
 	private AuthenticationManager authManager;
 
-	private TrustManager[] trustManagers;
-    private KeyManager[] keyManagers;
-
-	private Proxy proxy;
+	private final HttpURLConnectionTransport httpTransport;
+	private volatile Transport transport;
 
 	private int connectTimeout;
 	private int readTimeout;
+	private volatile int requestCompressionThreshold = -1;
+	private volatile int requestBufferLimit = RequestBody.DEFAULT_BUFFER_LIMIT;
 	private final SerializerHandler serializerHandler;
 
 	/**
@@ -215,38 +323,33 @@ public class XMLRPCClient {
 
 		this.flags = flags;
 		// Create a parser for the http responses.
-		responseParser = new ResponseParser();
+		if(isFlagSet(FLAGS_BYTE_PARSER)) {
+			responseParser = new ByteResponseParser();
+		} else if(isFlagSet(FLAGS_STREAMING_PARSER)) {
+			responseParser = new StreamingResponseParser();
+		} else {
+			responseParser = new ResponseParser();
+		}
 
 		cookieManager = new CookieManager(flags);
 		authManager = new AuthenticationManager();
 
 		httpParameters.put(CONTENT_TYPE, TYPE_XML);
 		httpParameters.put(USER_AGENT, userAgent);
-
-		// If invalid ssl certs are ignored, instantiate an all trusting TrustManager
-		if(isFlagSet(FLAGS_SSL_IGNORE_INVALID_CERT)) {
-			trustManagers = new TrustManager[] {
-				new X509TrustManager() {
-					public void checkClientTrusted(X509Certificate[] xcs, String string)
-							throws CertificateException { }
-
-					public void checkServerTrusted(X509Certificate[] xcs, String string)
-							throws CertificateException { }
-
-					public X509Certificate[] getAcceptedIssuers() {
-						return null;
-					}
-				}
-			};
+		if(isFlagSet(FLAGS_COMPRESSION)) {
+			httpParameters.put(Compression.ACCEPT_ENCODING, Compression.GZIP + ", " + Compression.DEFLATE);
 		}
 
+		httpTransport = new HttpURLConnectionTransport(flags);
+		transport = httpTransport;
+
 		if(isFlagSet(FLAGS_USE_SYSTEM_PROXY)) {
 			// Read system proxy settings and generate a proxy from that
 			Properties prop = System.getProperties();
 			String proxyHost = prop.getProperty("http.proxyHost");
 			int proxyPort = Integer.parseInt(prop.getProperty("http.proxyPort", "0"));
 			if(proxyPort > 0 && proxyHost.length() > 0 && !proxyHost.equals("null")) {
-				proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort));
+				httpTransport.setProxy(new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort)));
 			}
 		}
 
@@ -320,6 +423,91 @@ public class XMLRPCClient {
 		this.readTimeout = timeout;
 	}
 
+	/**
+	 * Compress the requests with gzip, if they are longer than the given
+	 * number of bytes. With {@link #FLAGS_CHUNKED_REQUESTS}, a longer request
+	 * is compressed while it is sent. Without, the Content-Length of the
+	 * compressed request must be known first, so only requests kept in memory
+	 * (see {@link #setRequestBufferLimit(int)}) are compressed, longer ones
+	 * are sent uncompressed. The server must accept gzip compressed requests.
+	 * By default the requests aren't compressed.
+	 *
+	 * @param threshold The length in bytes from which on requests are
+	 *     compressed, or a negative number to never compress requests.
+	 */
+	public void setRequestCompressionThreshold(int threshold) {
+		this.requestCompressionThreshold = threshold;
+	}
+
+	/**
+	 * Sets the length up to which a request is kept in memory, to send it
+	 * with its Content-Length. For a longer request, the length is counted
+	 * before it is streamed, without reading its binary data sources. Only if
+	 * the length can't be counted, e.g. for an InputStream parameter, the
+	 * whole request is kept in memory. With {@link #FLAGS_CHUNKED_REQUESTS},
+	 * longer requests are sent with chunked transfer encoding instead.
+	 * The default limit is 64 KB.
+	 *
+	 * @param limit The length in bytes up to which a request is kept in memory.
+	 */
+	public void setRequestBufferLimit(int limit) {
+		if(limit < 0) {
+			throw new IllegalArgumentException("The limit must not be negative.");
+		}
+		this.requestBufferLimit = limit;
+	}
+
+	/**
+	 * Registers a serializer for a type of objects, so that instances of
+	 * this type can be passed as parameters without converting them to
+	 * maps or arrays first. See {@link SerializerHandler#addSerializer}.
+	 *
+	 * @param type The type of the objects to serialize.
+	 * @param serializer The serializer for this type.
+	 */
+	public void addSerializer(Class<?> type, Serializer serializer) {
+		serializerHandler.addSerializer(type, serializer);
+	}
+
+	/**
+	 * Registers a codec, which sends objects of its type as structs and
+	 * binds received structs to its type without reflection.
+	 * See {@link SerializerHandler#addCodec}.
+	 *
+	 * @param codec The codec.
+	 */
+	public void addCodec(StructCodec<?> codec) {
+		serializerHandler.addCodec(codec);
+	}
+
+	/**
+	 * Registers all codecs generated by the annotation processor of the
+	 * aXMLRPC-processor module, which the class loader can find.
+	 * See {@link SerializerHandler#loadCodecs}.
+	 *
+	 * @param classLoader The class loader to load the codecs with, or null
+	 *		for the system class loader.
+	 * @return The number of registered codecs.
+	 */
+	public int loadCodecs(ClassLoader classLoader) {
+		return serializerHandler.loadCodecs(classLoader);
+	}
+
+	/**
+	 * Decode the base64 values of responses to the given sink, instead of
+	 * returning them as byte arrays. The responses then hold a
+	 * {@link BinaryValue} handle in place of each value. Combined with
+	 * {@link #FLAGS_STREAMING_PARSER} or {@link #FLAGS_BYTE_PARSER}, the
+	 * values are decoded while they are read and are never held in memory
+	 * as a whole.
+	 *
+	 * @param sink The sink to decode the values to, or null to return byte
+	 *     arrays again.
+	 */
+	public void setBase64Sink(Base64Sink sink) {
+		serializerHandler.setBase64Sink(sink);
+	}
+
 	/**
 	 * Sets the user agent string.
 	 * If this method is never called the default
@@ -340,7 +528,43 @@ public class XMLRPCClient {
 	 * @param proxy A proxy to use for the connection.
 	 */
 	public void setProxy(Proxy proxy) {
-		this.proxy = proxy;
+		httpTransport.setProxy(proxy);
+	}
+
+	/**
+	 * Configures the cache of TLS sessions, which lets https connections to
+	 * the same server resume their session instead of doing a full handshake.
+	 * By default, the cache of the default SSLContext is used.
+	 * This only applies to the default transport.
+	 *
+	 * @param size The maximum number of cached sessions, or zero for no limit.
+	 * @param timeout The time in seconds a session is kept, or zero for no limit.
+	 */
+	public void setTLSSessionCache(int size, int timeout) {
+		httpTransport.setSessionCache(size, timeout);
+	}
+
+	/**
+	 * Returns the statistics of the TLS handshakes made by this client: the
+	 * number of full and resumed handshakes and their duration.
+	 * This only covers the default transport.
+	 *
+	 * @return The handshake statistics.
+	 */
+	public HandshakeStatistics getHandshakeStatistics() {
+		return httpTransport.getHandshakeStatistics();
+	}
+
+	/**
+	 * Sets the transport used to send the requests of this client. By default
+	 * a {@link HttpURLConnectionTransport} is used. The proxy, the custom
+	 * {@link TrustManager TrustManagers} and {@link KeyManager KeyManagers}
+	 * set on this client only apply to the default transport.
+	 *
+	 * @param transport The transport to use, or null to use the default transport again.
+	 */
+	public void setTransport(Transport transport) {
+		this.transport = transport == null ? httpTransport : transport;
 	}
 
 	/**
@@ -409,9 +633,7 @@ public class XMLRPCClient {
 	 * @see #installCustomTrustManagers(javax.net.ssl.TrustManager[])
 	 */
 	public void installCustomTrustManager(TrustManager trustManager) {
-		if(!isFlagSet(FLAGS_SSL_IGNORE_INVALID_CERT)) {
-			trustManagers = new TrustManager[] { trustManager };
-		}
+		installCustomTrustManagers(new TrustManager[] { trustManager });
 	}
 
 	/**
@@ -424,9 +646,7 @@ public class XMLRPCClient {
 	 * @see #installCustomTrustManager(javax.net.ssl.TrustManager)
 	 */
 	public void installCustomTrustManagers(TrustManager[] trustManagers) {
-		if(!isFlagSet(FLAGS_SSL_IGNORE_INVALID_CERT)) {
-			this.trustManagers = trustManagers.clone();
-		}
+		httpTransport.installCustomTrustManagers(trustManagers);
 	}
 
     /**
@@ -439,9 +659,7 @@ public class XMLRPCClient {
      * @see #installCustomKeyManagers(javax.net.ssl.KeyManager[])
      */
     public void installCustomKeyManager(KeyManager keyManager) {
-        if(!isFlagSet(FLAGS_SSL_IGNORE_INVALID_CERT)) {
-            keyManagers = new KeyManager[] { keyManager };
-        }
+        installCustomKeyManagers(new KeyManager[] { keyManager });
     }
 
     /**
@@ -454,9 +672,7 @@ public class XMLRPCClient {
      * @see #installCustomKeyManager(javax.net.ssl.KeyManager)
      */
     public void installCustomKeyManagers(KeyManager[] keyManagers) {
-      if(!isFlagSet(FLAGS_SSL_IGNORE_INVALID_CERT)) {
-        this.keyManagers = keyManagers.clone();
-      }
+      httpTransport.installCustomKeyManagers(keyManagers);
     }
 
 	/**
@@ -497,6 +713,171 @@ public class XMLRPCClient {
 		return new Caller().call(method, connectTimeout, readTimeout, params);
 	}
 
+	/**
+	 * Call a remote procedure on the server and bind the result to the given
+	 * type, while the response is parsed. Structs are bound to maps or to the
+	 * fields of an object, arrays to arrays or collections, and other values
+	 * are converted to the type (see {@link SerializerHandler#deserialize(org.w3c.dom.Element,
+	 * java.lang.reflect.Type)}). This method will block until the server
+	 * returned a result (or an error occurred).
+	 *
+	 * @param resultType The type to bind the result to.
+	 * @param method A method name to call.
+	 * @param params An array of parameters for the method.
+	 * @return The result of the call.
+	 * @throws XMLRPCException Will be thrown if an error occurred during the
+	 *		call, or if the result can't be bound to the type.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T call(Class<T> resultType, String method, Object... params) throws XMLRPCException {
+		Object result = new Caller(resultType, null, null).call(method, connectTimeout, readTimeout, params);
+		// The result for a primitive type is its wrapper
+		return resultType.isPrimitive() ? (T)result : resultType.cast(result);
+	}
+
+	/**
+	 * Returns an implementation of the given interface, whose methods call
+	 * the remote procedures of the same name (or the name given by their
+	 * {@link XMLRPCMethod} annotation) with their arguments as parameters.
+	 * The results are bound to the return types of the methods like by
+	 * {@link #call(java.lang.Class, java.lang.String, java.lang.Object[])}.
+	 * If a method doesn't declare XMLRPCException, errors are thrown as
+	 * {@link XMLRPCRuntimeException} wrapping the XMLRPCException.
+	 *
+	 * The method names are checked, the beginning of the requests is written
+	 * and the serializers of the parameters with final types are looked up
+	 * once here, so a proxy should be kept and reused. Serializers must be
+	 * registered before the proxy is created.
+	 *
+	 * @param api The interface to implement.
+	 * @return The implementation of the interface.
+	 * @throws XMLRPCRuntimeException Will be thrown if FLAGS_STRICT is set and
+	 *		a method name isn't valid.
+	 */
+	public <T> T proxy(Class<T> api) {
+		return api.cast(java.lang.reflect.Proxy.newProxyInstance(api.getClassLoader(), new Class<?>[] { api },
+				new ProxyHandler(this, serializerHandler, api)));
+	}
+
+	/**
+	 * Call a remote procedure with a request prepared by {@link ProxyHandler}.
+	 *
+	 * @param resultType The type to bind the result to, or null.
+	 * @param method The method name to call.
+	 * @param prefix The xml up to the parameters.
+	 * @param serializers The serializer of each parameter or null.
+	 * @param params The parameters of the call.
+	 * @return The result of the call.
+	 * @throws XMLRPCException Will be thrown if an error occurred during the call.
+	 */
+	Object callPrepared(Type resultType, String method, byte[] prefix, Serializer[] serializers,
+			Object[] params) throws XMLRPCException {
+		return new Caller(resultType, prefix, serializers).call(method, connectTimeout, readTimeout, params);
+	}
+
+	/**
+	 * Call several remote procedures on the server in a single request, using
+	 * the {@code system.multicall} method. This method will block until the
+	 * server returned the results of all calls (or an error occurred).
+	 * If the server answers that it doesn't know {@code system.multicall}, the
+	 * calls are sent one by one instead, and so are the calls of all further
+	 * multicalls of this client. Any other error the server returns for the
+	 * multicall itself is thrown.
+	 *
+	 * @param calls The calls to make.
+	 * @return An array with the result of each call, in the order the calls
+	 *     have been added. If the server returned an error for a call, its
+	 *     entry is the {@link XMLRPCServerException}.
+	 * @throws XMLRPCException Will be thrown if an error occurred, other than
+	 *     an error returned by the server for a call.
+	 * @throws XMLRPCServerException Will be thrown if the server returned an
+	 *     error for the multicall, other than an unknown method.
+	 */
+	public Object[] multicall(Multicall calls) throws XMLRPCException {
+
+		if(calls.size() == 0) {
+			return new Object[0];
+		}
+		for(int i = 0; i < calls.size(); i++) {
+			checkMethodName(calls.getMethod(i));
+		}
+
+		if(multicallSupported) {
+			try {
+				return calls.toResults(call(SYSTEM_MULTICALL, (Object)calls.toParameter()));
+			} catch(XMLRPCServerException ex) {
+				if(!isMethodNotFound(ex)) {
+					throw ex;
+				}
+				// The server doesn't support system.multicall, don't try again
+				multicallSupported = false;
+			}
+		}
+
+		Object[] results = new Object[calls.size()];
+		for(int i = 0; i < results.length; i++) {
+			try {
+				results[i] = call(calls.getMethod(i), calls.getParams(i));
+			} catch(XMLRPCServerException ex) {
+				results[i] = ex;
+			}
+		}
+		return results;
+
+	}
+
+	/**
+	 * Checks whether the server returned an error for system.multicall because
+	 * it doesn't know the method. Besides the fault code of the specification,
+	 * servers using their own fault codes name the unknown method in the
+	 * fault string.
+	 */
+	private static boolean isMethodNotFound(XMLRPCServerException ex) {
+		return ex.getErrorNr() == FAULT_METHOD_NOT_FOUND
+				|| (ex.getMessage() != null && ex.getMessage().contains(SYSTEM_MULTICALL));
+	}
+
+	/**
+	 * Asynchronously call a remote procedure on the server. The method must be
+	 * described by a method name. If the method requires parameters, this must
+	 * be set. This method returns immediately, the call is run by the executor
+	 * of this client (see {@link #setExecutorService(java.util.concurrent.ExecutorService)}).
+	 * The returned future gives the result of the call. If the server returns
+	 * an error, its {@code get} method throws an {@link ExecutionException}
+	 * caused by an {@link XMLRPCServerException}, and by an {@link XMLRPCException}
+	 * if anything else fails. Canceling the future aborts the network
+	 * communication of the call.
+	 *
+	 * @param method A method name to call on the server.
+	 * @param params An array of parameters for the method.
+	 * @return The future result of the call.
+	 * @throws RejectedExecutionException Will be thrown if the executor doesn't
+	 *     accept more calls.
+	 */
+	public Future<Object> callFuture(String method, Object... params) {
+		return callFutureWithOverriddenTimeout(method, connectTimeout, readTimeout, params);
+	}
+
+	/**
+	 * Asynchronously call a remote procedure on the server, like
+	 * {@link #callFuture(java.lang.String, java.lang.Object[])} but with
+	 * specific timeouts.
+	 *
+	 * @param method A method name to call on the server.
+	 * @param connectTimeout The connect timeout to use for this call.
+	 * @param readTimeout The read timeout to use for this call.
+	 * @param params An array of parameters for the method.
+	 * @return The future result of the call.
+	 * @throws RejectedExecutionException Will be thrown if the executor doesn't
+	 *     accept more calls.
+	 */
+	public Future<Object> callFutureWithOverriddenTimeout(String method, int connectTimeout,
+			int readTimeout, Object... params) {
+		CallFuture future = new CallFuture(new Caller(method, connectTimeout, readTimeout, params));
+		getExecutorService().execute(future);
+		return future;
+	}
+
 	/**
 	 * Asynchronously call a remote procedure on the server. The method must be
 	 * described by a method  name. If the method requires parameters, this must
@@ -505,7 +886,9 @@ public class XMLRPCClient {
 	 * is called on the listener. The onError method is called whenever something
 	 * fails. This method returns immediately and returns an identifier for the
 	 * request. All listener methods get this id as a parameter to distinguish between
-	 * multiple requests.
+	 * multiple requests. The ids are unique for each client.
+	 * The call is run by the executor of this client, see
+	 * {@link #callFuture(java.lang.String, java.lang.Object[])}.
 	 *
 	 * @param listener A listener, which will be notified about the server response or errors.
 	 * @param methodName A method name to call on the server.
@@ -522,10 +905,9 @@ public class XMLRPCClient {
 	 * be set. When the server returns a response the onResponse method is called
 	 * on the listener. If the server returns an error the onServerError method
 	 * is called on the listener. The onError method is called whenever something
-	 * fails. This method returns immediately and returns an identifier for the
-	 * request. All listener methods get this id as a parameter to distinguish
-	 * between
-	 * multiple requests.
+	 * fails, also if the executor doesn't accept more calls. This method returns
+	 * immediately and returns an identifier for the request. All listener methods
+	 * get this id as a parameter to distinguish between multiple requests.
 	 *
 	 * @param listener       A listener, which will be notified about the server
 	 *                       response or errors.
@@ -536,36 +918,153 @@ public class XMLRPCClient {
 	 * @return The id of the current request.
 	 */
 	public long callAsyncWithOverriddenTimeout(
-		XMLRPCCallback listener, String methodName, int connectTimeout, int readTimeout,
+		final XMLRPCCallback listener, String methodName, int connectTimeout, int readTimeout,
 		Object... params) {
-		long id = System.currentTimeMillis();
-		new Caller(listener, id, methodName, connectTimeout, readTimeout, params).start();
+		final long id = lastCallId.incrementAndGet();
+		CallFuture future = new CallFuture(new Caller(methodName, connectTimeout, readTimeout, params)) {
+			@Override
+			protected void done() {
+				backgroundCalls.remove(id, this);
+				// Don't notify the listener, if the call has been canceled.
+				if(isCancelled()) {
+					return;
+				}
+				try {
+					listener.onResponse(id, get());
+				} catch(ExecutionException ex) {
+					Throwable cause = ex.getCause();
+					if(cause instanceof XMLRPCServerException) {
+						listener.onServerError(id, (XMLRPCServerException)cause);
+					} else if(cause instanceof XMLRPCException) {
+						listener.onError(id, (XMLRPCException)cause);
+					} else if(cause instanceof Exception) {
+						if(!(cause instanceof CancelException)) {
+							listener.onError(id, new XMLRPCException((Exception)cause));
+						}
+					} else {
+						// Errors, e.g. an OutOfMemoryError, are reported as well
+						listener.onError(id, new XMLRPCException("The asynchronous call failed.", cause));
+					}
+				} catch(InterruptedException ex) {
+					// Cannot happen, the call is done
+				}
+			}
+		};
+		// Register the call before it is dispatched, so that it can be canceled right away
+		backgroundCalls.put(id, future);
+		try {
+			getExecutorService().execute(future);
+		} catch(RejectedExecutionException ex) {
+			backgroundCalls.remove(id, future);
+			listener.onError(id, new XMLRPCException("The asynchronous call has been rejected.", ex));
+		}
 		return id;
 	}
 
 	/**
-	 * Cancel a specific asynchronous call.
+	 * Cancel a specific asynchronous call. A call can be canceled as soon as
+	 * its id has been returned, even if it hasn't been started yet. This method
+	 * doesn't wait for the call to end, the listener of a canceled call is
+	 * never notified.
 	 *
 	 * @param id The id of the call as returned by the callAsync method.
 	 */
 	public void cancel(long id) {
 
 		// Lookup the background call for the given id.
-		Caller cancel = backgroundCalls.get(id);
+		CallFuture cancel = backgroundCalls.get(id);
 		if(cancel == null) {
 			return;
 		}
 
-		// Cancel the thread
-		cancel.cancel();
+		// Cancel the call, this aborts its network communication. The listener
+		// won't be notified, so there is no need to wait for the call to end.
+		cancel.cancel(true);
+
+	}
+
+	/**
+	 * Sets the executor running the asynchronous calls of this client. By
+	 * default, an executor created by {@link #newExecutorService(int, int)} with
+	 * {@link #DEFAULT_ASYNC_THREADS} threads and {@link #DEFAULT_ASYNC_QUEUE_SIZE}
+	 * queued calls is used. Calls already running are not affected. The given
+	 * executor isn't shut down by this client.
+	 *
+	 * @param executor The executor to use, or null to use the default one again.
+	 */
+	public void setExecutorService(ExecutorService executor) {
+		this.executor.set(executor);
+	}
+
+	/**
+	 * Returns the executor running the asynchronous calls, creating the
+	 * default one if needed. No lock is taken, so that calls made from
+	 * virtual threads don't pin their carrier thread.
+	 *
+	 * @return The executor for the asynchronous calls.
+	 */
+	ExecutorService getExecutorService() {
+		ExecutorService e = executor.get();
+		while(e == null) {
+			ExecutorService created = null;
+			if(isFlagSet(FLAGS_VIRTUAL_THREADS)) {
+				created = newVirtualThreadExecutorService();
+			}
+			if(created == null) {
+				created = newExecutorService(DEFAULT_ASYNC_THREADS, DEFAULT_ASYNC_QUEUE_SIZE);
+			}
+			if(executor.compareAndSet(null, created)) {
+				return created;
+			}
+			// Another thread has been faster, its executor is used
+			created.shutdown();
+			e = executor.get();
+		}
+		return e;
+	}
 
+	/**
+	 * Create an executor starting a new virtual thread for each call. The
+	 * executor is looked up at runtime, since virtual threads only exist
+	 * on Java 21 and later.
+	 *
+	 * @return The new executor, or null if the runtime has no virtual threads.
+	 */
+	public static ExecutorService newVirtualThreadExecutorService() {
 		try {
-			// Wait for the thread
-			cancel.join();
-		} catch (InterruptedException ex) {
-			// Ignore this
+			return (ExecutorService)Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch(Exception ex) {
+			return null;
 		}
+	}
 
+	/**
+	 * Create a bounded executor for asynchronous calls. It runs at most
+	 * {@code threads} calls at the same time and queues at most {@code queueSize}
+	 * more calls. Further calls are rejected with a {@link RejectedExecutionException}.
+	 * Idle threads are stopped after a few seconds. To use another rejection policy,
+	 * create a {@link ThreadPoolExecutor} and set it with
+	 * {@link #setExecutorService(java.util.concurrent.ExecutorService)}.
+	 *
+	 * @param threads The maximum number of calls running at the same time.
+	 * @param queueSize The maximum number of calls waiting for a thread.
+	 * @return The new executor.
+	 */
+	public static ExecutorService newExecutorService(int threads, int queueSize) {
+		ThreadPoolExecutor e = new ThreadPoolExecutor(threads, threads,
+				ASYNC_KEEP_ALIVE, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						return new Thread(r, "aXMLRPC-call-" + count.incrementAndGet());
+					}
+				},
+				new ThreadPoolExecutor.AbortPolicy());
+		e.allowCoreThreadTimeOut(true);
+		return e;
 	}
 
 	/**
@@ -577,13 +1076,22 @@ public class XMLRPCClient {
 	 */
 	private Call createCall(String method, Object[] params) {
 
-		if(isFlagSet(FLAGS_STRICT) && !method.matches("^[A-Za-z0-9\\._:/]*$")) {
-			throw new XMLRPCRuntimeException("Method name must only contain A-Z a-z . : _ / ");
-		}
+		checkMethodName(method);
 
 		return new Call(serializerHandler, method, params);
 	}
 
+	/**
+	 * Checks the name of a called method, if {@link #FLAGS_STRICT} is set.
+	 *
+	 * @param method The method that should be called.
+	 */
+	void checkMethodName(String method) {
+		if(isFlagSet(FLAGS_STRICT) && !METHOD_NAME_PATTERN.matcher(method).matches()) {
+			throw new XMLRPCRuntimeException("Method name must only contain A-Z a-z . : _ / ");
+		}
+	}
+
 	/**
 	 * Checks whether a specific flag has been set.
 	 *
@@ -595,35 +1103,32 @@ public class XMLRPCClient {
 	}
 
 	/**
-	 * The Caller class is used to make asynchronous calls to the server.
-	 * For synchronous calls the Thread function of this class isn't used.
+	 * The Caller class is used to make calls to the server. For asynchronous
+	 * calls it is run by an executor, for synchronous calls its call method
+	 * with parameters is used directly.
 	 */
-	private class Caller extends Thread {
+	private class Caller implements Callable<Object> {
 
-		private XMLRPCCallback listener;
-		private long threadId;
 		private String methodName;
 		private Object[] params;
 		private int connectTimeout;
 		private int readTimeout;
+		private Type resultType;
+		private byte[] prefix;
+		private Serializer[] serializers;
 
 		private volatile boolean canceled;
-		private HttpURLConnection http;
+		private volatile TransportConnection http;
 
 		/**
 		 * Create a new Caller for asynchronous use.
 		 *
-		 * @param listener The listener to notice about the response or an error.
-		 * @param threadId An id that will be send to the listener.
 		 * @param methodName The method name to call.
 		 * @param connectTimeout The connect timeout to use for this call.
 		 * @param readTimeout The read timeout to use for this call.
 		 * @param params The parameters of the call or null.
 		 */
-		public Caller(XMLRPCCallback listener, long threadId, String methodName,
-			int connectTimeout, int readTimeout, Object[] params) {
-			this.listener = listener;
-			this.threadId = threadId;
+		public Caller(String methodName, int connectTimeout, int readTimeout, Object[] params) {
 			this.methodName = methodName;
 			this.params = params;
 			this.connectTimeout = connectTimeout;
@@ -632,37 +1137,35 @@ public class XMLRPCClient {
 
 		/**
 		 * Create a new Caller for synchronous use.
-		 * If the caller has been created with this constructor you cannot use the
-		 * start method to start it as a thread. But you can call the call method
-		 * on it for synchronous use.
+		 * If the caller has been created with this constructor you cannot
+		 * run it with an executor. But you can call the call method with
+		 * parameters on it for synchronous use.
 		 */
 		public Caller() { }
 
 		/**
-		 * The run method is invoked when the thread gets started.
-		 * This will only work, if the Caller has been created with parameters.
-		 * It execute the call method and notify the listener about the result.
+		 * Create a new Caller for synchronous use, which binds the result
+		 * to the given type.
+		 *
+		 * @param resultType The type to bind the result to.
+		 * @param prefix The prepared xml up to the parameters, or null.
+		 * @param serializers The prepared serializers of the parameters, or null.
 		 */
-		@Override
-		public void run() {
-
-			if(listener == null)
-				return;
-
-			try {
-				backgroundCalls.put(threadId, this);
-				Object o = this.call(methodName, connectTimeout, readTimeout, params);
-				listener.onResponse(threadId, o);
-			} catch(CancelException ex) {
-				// Don't notify the listener, if the call has been canceled.
-			} catch(XMLRPCServerException ex) {
-				listener.onServerError(threadId, ex);
-			} catch (XMLRPCException ex) {
-				listener.onError(threadId, ex);
-			} finally {
-				backgroundCalls.remove(threadId);
-			}
+		public Caller(Type resultType, byte[] prefix, Serializer[] serializers) {
+			this.resultType = resultType;
+			this.prefix = prefix;
+			this.serializers = serializers;
+		}
 
+		/**
+		 * Invoked when the call is run by an executor.
+		 * This will only work, if the Caller has been created with parameters.
+		 *
+		 * @return The result of the call.
+		 * @throws XMLRPCException Will be thrown if an error occurred during the call.
+		 */
+		public Object call() throws XMLRPCException {
+			return call(methodName, connectTimeout, readTimeout, params);
 		}
 
 		/**
@@ -672,7 +1175,10 @@ public class XMLRPCClient {
 			// Set the flag, that this thread has been canceled
 			canceled = true;
 			// Disconnect the connection to the server
-			http.disconnect();
+			TransportConnection http = this.http;
+			if(http != null) {
+				http.disconnect();
+			}
 		}
 
 		/**
@@ -692,75 +1198,45 @@ public class XMLRPCClient {
 		 * @throws XMLRPCException Will be thrown if an error occurred during the call.
 		 */
 		public Object call(String methodName, int connectTimeout, int readTimeout, Object[] params) throws XMLRPCException {
+			TransportConnection http = null;
+			boolean responseRead = false;
 			try {
 
-				Call c = createCall(methodName, params);
-
-				// If proxy is available, use it
-				URLConnection conn;
-				if(proxy != null)
-					conn = url.openConnection(proxy);
-				else
-					conn = url.openConnection();
-
-				http = verifyConnection(conn);
-				http.setInstanceFollowRedirects(false);
-				http.setRequestMethod(HTTP_POST);
-				http.setDoOutput(true);
-				http.setDoInput(true);
-
-				// Set timeout
-				if(connectTimeout > 0) {
-					http.setConnectTimeout(connectTimeout * 1000);
-				}
-				if (readTimeout > 0) {
-					http.setReadTimeout(readTimeout * 1000);
+				// The method name of a prepared call has been checked before
+				Call c = prefix != null
+						? new Call(serializerHandler, methodName, params, prefix, serializers)
+						: createCall(methodName, params);
+
+				http = transport.openConnection(url,
+						connectTimeout * 1000, readTimeout * 1000);
+				this.http = http;
+				if(canceled) {
+					// The call has been canceled while the connection was opened
+					http.disconnect();
 				}
 
 				// Set the request parameters
 				for(Map.Entry<String,String> param : httpParameters.entrySet()) {
-					http.setRequestProperty(param.getKey(), param.getValue());
+					http.setRequestHeader(param.getKey(), param.getValue());
 				}
 
 				authManager.setAuthentication(http);
 				cookieManager.setCookies(http);
 
-				OutputStreamWriter stream = new OutputStreamWriter(http.getOutputStream(), "UTF-8");
-				stream.write(c.getXML(isFlagSet(FLAGS_DEBUG)));
-				stream.flush();
+				OutputStream stream = new RequestBody(http, c, requestBufferLimit,
+						requestCompressionThreshold, isFlagSet(FLAGS_CHUNKED_REQUESTS));
+				c.writeXML(stream, isFlagSet(FLAGS_DEBUG));
 				stream.close();
 
-				// Try to get the status code from the connection
-				int statusCode;
-				try {
-					statusCode = http.getResponseCode();
-				} catch(IOException ex) {
-					// Due to a bug on android, the getResponseCode()-method will
-					// fail the first time, with a IOException, when 401 or 403 has been returned.
-					// The second time it should success. If it fail the second time again
-					// the normal exception handling can take care of this, since
-					// it is a real error.
-					statusCode = http.getResponseCode();
-				}
-
-				InputStream istream;
+				int statusCode = http.getStatusCode();
 
 				// If status code was 401 or 403 throw exception or if appropriate
 				// flag is set, ignore error code.
-				if(statusCode == HttpURLConnection.HTTP_FORBIDDEN
-						|| statusCode == HttpURLConnection.HTTP_UNAUTHORIZED) {
-
-					if(isFlagSet(FLAGS_IGNORE_STATUSCODE)) {
-						// getInputStream will fail if server returned above
-						// error code, use getErrorStream instead
-						istream = http.getErrorStream();
-					} else {
-						throw new XMLRPCException("Invalid status code '"
-								+ statusCode + "' returned from server.");
-					}
-
-				} else {
-					istream = http.getInputStream();
+				if((statusCode == HttpURLConnection.HTTP_FORBIDDEN
+						|| statusCode == HttpURLConnection.HTTP_UNAUTHORIZED)
+						&& !isFlagSet(FLAGS_IGNORE_STATUSCODE)) {
+					throw new XMLRPCException("Invalid status code '"
+							+ statusCode + "' returned from server.");
 				}
 
 				// If status code is 301 Moved Permanently or 302 Found ...
@@ -803,80 +1279,66 @@ public class XMLRPCClient {
 				}
 
 				// Check for strict parameters
-				if(isFlagSet(FLAGS_STRICT) && !http.getContentType().startsWith(TYPE_XML)) {
+				String contentType = http.getHeaderField(CONTENT_TYPE);
+				if(isFlagSet(FLAGS_STRICT) && (contentType == null || !contentType.startsWith(TYPE_XML))) {
 					throw new XMLRPCException("The Content-Type of the response must be text/xml.");
 				}
 
 				cookieManager.readCookies(http);
 
-				return responseParser.parse(serializerHandler, istream, isFlagSet(FLAGS_DEBUG));
+				InputStream istream = http.getResponseBody();
+				responseRead = true;
+				try {
+					istream = Compression.decode(istream, http.getHeaderField(Compression.CONTENT_ENCODING));
+					return responseParser.parse(serializerHandler, istream, isFlagSet(FLAGS_DEBUG), resultType);
+				} finally {
+					// Close the response, so that its connection can be reused
+					if(istream != null) {
+						istream.close();
+					}
+				}
 
 			} catch(SocketTimeoutException ex) {
 				throw new XMLRPCTimeoutException("The XMLRPC call timed out.", ex);
 			} catch (IOException ex) {
-				// If the thread has been canceled this exception will be thrown.
-				// So only throw an exception if the thread hasnt been canceled
-				// or if the thred has not been started in background.
-				if(!canceled || threadId <= 0) {
+				// If the call has been canceled this exception will be thrown.
+				// So only throw an exception if the call hasnt been canceled.
+				if(!canceled) {
 					throw new XMLRPCException(ex);
 				} else {
 					throw new CancelException();
 				}
+			} finally {
+				// Free the connection, if the response is left unread
+				if(!responseRead && http != null) {
+					http.disconnect();
+				}
 			}
 
 		}
 
-		/**
-		 * Verifies the given URLConnection to be a valid HTTP or HTTPS connection.
-		 * If the SSL ignoring flags are set, the method will ignore SSL warnings.
-		 *
-		 * @param conn The URLConnection to validate.
-		 * @return The verified HttpURLConnection.
-		 * @throws XMLRPCException Will be thrown if an error occurred.
-		 */
-		private HttpURLConnection verifyConnection(URLConnection conn) throws XMLRPCException {
-
-				if(!(conn instanceof HttpURLConnection)) {
-					throw new IllegalArgumentException("The URL is not valid for a http connection.");
-				}
-
-				// Validate the connection if its an SSL connection
-				if(conn instanceof HttpsURLConnection) {
-
-					HttpsURLConnection h = (HttpsURLConnection)conn;
-
-					// Don't check, that URL matches the certificate.
-					if(isFlagSet(FLAGS_SSL_IGNORE_INVALID_HOST)) {
-						h.setHostnameVerifier(new HostnameVerifier() {
-							public boolean verify(String host, SSLSession ssl) {
-								return true;
-							}
-						});
-					}
-
-					// Associate the TrustManager with TLS and SSL connections, if present.
-					if(trustManagers != null) {
-						try {
-							String[] sslContexts = new String[]{ "TLS", "SSL" };
-
-							for(String ctx : sslContexts) {
-								SSLContext sc = SSLContext.getInstance(ctx);
-								sc.init(keyManagers, trustManagers, new SecureRandom());
-								h.setSSLSocketFactory(sc.getSocketFactory());
-							}
-
-						} catch(Exception ex) {
-							throw new XMLRPCException(ex);
-						}
-
-					}
+	}
 
-					return h;
+	/**
+	 * The future of an asynchronous call. Canceling it also aborts the network
+	 * communication of the call.
+	 */
+	private class CallFuture extends FutureTask<Object> {
 
-				}
+		private final Caller caller;
 
-				return (HttpURLConnection)conn;
+		CallFuture(Caller caller) {
+			super(caller);
+			this.caller = caller;
+		}
 
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean canceled = super.cancel(mayInterruptIfRunning);
+			if(canceled) {
+				caller.cancel();
+			}
+			return canceled;
 		}
 
 	}
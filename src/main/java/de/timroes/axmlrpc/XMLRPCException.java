@@ -23,4 +23,8 @@ public class XMLRPCException extends Exception {
 		super(msg, ex);
 	}
 
+	public XMLRPCException(String msg, Throwable cause) {
+		super(msg, cause);
+	}
+
 }
@@ -0,0 +1,25 @@
+package de.timroes.axmlrpc;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Gives the name of the remote procedure called by a method of an interface
+ * implemented by {@link XMLRPCClient#proxy(java.lang.Class)}, e.g. if the
+ * name isn't a valid Java identifier like system.listMethods. Methods
+ * without this annotation call the remote procedure of their own name.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface XMLRPCMethod {
+
+	/**
+	 * The name of the remote procedure.
+	 */
+	String value();
+
+}
@@ -110,6 +110,26 @@ public class XMLUtil {
 		
 	}
 
+	/**
+	 * Checks if the given characters are only whitespace.
+	 *
+	 * @param ch The characters to check.
+	 * @param start The start position in the array.
+	 * @param length The number of characters to check.
+	 * @return Whether the characters are only whitespace.
+	 */
+	public static boolean isWhitespace(char[] ch, int start, int length) {
+
+		for(int i = start; i < start + length; i++) {
+			if(ch[i] > ' ') {
+				return false;
+			}
+		}
+
+		return true;
+
+	}
+
 	/**
 	 * Creates an xml tag with a given type and content.
 	 *
@@ -4,8 +4,11 @@ import de.timroes.axmlrpc.XMLRPCException;
 import de.timroes.axmlrpc.XMLRPCRuntimeException;
 import de.timroes.axmlrpc.XMLUtil;
 import de.timroes.axmlrpc.xmlcreator.XmlElement;
+import de.timroes.axmlrpc.xmlcreator.XmlWriter;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -14,7 +17,7 @@ import org.w3c.dom.Node;
  *
  * @author Tim Roes
  */
-public class ArraySerializer implements Serializer {
+public class ArraySerializer implements Serializer, StreamingSerializer {
 
 	private static final String ARRAY_DATA = "data";
 	private static final String ARRAY_VALUE = "value";
@@ -57,14 +60,38 @@ public class ArraySerializer implements Serializer {
 		return list.toArray();
 	}
 
+	public ValueBuilder newBuilder() {
+		return new ValueBuilder() {
+
+			private final List<Object> list = new ArrayList<Object>();
+
+			public void characters(char[] ch, int start, int length) throws XMLRPCException {
+				if(!XMLUtil.isWhitespace(ch, start, length)) {
+					throw new XMLRPCException("Wrong element inside of array.");
+				}
+			}
+
+			public void member(String name, Object value) throws XMLRPCException {
+				throw new XMLRPCException("Wrong element inside of array.");
+			}
+
+			public void element(Object value) {
+				list.add(value);
+			}
+
+			public Object build() {
+				return list.toArray();
+			}
+
+			public void abort() {
+			}
+
+		};
+	}
+
 	public XmlElement serialize(Object object) {
 
-		Iterable<?> iter;
-		if ( object instanceof Iterable<?>){
-			iter = (Iterable<?>)object;
-		} else {
-			iter = Arrays.asList((Object[]) object);
-		}
+		Iterable<?> iter = toIterable(object);
 		XmlElement array = new XmlElement(SerializerHandler.TYPE_ARRAY);
 		XmlElement data = new XmlElement(ARRAY_DATA);
 		array.addChildren(data);
@@ -86,4 +113,39 @@ public class ArraySerializer implements Serializer {
 
 	}
 
+	public void serialize(XmlWriter writer, Object object) throws IOException {
+
+		Iterator<?> iter = toIterable(object).iterator();
+		writer.startElement(SerializerHandler.TYPE_ARRAY);
+
+		if(!iter.hasNext()) {
+			writer.emptyElement(ARRAY_DATA);
+		} else {
+			try {
+
+				writer.startElement(ARRAY_DATA);
+				while(iter.hasNext()) {
+					writer.startElement(ARRAY_VALUE);
+					serializerHandler.serialize(writer, iter.next());
+					writer.endElement(ARRAY_VALUE);
+				}
+				writer.endElement(ARRAY_DATA);
+
+			} catch(XMLRPCException ex) {
+				throw new XMLRPCRuntimeException(ex);
+			}
+		}
+
+		writer.endElement(SerializerHandler.TYPE_ARRAY);
+
+	}
+
+	private Iterable<?> toIterable(Object object) {
+		if ( object instanceof Iterable<?>){
+			return (Iterable<?>)object;
+		} else {
+			return Arrays.asList((Object[]) object);
+		}
+	}
+
 }
@@ -1,24 +1,380 @@
 package de.timroes.axmlrpc.serializer;
 
 import de.timroes.axmlrpc.XMLRPCException;
+import de.timroes.axmlrpc.XMLRPCRuntimeException;
 import de.timroes.axmlrpc.XMLUtil;
 import de.timroes.axmlrpc.xmlcreator.XmlElement;
+import de.timroes.axmlrpc.xmlcreator.XmlWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import de.timroes.base64.Base64;
 import org.w3c.dom.Element;
 
 /**
+ * Serializes byte arrays and binary data sources to base64.
+ * Besides byte arrays, an {@link InputStream}, a {@link File}, a
+ * java.nio.file.Path (where available) or a {@link ByteBuffer} can be
+ * sent. These are read in chunks and encoded straight onto the request, so
+ * that they are never held in memory as a whole.
+ *
+ * An InputStream is read to its end, but not closed. A ByteBuffer is read
+ * from its position to its limit, without changing its position.
  *
  * @author Tim Roes
  */
-public class Base64Serializer implements Serializer {
+public class Base64Serializer implements Serializer, StreamingSerializer {
+
+	/**
+	 * The number of bytes read and encoded at once. It is a multiple of
+	 * the bytes per line, so that the chunks encode to whole lines.
+	 */
+	private static final int CHUNK_SIZE = 152 * Base64.LINE_BYTES;
+
+	/** java.nio.file.Path, Files.newInputStream and Files.size, null if not available. */
+	private static final Class<?> PATH;
+	private static final Method NEW_INPUT_STREAM;
+	private static final Method SIZE;
+	private static final Object NO_OPTIONS;
+
+	static {
+		Class<?> path = null;
+		Method newInputStream = null;
+		Method size = null;
+		Object noOptions = null;
+		try {
+			path = Class.forName("java.nio.file.Path");
+			noOptions = Array.newInstance(Class.forName("java.nio.file.OpenOption"), 0);
+			Class<?> files = Class.forName("java.nio.file.Files");
+			newInputStream = files.getMethod("newInputStream", path, noOptions.getClass());
+			size = files.getMethod("size", path);
+		} catch(Exception ex) {
+			path = null;
+		}
+		PATH = path;
+		NEW_INPUT_STREAM = newInputStream;
+		SIZE = size;
+		NO_OPTIONS = noOptions;
+	}
+
+	private volatile Base64Sink sink;
+
+	/**
+	 * Sets the sink to decode the values of responses to.
+	 *
+	 * @param sink The sink, or null to decode the values to byte arrays.
+	 */
+	public void setSink(Base64Sink sink) {
+		this.sink = sink;
+	}
+
+	/**
+	 * Returns the sink the values of responses are decoded to.
+	 *
+	 * @return The sink, or null if the values are decoded to byte arrays.
+	 */
+	public Base64Sink getSink() {
+		return sink;
+	}
 
 	public Object deserialize(Element content) throws XMLRPCException {
-		return Base64.decode(XMLUtil.getOnlyTextContent(content.getChildNodes()));
+		return deserialize(XMLUtil.getOnlyTextContent(content.getChildNodes()));
+	}
+
+	public Object deserialize(String content) throws XMLRPCException {
+		Base64Sink sink = this.sink;
+		if(sink != null) {
+			SinkValueBuilder builder = new SinkValueBuilder(sink);
+			builder.characters(content.toCharArray(), 0, content.length());
+			return builder.build();
+		}
+		return Base64.decode(content);
+	}
+
+	public ValueBuilder newBuilder() {
+		Base64Sink sink = this.sink;
+		if(sink != null) {
+			return new SinkValueBuilder(sink);
+		}
+		return new TextValueBuilder() {
+			@Override
+			protected Object build(String content) throws XMLRPCException {
+				return deserialize(content);
+			}
+		};
 	}
 
 	public XmlElement serialize(Object object) {
-		return XMLUtil.makeXmlTag(SerializerHandler.TYPE_BASE64,
-				Base64.encode((Byte[])object));
+		return XMLUtil.makeXmlTag(SerializerHandler.TYPE_BASE64, encode(object));
+	}
+
+	public void serialize(XmlWriter writer, Object object) throws IOException {
+		if(writer.isCounting()) {
+			// Only the length is needed, the data isn't read
+			long length = length(object);
+			if(length == 0) {
+				writer.emptyElement(SerializerHandler.TYPE_BASE64);
+			} else {
+				writer.startElement(SerializerHandler.TYPE_BASE64);
+				writer.skip(length < 0 ? -1 : encodedLength(length));
+				writer.endElement(SerializerHandler.TYPE_BASE64);
+			}
+			return;
+		}
+		if(object instanceof byte[] || object instanceof Byte[]) {
+			writer.element(SerializerHandler.TYPE_BASE64, encode(object));
+			return;
+		}
+		InputStream in = open(object);
+		try {
+			byte[] chunk = new byte[CHUNK_SIZE];
+			char[] chars = new char[Base64.encodedLength(CHUNK_SIZE)];
+			int length = read(in, chunk);
+			if(length == 0) {
+				writer.emptyElement(SerializerHandler.TYPE_BASE64);
+				return;
+			}
+			writer.startElement(SerializerHandler.TYPE_BASE64);
+			while(length > 0) {
+				writer.write(chars, 0, Base64.encode(chunk, 0, length, chars, 0));
+				// Only the last chunk may be shorter than a chunk
+				length = length == chunk.length ? read(in, chunk) : 0;
+			}
+			writer.endElement(SerializerHandler.TYPE_BASE64);
+		} finally {
+			if(in != object) {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a class is one of the binary data sources, that are
+	 * read while they are serialized.
+	 *
+	 * @param type The class to check.
+	 * @return Whether the class is an InputStream, File, Path or ByteBuffer.
+	 */
+	static boolean isSourceType(Class<?> type) {
+		return InputStream.class.isAssignableFrom(type) || File.class.isAssignableFrom(type)
+				|| ByteBuffer.class.isAssignableFrom(type)
+				|| (PATH != null && PATH.isAssignableFrom(type));
+	}
+
+	/**
+	 * Returns the number of bytes of a byte array or binary data source.
+	 *
+	 * @return The number of bytes, or -1 if it isn't known before the
+	 *		source is read, like for an InputStream.
+	 */
+	private static long length(Object object) throws IOException {
+		if(object instanceof byte[]) {
+			return ((byte[])object).length;
+		}
+		if(object instanceof Byte[]) {
+			return ((Byte[])object).length;
+		}
+		if(object instanceof File) {
+			return ((File)object).length();
+		}
+		if(object instanceof ByteBuffer) {
+			return ((ByteBuffer)object).remaining();
+		}
+		if(PATH != null && PATH.isInstance(object)) {
+			try {
+				return ((Long)SIZE.invoke(null, object)).longValue();
+			} catch(InvocationTargetException ex) {
+				if(ex.getCause() instanceof IOException) {
+					throw (IOException)ex.getCause();
+				}
+				throw new IOException(ex.getCause());
+			} catch(IllegalAccessException ex) {
+				throw new IOException(ex);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the number of characters written for the given number of
+	 * bytes, which are encoded chunk by chunk.
+	 */
+	private static long encodedLength(long length) {
+		return length / CHUNK_SIZE * Base64.encodedLength(CHUNK_SIZE)
+				+ Base64.encodedLength((int)(length % CHUNK_SIZE));
+	}
+
+	private String encode(Object object) {
+		if(object instanceof byte[]) {
+			return Base64.encode((byte[])object);
+		}
+		if(object instanceof Byte[]) {
+			return Base64.encode((Byte[])object);
+		}
+		// A data source serialized to an xml element is read into memory
+		try {
+			InputStream in = open(object);
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] chunk = new byte[CHUNK_SIZE];
+				int length;
+				while((length = in.read(chunk)) != -1) {
+					bytes.write(chunk, 0, length);
+				}
+				return Base64.encode(bytes.toByteArray());
+			} finally {
+				if(in != object) {
+					in.close();
+				}
+			}
+		} catch(IOException ex) {
+			throw new XMLRPCRuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Returns a stream to read a binary data source from.
+	 */
+	private static InputStream open(Object object) throws IOException {
+		if(object instanceof InputStream) {
+			return (InputStream)object;
+		}
+		if(object instanceof File) {
+			return new FileInputStream((File)object);
+		}
+		if(object instanceof ByteBuffer) {
+			return new ByteBufferInputStream(((ByteBuffer)object).duplicate());
+		}
+		try {
+			return (InputStream)NEW_INPUT_STREAM.invoke(null, object, NO_OPTIONS);
+		} catch(InvocationTargetException ex) {
+			if(ex.getCause() instanceof IOException) {
+				throw (IOException)ex.getCause();
+			}
+			throw new IOException(ex.getCause());
+		} catch(IllegalAccessException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	/**
+	 * Reads from a stream until the buffer is full or the stream has ended.
+	 *
+	 * @return The number of bytes read, less than the buffer length only
+	 *		at the end of the stream.
+	 */
+	private static int read(InputStream in, byte[] buffer) throws IOException {
+		int length = 0;
+		int n;
+		while(length < buffer.length
+				&& (n = in.read(buffer, length, buffer.length - length)) != -1) {
+			length += n;
+		}
+		return length;
+	}
+
+	/**
+	 * Decodes the text of a value to a sink while it is read.
+	 */
+	private static class SinkValueBuilder implements ValueBuilder {
+
+		private final Base64Sink sink;
+		private OutputStream out;
+		private Base64.Decoder decoder;
+
+		SinkValueBuilder(Base64Sink sink) {
+			this.sink = sink;
+		}
+
+		public void characters(char[] ch, int start, int length) throws XMLRPCException {
+			try {
+				open();
+				decoder.decode(ch, start, length);
+			} catch(IOException ex) {
+				abort();
+				throw new XMLRPCException("Could not write the base64 value to the sink.", ex);
+			} catch(IllegalArgumentException ex) {
+				abort();
+				throw new XMLRPCException(ex);
+			}
+		}
+
+		public void member(String name, Object value) throws XMLRPCException {
+			throw new XMLRPCException("Element must contain only text elements.");
+		}
+
+		public void element(Object value) throws XMLRPCException {
+			throw new XMLRPCException("Element must contain only text elements.");
+		}
+
+		public Object build() throws XMLRPCException {
+			try {
+				open();
+				return sink.finish(out, decoder.finish());
+			} catch(IOException ex) {
+				abort();
+				throw new XMLRPCException("Could not write the base64 value to the sink.", ex);
+			} catch(IllegalArgumentException ex) {
+				abort();
+				throw new XMLRPCException(ex);
+			}
+		}
+
+		public void abort() {
+			// Also called once the value has been finished, at most once per value
+			if(out != null) {
+				sink.abort(out);
+				out = null;
+			}
+		}
+
+		private void open() throws IOException {
+			if(decoder == null) {
+				out = sink.open();
+				decoder = new Base64.Decoder(out);
+			}
+		}
+
+	}
+
+	/**
+	 * Reads the remaining bytes of a buffer.
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if(!buffer.hasRemaining()) {
+				return len == 0 ? 0 : -1;
+			}
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,163 @@
+package de.timroes.axmlrpc.serializer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A Base64Sink receives the decoded bytes of the base64 values of responses,
+ * instead of having them returned as byte arrays. Each value is decoded
+ * while it is read and the response holds a {@link BinaryValue} handle in
+ * its place. Together with a streaming response parser, the memory used
+ * stays the same no matter how large the values are.
+ */
+public abstract class Base64Sink {
+
+	/**
+	 * Opens the stream the next base64 value is decoded to.
+	 *
+	 * @return The stream to write the decoded bytes to.
+	 * @throws IOException Will be thrown if the stream can't be opened.
+	 */
+	protected abstract OutputStream open() throws IOException;
+
+	/**
+	 * Called once a value has been decoded completely to the stream
+	 * returned by {@link #open()}.
+	 *
+	 * @param out The stream the value has been decoded to.
+	 * @param length The number of decoded bytes.
+	 * @return The object standing for the value in the response.
+	 * @throws IOException Will be thrown if the stream can't be finished.
+	 */
+	protected abstract Object finish(OutputStream out, long length) throws IOException;
+
+	/**
+	 * Called instead of {@link #finish(java.io.OutputStream, long)} if the
+	 * value couldn't be decoded, or after it if the rest of the response
+	 * couldn't be read. By default nothing is done.
+	 *
+	 * @param out The stream the value has been decoded to.
+	 */
+	protected void abort(OutputStream out) {
+	}
+
+	/**
+	 * Returns a sink that decodes all values to the given stream, one after
+	 * another. The stream isn't closed. The {@link BinaryValue handles} tell
+	 * the position of each value in the stream. The bytes of values that
+	 * couldn't be decoded completely stay in the stream and are counted for
+	 * the positions of the following values.
+	 * The sink must not be used by concurrent calls.
+	 *
+	 * @param out The stream to decode the values to.
+	 * @return The sink.
+	 */
+	public static Base64Sink toStream(OutputStream out) {
+		final CountingStream counting = new CountingStream(out);
+		return new Base64Sink() {
+			private long offset;
+
+			@Override
+			protected OutputStream open() {
+				// Values written before may have been cut off by an error
+				offset = counting.count;
+				return counting;
+			}
+
+			@Override
+			protected Object finish(OutputStream stream, long length) {
+				return new BinaryValue(null, offset, length);
+			}
+		};
+	}
+
+	/**
+	 * Returns a sink that decodes all values to the given channel, one after
+	 * another. The channel isn't closed. The {@link BinaryValue handles} tell
+	 * the position of each value in the channel.
+	 * The sink must not be used by concurrent calls.
+	 *
+	 * @param channel The channel to decode the values to.
+	 * @return The sink.
+	 */
+	public static Base64Sink toChannel(WritableByteChannel channel) {
+		return toStream(Channels.newOutputStream(channel));
+	}
+
+	/**
+	 * Returns a sink that decodes each value to a new temporary file. The
+	 * {@link BinaryValue handles} hold the files, which must be deleted by
+	 * the caller. The files of a response that couldn't be read completely
+	 * are deleted, including those of the values finished before the error.
+	 *
+	 * @param directory The directory to create the files in, or null to use
+	 *		the default temporary directory.
+	 * @return The sink.
+	 */
+	public static Base64Sink toTempFiles(final File directory) {
+		return new Base64Sink() {
+			@Override
+			protected OutputStream open() throws IOException {
+				return new FileSink(File.createTempFile("axmlrpc", ".bin", directory));
+			}
+
+			@Override
+			protected Object finish(OutputStream out, long length) throws IOException {
+				out.close();
+				return new BinaryValue(((FileSink)out).file, 0, length);
+			}
+
+			@Override
+			protected void abort(OutputStream out) {
+				try {
+					out.close();
+				} catch(IOException ex) {
+					// The file is deleted anyway
+				}
+				((FileSink)out).file.delete();
+			}
+		};
+	}
+
+	/**
+	 * Counts the bytes written to a stream.
+	 */
+	private static class CountingStream extends FilterOutputStream {
+
+		private long count;
+
+		CountingStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+	}
+
+	private static class FileSink extends FileOutputStream {
+
+		private final File file;
+
+		FileSink(File file) throws IOException {
+			super(file);
+			this.file = file;
+		}
+
+	}
+
+}
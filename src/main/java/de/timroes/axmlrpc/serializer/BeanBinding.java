@@ -0,0 +1,192 @@
+package de.timroes.axmlrpc.serializer;
+
+import de.timroes.axmlrpc.XMLRPCException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Describes how a struct is bound to a class: records are created with
+ * their canonical constructor, other classes with their constructor without
+ * arguments, after which the members are set to the fields of the same name.
+ * Static and transient fields are left out. The binding of each class is
+ * looked up once and kept.
+ */
+final class BeanBinding {
+
+	private static final ConcurrentHashMap<Class<?>, BeanBinding> BINDINGS =
+			new ConcurrentHashMap<Class<?>, BeanBinding>();
+
+	/** Class.isRecord and Class.getRecordComponents, null before Java 16. */
+	private static final Method IS_RECORD;
+	private static final Method GET_RECORD_COMPONENTS;
+
+	static {
+		Method isRecord = null;
+		Method getRecordComponents = null;
+		try {
+			isRecord = Class.class.getMethod("isRecord");
+			getRecordComponents = Class.class.getMethod("getRecordComponents");
+		} catch(NoSuchMethodException ex) {
+			isRecord = null;
+		}
+		IS_RECORD = isRecord;
+		GET_RECORD_COMPONENTS = getRecordComponents;
+	}
+
+	private final Class<?> type;
+	private final Map<String, Property> properties = new HashMap<String, Property>();
+	private final Constructor<?> constructor;
+	/** The default values of the constructor arguments, null if the members are set to fields. */
+	private final Object[] defaults;
+
+	/**
+	 * Returns the binding of a class.
+	 *
+	 * @param type The class to bind structs to.
+	 * @return The binding of the class.
+	 * @throws XMLRPCException Will be thrown if structs can't be bound to this class.
+	 */
+	static BeanBinding of(Class<?> type) throws XMLRPCException {
+		BeanBinding binding = BINDINGS.get(type);
+		if(binding == null) {
+			binding = new BeanBinding(type);
+			BINDINGS.putIfAbsent(type, binding);
+		}
+		return binding;
+	}
+
+	private BeanBinding(Class<?> type) throws XMLRPCException {
+		this.type = type;
+		if(type.isInterface() || type.isArray() || type.isPrimitive() || type.isEnum()
+				|| Modifier.isAbstract(type.getModifiers()) || type.getName().startsWith("java.")) {
+			throw new XMLRPCException("Cannot bind a struct to " + type.getName() + ".");
+		}
+		try {
+			if(IS_RECORD != null && (Boolean)IS_RECORD.invoke(type)) {
+				Object[] components = (Object[])GET_RECORD_COMPONENTS.invoke(type);
+				Class<?>[] parameterTypes = new Class<?>[components.length];
+				defaults = new Object[components.length];
+				for(int i = 0; i < components.length; i++) {
+					Class<?> componentClass = components[i].getClass();
+					String name = (String)componentClass.getMethod("getName").invoke(components[i]);
+					Type genericType = (Type)componentClass.getMethod("getGenericType").invoke(components[i]);
+					parameterTypes[i] = (Class<?>)componentClass.getMethod("getType").invoke(components[i]);
+					defaults[i] = parameterTypes[i].isPrimitive()
+							? Array.get(Array.newInstance(parameterTypes[i], 1), 0) : null;
+					properties.put(name, new Property(genericType, null, i));
+				}
+				constructor = type.getDeclaredConstructor(parameterTypes);
+			} else {
+				defaults = null;
+				for(Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+					for(Field field : c.getDeclaredFields()) {
+						int modifiers = field.getModifiers();
+						if(Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)
+								|| field.isSynthetic() || properties.containsKey(field.getName())) {
+							continue;
+						}
+						field.setAccessible(true);
+						properties.put(field.getName(), new Property(field.getGenericType(), field, -1));
+					}
+				}
+				constructor = type.getDeclaredConstructor();
+			}
+			constructor.setAccessible(true);
+		} catch(NoSuchMethodException ex) {
+			throw new XMLRPCException("Cannot bind a struct to " + type.getName()
+					+ ", it has no constructor without arguments.");
+		} catch(Exception ex) {
+			throw new XMLRPCException("Cannot bind a struct to " + type.getName() + ".", ex);
+		}
+	}
+
+	/**
+	 * Returns the type a member is bound to.
+	 *
+	 * @param name The name of the member.
+	 * @return The type of the member, or null if it isn't bound.
+	 */
+	Type getMemberType(String name) {
+		Property property = properties.get(name);
+		return property == null ? null : property.type;
+	}
+
+	/**
+	 * Starts to bind a struct.
+	 *
+	 * @return The object to set the members to.
+	 * @throws XMLRPCException Will be thrown if the object can't be created.
+	 */
+	Object start() throws XMLRPCException {
+		if(defaults != null) {
+			return defaults.clone();
+		}
+		return newInstance(new Object[0]);
+	}
+
+	/**
+	 * Binds a member of the struct. Members that aren't bound are ignored.
+	 *
+	 * @param target The object returned by {@link #start()}.
+	 * @param name The name of the member.
+	 * @param value The value of the member.
+	 * @throws XMLRPCException Will be thrown if the value can't be bound.
+	 */
+	void set(Object target, String name, Object value) throws XMLRPCException {
+		Property property = properties.get(name);
+		if(property == null) {
+			return;
+		}
+		Object converted = Binder.convert(value, property.type);
+		if(property.field == null) {
+			((Object[])target)[property.index] = converted;
+			return;
+		}
+		try {
+			property.field.set(target, converted);
+		} catch(IllegalAccessException ex) {
+			throw new XMLRPCException("Cannot set the member " + name + " of " + type.getName() + ".", ex);
+		}
+	}
+
+	/**
+	 * Finishes to bind a struct.
+	 *
+	 * @param target The object returned by {@link #start()}.
+	 * @return The bound object.
+	 * @throws XMLRPCException Will be thrown if the object can't be created.
+	 */
+	Object finish(Object target) throws XMLRPCException {
+		return defaults != null ? newInstance((Object[])target) : target;
+	}
+
+	private Object newInstance(Object[] arguments) throws XMLRPCException {
+		try {
+			return constructor.newInstance(arguments);
+		} catch(Exception ex) {
+			throw new XMLRPCException("Cannot create an instance of " + type.getName() + ".", ex);
+		}
+	}
+
+	private static class Property {
+
+		final Type type;
+		final Field field;
+		final int index;
+
+		Property(Type type, Field field, int index) {
+			this.type = type;
+			this.field = field;
+			this.index = index;
+		}
+
+	}
+
+}
@@ -0,0 +1,55 @@
+package de.timroes.axmlrpc.serializer;
+
+import java.io.File;
+
+/**
+ * The handle of a base64 value decoded to a {@link Base64Sink}. It is
+ * returned in the response in place of the byte array.
+ */
+public final class BinaryValue {
+
+	private final File file;
+	private final long offset;
+	private final long length;
+
+	BinaryValue(File file, long offset, long length) {
+		this.file = file;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * Returns the file the value has been decoded to.
+	 *
+	 * @return The file, or null if the value hasn't been decoded to a file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the position of the value in the stream or channel it has been
+	 * decoded to, after the values decoded before.
+	 *
+	 * @return The position of the first byte of the value.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Returns the number of decoded bytes.
+	 *
+	 * @return The length of the value.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	@Override
+	public String toString() {
+		return "BinaryValue[" + (file != null ? file.getPath() + ", " : "")
+				+ "offset=" + offset + ", length=" + length + "]";
+	}
+
+}
@@ -0,0 +1,460 @@
+package de.timroes.axmlrpc.serializer;
+
+import de.timroes.axmlrpc.XMLRPCException;
+import de.timroes.axmlrpc.XMLUtil;
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Binds values of responses to Java types. Structs and arrays are bound
+ * while they are built, by builders that know the types of their members
+ * and elements. Other values are converted once they have been built.
+ */
+final class Binder {
+
+	private Binder() {}
+
+	/**
+	 * Wraps the builder of a type element to bind its value to a type.
+	 *
+	 * @param type The name of the type element.
+	 * @param target The type to bind the value to.
+	 * @param builder The builder of the type element.
+	 * @return A builder building the value as the target type.
+	 * @throws XMLRPCException Will be thrown if the value can't be bound to the type.
+	 */
+	static ValueBuilder bind(String type, Type target, ValueBuilder builder) throws XMLRPCException {
+		Class<?> raw = rawType(target);
+		if(SerializerHandler.TYPE_STRUCT.equals(type)) {
+			if(Map.class.isAssignableFrom(raw)) {
+				return new MapBuilder(target, raw);
+			}
+			if(!raw.isAssignableFrom(HashMap.class)) {
+				return new BeanBuilder(BeanBinding.of(raw));
+			}
+		} else if(SerializerHandler.TYPE_ARRAY.equals(type)
+				&& (raw.isArray() || Iterable.class.isAssignableFrom(raw))) {
+			return new CollectionBuilder(target, raw);
+		}
+		return new ConvertingBuilder(builder, target);
+	}
+
+	/**
+	 * Converts a value built without a type to the given type.
+	 *
+	 * @param value The value.
+	 * @param target The type to convert the value to.
+	 * @return The converted value.
+	 * @throws XMLRPCException Will be thrown if the value can't be converted.
+	 */
+	static Object convert(Object value, Type target) throws XMLRPCException {
+
+		if(target == null) {
+			return value;
+		}
+		Class<?> raw = rawType(target);
+		if(value == null) {
+			if(raw.isPrimitive()) {
+				throw new XMLRPCException("Cannot bind null to " + raw.getName() + ".");
+			}
+			return null;
+		}
+
+		Class<?> boxed = box(raw);
+		boolean generic = target instanceof ParameterizedType || target instanceof GenericArrayType;
+		if(boxed.isInstance(value) && !(generic && (value instanceof Map || value instanceof Object[]))) {
+			return value;
+		}
+
+		if(value instanceof Number) {
+			Number number = (Number)value;
+			if(boxed == Integer.class) {
+				return (int)toIntegral(number, Integer.MIN_VALUE, Integer.MAX_VALUE, target);
+			} else if(boxed == Long.class) {
+				return toIntegral(number, Long.MIN_VALUE, Long.MAX_VALUE, target);
+			} else if(boxed == Double.class) {
+				return number.doubleValue();
+			} else if(boxed == Float.class) {
+				return number.floatValue();
+			} else if(boxed == Short.class) {
+				return (short)toIntegral(number, Short.MIN_VALUE, Short.MAX_VALUE, target);
+			} else if(boxed == Byte.class) {
+				return (byte)toIntegral(number, Byte.MIN_VALUE, Byte.MAX_VALUE, target);
+			} else if(boxed == BigDecimal.class) {
+				return value instanceof Double ? BigDecimal.valueOf(number.doubleValue()) : BigDecimal.valueOf(number.longValue());
+			} else if(boxed == BigInteger.class) {
+				return BigInteger.valueOf(toIntegral(number, Long.MIN_VALUE, Long.MAX_VALUE, target));
+			}
+		}
+		if(boxed == String.class && (value instanceof Number || value instanceof Boolean)) {
+			return value.toString();
+		}
+		if(value instanceof String) {
+			String text = (String)value;
+			if(raw.isEnum()) {
+				return toEnum(raw, text);
+			} else if(boxed == Character.class && text.length() == 1) {
+				return text.charAt(0);
+			}
+		}
+		if(value instanceof Date && raw == Calendar.class) {
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTime((Date)value);
+			return calendar;
+		}
+		if(DateTimeSerializer.JAVA_TIME && (value instanceof Date || DateTimeSerializer.isJavaTime(value))) {
+			Object converted = JavaTime.convert(value, raw);
+			if(converted != null) {
+				return converted;
+			}
+		}
+		if(value instanceof Object[] && (raw.isArray() || Iterable.class.isAssignableFrom(raw))) {
+			CollectionBuilder builder = new CollectionBuilder(target, raw);
+			for(Object element : (Object[])value) {
+				builder.element(convert(element, builder.getElementType()));
+			}
+			return builder.build();
+		}
+		if(value instanceof Map) {
+			ValueBuilder builder = bind(SerializerHandler.TYPE_STRUCT, target, null);
+			if(builder instanceof TypedValueBuilder) {
+				TypedValueBuilder typed = (TypedValueBuilder)builder;
+				for(Map.Entry<?, ?> member : ((Map<?, ?>)value).entrySet()) {
+					String name = (String)member.getKey();
+					typed.member(name, convert(member.getValue(), typed.getMemberType(name)));
+				}
+				return typed.build();
+			}
+		}
+
+		throw new XMLRPCException("Cannot bind a value of type " + value.getClass().getName()
+				+ " to " + target + ".");
+
+	}
+
+	/**
+	 * Returns the value of a number bound to an integral type, refusing the
+	 * numbers that would be truncated or overflow.
+	 *
+	 * @param number The number to bind.
+	 * @param min The smallest value of the target type.
+	 * @param max The largest value of the target type.
+	 * @param target The target type, for the error message.
+	 * @return The value of the number.
+	 * @throws XMLRPCException Will be thrown if the number doesn't fit the type.
+	 */
+	private static long toIntegral(Number number, long min, long max, Type target) throws XMLRPCException {
+		long integral;
+		if(number instanceof Double || number instanceof Float) {
+			double real = number.doubleValue();
+			// 0x1p63 is the first double past Long.MAX_VALUE
+			if(real != Math.rint(real) || real < -0x1p63 || real >= 0x1p63) {
+				throw new XMLRPCException("Cannot bind " + number + " to " + target + " without losing precision.");
+			}
+			integral = (long)real;
+		} else {
+			integral = number.longValue();
+		}
+		if(integral < min || integral > max) {
+			throw new XMLRPCException("Cannot bind " + number + " to " + target + ", it is out of range.");
+		}
+		return integral;
+	}
+
+	/**
+	 * Returns the class of a type.
+	 */
+	static Class<?> rawType(Type type) {
+		if(type instanceof Class) {
+			return (Class<?>)type;
+		} else if(type instanceof ParameterizedType) {
+			return (Class<?>)((ParameterizedType)type).getRawType();
+		} else if(type instanceof GenericArrayType) {
+			Class<?> component = rawType(((GenericArrayType)type).getGenericComponentType());
+			return Array.newInstance(component, 0).getClass();
+		} else if(type instanceof WildcardType) {
+			return rawType(((WildcardType)type).getUpperBounds()[0]);
+		} else if(type instanceof TypeVariable) {
+			return rawType(((TypeVariable<?>)type).getBounds()[0]);
+		}
+		return Object.class;
+	}
+
+	/**
+	 * Returns a type argument of a parameterized type, or null if the type
+	 * isn't parameterized.
+	 */
+	private static Type typeArgument(Type type, int index) {
+		if(type instanceof ParameterizedType) {
+			Type[] arguments = ((ParameterizedType)type).getActualTypeArguments();
+			if(index < arguments.length) {
+				Type argument = arguments[index];
+				return rawType(argument) == Object.class ? null : argument;
+			}
+		}
+		return null;
+	}
+
+	private static Class<?> box(Class<?> type) {
+		if(!type.isPrimitive()) {
+			return type;
+		} else if(type == int.class) {
+			return Integer.class;
+		} else if(type == long.class) {
+			return Long.class;
+		} else if(type == double.class) {
+			return Double.class;
+		} else if(type == boolean.class) {
+			return Boolean.class;
+		} else if(type == float.class) {
+			return Float.class;
+		} else if(type == short.class) {
+			return Short.class;
+		} else if(type == byte.class) {
+			return Byte.class;
+		} else if(type == char.class) {
+			return Character.class;
+		}
+		return Void.class;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object toEnum(Class<?> type, String name) throws XMLRPCException {
+		try {
+			return Enum.valueOf((Class<? extends Enum>)type, name);
+		} catch(IllegalArgumentException ex) {
+			throw new XMLRPCException("No constant " + name + " in " + type.getName() + ".", ex);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T newInstance(Class<?> type, Class<? extends T> fallback) throws XMLRPCException {
+		Class<?> implementation = type.isInterface() || Modifier.isAbstract(type.getModifiers())
+				? fallback : type;
+		try {
+			return (T)implementation.getDeclaredConstructor().newInstance();
+		} catch(Exception ex) {
+			throw new XMLRPCException("Cannot create an instance of " + type.getName() + ".", ex);
+		}
+	}
+
+	/**
+	 * Builds a struct as an object of a class.
+	 */
+	private static class BeanBuilder implements TypedValueBuilder {
+
+		private final BeanBinding binding;
+		private final Object target;
+
+		BeanBuilder(BeanBinding binding) throws XMLRPCException {
+			this.binding = binding;
+			this.target = binding.start();
+		}
+
+		public Type getMemberType(String name) {
+			return binding.getMemberType(name);
+		}
+
+		public Type getElementType() {
+			return null;
+		}
+
+		public void characters(char[] ch, int start, int length) throws XMLRPCException {
+			if(!XMLUtil.isWhitespace(ch, start, length)) {
+				throw new XMLRPCException("Only struct members allowed within a struct.");
+			}
+		}
+
+		public void member(String name, Object value) throws XMLRPCException {
+			binding.set(target, name, value);
+		}
+
+		public void element(Object value) throws XMLRPCException {
+			throw new XMLRPCException("Only struct members allowed within a struct.");
+		}
+
+		public Object build() throws XMLRPCException {
+			return binding.finish(target);
+		}
+
+		public void abort() {
+		}
+
+	}
+
+	/**
+	 * Builds a struct as a map with values of a given type.
+	 */
+	private static class MapBuilder implements TypedValueBuilder {
+
+		private final Type valueType;
+		private final Map<String, Object> map;
+
+		@SuppressWarnings("unchecked")
+		MapBuilder(Type target, Class<?> raw) throws XMLRPCException {
+			this.valueType = typeArgument(target, 1);
+			Class<?> fallback = SortedMap.class.isAssignableFrom(raw) ? TreeMap.class
+					: ConcurrentMap.class.isAssignableFrom(raw) ? ConcurrentHashMap.class : HashMap.class;
+			this.map = newInstance(raw, (Class<? extends Map<String, Object>>)(Class<?>)fallback);
+		}
+
+		public Type getMemberType(String name) {
+			return valueType;
+		}
+
+		public Type getElementType() {
+			return null;
+		}
+
+		public void characters(char[] ch, int start, int length) throws XMLRPCException {
+			if(!XMLUtil.isWhitespace(ch, start, length)) {
+				throw new XMLRPCException("Only struct members allowed within a struct.");
+			}
+		}
+
+		public void member(String name, Object value) throws XMLRPCException {
+			map.put(name, convert(value, valueType));
+		}
+
+		public void element(Object value) throws XMLRPCException {
+			throw new XMLRPCException("Only struct members allowed within a struct.");
+		}
+
+		public Object build() {
+			return map;
+		}
+
+		public void abort() {
+		}
+
+	}
+
+	/**
+	 * Builds an array as an array or a collection with elements of a given type.
+	 */
+	private static class CollectionBuilder implements TypedValueBuilder {
+
+		private final Type target;
+		private final Class<?> raw;
+		private final Type elementType;
+		private final List<Object> list = new ArrayList<Object>();
+
+		CollectionBuilder(Type target, Class<?> raw) {
+			this.target = target;
+			this.raw = raw;
+			if(target instanceof GenericArrayType) {
+				this.elementType = ((GenericArrayType)target).getGenericComponentType();
+			} else if(raw.isArray()) {
+				this.elementType = raw.getComponentType() == Object.class ? null : raw.getComponentType();
+			} else {
+				this.elementType = typeArgument(target, 0);
+			}
+		}
+
+		public Type getMemberType(String name) {
+			return null;
+		}
+
+		public Type getElementType() {
+			return elementType;
+		}
+
+		public void characters(char[] ch, int start, int length) throws XMLRPCException {
+			if(!XMLUtil.isWhitespace(ch, start, length)) {
+				throw new XMLRPCException("Wrong element inside of array.");
+			}
+		}
+
+		public void member(String name, Object value) throws XMLRPCException {
+			throw new XMLRPCException("Wrong element inside of array.");
+		}
+
+		public void element(Object value) throws XMLRPCException {
+			list.add(convert(value, elementType));
+		}
+
+		@SuppressWarnings("unchecked")
+		public Object build() throws XMLRPCException {
+			if(raw.isArray()) {
+				Object array = Array.newInstance(raw.getComponentType(), list.size());
+				for(int i = 0; i < list.size(); i++) {
+					Array.set(array, i, list.get(i));
+				}
+				return array;
+			}
+			if(raw.isAssignableFrom(ArrayList.class)) {
+				return list;
+			}
+			Class<?> fallback = SortedSet.class.isAssignableFrom(raw) ? TreeSet.class
+					: Set.class.isAssignableFrom(raw) ? LinkedHashSet.class
+					: Queue.class.isAssignableFrom(raw) ? ArrayDeque.class : ArrayList.class;
+			Collection<Object> collection = newInstance(raw, (Class<? extends Collection<Object>>)(Class<?>)fallback);
+			collection.addAll(list);
+			return collection;
+		}
+
+		public void abort() {
+		}
+
+	}
+
+	/**
+	 * Converts the value of another builder once it has been built.
+	 */
+	private static class ConvertingBuilder implements ValueBuilder {
+
+		private final ValueBuilder builder;
+		private final Type target;
+
+		ConvertingBuilder(ValueBuilder builder, Type target) {
+			this.builder = builder;
+			this.target = target;
+		}
+
+		public void characters(char[] ch, int start, int length) throws XMLRPCException {
+			builder.characters(ch, start, length);
+		}
+
+		public void member(String name, Object value) throws XMLRPCException {
+			builder.member(name, value);
+		}
+
+		public void element(Object value) throws XMLRPCException {
+			builder.element(value);
+		}
+
+		public Object build() throws XMLRPCException {
+			return convert(builder.build(), target);
+		}
+
+		public void abort() {
+			builder.abort();
+		}
+
+	}
+
+}
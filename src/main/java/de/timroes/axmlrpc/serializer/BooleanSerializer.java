@@ -3,17 +3,31 @@ package de.timroes.axmlrpc.serializer;
 import de.timroes.axmlrpc.XMLRPCException;
 import de.timroes.axmlrpc.XMLUtil;
 import de.timroes.axmlrpc.xmlcreator.XmlElement;
+import de.timroes.axmlrpc.xmlcreator.XmlWriter;
+import java.io.IOException;
 import org.w3c.dom.Element;
 
 /**
  *
  * @author Tim Roes
  */
-public class BooleanSerializer implements Serializer {
+public class BooleanSerializer implements Serializer, StreamingSerializer {
 
 	public Object deserialize(Element content) throws XMLRPCException {
-		return XMLUtil.getOnlyTextContent(content.getChildNodes()).equals("1")
-				? Boolean.TRUE : Boolean.FALSE;
+		return deserialize(XMLUtil.getOnlyTextContent(content.getChildNodes()));
+	}
+
+	public Object deserialize(String content) throws XMLRPCException {
+		return content.equals("1") ? Boolean.TRUE : Boolean.FALSE;
+	}
+
+	public ValueBuilder newBuilder() {
+		return new TextValueBuilder() {
+			@Override
+			protected Object build(String content) throws XMLRPCException {
+				return deserialize(content);
+			}
+		};
 	}
 
 	public XmlElement serialize(Object object) {
@@ -21,4 +35,8 @@ public class BooleanSerializer implements Serializer {
 				(Boolean)object ? "1" : "0");
 	}
 
-}
\ No newline at end of file
+	public void serialize(XmlWriter writer, Object object) throws IOException {
+		writer.element(SerializerHandler.TYPE_BOOLEAN, (Boolean)object ? "1" : "0");
+	}
+
+}
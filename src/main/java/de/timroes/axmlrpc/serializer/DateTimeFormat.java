@@ -0,0 +1,331 @@
+package de.timroes.axmlrpc.serializer;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * A thread-safe formatter for the dateTime.iso8601 values, and a parser for
+ * their common forms. It computes the date fields from the time itself
+ * instead of using a Calendar, so that it can be shared by all threads
+ * without locks and doesn't allocate anything but the resulting string.
+ *
+ * Patterns made of the numeric fields y, M, d, H, m, s and S and of literal
+ * text are formatted like by a {@link SimpleDateFormat}. Other patterns, and
+ * dates outside of the years 1583 to 9999, are formatted with a
+ * SimpleDateFormat kept per thread.
+ */
+class DateTimeFormat {
+
+	private static final long MILLIS_PER_DAY = 86400000L;
+	private static final int MIN_YEAR = 1583;
+	private static final int MAX_YEAR = 9999;
+
+	/** The pattern as literal strings and fields, null if it isn't supported. */
+	private final Object[] segments;
+	private final int length;
+	private final TimeZone zone;
+	private final ThreadLocal<SimpleDateFormat> fallback;
+
+	/**
+	 * Create a new format.
+	 *
+	 * @param pattern The pattern as used by a {@link SimpleDateFormat}.
+	 * @param zone The time zone of the formatted and parsed local times.
+	 */
+	DateTimeFormat(final String pattern, final TimeZone zone) {
+		this.zone = zone;
+		this.segments = compile(pattern);
+		int length = 0;
+		if(segments != null) {
+			for(Object segment : segments) {
+				length += segment instanceof String ? ((String)segment).length() : ((Field)segment).maxLength();
+			}
+		}
+		this.length = length;
+		// Validate the pattern right away, like the SimpleDateFormat did before
+		new SimpleDateFormat(pattern);
+		this.fallback = new ThreadLocal<SimpleDateFormat>() {
+			@Override
+			protected SimpleDateFormat initialValue() {
+				SimpleDateFormat format = new SimpleDateFormat(pattern);
+				format.setTimeZone(zone);
+				return format;
+			}
+		};
+	}
+
+	/**
+	 * Returns the time zone of the local times.
+	 *
+	 * @return The time zone.
+	 */
+	TimeZone getTimeZone() {
+		return zone;
+	}
+
+	/**
+	 * Format a point in time as local time of the time zone.
+	 *
+	 * @param millis The milliseconds since the epoch.
+	 * @return The formatted time.
+	 */
+	String format(long millis) {
+		long local = millis + zone.getOffset(millis);
+		long days = floorDiv(local, MILLIS_PER_DAY);
+		int millisOfDay = (int)(local - days * MILLIS_PER_DAY);
+
+		// Civil date from the days since the epoch, in the proleptic Gregorian calendar
+		long z = days + 719468;
+		long era = (z >= 0 ? z : z - 146096) / 146097;
+		int doe = (int)(z - era * 146097);
+		int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		int mp = (5 * doy + 2) / 153;
+		int day = doy - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+		if(segments == null || year < MIN_YEAR || year > MAX_YEAR) {
+			// Julian calendar and eras are left to the SimpleDateFormat
+			return fallback.get().format(new Date(millis));
+		}
+		return format((int)year, month, day, millisOfDay / 3600000, millisOfDay / 60000 % 60,
+				millisOfDay / 1000 % 60, millisOfDay % 1000);
+	}
+
+	/**
+	 * Format local date and time fields.
+	 *
+	 * @return The formatted time.
+	 */
+	String format(int year, int month, int day, int hour, int minute, int second, int millis) {
+		if(segments == null || year < MIN_YEAR || year > MAX_YEAR) {
+			long local = toLocalMillis(year, month, day, hour, minute, second, millis);
+			return format(local - offsetOfLocal(local));
+		}
+		char[] out = new char[length];
+		int position = 0;
+		for(Object segment : segments) {
+			if(segment instanceof String) {
+				String literal = (String)segment;
+				literal.getChars(0, literal.length(), out, position);
+				position += literal.length();
+				continue;
+			}
+			Field field = (Field)segment;
+			int value;
+			switch(field.letter) {
+				case 'y': value = field.count == 2 ? year % 100 : year; break;
+				case 'M': value = month; break;
+				case 'd': value = day; break;
+				case 'H': value = hour; break;
+				case 'm': value = minute; break;
+				case 's': value = second; break;
+				default: value = millis; break;
+			}
+			// Values are padded with zeros to the length of the field
+			int digits = value >= 1000 ? 4 : value >= 100 ? 3 : value >= 10 ? 2 : 1;
+			int count = Math.max(field.count, digits);
+			for(int i = position + count - 1; i >= position; i--) {
+				out[i] = (char)('0' + value % 10);
+				value /= 10;
+			}
+			position += count;
+		}
+		return new String(out, 0, position);
+	}
+
+	/**
+	 * Parse the common forms of a dateTime.iso8601 value: yyyyMMddTHHmmss
+	 * and yyyy-MM-ddTHH:mm:ss, each optionally followed by a Z for UTC.
+	 *
+	 * @param text The text to parse.
+	 * @return The local time as milliseconds since the epoch as if it was
+	 *		UTC, or Long.MIN_VALUE if the text isn't in one of these forms.
+	 */
+	static long parseLocal(String text) {
+		int length = text.length();
+		if(length > 0 && text.charAt(length - 1) == 'Z') {
+			length--;
+		}
+		boolean extended;
+		if(length == 15) {
+			extended = false;
+		} else if(length == 19) {
+			extended = true;
+		} else {
+			return Long.MIN_VALUE;
+		}
+		int year = digits(text, 0, 4);
+		int i = extended ? 5 : 4;
+		int month = digits(text, i, 2);
+		i += extended ? 3 : 2;
+		int day = digits(text, i, 2);
+		i += 2;
+		if(text.charAt(i) != 'T') {
+			return Long.MIN_VALUE;
+		}
+		i++;
+		int hour = digits(text, i, 2);
+		i += extended ? 3 : 2;
+		int minute = digits(text, i, 2);
+		i += extended ? 3 : 2;
+		int second = digits(text, i, 2);
+		if(extended && (text.charAt(4) != '-' || text.charAt(7) != '-'
+				|| text.charAt(13) != ':' || text.charAt(16) != ':')) {
+			return Long.MIN_VALUE;
+		}
+		if(year < MIN_YEAR || month < 1 || month > 12 || day < 1 || day > daysOfMonth(year, month)
+				|| hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+			return Long.MIN_VALUE;
+		}
+		return toLocalMillis(year, month, day, hour, minute, second, 0);
+	}
+
+	/**
+	 * Checks whether a text parsed by {@link #parseLocal(java.lang.String)}
+	 * is in UTC.
+	 */
+	static boolean isUtc(String text) {
+		return text.length() > 0 && text.charAt(text.length() - 1) == 'Z';
+	}
+
+	/**
+	 * Returns the point in time of a local time in the time zone.
+	 *
+	 * @param local The local time as milliseconds since the epoch as if it was UTC.
+	 * @return The milliseconds since the epoch, or Long.MIN_VALUE if the
+	 *		local time is close to a change of the offset of the time zone.
+	 */
+	long toMillis(long local) {
+		long offset = offsetOfLocal(local);
+		long millis = local - offset;
+		// Gaps and overlaps at offset changes are left to a Calendar
+		if(zone.getOffset(millis - MILLIS_PER_DAY) != offset
+				|| zone.getOffset(millis + MILLIS_PER_DAY) != offset) {
+			return Long.MIN_VALUE;
+		}
+		return millis;
+	}
+
+	private long offsetOfLocal(long local) {
+		return zone.getOffset(local - zone.getOffset(local - zone.getRawOffset()));
+	}
+
+	private static long toLocalMillis(int year, int month, int day, int hour, int minute, int second, int millis) {
+		// Days since the epoch of a date in the proleptic Gregorian calendar
+		long y = month <= 2 ? year - 1 : year;
+		long era = (y >= 0 ? y : y - 399) / 400;
+		long yoe = y - era * 400;
+		long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		long days = era * 146097 + doe - 719468;
+		return days * MILLIS_PER_DAY + hour * 3600000L + minute * 60000L + second * 1000L + millis;
+	}
+
+	private static int daysOfMonth(int year, int month) {
+		if(month == 2) {
+			return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+		}
+		return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+	}
+
+	/**
+	 * Parses a number of decimal digits, returns -1 if one of them isn't a digit.
+	 */
+	private static int digits(String text, int start, int count) {
+		int value = 0;
+		for(int i = start; i < start + count; i++) {
+			int digit = text.charAt(i) - '0';
+			if(digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private static long floorDiv(long x, long y) {
+		long q = x / y;
+		return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+	}
+
+	/**
+	 * Splits a pattern into literal strings and fields.
+	 *
+	 * @return The segments, or null if the pattern contains other fields
+	 *		than the supported ones.
+	 */
+	private static Object[] compile(String pattern) {
+		List<Object> segments = new ArrayList<Object>();
+		StringBuilder literal = new StringBuilder();
+		int i = 0;
+		while(i < pattern.length()) {
+			char c = pattern.charAt(i);
+			if(c == '\'') {
+				int end = pattern.indexOf('\'', i + 1);
+				if(end == i + 1) {
+					// Two quotes are a quote
+					literal.append('\'');
+					i += 2;
+					continue;
+				}
+				if(end < 0) {
+					return null;
+				}
+				// Quotes doubled inside a quoted text are left to the SimpleDateFormat
+				if(end + 1 < pattern.length() && pattern.charAt(end + 1) == '\'') {
+					return null;
+				}
+				literal.append(pattern, i + 1, end);
+				i = end + 1;
+			} else if((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+				int count = 1;
+				while(i + count < pattern.length() && pattern.charAt(i + count) == c) {
+					count++;
+				}
+				if("yMdHmsS".indexOf(c) < 0 || (c == 'M' && count > 2)) {
+					return null;
+				}
+				if(literal.length() > 0) {
+					segments.add(literal.toString());
+					literal.setLength(0);
+				}
+				segments.add(new Field(c, count));
+				i += count;
+			} else {
+				literal.append(c);
+				i++;
+			}
+		}
+		if(literal.length() > 0) {
+			segments.add(literal.toString());
+		}
+		return segments.toArray();
+	}
+
+	private static class Field {
+
+		final char letter;
+		final int count;
+
+		Field(char letter, int count) {
+			this.letter = letter;
+			this.count = count;
+		}
+
+		/**
+		 * Returns the maximum number of characters of the field, for the
+		 * supported years.
+		 */
+		int maxLength() {
+			int digits = letter == 'y' ? (count == 2 ? 2 : 4) : letter == 'S' ? 3 : 2;
+			return Math.max(count, digits);
+		}
+
+	}
+
+}
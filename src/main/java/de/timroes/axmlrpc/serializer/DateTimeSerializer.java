@@ -1,35 +1,92 @@
 package de.timroes.axmlrpc.serializer;
 
-import java.text.SimpleDateFormat;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
 
 import org.w3c.dom.Element;
 
 import de.timroes.axmlrpc.XMLRPCException;
 import de.timroes.axmlrpc.XMLUtil;
 import de.timroes.axmlrpc.xmlcreator.XmlElement;
+import de.timroes.axmlrpc.xmlcreator.XmlWriter;
 import fr.turri.jiso8601.Iso8601Deserializer;
 
 /**
+ * Serializes dates, calendars and, if the runtime has them, the java.time
+ * types Instant, LocalDateTime and OffsetDateTime. The serializer is
+ * thread-safe and doesn't lock: local times use the default time zone at
+ * the time the serializer has been created.
  *
  * @author timroes
  */
-public class DateTimeSerializer implements Serializer {
+public class DateTimeSerializer implements Serializer, StreamingSerializer {
 
 	public static final String DEFAULT_DATETIME_FORMAT = "yyyyMMdd'T'HHmmss";
-	private final SimpleDateFormat dateFormatter;
+
+	/** Whether the runtime has java.time. */
+	static final boolean JAVA_TIME;
+
+	static {
+		boolean javaTime;
+		try {
+			Class.forName("java.time.OffsetDateTime");
+			javaTime = true;
+		} catch(Throwable ex) {
+			javaTime = false;
+		}
+		JAVA_TIME = javaTime;
+	}
+
+	private final DateTimeFormat dateFormatter;
 
 	private final boolean accepts_null_input;
+	private final boolean returnsJavaTime;
 
 	public DateTimeSerializer(boolean accepts_null_input) {
-		this.accepts_null_input = accepts_null_input;
-		this.dateFormatter = new SimpleDateFormat(DEFAULT_DATETIME_FORMAT);
+		this(accepts_null_input, DEFAULT_DATETIME_FORMAT);
 	}
 
 	public DateTimeSerializer(boolean accepts_null_input, String datetimeFormat) {
+		this(accepts_null_input, datetimeFormat, false);
+	}
+
+	/**
+	 * Create a new serializer.
+	 *
+	 * @param accepts_null_input Whether empty values are deserialized to null.
+	 * @param datetimeFormat The pattern to format the values with, as used by
+	 *		a {@link java.text.SimpleDateFormat}.
+	 * @param returnsJavaTime Whether values are deserialized to a
+	 *		LocalDateTime, or an OffsetDateTime if they have a time zone,
+	 *		instead of a Date. This is ignored if the runtime hasn't java.time.
+	 */
+	public DateTimeSerializer(boolean accepts_null_input, String datetimeFormat, boolean returnsJavaTime) {
 		this.accepts_null_input = accepts_null_input;
-		this.dateFormatter = new SimpleDateFormat(datetimeFormat);
+		this.dateFormatter = new DateTimeFormat(datetimeFormat, TimeZone.getDefault());
+		this.returnsJavaTime = returnsJavaTime && JAVA_TIME;
 	}
 
+	/**
+	 * Checks whether an object is a java.time type this serializer supports.
+	 *
+	 * @param object The object to check.
+	 * @return Whether the object is an Instant, LocalDateTime or OffsetDateTime.
+	 */
+	static boolean isJavaTime(Object object) {
+		return JAVA_TIME && JavaTime.isDateTime(object);
+	}
+
+	/**
+	 * Checks whether a class is a java.time type this serializer supports.
+	 *
+	 * @param type The class to check.
+	 * @return Whether the class is Instant, LocalDateTime or OffsetDateTime.
+	 */
+	static boolean isJavaTimeType(Class<?> type) {
+		return JAVA_TIME && JavaTime.isDateTimeType(type);
+	}
 
 	@Override
 	public Object deserialize(Element content) throws XMLRPCException {
@@ -41,6 +98,27 @@ public class DateTimeSerializer implements Serializer {
 			return null;
 		}
 
+		if(returnsJavaTime) {
+			return JavaTime.parse(dateFormatter, dateStr, this);
+		}
+		return parseDate(dateStr);
+	}
+
+	/**
+	 * Parse a value to a Date. The common forms are parsed directly, all
+	 * others by the ISO 8601 parser.
+	 */
+	Date parseDate(String dateStr) throws XMLRPCException {
+		if(dateStr != null) {
+			long local = DateTimeFormat.parseLocal(dateStr);
+			if(local != Long.MIN_VALUE) {
+				long millis = DateTimeFormat.isUtc(dateStr) ? local : dateFormatter.toMillis(local);
+				if(millis != Long.MIN_VALUE) {
+					return new Date(millis);
+				}
+			}
+		}
+
 		try {
 			return Iso8601Deserializer.toDate(dateStr);
 		} catch (Exception ex) {
@@ -48,10 +126,34 @@ public class DateTimeSerializer implements Serializer {
 		}
 	}
 
+	@Override
+	public ValueBuilder newBuilder() {
+		return new TextValueBuilder() {
+			@Override
+			protected Object build(String content) throws XMLRPCException {
+				return deserialize(content);
+			}
+		};
+	}
+
 	@Override
 	public XmlElement serialize(Object object) {
-		return XMLUtil.makeXmlTag(SerializerHandler.TYPE_DATETIME,
-				dateFormatter.format(object));
+		return XMLUtil.makeXmlTag(SerializerHandler.TYPE_DATETIME, format(object));
+	}
+
+	@Override
+	public void serialize(XmlWriter writer, Object object) throws IOException {
+		writer.element(SerializerHandler.TYPE_DATETIME, format(object));
+	}
+
+	private String format(Object object) {
+		if(object instanceof Date) {
+			return dateFormatter.format(((Date)object).getTime());
+		}
+		if(object instanceof Calendar) {
+			return dateFormatter.format(((Calendar)object).getTimeInMillis());
+		}
+		return JavaTime.format(dateFormatter, object);
 	}
 
 }
@@ -3,6 +3,8 @@ package de.timroes.axmlrpc.serializer;
 import de.timroes.axmlrpc.XMLRPCException;
 import de.timroes.axmlrpc.XMLUtil;
 import de.timroes.axmlrpc.xmlcreator.XmlElement;
+import de.timroes.axmlrpc.xmlcreator.XmlWriter;
+import java.io.IOException;
 import java.math.BigDecimal;
 import org.w3c.dom.Element;
 
@@ -11,17 +13,38 @@ import org.w3c.dom.Element;
  * 
  * @author Tim Roes
  */
-public class DoubleSerializer implements Serializer {
+public class DoubleSerializer implements Serializer, StreamingSerializer {
 
 	public Object deserialize(Element content) throws XMLRPCException {
-		return Double.valueOf(XMLUtil.getOnlyTextContent(content.getChildNodes()));
+		return deserialize(XMLUtil.getOnlyTextContent(content.getChildNodes()));
+	}
+
+	public Object deserialize(String content) throws XMLRPCException {
+		return Double.valueOf(content);
+	}
+
+	public ValueBuilder newBuilder() {
+		return new TextValueBuilder() {
+			@Override
+			protected Object build(String content) throws XMLRPCException {
+				return deserialize(content);
+			}
+		};
 	}
 
 	public XmlElement serialize(Object object) {
+		return XMLUtil.makeXmlTag(SerializerHandler.TYPE_DOUBLE, format(object));
+	}
+
+	public void serialize(XmlWriter writer, Object object) throws IOException {
+		writer.element(SerializerHandler.TYPE_DOUBLE, format(object));
+	}
+
+	private String format(Object object) {
 		// Turn double value of object into a BigDecimal to get the
 		// right decimal point format.
 		BigDecimal bd = BigDecimal.valueOf(((Number)object).doubleValue());
-		return XMLUtil.makeXmlTag(SerializerHandler.TYPE_DOUBLE, bd.toPlainString());
+		return bd.toPlainString();
 	}
 
 }
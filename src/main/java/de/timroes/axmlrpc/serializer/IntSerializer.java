@@ -3,16 +3,31 @@ package de.timroes.axmlrpc.serializer;
 import de.timroes.axmlrpc.XMLRPCException;
 import de.timroes.axmlrpc.XMLUtil;
 import de.timroes.axmlrpc.xmlcreator.XmlElement;
+import de.timroes.axmlrpc.xmlcreator.XmlWriter;
+import java.io.IOException;
 import org.w3c.dom.Element;
 
 /**
  *
  * @author timroes
  */
-public class IntSerializer implements Serializer {
+public class IntSerializer implements Serializer, StreamingSerializer {
 
 	public Object deserialize(Element content) throws XMLRPCException {
-		return Integer.parseInt(XMLUtil.getOnlyTextContent(content.getChildNodes()));
+		return deserialize(XMLUtil.getOnlyTextContent(content.getChildNodes()));
+	}
+
+	public Object deserialize(String content) throws XMLRPCException {
+		return Integer.parseInt(content);
+	}
+
+	public ValueBuilder newBuilder() {
+		return new TextValueBuilder() {
+			@Override
+			protected Object build(String content) throws XMLRPCException {
+				return deserialize(content);
+			}
+		};
 	}
 
 	public XmlElement serialize(Object object) {
@@ -20,4 +35,8 @@ public class IntSerializer implements Serializer {
 				object.toString());
 	}
 
+	public void serialize(XmlWriter writer, Object object) throws IOException {
+		writer.element(SerializerHandler.TYPE_INT, object.toString());
+	}
+
 }
@@ -0,0 +1,116 @@
+package de.timroes.axmlrpc.serializer;
+
+import de.timroes.axmlrpc.XMLRPCException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+
+/**
+ * Converts between dateTime.iso8601 values and the java.time types.
+ * This class must only be loaded if the runtime has java.time (Java 8 and
+ * Android API level 26 and later), see {@link DateTimeSerializer#JAVA_TIME}.
+ */
+class JavaTime {
+
+	private JavaTime() {}
+
+	/**
+	 * Checks whether an object is an Instant, LocalDateTime or OffsetDateTime.
+	 */
+	static boolean isDateTime(Object object) {
+		return object instanceof Instant || object instanceof LocalDateTime
+				|| object instanceof OffsetDateTime;
+	}
+
+	/**
+	 * Checks whether a class is Instant, LocalDateTime or OffsetDateTime.
+	 */
+	static boolean isDateTimeType(Class<?> type) {
+		return type == Instant.class || type == LocalDateTime.class || type == OffsetDateTime.class;
+	}
+
+	/**
+	 * Format an Instant, LocalDateTime or OffsetDateTime. Instants and
+	 * OffsetDateTimes are formatted as local time of the format's time zone,
+	 * like dates.
+	 */
+	static String format(DateTimeFormat format, Object object) {
+		if(object instanceof LocalDateTime) {
+			LocalDateTime time = (LocalDateTime)object;
+			return format.format(time.getYear(), time.getMonthValue(), time.getDayOfMonth(),
+					time.getHour(), time.getMinute(), time.getSecond(), time.getNano() / 1000000);
+		}
+		Instant instant = object instanceof Instant
+				? (Instant)object : ((OffsetDateTime)object).toInstant();
+		return format.format(instant.toEpochMilli());
+	}
+
+	/**
+	 * Parse a dateTime.iso8601 value to a LocalDateTime, or to an
+	 * OffsetDateTime if the value has a time zone.
+	 *
+	 * @param format The format, whose time zone is used for values only
+	 *		understood as a Date.
+	 * @param text The text to parse.
+	 * @param date Parses the text to a Date if java.time can't.
+	 */
+	static Object parse(DateTimeFormat format, String text, DateTimeSerializer date) throws XMLRPCException {
+		long local = DateTimeFormat.parseLocal(text);
+		if(local != Long.MIN_VALUE) {
+			LocalDateTime time = LocalDateTime.ofEpochSecond(local / 1000, 0, ZoneOffset.UTC);
+			return DateTimeFormat.isUtc(text) ? time.atOffset(ZoneOffset.UTC) : time;
+		}
+		try {
+			return OffsetDateTime.parse(text);
+		} catch(DateTimeParseException ex) {
+			// Not an extended date and time with offset
+		}
+		try {
+			return LocalDateTime.parse(text);
+		} catch(DateTimeParseException ex) {
+			// Not an extended date and time
+		}
+		Date parsed = date.parseDate(text);
+		return LocalDateTime.ofInstant(Instant.ofEpochMilli(parsed.getTime()),
+				format.getTimeZone().toZoneId());
+	}
+
+	/**
+	 * Converts between dates and the java.time types, using the default
+	 * time zone for local times.
+	 *
+	 * @param value A Date, Instant, LocalDateTime or OffsetDateTime.
+	 * @param target The type to convert to.
+	 * @return The converted value, or null if it can't be converted.
+	 */
+	static Object convert(Object value, Class<?> target) {
+		ZoneId zone = ZoneId.systemDefault();
+		Instant instant;
+		if(value instanceof Date) {
+			instant = Instant.ofEpochMilli(((Date)value).getTime());
+		} else if(value instanceof Instant) {
+			instant = (Instant)value;
+		} else if(value instanceof OffsetDateTime) {
+			instant = ((OffsetDateTime)value).toInstant();
+		} else if(value instanceof LocalDateTime) {
+			instant = ((LocalDateTime)value).atZone(zone).toInstant();
+		} else {
+			return null;
+		}
+		if(target == Instant.class) {
+			return instant;
+		} else if(target == LocalDateTime.class) {
+			return LocalDateTime.ofInstant(instant, zone);
+		} else if(target == OffsetDateTime.class) {
+			return OffsetDateTime.ofInstant(instant, zone);
+		} else if(target == Date.class) {
+			return new Date(instant.toEpochMilli());
+		}
+		return null;
+	}
+
+}
@@ -4,11 +4,21 @@ import de.timroes.axmlrpc.XMLRPCClient;
 import de.timroes.axmlrpc.XMLRPCException;
 import de.timroes.axmlrpc.XMLUtil;
 import de.timroes.axmlrpc.xmlcreator.XmlElement;
+import de.timroes.axmlrpc.xmlcreator.XmlWriter;
+import java.io.IOException;
+import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 /**
  * The serializer handler serializes and deserializes objects.
@@ -31,6 +41,10 @@ public class SerializerHandler {
 	public static final String TYPE_BASE64 = "base64";
 	public static final String TYPE_NULL = "nil";
 
+	private static final String STRUCT_MEMBER = "member";
+	private static final String STRUCT_NAME = "name";
+	private static final String ARRAY_DATA = "data";
+
 	private StringSerializer string;
 	private BooleanSerializer bool = new BooleanSerializer();
 	private IntSerializer integer = new IntSerializer();
@@ -43,6 +57,18 @@ public class SerializerHandler {
 	private NullSerializer nil = new NullSerializer();
 
 	private int flags;
+	private final boolean ignoreNamespaces;
+
+	/** The serializer of every type element, filled once by the constructor. */
+	private final Map<String, Serializer> deserializers = new HashMap<String, Serializer>();
+
+	/** The serializer of every class looked up so far. */
+	private final ConcurrentHashMap<Class<?>, Serializer> serializers =
+			new ConcurrentHashMap<Class<?>, Serializer>();
+
+	/** The serializers registered for custom types, in registration order. */
+	private volatile Map<Class<?>, Serializer> custom = Collections.emptyMap();
+	private final ReentrantLock customLock = new ReentrantLock();
 
 	public SerializerHandler(){
 		this(XMLRPCClient.FLAGS_DEBUG);
@@ -59,7 +85,26 @@ public class SerializerHandler {
 		struct = new StructSerializer(this);
 		array = new ArraySerializer(this);
 		boolean accepts_null_input = (flags & XMLRPCClient.FLAGS_ACCEPT_NULL_DATES) != 0;
-		datetime = new DateTimeSerializer(accepts_null_input, datetimeFormat);
+		datetime = new DateTimeSerializer(accepts_null_input, datetimeFormat,
+				(flags & XMLRPCClient.FLAGS_JAVA_TIME) != 0);
+		ignoreNamespaces = (flags & XMLRPCClient.FLAGS_IGNORE_NAMESPACES) != 0;
+
+		// The type elements accepted with these flags
+		if((flags & XMLRPCClient.FLAGS_NIL) != 0) {
+			deserializers.put(TYPE_NULL, nil);
+		}
+		deserializers.put(TYPE_STRING, string);
+		deserializers.put(TYPE_BOOLEAN, bool);
+		deserializers.put(TYPE_DOUBLE, floating);
+		deserializers.put(TYPE_INT, integer);
+		deserializers.put(TYPE_INT2, integer);
+		deserializers.put(TYPE_DATETIME, datetime);
+		if((flags & XMLRPCClient.FLAGS_8BYTE_INT) != 0) {
+			deserializers.put(TYPE_LONG, long8);
+		}
+		deserializers.put(TYPE_STRUCT, struct);
+		deserializers.put(TYPE_ARRAY, array);
+		deserializers.put(TYPE_BASE64, base64);
 	}
 
 	/**
@@ -76,8 +121,28 @@ public class SerializerHandler {
 		if(!XMLRPCClient.VALUE.equals(element.getNodeName())) {
 			throw new XMLRPCException("Value tag is missing around value.");
 		}
-		
-		if(!XMLUtil.hasChildElement(element.getChildNodes())) {
+
+		// Find the type element inside the value element in a single pass.
+		// Anything but whitespace and comments beside it is an error, which
+		// is only reported if there is a type element at all.
+		Element childElement = null;
+		String error = null;
+		for(Node n = element.getFirstChild(); n != null; n = n.getNextSibling()) {
+			short nodeType = n.getNodeType();
+			if(nodeType == Node.ELEMENT_NODE) {
+				if(childElement == null) {
+					childElement = (Element)n;
+				} else if(error == null) {
+					error = "Element has more than one children.";
+				}
+			} else if(nodeType != Node.COMMENT_NODE
+					&& (nodeType != Node.TEXT_NODE || !isWhitespace(n.getNodeValue()))
+					&& error == null) {
+				error = "Only element nodes allowed.";
+			}
+		}
+
+		if(childElement == null) {
 			// Value element doesn't contain a child element
 			if((flags & XMLRPCClient.FLAGS_DEFAULT_TYPE_STRING) != 0) {
 				return string.deserialize(element);
@@ -85,54 +150,257 @@ public class SerializerHandler {
 				throw new XMLRPCException("Missing type element inside of value element.");
 			}
 		}
-			
-		// Grep type element from inside value element
-		Element childElement = XMLUtil.getOnlyChildElement(element.getChildNodes());
+		if(error != null) {
+			throw new XMLRPCException(error);
+		}
 
-		Serializer s;
+		String type = typeName(childElement);
+
+		Serializer s = getDeserializer(type);
+
+		return s.deserialize(childElement);
+
+	}
+
+	/**
+	 * Creates a builder for a value read from a stream.
+	 * The type of the returning object depends on the type tag.
+	 *
+	 * @param type The name of the type element within the value tag, or null
+	 *		if the value tag doesn't contain a type element.
+	 * @return A builder to feed with the content of the type element.
+	 * @throws XMLRPCException Will be thrown whenever an error occurs.
+	 */
+	public ValueBuilder newValueBuilder(String type) throws XMLRPCException {
+
+		if(type == null) {
+			// Value element doesn't contain a child element
+			if((flags & XMLRPCClient.FLAGS_DEFAULT_TYPE_STRING) != 0) {
+				return string.newBuilder();
+			} else {
+				throw new XMLRPCException("Missing type element inside of value element.");
+			}
+		}
+
+		Serializer s = getDeserializer(type);
+		if(!(s instanceof StreamingSerializer)) {
+			throw new XMLRPCException("No streaming deserializer found for type '" + type + "'.");
+		}
+
+		return ((StreamingSerializer)s).newBuilder();
+
+	}
+
+	/**
+	 * Sets the sink to decode base64 values of responses to. The values are
+	 * then returned as {@link BinaryValue} handles instead of byte arrays.
+	 *
+	 * @param sink The sink, or null to return byte arrays again.
+	 */
+	public void setBase64Sink(Base64Sink sink) {
+		base64.setSink(sink);
+	}
+
+	/**
+	 * Returns the sink base64 values of responses are decoded to.
+	 *
+	 * @return The sink, or null if they are returned as byte arrays.
+	 */
+	public Base64Sink getBase64Sink() {
+		return base64.getSink();
+	}
+
+	/**
+	 * Creates a builder for a value read from a stream, which binds the value
+	 * to the given type. Structs are bound to maps or to the fields of an
+	 * object (see {@link #deserialize(org.w3c.dom.Element, java.lang.reflect.Type)}),
+	 * arrays to arrays or collections. Their builders are {@link TypedValueBuilder
+	 * TypedValueBuilders}, which tell the types of their members and elements.
+	 *
+	 * @param type The name of the type element within the value tag, or null
+	 *		if the value tag doesn't contain a type element.
+	 * @param target The type to bind the value to, or null to build it as it is.
+	 * @return A builder to feed with the content of the type element.
+	 * @throws XMLRPCException Will be thrown whenever an error occurs.
+	 */
+	public ValueBuilder newValueBuilder(String type, Type target) throws XMLRPCException {
+		ValueBuilder builder = newValueBuilder(type);
+		if(target == null || target == Object.class) {
+			return builder;
+		}
+		if(TYPE_STRUCT.equals(type)) {
+			Serializer codec = custom.get(target);
+			if(codec instanceof StructCodec) {
+				return ((StructCodec<?>)codec).newBuilder();
+			}
+		}
+		return Binder.bind(type, target, builder);
+	}
+
+	/**
+	 * Converts a deserialized value to the given type, like the values of
+	 * {@link #deserialize(org.w3c.dom.Element, java.lang.reflect.Type)} are.
+	 *
+	 * @param value The deserialized value.
+	 * @param target The type to convert the value to, or null to keep it as it is.
+	 * @return The converted value.
+	 * @throws XMLRPCException Will be thrown if the value can't be converted to the type.
+	 */
+	public Object convert(Object value, Type target) throws XMLRPCException {
+		return Binder.convert(value, target);
+	}
+
+	/**
+	 * Deserializes an incoming xml element to an object of the given type.
+	 * A struct is bound to a map, or to an object of a class: records are
+	 * created with their canonical constructor, other classes with their
+	 * constructor without arguments, after which each member is set to the
+	 * field of the same name. Members without a field are ignored.
+	 * An array is bound to an array or a collection. Other values are
+	 * converted to the type, e.g. an int to a long or a string to an enum.
+	 *
+	 * @param element The value element around the type element.
+	 * @param target The type to bind the value to, or null to deserialize it as it is.
+	 * @return The deserialized object.
+	 * @throws XMLRPCException Will be thrown whenever an error occurs, or if
+	 *		the value can't be bound to the type.
+	 */
+	public Object deserialize(Element element, Type target) throws XMLRPCException {
+
+		if(target == null || target == Object.class) {
+			return deserialize(element);
+		}
+
+		Element typeElement = null;
+		for(Node n = element.getFirstChild(); n != null; n = n.getNextSibling()) {
+			if(n.getNodeType() == Node.ELEMENT_NODE) {
+				typeElement = (Element)n;
+				break;
+			}
+		}
+		String type = typeElement == null ? null : typeName(typeElement);
+		if(!TYPE_STRUCT.equals(type) && !TYPE_ARRAY.equals(type)) {
+			return Binder.convert(deserialize(element), target);
+		}
+		// Validates the value element like the untyped deserialization
+		getDeserializer(type);
+		if(!XMLRPCClient.VALUE.equals(element.getNodeName())) {
+			throw new XMLRPCException("Value tag is missing around value.");
+		}
 
-		String type;
+		ValueBuilder builder = newValueBuilder(type, target);
+		if(!(builder instanceof TypedValueBuilder)) {
+			return Binder.convert(deserialize(element), target);
+		}
+		TypedValueBuilder typed = (TypedValueBuilder)builder;
 
-		// If FLAGS_IGNORE_NAMESPACE has been set, only use local name.
-		if((flags & XMLRPCClient.FLAGS_IGNORE_NAMESPACES) != 0) {
-			type = childElement.getLocalName() == null ? childElement.getNodeName() : childElement.getLocalName();
+		if(TYPE_STRUCT.equals(type)) {
+			for(Node n = typeElement.getFirstChild(); n != null; n = n.getNextSibling()) {
+				if(isBlank(n)) {
+					continue;
+				}
+				if(n.getNodeType() != Node.ELEMENT_NODE || !STRUCT_MEMBER.equals(n.getNodeName())) {
+					throw new XMLRPCException("Only struct members allowed within a struct.");
+				}
+				String name = null;
+				Element value = null;
+				for(Node m = n.getFirstChild(); m != null; m = m.getNextSibling()) {
+					if(isBlank(m)) {
+						continue;
+					}
+					if(STRUCT_NAME.equals(m.getNodeName())) {
+						if(name != null) {
+							throw new XMLRPCException("Name of a struct member cannot be set twice.");
+						}
+						name = XMLUtil.getOnlyTextContent(m.getChildNodes());
+					} else if(m.getNodeType() == Node.ELEMENT_NODE && XMLRPCClient.VALUE.equals(m.getNodeName())) {
+						if(value != null) {
+							throw new XMLRPCException("Value of a struct member cannot be set twice.");
+						}
+						value = (Element)m;
+					} else {
+						throw new XMLRPCException("A struct member must only contain one name and one value.");
+					}
+				}
+				typed.member(name, value == null ? null : deserialize(value, typed.getMemberType(name)));
+			}
 		} else {
-			type = childElement.getNodeName();
+			Element data = XMLUtil.getOnlyChildElement(typeElement.getChildNodes());
+			if(data == null || !ARRAY_DATA.equals(data.getNodeName())) {
+				throw new XMLRPCException("The array must contain one data tag.");
+			}
+			for(Node n = data.getFirstChild(); n != null; n = n.getNextSibling()) {
+				if(isBlank(n)) {
+					continue;
+				}
+				if(n.getNodeType() != Node.ELEMENT_NODE) {
+					throw new XMLRPCException("Wrong element inside of array.");
+				}
+				typed.element(deserialize((Element)n, typed.getElementType()));
+			}
 		}
 
-		if((flags & XMLRPCClient.FLAGS_NIL) != 0 && TYPE_NULL.equals(type)) {
-			s = nil;
-		} else if(TYPE_STRING.equals(type)) {
-			s = string;
-		} else if(TYPE_BOOLEAN.equals(type)) {
-			s = bool;
-		} else if(TYPE_DOUBLE.equals(type)) {
-			s = floating;
-		} else if (TYPE_INT.equals(type) || TYPE_INT2.equals(type)) {
-			s = integer;
-		} else if(TYPE_DATETIME.equals(type)) {
-			s = datetime;
-		} else if (TYPE_LONG.equals(type)) {
-			if((flags & XMLRPCClient.FLAGS_8BYTE_INT) != 0) {
-				s = long8;
-			} else {
+		return typed.build();
+
+	}
+
+	/**
+	 * Returns the name of a type element. If FLAGS_IGNORE_NAMESPACE has been
+	 * set, only its local name is used.
+	 */
+	private String typeName(Element typeElement) {
+		if(ignoreNamespaces && typeElement.getLocalName() != null) {
+			return typeElement.getLocalName();
+		}
+		return typeElement.getNodeName();
+	}
+
+	private static boolean isBlank(Node n) {
+		return n.getNodeType() == Node.COMMENT_NODE
+				|| (n.getNodeType() == Node.TEXT_NODE && isWhitespace(n.getNodeValue()));
+	}
+
+	/**
+	 * Returns the flags this handler has been created with.
+	 *
+	 * @return A combination of flags.
+	 */
+	public int getFlags() {
+		return flags;
+	}
+
+	/**
+	 * Returns the serializer responsible for a given type element.
+	 *
+	 * @param type The name of the type element.
+	 * @return The serializer for this type.
+	 * @throws XMLRPCException Will be thrown if there is no serializer for this type.
+	 */
+	private Serializer getDeserializer(String type) throws XMLRPCException {
+
+		Serializer s = deserializers.get(type);
+
+		if(s == null) {
+			if(TYPE_LONG.equals(type)) {
 				throw new XMLRPCException("8 byte integer is not in the specification. "
 						+ "You must use FLAGS_8BYTE_INT to enable the i8 tag.");
 			}
-		} else if(TYPE_STRUCT.equals(type)) {
-			s = struct;
-		} else if(TYPE_ARRAY.equals(type)) {
-			s = array;
-		} else if(TYPE_BASE64.equals(type)) {
-			s = base64;
-		} else {
 			throw new XMLRPCException("No deserializer found for type '" + type + "'.");
 		}
 
-		return s.deserialize(childElement);
+		return s;
 
 	}
 
+	private static boolean isWhitespace(String text) {
+		for(int i = 0; i < text.length(); i++) {
+			if(text.charAt(i) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Serialize an object to its representation as an xml element.
 	 * The xml element will be the type element for the use within a value tag.
@@ -143,60 +411,228 @@ public class SerializerHandler {
 	 * 		cannot be serialized to an xml element.
 	 */
 	public XmlElement serialize(Object object) throws XMLRPCException {
+		return getSerializer(object).serialize(object);
+	}
+
+	/**
+	 * Serialize an object to its representation as an xml element, and write
+	 * it to the given writer.
+	 * The xml element will be the type element for the use within a value tag.
+	 *
+	 * @param writer The writer to write the xml representation to.
+	 * @param object The object that should be serialized.
+	 * @throws XMLRPCException Will be thrown, if an error occurs (e.g. the object
+	 * 		cannot be serialized to an xml element.
+	 * @throws IOException Will be thrown if writing fails.
+	 */
+	public void serialize(XmlWriter writer, Object object) throws XMLRPCException, IOException {
+		Serializer s = getSerializer(object);
+		if(s instanceof StreamingSerializer) {
+			((StreamingSerializer)s).serialize(writer, object);
+		} else {
+			writer.element(s.serialize(object));
+		}
+	}
+
+	/**
+	 * Registers a serializer for a type of objects, so that instances of this
+	 * type (or a subtype) can be passed as parameters. A serializer
+	 * registered for a type is used instead of the built-in serializers.
+	 * If several registered types match an object, the serializer of the
+	 * object's class is used, otherwise the first one registered.
+	 * Only {@link Serializer#serialize(java.lang.Object)} of the serializer is
+	 * used, responses are deserialized by the type of their elements. If the
+	 * serializer is a {@link StreamingSerializer}, it is used to write the
+	 * objects directly to streamed requests.
+	 * Serializers should be registered before the first call is made.
+	 *
+	 * @param type The type of the objects to serialize.
+	 * @param serializer The serializer for this type.
+	 */
+	public void addSerializer(Class<?> type, Serializer serializer) {
+		if(type == null || serializer == null) {
+			throw new NullPointerException("The type and serializer must not be null.");
+		}
+		if(serializer instanceof StructCodec) {
+			((StructCodec<?>)serializer).bind(this);
+		}
+		customLock.lock();
+		try {
+			Map<Class<?>, Serializer> added = new LinkedHashMap<Class<?>, Serializer>(custom);
+			added.put(type, serializer);
+			custom = added;
+			// Classes looked up before may now have another serializer
+			serializers.clear();
+		} finally {
+			customLock.unlock();
+		}
+	}
+
+	/**
+	 * Registers a codec for its type. Objects of the type are then sent as
+	 * structs by the codec, and structs bound to the type (see
+	 * {@link #deserialize(org.w3c.dom.Element, java.lang.reflect.Type)}) are
+	 * built by the codec instead of through reflection.
+	 *
+	 * @param codec The codec.
+	 */
+	public void addCodec(StructCodec<?> codec) {
+		addSerializer(codec.getType(), codec);
+	}
+
+	/**
+	 * Registers all codecs listed as services of the given class loader, i.e.
+	 * in its META-INF/services/de.timroes.axmlrpc.serializer.StructCodec
+	 * files. The annotation processor of the aXMLRPC-processor module lists
+	 * the codecs it generates there.
+	 *
+	 * @param classLoader The class loader to load the codecs with, or null
+	 *		for the system class loader.
+	 * @return The number of registered codecs.
+	 */
+	@SuppressWarnings("rawtypes")
+	public int loadCodecs(ClassLoader classLoader) {
+		int count = 0;
+		for(StructCodec codec : ServiceLoader.load(StructCodec.class, classLoader)) {
+			addCodec(codec);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the serializer responsible for a given object.
+	 * The serializer only depends on the class of the object, so it is looked
+	 * up once per class and kept.
+	 *
+	 * @param object The object that should be serialized.
+	 * @return The serializer for this object.
+	 * @throws XMLRPCException Will be thrown if there is no serializer for this object.
+	 */
+	private Serializer getSerializer(Object object) throws XMLRPCException {
+
+		if(object == null) {
+			if((flags & XMLRPCClient.FLAGS_NIL) != 0) {
+				return nil;
+			}
+			throw new XMLRPCException("FLAGS_NIL must be set, if null values should be transfered.");
+		}
+
+		Class<?> type = object.getClass();
+		Serializer s = lookupSerializer(type);
+
+		if(s == integer && type == Long.class) {
+			// Allow long values as long as their fit within the 4 byte integer range.
+			long l = (Long)object;
+			if(l > Integer.MAX_VALUE || l < Integer.MIN_VALUE) {
+				throw new XMLRPCException("FLAGS_8BYTE_INT must be set, if values "
+						+ "outside the 4 byte integer range should be transfered.");
+			}
+		}
+
+		return s;
+
+	}
+
+	/**
+	 * Returns the serializer responsible for all objects of a given class.
+	 * A caller knowing the class of the objects it sends beforehand (e.g.
+	 * the class is final) can look up the serializer once and then use it
+	 * directly for each object.
+	 *
+	 * @param type The class of the objects.
+	 * @return The serializer for objects of this class, or null if the
+	 *		serializer depends on each value (long values without FLAGS_8BYTE_INT).
+	 * @throws XMLRPCException Will be thrown if there is no serializer for this class.
+	 */
+	public Serializer getSerializer(Class<?> type) throws XMLRPCException {
+		Serializer s = lookupSerializer(type);
+		return s == integer && type == Long.class ? null : s;
+	}
+
+	/**
+	 * Returns the serializer of a class from the cache, finding it first if
+	 * the class hasn't been looked up yet.
+	 *
+	 * @param type The class of the object that should be serialized.
+	 * @return The serializer for this class.
+	 * @throws XMLRPCException Will be thrown if there is no serializer for this class.
+	 */
+	private Serializer lookupSerializer(Class<?> type) throws XMLRPCException {
+		Serializer s = serializers.get(type);
+		if(s == null) {
+			Map<Class<?>, Serializer> snapshot = custom;
+			s = findSerializer(type, snapshot);
+			serializers.put(type, s);
+			if(custom != snapshot) {
+				// A serializer has been added meanwhile and the cache cleared
+				// before the put, the serializer found may be stale
+				serializers.remove(type, s);
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Finds the serializer responsible for a class of objects.
+	 *
+	 * @param type The class of the object that should be serialized.
+	 * @param custom The serializers registered for custom types.
+	 * @return The serializer for this class.
+	 * @throws XMLRPCException Will be thrown if there is no serializer for this class.
+	 */
+	private Serializer findSerializer(Class<?> type, Map<Class<?>, Serializer> custom) throws XMLRPCException {
+
+		if(!custom.isEmpty()) {
+			Serializer s = custom.get(type);
+			if(s != null) {
+				return s;
+			}
+			for(Map.Entry<Class<?>, Serializer> entry : custom.entrySet()) {
+				if(entry.getKey().isAssignableFrom(type)) {
+					return entry.getValue();
+				}
+			}
+		}
 
 		Serializer s;
 
-		if((flags & XMLRPCClient.FLAGS_NIL) != 0 && object == null) {
-			s = nil;
-		} else if(object instanceof String) {
+		if(type == String.class) {
 			s = string;
-		} else if(object instanceof Boolean) {
+		} else if(type == Boolean.class) {
 			s = bool;
-		} else if(object instanceof Double || object instanceof Float
-				|| object instanceof BigDecimal) {
+		} else if(type == Double.class || type == Float.class
+				|| BigDecimal.class.isAssignableFrom(type)) {
 			s = floating;
-		} else if (object instanceof Integer || object instanceof Short
-				|| object instanceof Byte) {
+		} else if (type == Integer.class || type == Short.class
+				|| type == Byte.class) {
 			s = integer;
-		} else if(object instanceof Long) {
-			// Check whether the 8 byte integer flag was set.
+		} else if(type == Long.class) {
+			// Check whether the 8 byte integer flag was set. If not, the
+			// range of each value is checked by getSerializer.
 			if((flags & XMLRPCClient.FLAGS_8BYTE_INT) != 0) {
 				s = long8;
 			} else {
-				// Allow long values as long as their fit within the 4 byte integer range.
-				long l = (Long)object;
-				if(l > Integer.MAX_VALUE || l < Integer.MIN_VALUE) {
-					throw new XMLRPCException("FLAGS_8BYTE_INT must be set, if values "
-							+ "outside the 4 byte integer range should be transfered.");
-				} else {
-					s = integer;
-				}
+				s = integer;
 			}
-		} else if(object instanceof Date) {
+		} else if(Date.class.isAssignableFrom(type) || Calendar.class.isAssignableFrom(type)
+				|| DateTimeSerializer.isJavaTimeType(type)) {
 			s = datetime;
-		} else if(object instanceof Calendar) {
-			object = ((Calendar)object).getTime();
-			s = datetime;
-		} else if (object instanceof Map) {
+		} else if (Map.class.isAssignableFrom(type)) {
 			s = struct;
-		} else if(object instanceof byte[]) {
-			byte[] old = (byte[])object;
-			Byte[] boxed = new Byte[old.length];
-			for(int i = 0; i < boxed.length; i++) {
-				boxed[i] = Byte.valueOf(old[i]);
-			}
-			object = boxed;
-			s = base64;
-		} else if(object instanceof Byte[]) {
+		} else if(type == byte[].class || type == Byte[].class
+				|| Base64Serializer.isSourceType(type)) {
+			// Checked before Iterable, because a Path is iterable
 			s = base64;
-		} else if(object instanceof Iterable<?> || object instanceof Object[]) {
+		} else if(Iterable.class.isAssignableFrom(type)
+				|| (type.isArray() && !type.getComponentType().isPrimitive())) {
 			s = array;
 		} else {
 			throw new XMLRPCException("No serializer found for type '"
-					+ object.getClass().getName() + "'.");
+					+ type.getName() + "'.");
 		}
 
-		return s.serialize(object);
+		return s;
 
 	}
 
@@ -0,0 +1,34 @@
+package de.timroes.axmlrpc.serializer;
+
+import de.timroes.axmlrpc.xmlcreator.XmlWriter;
+import java.io.IOException;
+
+/**
+ * A StreamingSerializer is the counterpart of a {@link Serializer} for xml
+ * that is read or written as a stream instead of being held as a tree.
+ * For responses read event by event, it hands out a {@link ValueBuilder} for
+ * every type element of its type, which is then fed with the content of this
+ * element while it is read. For requests, it writes the type element of an
+ * object directly to an {@link XmlWriter}.
+ */
+public interface StreamingSerializer {
+
+	/**
+	 * Create a new builder for one type element.
+	 *
+	 * @return A builder that will receive the content of the type element.
+	 */
+	public ValueBuilder newBuilder();
+
+	/**
+	 * This method takes an object and writes its representation as an xml
+	 * type element to the given writer. The written xml must be the same as
+	 * the one returned by {@link Serializer#serialize(java.lang.Object)}.
+	 *
+	 * @param writer The writer to write the type element to.
+	 * @param object The object that should be serialized.
+	 * @throws IOException Will be thrown if writing fails.
+	 */
+	public void serialize(XmlWriter writer, Object object) throws IOException;
+
+}
@@ -3,13 +3,15 @@ package de.timroes.axmlrpc.serializer;
 import de.timroes.axmlrpc.XMLRPCException;
 import de.timroes.axmlrpc.XMLUtil;
 import de.timroes.axmlrpc.xmlcreator.XmlElement;
+import de.timroes.axmlrpc.xmlcreator.XmlWriter;
+import java.io.IOException;
 import org.w3c.dom.Element;
 
 /**
  *
  * @author Tim Roes
  */
-public class StringSerializer implements Serializer {
+public class StringSerializer implements Serializer, StreamingSerializer {
 
 	private boolean decodeStrings;
 	private boolean encodeStrings;
@@ -20,22 +22,136 @@ public class StringSerializer implements Serializer {
 	}
 
 	public Object deserialize(Element content) throws XMLRPCException {
-		String text = XMLUtil.getOnlyTextContent(content.getChildNodes());
+		return deserialize(XMLUtil.getOnlyTextContent(content.getChildNodes()));
+	}
+
+	public Object deserialize(String text) throws XMLRPCException {
 		if(decodeStrings) {
-			text = text.replaceAll("&lt;", "<").replaceAll("&amp;", "&");
+			text = unescape(text);
 		}
 		return text;
 	}
 
+	public ValueBuilder newBuilder() {
+		return new TextValueBuilder() {
+			@Override
+			protected Object build(String content) throws XMLRPCException {
+				return deserialize(content);
+			}
+		};
+	}
+
 	public XmlElement serialize(Object object) {
 		String content = object.toString();
 		if(encodeStrings) {
-			content = content
-					.replaceAll("&", "&amp;")
-					.replaceAll("<", "&lt;")
-					.replaceAll("]]>", "]]&gt;");
+			content = escape(content);
 		}
 		return XMLUtil.makeXmlTag(SerializerHandler.TYPE_STRING, content);
 	}
 
+	public void serialize(XmlWriter writer, Object object) throws IOException {
+		String content = object.toString();
+		int i = encodeStrings ? indexOfEscape(content, 0) : -1;
+		if(i < 0) {
+			writer.element(SerializerHandler.TYPE_STRING, content);
+			return;
+		}
+		// Escape the content while it is written
+		writer.startElement(SerializerHandler.TYPE_STRING);
+		int start = 0;
+		for(; i >= 0; i = indexOfEscape(content, i + 1)) {
+			writer.write(content, start, i);
+			writer.write(replacement(content.charAt(i)));
+			start = i + 1;
+		}
+		writer.write(content, start, content.length());
+		writer.endElement(SerializerHandler.TYPE_STRING);
+	}
+
+	/**
+	 * Escape the &amp; and &lt; characters, and the &gt; character ending
+	 * a CDATA section end ({@code ]]>}), in a single pass.
+	 *
+	 * @param text The text to escape.
+	 * @return The escaped text, or the given text if nothing had to be escaped.
+	 */
+	static String escape(String text) {
+		int i = indexOfEscape(text, 0);
+		if(i < 0) {
+			return text;
+		}
+		StringBuilder builder = new StringBuilder(text.length() + 16);
+		int start = 0;
+		for(; i >= 0; i = indexOfEscape(text, i + 1)) {
+			builder.append(text, start, i).append(replacement(text.charAt(i)));
+			start = i + 1;
+		}
+		return builder.append(text, start, text.length()).toString();
+	}
+
+	/**
+	 * Decode the &amp;lt; and &amp;amp; entities in a single pass.
+	 *
+	 * @param text The text to decode.
+	 * @return The decoded text, or the given text if nothing had to be decoded.
+	 */
+	static String unescape(String text) {
+		int i = text.indexOf('&');
+		if(i < 0) {
+			return text;
+		}
+		StringBuilder builder = null;
+		int start = 0;
+		for(; i >= 0; i = text.indexOf('&', i + 1)) {
+			char decoded;
+			int length;
+			if(text.startsWith("&lt;", i)) {
+				decoded = '<';
+				length = 4;
+			} else if(text.startsWith("&amp;", i)) {
+				decoded = '&';
+				length = 5;
+			} else {
+				continue;
+			}
+			if(builder == null) {
+				builder = new StringBuilder(text.length());
+			}
+			builder.append(text, start, i).append(decoded);
+			start = i + length;
+			i = start - 1;
+		}
+		if(builder == null) {
+			return text;
+		}
+		return builder.append(text, start, text.length()).toString();
+	}
+
+	/**
+	 * Returns the index of the next character to escape.
+	 *
+	 * @param text The text to search in.
+	 * @param from The index to start the search at.
+	 * @return The index of the character, or -1 if there is none.
+	 */
+	private static int indexOfEscape(String text, int from) {
+		int length = text.length();
+		for(int i = from; i < length; i++) {
+			char c = text.charAt(i);
+			if(c == '&' || c == '<'
+					|| (c == '>' && i >= 2 && text.charAt(i - 1) == ']' && text.charAt(i - 2) == ']')) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static String replacement(char c) {
+		switch(c) {
+			case '&': return "&amp;";
+			case '<': return "&lt;";
+			default: return "&gt;";
+		}
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,298 @@
+package de.timroes.axmlrpc.serializer;
+
+import de.timroes.axmlrpc.XMLRPCClient;
+import de.timroes.axmlrpc.XMLRPCException;
+import de.timroes.axmlrpc.XMLRPCRuntimeException;
+import de.timroes.axmlrpc.XMLUtil;
+import de.timroes.axmlrpc.xmlcreator.XmlElement;
+import de.timroes.axmlrpc.xmlcreator.XmlWriter;
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import org.w3c.dom.Element;
+
+/**
+ * A StructCodec sends objects of one type as structs and binds received
+ * structs to this type, by reading and writing the members directly instead
+ * of using reflection. Subclasses are usually generated for the types
+ * marked with {@link XMLRPCStruct} by the annotation processor of the
+ * aXMLRPC-processor module, but can also be written by hand.
+ *
+ * A codec is registered with {@link SerializerHandler#addCodec(StructCodec)},
+ * and can be registered with one SerializerHandler only. Members which are
+ * null are left out of the struct, unless FLAGS_NIL is set.
+ *
+ * @param <T> The type of the objects.
+ */
+public abstract class StructCodec<T> implements Serializer, StreamingSerializer {
+
+	private static final String STRUCT_MEMBER = "member";
+	private static final String STRUCT_NAME = "name";
+	private static final String STRUCT_VALUE = "value";
+
+	private final Class<T> type;
+	private volatile SerializerHandler serializerHandler;
+
+	/**
+	 * Create a new codec.
+	 *
+	 * @param type The type of the objects.
+	 */
+	protected StructCodec(Class<T> type) {
+		this.type = type;
+	}
+
+	/**
+	 * Returns the type of the objects of this codec.
+	 *
+	 * @return The type of the objects.
+	 */
+	public Class<T> getType() {
+		return type;
+	}
+
+	/**
+	 * Binds this codec to the handler serializing the values of the members.
+	 *
+	 * @param serializerHandler The handler the codec is registered with.
+	 */
+	void bind(SerializerHandler serializerHandler) {
+		SerializerHandler bound = this.serializerHandler;
+		if(bound != null && bound != serializerHandler) {
+			throw new IllegalStateException("The codec for " + type.getName()
+					+ " is already registered with another SerializerHandler.");
+		}
+		this.serializerHandler = serializerHandler;
+	}
+
+	/**
+	 * Writes the members of an object.
+	 *
+	 * @param object The object.
+	 * @param out The writer to write each member to.
+	 * @throws XMLRPCException Will be thrown if a value can't be serialized.
+	 * @throws IOException Will be thrown if writing fails.
+	 */
+	protected abstract void writeMembers(T object, MemberWriter out) throws XMLRPCException, IOException;
+
+	/**
+	 * Returns the type a member is bound to.
+	 *
+	 * @param name The name of the member.
+	 * @return The type of the member, or null if the member isn't bound.
+	 */
+	protected abstract Type getMemberType(String name);
+
+	/**
+	 * Starts to bind a struct.
+	 *
+	 * @return The object to set the members to, e.g. a new instance of the
+	 *		type or an array holding the arguments of its constructor.
+	 */
+	protected abstract Object start();
+
+	/**
+	 * Binds a member of the struct. Members that aren't bound are ignored.
+	 *
+	 * @param target The object returned by {@link #start()}.
+	 * @param name The name of the member.
+	 * @param value The value of the member, already converted to the type
+	 *		returned by {@link #getMemberType(java.lang.String)}.
+	 */
+	protected abstract void setMember(Object target, String name, Object value);
+
+	/**
+	 * Finishes to bind a struct.
+	 *
+	 * @param target The object returned by {@link #start()}.
+	 * @return The bound object.
+	 */
+	protected abstract T finish(Object target);
+
+	/**
+	 * Returns a parameterized type, to use as the type of a member.
+	 *
+	 * @param raw The raw type, e.g. List.class.
+	 * @param arguments The type arguments.
+	 * @return The parameterized type.
+	 */
+	protected static Type parameterized(Class<?> raw, Type... arguments) {
+		return new Parameterized(raw, arguments);
+	}
+
+	public Object deserialize(Element content) throws XMLRPCException {
+		// The untyped value of a struct is always a map
+		throw new XMLRPCException("A StructCodec only binds typed values.");
+	}
+
+	public ValueBuilder newBuilder() {
+		return new CodecBuilder();
+	}
+
+	public XmlElement serialize(Object object) {
+
+		final XmlElement struct = new XmlElement(SerializerHandler.TYPE_STRUCT);
+		final SerializerHandler serializerHandler = getSerializerHandler();
+		final boolean nil = (serializerHandler.getFlags() & XMLRPCClient.FLAGS_NIL) != 0;
+
+		try {
+			writeMembers(type.cast(object), new MemberWriter() {
+				public void member(String name, Object value) throws XMLRPCException {
+					if(value == null && !nil) {
+						return;
+					}
+					XmlElement entry = new XmlElement(STRUCT_MEMBER);
+					XmlElement nameElement = new XmlElement(STRUCT_NAME);
+					XmlElement valueElement = new XmlElement(STRUCT_VALUE);
+					nameElement.setContent(name);
+					valueElement.addChildren(serializerHandler.serialize(value));
+					entry.addChildren(nameElement);
+					entry.addChildren(valueElement);
+					struct.addChildren(entry);
+				}
+			});
+		} catch(XMLRPCException ex) {
+			throw new XMLRPCRuntimeException(ex);
+		} catch(IOException ex) {
+			throw new XMLRPCRuntimeException(ex);
+		}
+
+		return struct;
+
+	}
+
+	public void serialize(final XmlWriter writer, Object object) throws IOException {
+
+		final SerializerHandler serializerHandler = getSerializerHandler();
+		final boolean nil = (serializerHandler.getFlags() & XMLRPCClient.FLAGS_NIL) != 0;
+
+		try {
+			writer.startElement(SerializerHandler.TYPE_STRUCT);
+			writeMembers(type.cast(object), new MemberWriter() {
+				public void member(String name, Object value) throws XMLRPCException, IOException {
+					if(value == null && !nil) {
+						return;
+					}
+					writer.startElement(STRUCT_MEMBER);
+					writer.element(STRUCT_NAME, name);
+					writer.startElement(STRUCT_VALUE);
+					serializerHandler.serialize(writer, value);
+					writer.endElement(STRUCT_VALUE);
+					writer.endElement(STRUCT_MEMBER);
+				}
+			});
+			writer.endElement(SerializerHandler.TYPE_STRUCT);
+		} catch(XMLRPCException ex) {
+			throw new XMLRPCRuntimeException(ex);
+		}
+
+	}
+
+	private SerializerHandler getSerializerHandler() {
+		SerializerHandler serializerHandler = this.serializerHandler;
+		if(serializerHandler == null) {
+			throw new IllegalStateException("The codec for " + type.getName()
+					+ " must be registered with a SerializerHandler.");
+		}
+		return serializerHandler;
+	}
+
+	/**
+	 * Receives the members of an object written by a codec.
+	 */
+	public interface MemberWriter {
+
+		/**
+		 * Writes a member of the struct.
+		 *
+		 * @param name The name of the member.
+		 * @param value The value of the member.
+		 * @throws XMLRPCException Will be thrown if the value can't be serialized.
+		 * @throws IOException Will be thrown if writing fails.
+		 */
+		public void member(String name, Object value) throws XMLRPCException, IOException;
+
+	}
+
+	/**
+	 * Binds a struct read from a response to the type of the codec.
+	 */
+	private class CodecBuilder implements TypedValueBuilder {
+
+		private final Object target = start();
+
+		public Type getMemberType(String name) {
+			return StructCodec.this.getMemberType(name);
+		}
+
+		public Type getElementType() {
+			return null;
+		}
+
+		public void characters(char[] ch, int start, int length) throws XMLRPCException {
+			if(!XMLUtil.isWhitespace(ch, start, length)) {
+				throw new XMLRPCException("Only struct members allowed within a struct.");
+			}
+		}
+
+		public void member(String name, Object value) throws XMLRPCException {
+			Type memberType = StructCodec.this.getMemberType(name);
+			if(memberType != null) {
+				setMember(target, name, Binder.convert(value, memberType));
+			}
+		}
+
+		public void element(Object value) throws XMLRPCException {
+			throw new XMLRPCException("Only struct members allowed within a struct.");
+		}
+
+		public Object build() {
+			return finish(target);
+		}
+
+		public void abort() {
+		}
+
+	}
+
+	private static class Parameterized implements ParameterizedType {
+
+		private final Class<?> raw;
+		private final Type[] arguments;
+
+		Parameterized(Class<?> raw, Type[] arguments) {
+			this.raw = raw;
+			this.arguments = arguments;
+		}
+
+		public Type[] getActualTypeArguments() {
+			return arguments.clone();
+		}
+
+		public Type getRawType() {
+			return raw;
+		}
+
+		public Type getOwnerType() {
+			return null;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof ParameterizedType)) {
+				return false;
+			}
+			ParameterizedType other = (ParameterizedType)o;
+			return raw.equals(other.getRawType()) && other.getOwnerType() == null
+					&& Arrays.equals(arguments, other.getActualTypeArguments());
+		}
+
+		@Override
+		public int hashCode() {
+			return raw.hashCode() ^ Arrays.hashCode(arguments);
+		}
+
+	}
+
+}
@@ -4,6 +4,8 @@ import de.timroes.axmlrpc.XMLRPCException;
 import de.timroes.axmlrpc.XMLRPCRuntimeException;
 import de.timroes.axmlrpc.XMLUtil;
 import de.timroes.axmlrpc.xmlcreator.XmlElement;
+import de.timroes.axmlrpc.xmlcreator.XmlWriter;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import org.w3c.dom.Element;
@@ -13,7 +15,7 @@ import org.w3c.dom.Node;
  *
  * @author Tim Roes
  */
-public class StructSerializer implements Serializer {
+public class StructSerializer implements Serializer, StreamingSerializer {
 
 	private static final String STRUCT_MEMBER = "member";
 	private static final String STRUCT_NAME = "name";
@@ -84,6 +86,35 @@ public class StructSerializer implements Serializer {
 
 	}
 
+	public ValueBuilder newBuilder() {
+		return new ValueBuilder() {
+
+			private final Map<String, Object> map = new HashMap<String, Object>();
+
+			public void characters(char[] ch, int start, int length) throws XMLRPCException {
+				if(!XMLUtil.isWhitespace(ch, start, length)) {
+					throw new XMLRPCException("Only struct members allowed within a struct.");
+				}
+			}
+
+			public void member(String name, Object value) {
+				map.put(name, value);
+			}
+
+			public void element(Object value) throws XMLRPCException {
+				throw new XMLRPCException("Only struct members allowed within a struct.");
+			}
+
+			public Object build() {
+				return map;
+			}
+
+			public void abort() {
+			}
+
+		};
+	}
+
 	public XmlElement serialize(Object object) {
 
 		XmlElement struct = new XmlElement(SerializerHandler.TYPE_STRUCT);
@@ -115,4 +146,35 @@ public class StructSerializer implements Serializer {
 		return struct;
 	}
 
+	public void serialize(XmlWriter writer, Object object) throws IOException {
+
+		// We can safely cast here, this Serializer should only be called when
+		// the parameter is a map.
+		@SuppressWarnings("unchecked")
+		Map<String,Object> map = (Map<String,Object>)object;
+
+		if(map.isEmpty()) {
+			writer.emptyElement(SerializerHandler.TYPE_STRUCT);
+			return;
+		}
+
+		try {
+
+			writer.startElement(SerializerHandler.TYPE_STRUCT);
+			for(Map.Entry<String,Object> member : map.entrySet()) {
+				writer.startElement(STRUCT_MEMBER);
+				writer.element(STRUCT_NAME, member.getKey());
+				writer.startElement(STRUCT_VALUE);
+				serializerHandler.serialize(writer, member.getValue());
+				writer.endElement(STRUCT_VALUE);
+				writer.endElement(STRUCT_MEMBER);
+			}
+			writer.endElement(SerializerHandler.TYPE_STRUCT);
+
+		} catch(XMLRPCException ex) {
+			throw new XMLRPCRuntimeException(ex);
+		}
+
+	}
+
 }
\ No newline at end of file
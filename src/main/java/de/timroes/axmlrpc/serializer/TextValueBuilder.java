@@ -0,0 +1,42 @@
+package de.timroes.axmlrpc.serializer;
+
+import de.timroes.axmlrpc.XMLRPCException;
+
+/**
+ * A ValueBuilder for type elements that must only contain text.
+ * The text is collected and handed to {@link #build(String)} once the
+ * element has been closed.
+ */
+public abstract class TextValueBuilder implements ValueBuilder {
+
+	private final StringBuilder text = new StringBuilder();
+
+	public void characters(char[] ch, int start, int length) {
+		text.append(ch, start, length);
+	}
+
+	public void member(String name, Object value) throws XMLRPCException {
+		throw new XMLRPCException("Element must contain only text elements.");
+	}
+
+	public void element(Object value) throws XMLRPCException {
+		throw new XMLRPCException("Element must contain only text elements.");
+	}
+
+	public Object build() throws XMLRPCException {
+		return build(text.toString());
+	}
+
+	public void abort() {
+	}
+
+	/**
+	 * Deserialize the text content of the type element.
+	 *
+	 * @param content The text content of the element.
+	 * @return The deserialized object.
+	 * @throws XMLRPCException Will be thrown whenever the deserialization fails.
+	 */
+	protected abstract Object build(String content) throws XMLRPCException;
+
+}
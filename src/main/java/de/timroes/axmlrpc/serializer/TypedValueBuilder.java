@@ -0,0 +1,29 @@
+package de.timroes.axmlrpc.serializer;
+
+import java.lang.reflect.Type;
+
+/**
+ * A ValueBuilder binding a struct or array to a given Java type. It tells
+ * the parser which type its members or elements are bound to, so that
+ * they are built as this type right away.
+ */
+public interface TypedValueBuilder extends ValueBuilder {
+
+	/**
+	 * Returns the type the value of a struct member is bound to.
+	 *
+	 * @param name The name of the member.
+	 * @return The type of the member, or null if the value should be built
+	 *		as it is.
+	 */
+	public Type getMemberType(String name);
+
+	/**
+	 * Returns the type the elements of an array are bound to.
+	 *
+	 * @return The type of the elements, or null if they should be built as
+	 *		they are.
+	 */
+	public Type getElementType();
+
+}
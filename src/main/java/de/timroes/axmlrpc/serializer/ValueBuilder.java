@@ -0,0 +1,57 @@
+package de.timroes.axmlrpc.serializer;
+
+import de.timroes.axmlrpc.XMLRPCException;
+
+/**
+ * A ValueBuilder receives the content of a single type element while the
+ * response is read, and builds the deserialized object once the element
+ * has been closed.
+ */
+public interface ValueBuilder {
+
+	/**
+	 * Receives text content of the type element. This may be called several
+	 * times for a single element.
+	 *
+	 * @param ch The characters of the text.
+	 * @param start The start position in the array.
+	 * @param length The number of characters to use from the array.
+	 * @throws XMLRPCException Will be thrown if the type doesn't accept text.
+	 */
+	public void characters(char[] ch, int start, int length) throws XMLRPCException;
+
+	/**
+	 * Receives a member of a struct.
+	 *
+	 * @param name The name of the member.
+	 * @param value The deserialized value of the member.
+	 * @throws XMLRPCException Will be thrown if the type isn't a struct.
+	 */
+	public void member(String name, Object value) throws XMLRPCException;
+
+	/**
+	 * Receives an element of an array.
+	 *
+	 * @param value The deserialized element.
+	 * @throws XMLRPCException Will be thrown if the type isn't an array.
+	 */
+	public void element(Object value) throws XMLRPCException;
+
+	/**
+	 * Returns the deserialized object, once the type element has been closed.
+	 *
+	 * @return The deserialized object.
+	 * @throws XMLRPCException Will be thrown whenever the deserialization fails.
+	 */
+	public Object build() throws XMLRPCException;
+
+	/**
+	 * Called if the response can't be read completely. The parsers call it
+	 * instead of {@link #build()} on the builders of the elements still open,
+	 * and after {@link #build()} on the builders of base64 values decoded to
+	 * a {@link Base64Sink}. Resources held for the value, like the file it is
+	 * decoded to, are released.
+	 */
+	public void abort();
+
+}
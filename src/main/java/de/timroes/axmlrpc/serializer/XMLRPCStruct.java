@@ -0,0 +1,27 @@
+package de.timroes.axmlrpc.serializer;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class (or record) to be sent and received as a struct. The
+ * annotation processor of the aXMLRPC-processor module generates a
+ * {@link StructCodec} for each marked type at build time, which reads and
+ * writes its members without reflection. The generated codecs are named
+ * after the type with the suffix Codec (nested types are joined with an
+ * underscore, e.g. Outer_InnerCodec) and are listed for
+ * {@link SerializerHandler#loadCodecs(java.lang.ClassLoader)}.
+ *
+ * The members of a class are its fields which are neither static nor
+ * transient. Private fields are read and written through their getter and
+ * setter. The members of a record are its components.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface XMLRPCStruct {
+
+}
@@ -0,0 +1,416 @@
+package de.timroes.axmlrpc.transport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A pool of keep-alive connections, used by the {@link PooledTransport}.
+ * It limits the number of connections opened to each host, and closes
+ * connections which have been idle for too long, which have been open for
+ * too long, or which have been closed by the server. A connection is only
+ * given back to the pool once the response sent over it has been fully read.
+ */
+public class ConnectionPool {
+
+	/**
+	 * The default maximum number of connections to a host.
+	 */
+	public static final int DEFAULT_MAX_PER_HOST = 5;
+
+	/**
+	 * The default time in milliseconds an idle connection is kept.
+	 */
+	public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+
+	/**
+	 * The default time in milliseconds a connection is used, before it is closed.
+	 */
+	public static final long DEFAULT_MAX_LIFETIME = 300000;
+
+	/**
+	 * The time in milliseconds a connection must have been idle, before it is
+	 * probed for having been closed by the server. Connections idle for a
+	 * shorter time are reused right away, since the transport sends the
+	 * request again if such a connection turns out to be closed.
+	 */
+	static final long STALE_CHECK_IDLE_TIME = 1000;
+
+	private final int maxPerHost;
+	private final long idleTimeout;
+	private final long maxLifetime;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Map<String,Host> hosts = new HashMap<String,Host>();
+	private boolean closed;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong discarded = new AtomicLong();
+
+	/**
+	 * Create a new pool with the default limits.
+	 */
+	public ConnectionPool() {
+		this(DEFAULT_MAX_PER_HOST, DEFAULT_IDLE_TIMEOUT, DEFAULT_MAX_LIFETIME);
+	}
+
+	/**
+	 * Create a new pool.
+	 *
+	 * @param maxPerHost The maximum number of connections open to a host at
+	 *     the same time. Calls to a host with as many busy connections wait
+	 *     for one of them, at most for their connect timeout.
+	 * @param idleTimeout The time in milliseconds an idle connection is kept,
+	 *     or zero for no limit.
+	 * @param maxLifetime The time in milliseconds after which a connection
+	 *     isn't reused anymore, or zero for no limit.
+	 */
+	public ConnectionPool(int maxPerHost, long idleTimeout, long maxLifetime) {
+		if(maxPerHost < 1 || idleTimeout < 0 || maxLifetime < 0) {
+			throw new IllegalArgumentException("At least one connection per host is needed and the timeouts must not be negative.");
+		}
+		this.maxPerHost = maxPerHost;
+		this.idleTimeout = idleTimeout;
+		this.maxLifetime = maxLifetime;
+	}
+
+	/**
+	 * Take an idle connection to the given host out of the pool. If there is
+	 * none, a slot for a new connection is reserved, and the caller must either
+	 * open a connection and later give it back with {@link #release(PooledSocket)}
+	 * or {@link #discard(PooledSocket)}, or give the slot back with
+	 * {@link #cancel(java.lang.String)}.
+	 *
+	 * @param key The host to connect to.
+	 * @param wait The time in milliseconds to wait for a connection if the
+	 *     limit of the host has been reached, or zero to wait forever.
+	 * @return An idle connection, or null if a new connection must be opened.
+	 * @throws IOException Will be thrown if no connection has become available in time.
+	 */
+	PooledSocket acquire(String key, long wait) throws IOException {
+		while(true) {
+			PooledSocket socket = null;
+			lock.lock();
+			try {
+				if(closed) {
+					throw new IOException("The connection pool has been closed.");
+				}
+				Host host = hosts.get(key);
+				if(host == null) {
+					host = new Host();
+					hosts.put(key, host);
+				}
+				long deadline = wait > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait) : 0;
+				while(true) {
+					evictExpired(host, System.currentTimeMillis());
+					socket = host.idle.pollFirst();
+					if(socket != null) {
+						host.leased++;
+						break;
+					}
+					if(host.leased < maxPerHost) {
+						host.leased++;
+						misses.incrementAndGet();
+						return null;
+					}
+					if(wait <= 0) {
+						host.available.await();
+					} else {
+						long remaining = deadline - System.nanoTime();
+						if(remaining <= 0) {
+							throw new SocketTimeoutException("No connection to " + key + " became available in time.");
+						}
+						host.available.awaitNanos(remaining);
+					}
+				}
+			} catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for a connection.");
+			} finally {
+				lock.unlock();
+			}
+
+			// Check the connection outside of the lock, it may read from the socket
+			if(!socket.isStale(System.currentTimeMillis())) {
+				hits.incrementAndGet();
+				socket.reused = true;
+				return socket;
+			}
+			evictions.incrementAndGet();
+			close(socket);
+		}
+	}
+
+	/**
+	 * Give back a connection, which can be reused.
+	 *
+	 * @param socket The connection.
+	 */
+	void release(PooledSocket socket) {
+		long now = System.currentTimeMillis();
+		socket.lastUsed = now;
+		boolean keep;
+		lock.lock();
+		try {
+			Host host = hosts.get(socket.key);
+			keep = !closed && !isExpired(socket, now);
+			if(keep) {
+				// The most recently used connection is reused first
+				host.idle.addFirst(socket);
+			}
+			host.leased--;
+			host.available.signal();
+		} finally {
+			lock.unlock();
+		}
+		if(!keep) {
+			evictions.incrementAndGet();
+			closeSocket(socket);
+		}
+	}
+
+	/**
+	 * Close a connection, which cannot be reused.
+	 *
+	 * @param socket The connection.
+	 */
+	void discard(PooledSocket socket) {
+		discarded.incrementAndGet();
+		close(socket);
+	}
+
+	/**
+	 * Give back the slot reserved for a new connection, which couldn't be opened.
+	 *
+	 * @param key The host to connect to.
+	 */
+	void cancel(String key) {
+		lock.lock();
+		try {
+			Host host = hosts.get(key);
+			host.leased--;
+			host.available.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void close(PooledSocket socket) {
+		cancel(socket.key);
+		closeSocket(socket);
+	}
+
+	/**
+	 * Close all idle connections, which have been idle or open for too long.
+	 * This is done anyway when connections are taken from the pool, this
+	 * method can be used to close them earlier.
+	 */
+	public void evictIdle() {
+		lock.lock();
+		try {
+			long now = System.currentTimeMillis();
+			for(Host host : hosts.values()) {
+				evictExpired(host, now);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Close all idle connections and stop pooling. Connections in use are
+	 * closed when they are given back.
+	 */
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			for(Host host : hosts.values()) {
+				for(PooledSocket socket : host.idle) {
+					closeSocket(socket);
+				}
+				host.idle.clear();
+				host.available.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void evictExpired(Host host, long now) {
+		Iterator<PooledSocket> it = host.idle.iterator();
+		while(it.hasNext()) {
+			PooledSocket socket = it.next();
+			if(isExpired(socket, now)) {
+				it.remove();
+				evictions.incrementAndGet();
+				closeSocket(socket);
+			}
+		}
+	}
+
+	private boolean isExpired(PooledSocket socket, long now) {
+		return (idleTimeout > 0 && now - socket.lastUsed >= idleTimeout)
+				|| (maxLifetime > 0 && now - socket.created >= maxLifetime);
+	}
+
+	private static void closeSocket(PooledSocket socket) {
+		try {
+			socket.socket.close();
+		} catch(IOException ex) {
+			// Ignore this
+		}
+	}
+
+	/**
+	 * Returns the number of times an idle connection has been reused.
+	 *
+	 * @return The number of pool hits.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of times a new connection had to be opened.
+	 *
+	 * @return The number of pool misses.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of connections closed by the pool, because they
+	 * have been idle or open for too long, or have been closed by the server.
+	 *
+	 * @return The number of evicted connections.
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Returns the number of connections closed after a call, because they
+	 * couldn't be reused, e.g. because the response hasn't been fully read
+	 * or the call has been canceled.
+	 *
+	 * @return The number of discarded connections.
+	 */
+	public long getDiscarded() {
+		return discarded.get();
+	}
+
+	/**
+	 * Returns the number of idle connections in the pool.
+	 *
+	 * @return The number of idle connections.
+	 */
+	public int getIdleConnections() {
+		lock.lock();
+		try {
+			int count = 0;
+			for(Host host : hosts.values()) {
+				count += host.idle.size();
+			}
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "hits: " + getHits() + ", misses: " + getMisses()
+				+ ", evictions: " + getEvictions() + ", discarded: " + getDiscarded()
+				+ ", idle: " + getIdleConnections();
+	}
+
+	/**
+	 * The connections to a host.
+	 */
+	private class Host {
+
+		private final ArrayDeque<PooledSocket> idle = new ArrayDeque<PooledSocket>();
+		private final Condition available = lock.newCondition();
+		/** The number of connections in use, or being opened. */
+		private int leased;
+
+	}
+
+	/**
+	 * A connection handled by the pool.
+	 */
+	static class PooledSocket {
+
+		final String key;
+		final Socket socket;
+		final BufferedInputStream in;
+		final OutputStream out;
+		final long created;
+		volatile long lastUsed;
+		/** Whether the connection has been taken from the pool, rather than opened. */
+		boolean reused;
+
+		PooledSocket(String key, Socket socket) throws IOException {
+			this.key = key;
+			this.socket = socket;
+			this.in = new BufferedInputStream(socket.getInputStream());
+			this.out = new BufferedOutputStream(socket.getOutputStream());
+			this.created = System.currentTimeMillis();
+			this.lastUsed = created;
+		}
+
+		/**
+		 * Checks whether the server closed the connection, or sent unexpected
+		 * data, while it was idle. Only connections idle for more than
+		 * {@link #STALE_CHECK_IDLE_TIME} are probed by reading from them.
+		 *
+		 * @param now The current time in milliseconds.
+		 * @return Whether the connection cannot be used anymore.
+		 */
+		boolean isStale(long now) {
+			if(socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+				return true;
+			}
+			try {
+				if(in.available() > 0) {
+					return true;
+				}
+				if(now - lastUsed <= STALE_CHECK_IDLE_TIME) {
+					return false;
+				}
+				int timeout = socket.getSoTimeout();
+				socket.setSoTimeout(1);
+				try {
+					// Nothing must be readable: either the stream ended or
+					// the server sent unexpected data
+					in.read();
+					return true;
+				} finally {
+					socket.setSoTimeout(timeout);
+				}
+			} catch(SocketTimeoutException ex) {
+				return false;
+			} catch(IOException ex) {
+				return true;
+			}
+		}
+
+	}
+
+}
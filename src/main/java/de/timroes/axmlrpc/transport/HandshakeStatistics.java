@@ -0,0 +1,99 @@
+package de.timroes.axmlrpc.transport;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the TLS handshakes made by a transport: full handshakes, handshakes
+ * resuming a cached session, and the time spent in them.
+ */
+public class HandshakeStatistics {
+
+	private final AtomicLong fullHandshakes = new AtomicLong();
+	private final AtomicLong resumedHandshakes = new AtomicLong();
+	private final AtomicLong handshakeNanos = new AtomicLong();
+	private final AtomicLong maxHandshakeNanos = new AtomicLong();
+
+	/**
+	 * Record a completed handshake.
+	 *
+	 * @param resumed Whether the handshake resumed a cached session.
+	 * @param nanos The duration of the handshake in nanoseconds.
+	 */
+	void record(boolean resumed, long nanos) {
+		if(resumed) {
+			resumedHandshakes.incrementAndGet();
+		} else {
+			fullHandshakes.incrementAndGet();
+		}
+		handshakeNanos.addAndGet(nanos);
+		long max = maxHandshakeNanos.get();
+		while(nanos > max && !maxHandshakeNanos.compareAndSet(max, nanos)) {
+			max = maxHandshakeNanos.get();
+		}
+	}
+
+	/**
+	 * Returns the number of full handshakes, which created a new session.
+	 *
+	 * @return The number of full handshakes.
+	 */
+	public long getFullHandshakes() {
+		return fullHandshakes.get();
+	}
+
+	/**
+	 * Returns the number of handshakes, which resumed a cached session.
+	 *
+	 * @return The number of resumed handshakes.
+	 */
+	public long getResumedHandshakes() {
+		return resumedHandshakes.get();
+	}
+
+	/**
+	 * Returns the total time spent in handshakes.
+	 *
+	 * @return The total time in milliseconds.
+	 */
+	public double getTotalHandshakeMillis() {
+		return handshakeNanos.get() / 1e6;
+	}
+
+	/**
+	 * Returns the average duration of a handshake.
+	 *
+	 * @return The average duration in milliseconds, or zero if there wasn't any handshake.
+	 */
+	public double getAverageHandshakeMillis() {
+		long count = fullHandshakes.get() + resumedHandshakes.get();
+		return count == 0 ? 0 : getTotalHandshakeMillis() / count;
+	}
+
+	/**
+	 * Returns the duration of the longest handshake.
+	 *
+	 * @return The maximum duration in milliseconds.
+	 */
+	public double getMaxHandshakeMillis() {
+		return maxHandshakeNanos.get() / 1e6;
+	}
+
+	/**
+	 * Reset all counters to zero.
+	 */
+	public void reset() {
+		fullHandshakes.set(0);
+		resumedHandshakes.set(0);
+		handshakeNanos.set(0);
+		maxHandshakeNanos.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "full handshakes: " + getFullHandshakes()
+				+ ", resumed handshakes: " + getResumedHandshakes()
+				+ ", average: " + getAverageHandshakeMillis() + " ms"
+				+ ", max: " + getMaxHandshakeMillis() + " ms";
+	}
+
+}
@@ -0,0 +1,380 @@
+package de.timroes.axmlrpc.transport;
+
+import de.timroes.axmlrpc.XMLRPCClient;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.HttpRetryException;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+import javax.net.ssl.*;
+
+/**
+ * The default {@link Transport}, sending the requests with the
+ * {@link HttpURLConnection} of the JDK.
+ */
+public class HttpURLConnectionTransport implements Transport {
+
+	private static final String HTTP_POST = "POST";
+
+	/**
+	 * The verifier used with FLAGS_SSL_IGNORE_INVALID_HOST, it accepts all hosts.
+	 */
+	private static final HostnameVerifier ACCEPT_ALL_HOSTS = new HostnameVerifier() {
+		public boolean verify(String host, SSLSession ssl) {
+			return true;
+		}
+	};
+
+	/**
+	 * The long variant of setFixedLengthStreamingMode, missing before Android
+	 * API level 19, or null if the runtime doesn't have it.
+	 */
+	private static final Method FIXED_LENGTH_STREAMING_MODE;
+
+	static {
+		Method method = null;
+		try {
+			method = HttpURLConnection.class.getMethod("setFixedLengthStreamingMode", long.class);
+		} catch(NoSuchMethodException ex) {
+			// Only lengths up to Integer.MAX_VALUE can be streamed
+		}
+		FIXED_LENGTH_STREAMING_MODE = method;
+	}
+
+	private final int flags;
+
+	private volatile Proxy proxy;
+	/** The current SSL configuration, replaced when managers are installed. */
+	private volatile SSLConfig ssl = new SSLConfig(null, null, -1, -1);
+	private final HandshakeStatistics handshakeStatistics = new HandshakeStatistics();
+
+	/**
+	 * Create a new transport. The SSL flags of the {@link XMLRPCClient} are
+	 * used by this transport.
+	 *
+	 * @param flags A combination of flags to be set.
+	 */
+	public HttpURLConnectionTransport(int flags) {
+
+		this.flags = flags;
+
+		// If invalid ssl certs are ignored, instantiate an all trusting TrustManager
+		if(isFlagSet(XMLRPCClient.FLAGS_SSL_IGNORE_INVALID_CERT)) {
+			TrustManager[] trustManagers = new TrustManager[] {
+				new X509TrustManager() {
+					public void checkClientTrusted(X509Certificate[] xcs, String string)
+							throws CertificateException { }
+
+					public void checkServerTrusted(X509Certificate[] xcs, String string)
+							throws CertificateException { }
+
+					public X509Certificate[] getAcceptedIssuers() {
+						return null;
+					}
+				}
+			};
+			ssl = new SSLConfig(trustManagers, null, -1, -1);
+		}
+
+	}
+
+	/**
+	 * Sets a proxy to use for the connections, or null to connect directly.
+	 *
+	 * @param proxy A proxy to use for the connection.
+	 */
+	public void setProxy(Proxy proxy) {
+		this.proxy = proxy;
+	}
+
+	/**
+	 * Installs custom {@link TrustManager TrustManagers} to handle SSL/TLS certificate
+	 * verification. This will replace any previously installed {@code TrustManagers}s.
+	 * If {@link XMLRPCClient#FLAGS_SSL_IGNORE_INVALID_CERT} is set, this won't do anything.
+	 *
+	 * @param trustManagers {@link TrustManager TrustManagers} to install.
+	 */
+	public void installCustomTrustManagers(TrustManager[] trustManagers) {
+		if(!isFlagSet(XMLRPCClient.FLAGS_SSL_IGNORE_INVALID_CERT)) {
+			SSLConfig c = ssl;
+			ssl = new SSLConfig(trustManagers.clone(), c.keyManagers, c.sessionCacheSize, c.sessionTimeout);
+		}
+	}
+
+	/**
+	 * Installs custom {@link KeyManager KeyManagers} to handle SSL/TLS certificate
+	 * verification. This will replace any previously installed {@code KeyManagers}s.
+	 * If {@link XMLRPCClient#FLAGS_SSL_IGNORE_INVALID_CERT} is set, this won't do anything.
+	 *
+	 * @param keyManagers {@link KeyManager KeyManagers} to install.
+	 */
+	public void installCustomKeyManagers(KeyManager[] keyManagers) {
+		if(!isFlagSet(XMLRPCClient.FLAGS_SSL_IGNORE_INVALID_CERT)) {
+			SSLConfig c = ssl;
+			ssl = new SSLConfig(c.trustManagers, keyManagers.clone(), c.sessionCacheSize, c.sessionTimeout);
+		}
+	}
+
+	/**
+	 * Configures the cache of TLS sessions used to resume sessions with the
+	 * servers. Once this has been called, the transport uses its own SSLContext
+	 * instead of the default one of HttpsURLConnection.
+	 *
+	 * @param size The maximum number of cached sessions, or zero for no limit.
+	 * @param timeout The time in seconds a session is kept, or zero for no limit.
+	 */
+	public void setSessionCache(int size, int timeout) {
+		if(size < 0 || timeout < 0) {
+			throw new IllegalArgumentException("The size and timeout of the session cache must not be negative.");
+		}
+		SSLConfig c = ssl;
+		ssl = new SSLConfig(c.trustManagers, c.keyManagers, size, timeout);
+	}
+
+	/**
+	 * Returns the statistics of the TLS handshakes made by this transport.
+	 *
+	 * @return The handshake statistics.
+	 */
+	public HandshakeStatistics getHandshakeStatistics() {
+		return handshakeStatistics;
+	}
+
+	public TransportConnection openConnection(URL url, int connectTimeout, int readTimeout) throws IOException {
+
+		// If proxy is available, use it
+		URLConnection conn;
+		Proxy proxy = this.proxy;
+		if(proxy != null)
+			conn = url.openConnection(proxy);
+		else
+			conn = url.openConnection();
+
+		HttpURLConnection http = verifyConnection(conn);
+		http.setInstanceFollowRedirects(false);
+		http.setRequestMethod(HTTP_POST);
+		http.setDoOutput(true);
+		http.setDoInput(true);
+
+		// Set timeout
+		if(connectTimeout > 0) {
+			http.setConnectTimeout(connectTimeout);
+		}
+		if (readTimeout > 0) {
+			http.setReadTimeout(readTimeout);
+		}
+
+		return new Connection(http);
+
+	}
+
+	/**
+	 * Verifies the given URLConnection to be a valid HTTP or HTTPS connection.
+	 * If the SSL ignoring flags are set, the method will ignore SSL warnings.
+	 *
+	 * @param conn The URLConnection to validate.
+	 * @return The verified HttpURLConnection.
+	 * @throws IOException Will be thrown if an error occurred.
+	 */
+	private HttpURLConnection verifyConnection(URLConnection conn) throws IOException {
+
+			if(!(conn instanceof HttpURLConnection)) {
+				throw new IllegalArgumentException("The URL is not valid for a http connection.");
+			}
+
+			// Validate the connection if its an SSL connection
+			if(conn instanceof HttpsURLConnection) {
+
+				HttpsURLConnection h = (HttpsURLConnection)conn;
+
+				// Don't check, that URL matches the certificate.
+				if(isFlagSet(XMLRPCClient.FLAGS_SSL_IGNORE_INVALID_HOST)) {
+					h.setHostnameVerifier(ACCEPT_ALL_HOSTS);
+				}
+
+				// Use the socket factory of the SSL configuration, it measures the handshakes.
+				h.setSSLSocketFactory(ssl.getSocketFactory(handshakeStatistics));
+
+				return h;
+
+			}
+
+			return (HttpURLConnection)conn;
+
+	}
+
+	/**
+	 * Checks whether a specific flag has been set.
+	 *
+	 * @param flag The flag to check for.
+	 * @return Whether the flag has been set.
+	 */
+	private boolean isFlagSet(int flag) {
+		return (this.flags & flag) != 0;
+	}
+
+	/**
+	 * The SSL configuration of the https connections. The socket factory is
+	 * built on first use and then shared by all connections, so that the
+	 * SSLContext is only initialized once and its session cache lets
+	 * connections resume TLS sessions. Without custom managers and session
+	 * cache settings, the default socket factory of HttpsURLConnection is used.
+	 */
+	private static class SSLConfig {
+
+		private final TrustManager[] trustManagers;
+		private final KeyManager[] keyManagers;
+		private final int sessionCacheSize;
+		private final int sessionTimeout;
+		private volatile MeasuringSSLSocketFactory socketFactory;
+
+		SSLConfig(TrustManager[] trustManagers, KeyManager[] keyManagers,
+				int sessionCacheSize, int sessionTimeout) {
+			this.trustManagers = trustManagers;
+			this.keyManagers = keyManagers;
+			this.sessionCacheSize = sessionCacheSize;
+			this.sessionTimeout = sessionTimeout;
+		}
+
+		/**
+		 * Returns the socket factory of this configuration.
+		 *
+		 * @param statistics The statistics to record the handshakes in.
+		 * @return The socket factory.
+		 * @throws IOException Will be thrown if the SSLContext cannot be initialized.
+		 */
+		SSLSocketFactory getSocketFactory(HandshakeStatistics statistics) throws IOException {
+			MeasuringSSLSocketFactory factory = socketFactory;
+			if(trustManagers == null && keyManagers == null
+					&& sessionCacheSize < 0 && sessionTimeout < 0) {
+				// Follow changes of the default factory
+				SSLSocketFactory defaultFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+				if(factory == null || factory.getFactory() != defaultFactory) {
+					factory = new MeasuringSSLSocketFactory(defaultFactory, statistics);
+					socketFactory = factory;
+				}
+				return factory;
+			}
+			if(factory == null) {
+				// Two threads may build a factory at the same time, one is kept
+				try {
+					SSLContext sc = newContext();
+					sc.init(keyManagers, trustManagers, new SecureRandom());
+					SSLSessionContext sessions = sc.getClientSessionContext();
+					if(sessions != null && sessionCacheSize >= 0) {
+						sessions.setSessionCacheSize(sessionCacheSize);
+					}
+					if(sessions != null && sessionTimeout >= 0) {
+						sessions.setSessionTimeout(sessionTimeout);
+					}
+					factory = new MeasuringSSLSocketFactory(sc.getSocketFactory(), statistics);
+				} catch(GeneralSecurityException ex) {
+					throw new IOException(ex);
+				}
+				socketFactory = factory;
+			}
+			return factory;
+		}
+
+		private static SSLContext newContext() throws NoSuchAlgorithmException {
+			try {
+				return SSLContext.getInstance("TLS");
+			} catch(NoSuchAlgorithmException ex) {
+				return SSLContext.getInstance("SSL");
+			}
+		}
+
+	}
+
+	/**
+	 * A connection wrapping an {@link HttpURLConnection}.
+	 */
+	private static class Connection implements TransportConnection {
+
+		private final HttpURLConnection http;
+
+		Connection(HttpURLConnection http) {
+			this.http = http;
+		}
+
+		public void setRequestHeader(String name, String value) {
+			http.setRequestProperty(name, value);
+		}
+
+		public void setRequestBodyLength(long length) throws IOException {
+			// Without a streaming mode, HttpURLConnection buffers the whole body
+			if(length < 0) {
+				http.setChunkedStreamingMode(0);
+			} else if(length <= Integer.MAX_VALUE) {
+				http.setFixedLengthStreamingMode((int)length);
+			} else if(FIXED_LENGTH_STREAMING_MODE != null) {
+				try {
+					FIXED_LENGTH_STREAMING_MODE.invoke(http, length);
+				} catch(InvocationTargetException ex) {
+					throw new IOException(ex.getCause());
+				} catch(IllegalAccessException ex) {
+					throw new IOException(ex);
+				}
+			} else {
+				// Chunked requests may not be accepted by the server, they must be enabled
+				throw new IOException("The request is too long to send its Content-Length on this platform, "
+						+ "it can only be sent with FLAGS_CHUNKED_REQUESTS.");
+			}
+		}
+
+		public OutputStream getRequestBody() throws IOException {
+			return http.getOutputStream();
+		}
+
+		public int getStatusCode() throws IOException {
+			try {
+				return http.getResponseCode();
+			} catch(HttpRetryException ex) {
+				// A streamed request cannot be repeated with authentication
+				return ex.responseCode();
+			} catch(IOException ex) {
+				// Due to a bug on android, the getResponseCode()-method will
+				// fail the first time, with a IOException, when 401 or 403 has been returned.
+				// The second time it should success. If it fail the second time again
+				// the normal exception handling can take care of this, since
+				// it is a real error.
+				return http.getResponseCode();
+			}
+		}
+
+		public String getHeaderField(String name) {
+			return http.getHeaderField(name);
+		}
+
+		public Map<String, List<String>> getHeaderFields() {
+			return http.getHeaderFields();
+		}
+
+		public InputStream getResponseBody() throws IOException {
+			if(getStatusCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+				// getInputStream will fail if server returned an error
+				// code, use getErrorStream instead
+				return http.getErrorStream();
+			}
+			return http.getInputStream();
+		}
+
+		public void disconnect() {
+			http.disconnect();
+		}
+
+	}
+
+}
@@ -0,0 +1,91 @@
+package de.timroes.axmlrpc.transport;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * An SSLSocketFactory recording the handshakes of the sockets it creates in
+ * {@link HandshakeStatistics}. A handshake counts as resumed, if its session
+ * has been created before the socket. The duration of a handshake is
+ * measured from the creation of its socket, so for sockets connected after
+ * their creation it includes the time to connect.
+ */
+class MeasuringSSLSocketFactory extends SSLSocketFactory {
+
+	private final SSLSocketFactory factory;
+	private final HandshakeStatistics statistics;
+
+	MeasuringSSLSocketFactory(SSLSocketFactory factory, HandshakeStatistics statistics) {
+		this.factory = factory;
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Returns the factory wrapped by this factory.
+	 *
+	 * @return The wrapped factory.
+	 */
+	SSLSocketFactory getFactory() {
+		return factory;
+	}
+
+	@Override
+	public String[] getDefaultCipherSuites() {
+		return factory.getDefaultCipherSuites();
+	}
+
+	@Override
+	public String[] getSupportedCipherSuites() {
+		return factory.getSupportedCipherSuites();
+	}
+
+	@Override
+	public Socket createSocket() throws IOException {
+		return measure(factory.createSocket());
+	}
+
+	@Override
+	public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+		return measure(factory.createSocket(s, host, port, autoClose));
+	}
+
+	@Override
+	public Socket createSocket(String host, int port) throws IOException {
+		return measure(factory.createSocket(host, port));
+	}
+
+	@Override
+	public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+		return measure(factory.createSocket(host, port, localHost, localPort));
+	}
+
+	@Override
+	public Socket createSocket(InetAddress host, int port) throws IOException {
+		return measure(factory.createSocket(host, port));
+	}
+
+	@Override
+	public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+		return measure(factory.createSocket(address, port, localAddress, localPort));
+	}
+
+	private Socket measure(Socket socket) {
+		if(socket instanceof SSLSocket) {
+			final long startMillis = System.currentTimeMillis();
+			final long startNanos = System.nanoTime();
+			((SSLSocket)socket).addHandshakeCompletedListener(new HandshakeCompletedListener() {
+				public void handshakeCompleted(HandshakeCompletedEvent event) {
+					boolean resumed = event.getSession().getCreationTime() < startMillis;
+					statistics.record(resumed, System.nanoTime() - startNanos);
+				}
+			});
+		}
+		return socket;
+	}
+
+}
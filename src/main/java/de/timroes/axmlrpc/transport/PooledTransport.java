@@ -0,0 +1,1065 @@
+package de.timroes.axmlrpc.transport;
+
+import de.timroes.axmlrpc.XMLRPCClient;
+import de.timroes.axmlrpc.transport.ConnectionPool.PooledSocket;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * A {@link Transport} speaking HTTP/1.1 over its own sockets, which are kept
+ * alive in a {@link ConnectionPool} and reused by the following requests to
+ * the same host. Unlike the keep-alive cache of {@link java.net.HttpURLConnection},
+ * the pool has explicit limits and statistics, and canceling a call only
+ * closes the connection of that call.
+ *
+ * A connection is only reused once its response has been read completely.
+ * Request bodies up to 64 KB are buffered. If such a request can't be written
+ * to a reused connection, or the server closes or resets the connection
+ * before sending any byte of the response, the connection has been closed by
+ * the server while it was idle, and the request is sent once more on a new
+ * connection. A request whose response timed out is never sent again, since
+ * the server may be processing it. Longer request bodies, and bodies of
+ * unknown length, are streamed to the connection.
+ */
+public class PooledTransport implements Transport {
+
+	private static final String HTTP_POST = "POST";
+	private static final String HTTP_1_1 = "HTTP/1.1";
+	private static final String HTTPS = "https";
+	private static final String ENCODING = "ISO-8859-1";
+	private static final String CRLF = "\r\n";
+
+	/** The most bytes read from an unread response to reuse its connection. */
+	private static final int MAX_DRAIN = 8192;
+	/** The longest request body buffered, to be able to send it again. */
+	private static final int MAX_BUFFERED = 65536;
+	/** The size of the chunks of a chunked request body. */
+	private static final int CHUNK_SIZE = 8192;
+	/** The longest status or header line accepted. */
+	private static final int MAX_LINE = 65536;
+	/** The most header lines accepted in a response head. */
+	private static final int MAX_HEADERS = 256;
+	/** The characters allowed in header names besides letters and digits. */
+	private static final String TOKEN_CHARS = "!#$%&'*+-.^_`|~";
+
+	private final int flags;
+	private final ConnectionPool pool;
+
+	private volatile Proxy proxy;
+	private volatile SSLSocketFactory sslSocketFactory;
+	private final HandshakeStatistics handshakeStatistics = new HandshakeStatistics();
+
+	/**
+	 * Create a new transport with its own pool using the default limits.
+	 * The SSL flags of the {@link XMLRPCClient} are used by this transport.
+	 *
+	 * @param flags A combination of flags to be set.
+	 */
+	public PooledTransport(int flags) {
+		this(flags, new ConnectionPool());
+	}
+
+	/**
+	 * Create a new transport. The SSL flags of the {@link XMLRPCClient} are
+	 * used by this transport.
+	 *
+	 * @param flags A combination of flags to be set.
+	 * @param pool The pool to keep the connections in, it may be shared by several transports.
+	 */
+	public PooledTransport(int flags, ConnectionPool pool) {
+
+		this.flags = flags;
+		this.pool = pool;
+
+		// If invalid ssl certs are ignored, use an all trusting TrustManager
+		if(isFlagSet(XMLRPCClient.FLAGS_SSL_IGNORE_INVALID_CERT)) {
+			TrustManager[] trustManagers = new TrustManager[] {
+				new X509TrustManager() {
+					public void checkClientTrusted(X509Certificate[] xcs, String string)
+							throws CertificateException { }
+
+					public void checkServerTrusted(X509Certificate[] xcs, String string)
+							throws CertificateException { }
+
+					public X509Certificate[] getAcceptedIssuers() {
+						return null;
+					}
+				}
+			};
+			try {
+				SSLContext sc = SSLContext.getInstance("TLS");
+				sc.init(null, trustManagers, new SecureRandom());
+				sslSocketFactory = sc.getSocketFactory();
+			} catch(GeneralSecurityException ex) {
+				throw new IllegalStateException("Cannot create the SSLContext.", ex);
+			}
+		}
+
+	}
+
+	/**
+	 * Sets a proxy to use for the connections, or null to connect directly.
+	 * HTTP and SOCKS proxies are supported, https requests are tunneled
+	 * through HTTP proxies.
+	 *
+	 * @param proxy A proxy to use for the connection.
+	 */
+	public void setProxy(Proxy proxy) {
+		this.proxy = proxy;
+	}
+
+	/**
+	 * Sets the factory to create the https connections with, or null to use
+	 * the default factory of {@link HttpsURLConnection}. If
+	 * {@link XMLRPCClient#FLAGS_SSL_IGNORE_INVALID_CERT} is set, this won't do anything.
+	 *
+	 * @param factory The factory to create the https connections with.
+	 */
+	public void setSSLSocketFactory(SSLSocketFactory factory) {
+		if(!isFlagSet(XMLRPCClient.FLAGS_SSL_IGNORE_INVALID_CERT)) {
+			this.sslSocketFactory = factory;
+		}
+	}
+
+	/**
+	 * Returns the pool keeping the connections of this transport.
+	 *
+	 * @return The connection pool.
+	 */
+	public ConnectionPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Returns the statistics of the TLS handshakes made by this transport.
+	 *
+	 * @return The handshake statistics.
+	 */
+	public HandshakeStatistics getHandshakeStatistics() {
+		return handshakeStatistics;
+	}
+
+	public TransportConnection openConnection(URL url, int connectTimeout, int readTimeout) throws IOException {
+		String protocol = url.getProtocol().toLowerCase();
+		if(!protocol.equals("http") && !protocol.equals(HTTPS)) {
+			throw new IllegalArgumentException("The URL is not valid for a http connection.");
+		}
+		return new Connection(url, proxy, connectTimeout, readTimeout);
+	}
+
+	/**
+	 * Checks whether a specific flag has been set.
+	 *
+	 * @param flag The flag to check for.
+	 * @return Whether the flag has been set.
+	 */
+	private boolean isFlagSet(int flag) {
+		return (this.flags & flag) != 0;
+	}
+
+	/**
+	 * Read a line terminated by a line feed, without the line break.
+	 *
+	 * @param in The stream to read from.
+	 * @return The line, or null if the stream ended before the line.
+	 * @throws IOException Will be thrown if the stream ends inside the line.
+	 */
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int b;
+		while((b = in.read()) != '\n') {
+			if(b == -1) {
+				if(line.length() == 0) {
+					return null;
+				}
+				throw new EOFException("Unexpected end of the response.");
+			}
+			if(line.length() >= MAX_LINE) {
+				throw new IOException("The response contains a too long line.");
+			}
+			line.append((char)b);
+		}
+		int length = line.length();
+		if(length > 0 && line.charAt(length - 1) == '\r') {
+			line.setLength(length - 1);
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Read the header lines up to the empty line ending them.
+	 *
+	 * @param in The stream to read from.
+	 * @return The headers, with case insensitive names.
+	 * @throws IOException Will be thrown if the headers cannot be read.
+	 */
+	private static Map<String,List<String>> readHeaders(InputStream in) throws IOException {
+		Map<String,List<String>> headers = new TreeMap<String,List<String>>(String.CASE_INSENSITIVE_ORDER);
+		String line;
+		int count = 0;
+		while((line = readLine(in)) != null && line.length() > 0) {
+			if(++count > MAX_HEADERS) {
+				throw new IOException("The response contains too many header lines.");
+			}
+			int colon = line.indexOf(':');
+			if(colon <= 0) {
+				throw new IOException("Invalid header line: " + line);
+			}
+			String name = line.substring(0, colon).trim();
+			List<String> values = headers.get(name);
+			if(values == null) {
+				values = new ArrayList<String>(1);
+				headers.put(name, values);
+			}
+			values.add(line.substring(colon + 1).trim());
+		}
+		if(line == null) {
+			throw new EOFException("Unexpected end of the response headers.");
+		}
+		return headers;
+	}
+
+	/**
+	 * Check that a request header can be written to the request head as it
+	 * is. Line breaks in a value would add headers or split the request.
+	 *
+	 * @param name The name of the header.
+	 * @param value The value of the header.
+	 * @throws IllegalArgumentException Will be thrown if the name isn't a
+	 *		token or the value contains control characters.
+	 */
+	private static void checkHeader(String name, String value) {
+		if(name.length() == 0) {
+			throw new IllegalArgumentException("The header name is empty.");
+		}
+		for(int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if(!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+					|| TOKEN_CHARS.indexOf(c) >= 0)) {
+				throw new IllegalArgumentException("Illegal character in the header name: " + name);
+			}
+		}
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if(c < ' ' && c != '\t' || c == 0x7F) {
+				throw new IllegalArgumentException("Illegal character in the value of the header " + name);
+			}
+		}
+	}
+
+	/**
+	 * Parse the status code of a status line.
+	 *
+	 * @param line The status line, e.g. {@code HTTP/1.1 200 OK}.
+	 * @return The status code.
+	 * @throws IOException Will be thrown if the status line is invalid.
+	 */
+	private static int parseStatusCode(String line) throws IOException {
+		int start = line.indexOf(' ');
+		if(!line.startsWith("HTTP/") || start < 0 || line.length() < start + 4) {
+			throw new IOException("Invalid status line: " + line);
+		}
+		try {
+			return Integer.parseInt(line.substring(start + 1, start + 4));
+		} catch(NumberFormatException ex) {
+			throw new IOException("Invalid status line: " + line);
+		}
+	}
+
+	/**
+	 * Returns the last value of a header.
+	 *
+	 * @param headers The headers.
+	 * @param name The name of the header.
+	 * @return The last value of the header, or null if it isn't set.
+	 */
+	private static String lastValue(Map<String,List<String>> headers, String name) {
+		List<String> values = headers.get(name);
+		return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+	}
+
+	/**
+	 * A request sent over a pooled connection.
+	 */
+	private class Connection implements TransportConnection {
+
+		private final URL url;
+		private final Proxy proxy;
+		private final String host;
+		private final int port;
+		private final boolean https;
+		private final String key;
+		private final int connectTimeout;
+		private final int readTimeout;
+
+		private final Map<String,String> requestHeaders =
+				new TreeMap<String,String>(String.CASE_INSENSITIVE_ORDER);
+		private long requestLength = -2;
+		private OutputStream requestBody;
+
+		/** The connection in use, until it is released or discarded. */
+		private final AtomicReference<PooledSocket> socket = new AtomicReference<PooledSocket>();
+		private volatile boolean disconnected;
+
+		private boolean sent;
+		private boolean responseStarted;
+		private int statusCode = -1;
+		private Map<String,List<String>> headers;
+		private InputStream body;
+
+		Connection(URL url, Proxy proxy, int connectTimeout, int readTimeout) {
+			this.url = url;
+			this.proxy = proxy != null && proxy.type() != Proxy.Type.DIRECT ? proxy : null;
+			this.host = url.getHost();
+			this.port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+			this.https = url.getProtocol().equalsIgnoreCase(HTTPS);
+			this.connectTimeout = connectTimeout;
+			this.readTimeout = readTimeout;
+			this.key = url.getProtocol().toLowerCase() + "://" + host + ":" + port
+					+ (this.proxy != null ? " via " + this.proxy : "");
+		}
+
+		public void setRequestHeader(String name, String value) {
+			checkHeader(name, value);
+			requestHeaders.put(name, value);
+		}
+
+		public void setRequestBodyLength(long length) {
+			requestLength = length;
+		}
+
+		public OutputStream getRequestBody() throws IOException {
+			if(requestBody != null) {
+				return requestBody;
+			}
+			if(requestLength == -1 || requestLength > MAX_BUFFERED) {
+				// Stream the body, it cannot be sent again
+				sent = true;
+				PooledSocket s = open();
+				try {
+					s.out.write(writeHead(requestLength));
+				} catch(IOException ex) {
+					finish(false);
+					throw ex;
+				}
+				requestBody = requestLength == -1
+						? new ChunkedRequestBody(s)
+						: new FixedLengthRequestBody(s, requestLength);
+			} else {
+				requestBody = new BufferedRequestBody();
+			}
+			return requestBody;
+		}
+
+		public int getStatusCode() throws IOException {
+			send();
+			return statusCode;
+		}
+
+		public String getHeaderField(String name) {
+			return headers == null ? null : lastValue(headers, name);
+		}
+
+		public Map<String, List<String>> getHeaderFields() {
+			if(headers == null) {
+				return Collections.emptyMap();
+			}
+			return Collections.unmodifiableMap(headers);
+		}
+
+		public InputStream getResponseBody() throws IOException {
+			send();
+			return body;
+		}
+
+		public void disconnect() {
+			disconnected = true;
+			finish(false);
+		}
+
+		/**
+		 * Give the connection back to the pool, or close it. Only the first
+		 * call has an effect, so that a connection is never given back twice.
+		 *
+		 * @param reuse Whether the connection can be reused.
+		 */
+		private void finish(boolean reuse) {
+			PooledSocket s = socket.getAndSet(null);
+			if(s != null) {
+				if(reuse) {
+					pool.release(s);
+				} else {
+					pool.discard(s);
+				}
+			}
+		}
+
+		/**
+		 * Send the request and read the head of the response, if that hasn't
+		 * been done yet.
+		 *
+		 * @throws IOException Will be thrown if the request fails.
+		 */
+		private void send() throws IOException {
+
+			if(sent) {
+				if(statusCode == -1) {
+					throw new IOException("No response has been received.");
+				}
+				return;
+			}
+			sent = true;
+
+			byte[] content = requestBody instanceof BufferedRequestBody
+					? ((BufferedRequestBody)requestBody).toByteArray() : new byte[0];
+			byte[] head = writeHead(content.length);
+
+			boolean retried = false;
+			while(true) {
+				PooledSocket s = open();
+				boolean reused = s.reused;
+				boolean written = false;
+				responseStarted = false;
+				try {
+					s.out.write(head);
+					s.out.write(content);
+					s.out.flush();
+					written = true;
+					receive(s);
+					return;
+				} catch(IOException ex) {
+					finish(false);
+					// A reused connection may have been closed by the server
+					// meanwhile, the request is then sent on a new connection.
+					// After a timeout the server may still process the request.
+					boolean closed = !written || (!responseStarted
+							&& (ex instanceof EOFException || ex instanceof SocketException));
+					if(!reused || !closed || retried || disconnected) {
+						throw ex;
+					}
+					retried = true;
+				}
+			}
+
+		}
+
+		/**
+		 * Take a connection from the pool, or open a new one.
+		 *
+		 * @return The connection to send the request on.
+		 * @throws IOException Will be thrown if no connection can be opened.
+		 */
+		private PooledSocket open() throws IOException {
+			PooledSocket s = pool.acquire(key, connectTimeout);
+			if(s == null) {
+				Socket connection = null;
+				try {
+					connection = connect();
+					s = new PooledSocket(key, connection);
+				} catch(IOException ex) {
+					if(connection != null) {
+						connection.close();
+					}
+					pool.cancel(key);
+					throw ex;
+				}
+			}
+			socket.set(s);
+			if(disconnected) {
+				finish(false);
+				throw new IOException("The connection has been closed.");
+			}
+			try {
+				s.socket.setSoTimeout(readTimeout);
+			} catch(IOException ex) {
+				finish(false);
+				throw ex;
+			}
+			return s;
+		}
+
+		/**
+		 * Read the head of the response, once the request has been sent.
+		 *
+		 * @param s The connection to read from.
+		 * @throws IOException Will be thrown if the response is invalid.
+		 */
+		private void receive(PooledSocket s) throws IOException {
+			// Wait for the first byte, to know whether the server answered at all
+			s.in.mark(1);
+			if(s.in.read() == -1) {
+				throw new EOFException("The server closed the connection.");
+			}
+			responseStarted = true;
+			s.in.reset();
+			readResponse(s, readLine(s.in));
+		}
+
+		/**
+		 * Write the request line and headers.
+		 *
+		 * @param contentLength The length of the request body, or -1 for a chunked body.
+		 * @return The encoded head of the request.
+		 * @throws IOException Will be thrown if the head cannot be encoded.
+		 */
+		private byte[] writeHead(long contentLength) throws IOException {
+			StringBuilder head = new StringBuilder(256);
+			String target;
+			if(proxy != null && proxy.type() == Proxy.Type.HTTP && !https) {
+				// Plain requests to a HTTP proxy contain the full URL
+				target = url.toExternalForm();
+				int fragment = target.indexOf('#');
+				if(fragment >= 0) {
+					target = target.substring(0, fragment);
+				}
+			} else {
+				target = url.getFile();
+				if(target.length() == 0) {
+					target = "/";
+				}
+			}
+			head.append(HTTP_POST).append(' ').append(target).append(' ').append(HTTP_1_1).append(CRLF);
+			head.append("Host: ").append(host);
+			if(port != url.getDefaultPort()) {
+				head.append(':').append(port);
+			}
+			head.append(CRLF);
+			for(Map.Entry<String,String> header : requestHeaders.entrySet()) {
+				String name = header.getKey();
+				if(!name.equalsIgnoreCase("Host") && !name.equalsIgnoreCase("Content-Length")
+						&& !name.equalsIgnoreCase("Transfer-Encoding")) {
+					head.append(name).append(": ").append(header.getValue()).append(CRLF);
+				}
+			}
+			if(contentLength == -1) {
+				head.append("Transfer-Encoding: chunked").append(CRLF);
+			} else {
+				head.append("Content-Length: ").append(contentLength).append(CRLF);
+			}
+			head.append(CRLF);
+			return head.toString().getBytes(ENCODING);
+		}
+
+		/**
+		 * Read the head of the response and prepare its body.
+		 *
+		 * @param s The connection to read from.
+		 * @param statusLine The status line, which has already been read.
+		 * @throws IOException Will be thrown if the response is invalid.
+		 */
+		private void readResponse(PooledSocket s, String statusLine) throws IOException {
+
+			int code = parseStatusCode(statusLine);
+			Map<String,List<String>> responseHeaders = readHeaders(s.in);
+
+			// Skip informational responses, like 100 Continue
+			while(code >= 100 && code < 200) {
+				statusLine = readLine(s.in);
+				if(statusLine == null) {
+					throw new EOFException("The server closed the connection.");
+				}
+				code = parseStatusCode(statusLine);
+				responseHeaders = readHeaders(s.in);
+			}
+
+			String connection = lastValue(responseHeaders, "Connection");
+			boolean keepAlive = statusLine.startsWith(HTTP_1_1)
+					? !"close".equalsIgnoreCase(connection)
+					: "keep-alive".equalsIgnoreCase(connection);
+
+			String transferEncoding = lastValue(responseHeaders, "Transfer-Encoding");
+			String contentLength = lastValue(responseHeaders, "Content-Length");
+
+			InputStream responseBody;
+			if(code == 204 || code == 304) {
+				responseBody = null;
+			} else if(transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+				responseBody = new ChunkedBody(s.in, keepAlive);
+			} else if(contentLength != null) {
+				long length;
+				try {
+					length = Long.parseLong(contentLength.trim());
+				} catch(NumberFormatException ex) {
+					throw new IOException("Invalid Content-Length: " + contentLength);
+				}
+				responseBody = length > 0 ? new FixedLengthBody(s.in, length, keepAlive) : null;
+			} else {
+				// The body ends with the connection
+				responseBody = new ResponseBody(s.in, false);
+			}
+
+			if(responseBody == null) {
+				responseBody = new ByteArrayInputStream(new byte[0]);
+				finish(keepAlive);
+			}
+
+			headers = responseHeaders;
+			body = responseBody;
+			statusCode = code;
+
+		}
+
+		/**
+		 * Open a new connection to the host of the request.
+		 *
+		 * @return The connected socket.
+		 * @throws IOException Will be thrown if the connection cannot be opened.
+		 */
+		private Socket connect() throws IOException {
+
+			Socket s;
+			if(proxy != null && proxy.type() == Proxy.Type.SOCKS) {
+				// The proxy resolves the host
+				s = new Socket(proxy);
+				connect(s, InetSocketAddress.createUnresolved(host, port));
+			} else if(proxy != null) {
+				s = new Socket();
+				InetSocketAddress address = (InetSocketAddress)proxy.address();
+				if(address.isUnresolved()) {
+					address = new InetSocketAddress(address.getHostName(), address.getPort());
+				}
+				connect(s, address);
+			} else {
+				s = new Socket();
+				connect(s, new InetSocketAddress(host, port));
+			}
+
+			try {
+				s.setTcpNoDelay(true);
+				if(https) {
+					if(proxy != null && proxy.type() == Proxy.Type.HTTP) {
+						tunnel(s);
+					}
+					s = secure(s);
+				}
+				return s;
+			} catch(IOException ex) {
+				s.close();
+				throw ex;
+			}
+
+		}
+
+		private void connect(Socket s, InetSocketAddress address) throws IOException {
+			try {
+				s.connect(address, connectTimeout);
+			} catch(IOException ex) {
+				s.close();
+				throw ex;
+			}
+		}
+
+		/**
+		 * Open a tunnel to the host through a HTTP proxy.
+		 *
+		 * @param s The connection to the proxy.
+		 * @throws IOException Will be thrown if the proxy refuses the tunnel.
+		 */
+		private void tunnel(Socket s) throws IOException {
+			s.setSoTimeout(readTimeout);
+			String authority = host + ":" + port;
+			OutputStream out = s.getOutputStream();
+			out.write(("CONNECT " + authority + " " + HTTP_1_1 + CRLF
+					+ "Host: " + authority + CRLF + CRLF).getBytes(ENCODING));
+			out.flush();
+			// Read unbuffered, the TLS handshake follows on the same stream
+			InputStream in = s.getInputStream();
+			String statusLine = readLine(in);
+			if(statusLine == null) {
+				throw new EOFException("The proxy closed the connection.");
+			}
+			readHeaders(in);
+			int code = parseStatusCode(statusLine);
+			if(code < 200 || code >= 300) {
+				throw new IOException("Unable to tunnel through the proxy: " + statusLine);
+			}
+		}
+
+		/**
+		 * Start TLS on a connection and verify the host of the certificate.
+		 *
+		 * @param s The plain connection.
+		 * @return The secured connection.
+		 * @throws IOException Will be thrown if the handshake or the verification fails.
+		 */
+		private Socket secure(Socket s) throws IOException {
+			SSLSocketFactory factory = sslSocketFactory;
+			if(factory == null) {
+				factory = HttpsURLConnection.getDefaultSSLSocketFactory();
+			}
+			factory = new MeasuringSSLSocketFactory(factory, handshakeStatistics);
+			SSLSocket ssl = (SSLSocket)factory.createSocket(s, host, port, true);
+			boolean verify = !isFlagSet(XMLRPCClient.FLAGS_SSL_IGNORE_INVALID_HOST);
+			boolean verified = verify && enableHostVerification(ssl);
+			ssl.setSoTimeout(readTimeout);
+			ssl.startHandshake();
+			if(verify && !verified
+					&& !HttpsURLConnection.getDefaultHostnameVerifier().verify(host, ssl.getSession())) {
+				ssl.close();
+				throw new SSLPeerUnverifiedException("The certificate doesn't match the host " + host + ".");
+			}
+			return ssl;
+		}
+
+		/**
+		 * Let the handshake verify the host of the certificate.
+		 *
+		 * @param ssl The socket to verify the host for.
+		 * @return Whether the handshake verifies the host.
+		 */
+		private boolean enableHostVerification(SSLSocket ssl) {
+			try {
+				SSLParameters params = ssl.getSSLParameters();
+				params.setEndpointIdentificationAlgorithm("HTTPS");
+				ssl.setSSLParameters(params);
+				return true;
+			} catch(NoSuchMethodError ex) {
+				// Older Android versions, the host is verified after the handshake
+				return false;
+			}
+		}
+
+		/**
+		 * A buffered request body, sent when it is closed.
+		 */
+		private class BufferedRequestBody extends ByteArrayOutputStream {
+
+			private boolean closed;
+
+			@Override
+			public void close() throws IOException {
+				if(!closed) {
+					closed = true;
+					send();
+				}
+			}
+
+		}
+
+		/**
+		 * A request body written to the connection while it is written.
+		 * Once it is closed, the head of the response is read.
+		 */
+		private abstract class StreamingRequestBody extends OutputStream {
+
+			protected final PooledSocket s;
+			private boolean closed;
+
+			StreamingRequestBody(PooledSocket s) {
+				this.s = s;
+			}
+
+			protected abstract void writeBody(byte[] b, int off, int len) throws IOException;
+
+			protected abstract void endBody() throws IOException;
+
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] { (byte)b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				if(closed) {
+					throw new IOException("The request body has been closed.");
+				}
+				try {
+					writeBody(b, off, len);
+				} catch(IOException ex) {
+					finish(false);
+					throw ex;
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				if(closed) {
+					return;
+				}
+				closed = true;
+				try {
+					endBody();
+					s.out.flush();
+					receive(s);
+				} catch(IOException ex) {
+					finish(false);
+					throw ex;
+				}
+			}
+
+		}
+
+		/**
+		 * A streamed request body with a Content-Length.
+		 */
+		private class FixedLengthRequestBody extends StreamingRequestBody {
+
+			private long remaining;
+
+			FixedLengthRequestBody(PooledSocket s, long length) {
+				super(s);
+				this.remaining = length;
+			}
+
+			@Override
+			protected void writeBody(byte[] b, int off, int len) throws IOException {
+				if(len > remaining) {
+					throw new IOException("The request body is longer than its length.");
+				}
+				s.out.write(b, off, len);
+				remaining -= len;
+			}
+
+			@Override
+			protected void endBody() throws IOException {
+				if(remaining != 0) {
+					throw new IOException("The request body is shorter than its length.");
+				}
+			}
+
+		}
+
+		/**
+		 * A streamed request body with chunked transfer encoding.
+		 */
+		private class ChunkedRequestBody extends StreamingRequestBody {
+
+			private final byte[] chunk = new byte[CHUNK_SIZE];
+			private int length;
+
+			ChunkedRequestBody(PooledSocket s) {
+				super(s);
+			}
+
+			@Override
+			protected void writeBody(byte[] b, int off, int len) throws IOException {
+				while(len > 0) {
+					int n = Math.min(len, chunk.length - length);
+					System.arraycopy(b, off, chunk, length, n);
+					length += n;
+					off += n;
+					len -= n;
+					if(length == chunk.length) {
+						writeChunk();
+					}
+				}
+			}
+
+			@Override
+			protected void endBody() throws IOException {
+				writeChunk();
+				// The last chunk, without trailers
+				s.out.write(("0" + CRLF + CRLF).getBytes(ENCODING));
+			}
+
+			private void writeChunk() throws IOException {
+				if(length > 0) {
+					s.out.write((Integer.toHexString(length) + CRLF).getBytes(ENCODING));
+					s.out.write(chunk, 0, length);
+					s.out.write(CRLF.getBytes(ENCODING));
+					length = 0;
+				}
+			}
+
+		}
+
+		/**
+		 * The body of a response, ending with the connection. The connection
+		 * is given back to the pool once the body has been read completely.
+		 */
+		private class ResponseBody extends InputStream {
+
+			protected final InputStream in;
+			private final boolean keepAlive;
+			private boolean ended;
+
+			ResponseBody(InputStream in, boolean keepAlive) {
+				this.in = in;
+				this.keepAlive = keepAlive;
+			}
+
+			/**
+			 * Read from the body.
+			 *
+			 * @return The number of bytes read, or -1 at the end of the body.
+			 */
+			protected int readBody(byte[] b, int off, int len) throws IOException {
+				return in.read(b, off, len);
+			}
+
+			@Override
+			public int read() throws IOException {
+				byte[] one = new byte[1];
+				int n;
+				while((n = read(one, 0, 1)) == 0) { }
+				return n == -1 ? -1 : one[0] & 0xFF;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if(ended) {
+					return -1;
+				}
+				if(len == 0) {
+					return 0;
+				}
+				int n;
+				try {
+					n = readBody(b, off, len);
+				} catch(IOException ex) {
+					ended = true;
+					finish(false);
+					throw ex;
+				}
+				if(n == -1) {
+					ended = true;
+					finish(keepAlive);
+				}
+				return n;
+			}
+
+			@Override
+			public void close() throws IOException {
+				if(ended) {
+					return;
+				}
+				if(!keepAlive) {
+					ended = true;
+					finish(false);
+					return;
+				}
+				// Read a small remainder, to be able to reuse the connection
+				byte[] buffer = new byte[1024];
+				int drained = 0;
+				try {
+					while(!ended && drained < MAX_DRAIN) {
+						int n = read(buffer, 0, buffer.length);
+						if(n > 0) {
+							drained += n;
+						}
+					}
+				} catch(IOException ex) {
+					// The connection is discarded
+				}
+				if(!ended) {
+					ended = true;
+					finish(false);
+				}
+			}
+
+		}
+
+		/**
+		 * A response body with a Content-Length.
+		 */
+		private class FixedLengthBody extends ResponseBody {
+
+			private long remaining;
+
+			FixedLengthBody(InputStream in, long length, boolean keepAlive) {
+				super(in, keepAlive);
+				this.remaining = length;
+			}
+
+			@Override
+			protected int readBody(byte[] b, int off, int len) throws IOException {
+				if(remaining == 0) {
+					return -1;
+				}
+				int n = in.read(b, off, (int)Math.min(len, remaining));
+				if(n == -1) {
+					throw new EOFException("Unexpected end of the response.");
+				}
+				remaining -= n;
+				return n;
+			}
+
+		}
+
+		/**
+		 * A response body with chunked transfer encoding.
+		 */
+		private class ChunkedBody extends ResponseBody {
+
+			private long remaining;
+			private boolean first = true;
+
+			ChunkedBody(InputStream in, boolean keepAlive) {
+				super(in, keepAlive);
+			}
+
+			@Override
+			protected int readBody(byte[] b, int off, int len) throws IOException {
+				if(remaining == 0) {
+					if(!first) {
+						// The line break after the previous chunk
+						readChunkLine();
+					}
+					first = false;
+					String line = readChunkLine();
+					int extension = line.indexOf(';');
+					if(extension >= 0) {
+						line = line.substring(0, extension);
+					}
+					try {
+						remaining = Long.parseLong(line.trim(), 16);
+					} catch(NumberFormatException ex) {
+						throw new IOException("Invalid chunk size: " + line);
+					}
+					if(remaining < 0) {
+						throw new IOException("Invalid chunk size: " + line);
+					}
+					if(remaining == 0) {
+						// Skip the trailers
+						while(readChunkLine().length() > 0) { }
+						return -1;
+					}
+				}
+				int n = in.read(b, off, (int)Math.min(len, remaining));
+				if(n == -1) {
+					throw new EOFException("Unexpected end of the response.");
+				}
+				remaining -= n;
+				return n;
+			}
+
+			private String readChunkLine() throws IOException {
+				String line = readLine(in);
+				if(line == null) {
+					throw new EOFException("Unexpected end of the response.");
+				}
+				return line;
+			}
+
+		}
+
+	}
+
+}
@@ -0,0 +1,27 @@
+package de.timroes.axmlrpc.transport;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * A Transport opens the connections used by the
+ * {@link de.timroes.axmlrpc.XMLRPCClient} to send its requests.
+ * The default transport is the {@link HttpURLConnectionTransport}, another
+ * one can be set with
+ * {@link de.timroes.axmlrpc.XMLRPCClient#setTransport(de.timroes.axmlrpc.transport.Transport)}.
+ * A transport must be usable by several threads at the same time.
+ */
+public interface Transport {
+
+	/**
+	 * Open a new connection, to send a single request to the given URL.
+	 *
+	 * @param url The URL to send the request to.
+	 * @param connectTimeout The connect timeout in milliseconds, or zero for no timeout.
+	 * @param readTimeout The read timeout in milliseconds, or zero for no timeout.
+	 * @return A connection to send the request with.
+	 * @throws IOException Will be thrown if the connection cannot be opened.
+	 */
+	public TransportConnection openConnection(URL url, int connectTimeout, int readTimeout) throws IOException;
+
+}
@@ -0,0 +1,83 @@
+package de.timroes.axmlrpc.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A TransportConnection sends a single HTTP POST request and gives access to
+ * the response. The request headers and the length of the body must be set
+ * before the request body is written, and the request body must be written
+ * and closed before the response is read.
+ */
+public interface TransportConnection {
+
+	/**
+	 * Set a header of the request. An existing header with the same name
+	 * is replaced.
+	 *
+	 * @param name The name of the header.
+	 * @param value The value of the header.
+	 */
+	public void setRequestHeader(String name, String value);
+
+	/**
+	 * Set the length of the request body, before {@link #getRequestBody()} is
+	 * called. A body of known length is streamed with this Content-Length,
+	 * a body of unknown length is streamed with chunked transfer encoding.
+	 * If the length isn't set, the transport may buffer the whole body to
+	 * compute its length.
+	 *
+	 * @param length The length of the body in bytes, or -1 if it is unknown.
+	 * @throws IOException Will be thrown if a body of this length can't be sent.
+	 */
+	public void setRequestBodyLength(long length) throws IOException;
+
+	/**
+	 * Returns the stream to write the request body to.
+	 *
+	 * @return The stream to write the request body to.
+	 * @throws IOException Will be thrown if an error occurs.
+	 */
+	public OutputStream getRequestBody() throws IOException;
+
+	/**
+	 * Returns the HTTP status code of the response.
+	 *
+	 * @return The status code.
+	 * @throws IOException Will be thrown if the response cannot be read.
+	 */
+	public int getStatusCode() throws IOException;
+
+	/**
+	 * Returns the value of a header of the response. The name is case insensitive.
+	 *
+	 * @param name The name of the header.
+	 * @return The value of the header, or null if it isn't set.
+	 */
+	public String getHeaderField(String name);
+
+	/**
+	 * Returns all headers of the response.
+	 *
+	 * @return The headers of the response, with all their values.
+	 */
+	public Map<String, List<String>> getHeaderFields();
+
+	/**
+	 * Returns the body of the response, also for error status codes.
+	 *
+	 * @return The stream to read the response body from.
+	 * @throws IOException Will be thrown if the response cannot be read.
+	 */
+	public InputStream getResponseBody() throws IOException;
+
+	/**
+	 * Close the connection. This may be called from another thread to abort
+	 * a running request.
+	 */
+	public void disconnect();
+
+}
@@ -0,0 +1,272 @@
+package de.timroes.axmlrpc.xmlcreator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Writes xml tags directly to an output stream, UTF-8 encoded.
+ * It is the streaming counterpart of the {@link XmlElement}: no tree is built
+ * and the written xml is the same as the string representation of the
+ * equivalent tree of XmlElements.
+ * Like for XmlElements, text content is written as given, it must already
+ * be escaped.
+ *
+ * A writer created by {@link #counting()} doesn't write anything, it only
+ * counts the length of the encoded xml.
+ */
+public class XmlWriter {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final Writer writer;
+	private final char[] buffer = new char[4096];
+	private int position;
+
+	/** The counted bytes, null if the xml is written. */
+	private final Counter counter;
+	private long skipped;
+
+	/**
+	 * Create a new xml writer on the given stream.
+	 *
+	 * @param out The stream to write the xml to.
+	 */
+	public XmlWriter(OutputStream out) {
+		this(out, null);
+	}
+
+	private XmlWriter(OutputStream out, Counter counter) {
+		this.writer = new OutputStreamWriter(out, UTF8.newEncoder());
+		this.counter = counter;
+	}
+
+	/**
+	 * Create a new xml writer, which only counts the length of the xml
+	 * instead of writing it.
+	 *
+	 * @return The writer.
+	 */
+	public static XmlWriter counting() {
+		Counter counter = new Counter();
+		return new XmlWriter(counter, counter);
+	}
+
+	/**
+	 * Returns whether this writer only counts the length of the xml. Content
+	 * whose length is known in advance, like the encoding of binary data,
+	 * can then be counted with {@link #skip(long)} instead of being written.
+	 *
+	 * @return Whether this writer has been created by {@link #counting()}.
+	 */
+	public boolean isCounting() {
+		return counter != null;
+	}
+
+	/**
+	 * Count content of a writer created by {@link #counting()}, without
+	 * writing it.
+	 *
+	 * @param length The length of the UTF-8 encoded content in bytes, or a
+	 *		negative number if the length isn't known before the content is
+	 *		written. The length of the whole xml is then unknown as well.
+	 */
+	public void skip(long length) {
+		if(counter == null) {
+			throw new IllegalStateException("Only a counting writer can skip content.");
+		}
+		skipped = length < 0 || skipped < 0 ? -1 : skipped + length;
+	}
+
+	/**
+	 * Returns the length of the xml counted by a writer created by
+	 * {@link #counting()}.
+	 *
+	 * @return The length of the UTF-8 encoded xml in bytes, or -1 if it
+	 *		isn't known.
+	 * @throws IOException Will be thrown if the xml can't be encoded.
+	 */
+	public long getLength() throws IOException {
+		if(counter == null) {
+			throw new IllegalStateException("Only a counting writer has a length.");
+		}
+		flush();
+		return skipped < 0 ? -1 : counter.count + skipped;
+	}
+
+	/**
+	 * Write the xml declaration. This must be the first thing written.
+	 *
+	 * @throws IOException Will be thrown if writing to the stream fails.
+	 */
+	public void writeDeclaration() throws IOException {
+		write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+	}
+
+	/**
+	 * Write the start tag of an element with children.
+	 *
+	 * @param name The name of the xml element.
+	 * @throws IOException Will be thrown if writing to the stream fails.
+	 */
+	public void startElement(String name) throws IOException {
+		write("\n<");
+		write(name);
+		write('>');
+	}
+
+	/**
+	 * Write the end tag of an element opened with {@link #startElement(java.lang.String)}.
+	 *
+	 * @param name The name of the xml element.
+	 * @throws IOException Will be thrown if writing to the stream fails.
+	 */
+	public void endElement(String name) throws IOException {
+		write("</");
+		write(name);
+		write(">\n");
+	}
+
+	/**
+	 * Write an element without any content or children.
+	 *
+	 * @param name The name of the xml element.
+	 * @throws IOException Will be thrown if writing to the stream fails.
+	 */
+	public void emptyElement(String name) throws IOException {
+		write("\n<");
+		write(name);
+		write("/>\n");
+	}
+
+	/**
+	 * Write an element with a text content. If the content is empty, an
+	 * empty element is written.
+	 *
+	 * @param name The name of the xml element.
+	 * @param content The content of the element.
+	 * @throws IOException Will be thrown if writing to the stream fails.
+	 */
+	public void element(String name, String content) throws IOException {
+		if(content == null || content.length() == 0) {
+			emptyElement(name);
+			return;
+		}
+		startElement(name);
+		write(content);
+		endElement(name);
+	}
+
+	/**
+	 * Write an xml element built as a tree.
+	 *
+	 * @param element The xml element.
+	 * @throws IOException Will be thrown if writing to the stream fails.
+	 */
+	public void element(XmlElement element) throws IOException {
+		write(element.toString());
+	}
+
+	/**
+	 * Write text as given.
+	 *
+	 * @param text The text to write.
+	 * @throws IOException Will be thrown if writing to the stream fails.
+	 */
+	public void write(String text) throws IOException {
+		write(text, 0, text.length());
+	}
+
+	/**
+	 * Write a part of a text as given.
+	 *
+	 * @param text The text to write a part of.
+	 * @param start The index of the first character to write.
+	 * @param end The index after the last character to write.
+	 * @throws IOException Will be thrown if writing to the stream fails.
+	 */
+	public void write(String text, int start, int end) throws IOException {
+		int offset = start;
+		while(offset < end) {
+			if(position == buffer.length) {
+				flushBuffer();
+			}
+			int count = Math.min(end - offset, buffer.length - position);
+			text.getChars(offset, offset + count, buffer, position);
+			position += count;
+			offset += count;
+		}
+	}
+
+	/**
+	 * Write a part of a character array as given.
+	 *
+	 * @param text The characters to write a part of.
+	 * @param offset The index of the first character to write.
+	 * @param length The number of characters to write.
+	 * @throws IOException Will be thrown if writing to the stream fails.
+	 */
+	public void write(char[] text, int offset, int length) throws IOException {
+		if(length >= buffer.length) {
+			// Too long to be buffered, avoid copying it
+			flushBuffer();
+			writer.write(text, offset, length);
+			return;
+		}
+		if(position + length > buffer.length) {
+			flushBuffer();
+		}
+		System.arraycopy(text, offset, buffer, position, length);
+		position += length;
+	}
+
+	/**
+	 * Write a single character as given.
+	 *
+	 * @param c The character to write.
+	 * @throws IOException Will be thrown if writing to the stream fails.
+	 */
+	public void write(char c) throws IOException {
+		if(position == buffer.length) {
+			flushBuffer();
+		}
+		buffer[position++] = c;
+	}
+
+	/**
+	 * Write all buffered data to the underlying stream.
+	 *
+	 * @throws IOException Will be thrown if writing to the stream fails.
+	 */
+	public void flush() throws IOException {
+		flushBuffer();
+		writer.flush();
+	}
+
+	private void flushBuffer() throws IOException {
+		writer.write(buffer, 0, position);
+		position = 0;
+	}
+
+	/**
+	 * Counts the bytes written to it.
+	 */
+	private static class Counter extends OutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+
+	}
+
+}
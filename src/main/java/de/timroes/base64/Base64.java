@@ -1,70 +1,231 @@
 package de.timroes.base64;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.CharBuffer;
+import java.util.Arrays;
 
 /**
  * A Base64 en/decoder. You can use it to encode and decode strings and byte arrays.
+ * Characters are looked up in arrays and primitive arrays are used end to end,
+ * so that large binary values are converted without boxing or regular expressions.
  *
  * @author Tim Roes
  */
 public class Base64 {
 
-	private static final char[] code = ("=ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+	private static final char[] code = ("ABCDEFGHIJKLMNOPQRSTUVWXYZ"
 			+ "abcdefghijklmnopqrstuvwxyz0123456789+/").toCharArray();
 
-	private static final HashMap<Character,Byte> map = new HashMap<Character, Byte>();
+	/** The number of encoded characters per line. */
+	private static final int LINE_LENGTH = 72;
+
+	/** The number of bytes encoded on one line. */
+	public static final int LINE_BYTES = LINE_LENGTH / 4 * 3;
+
+	private static final int INVALID = -1;
+	private static final int SKIP = -2;
+
+	/** The value of each ASCII character, INVALID or SKIP for line breaks. */
+	private static final byte[] values = new byte[128];
 
 	private Base64() {}
 
 	static {
+		Arrays.fill(values, (byte)INVALID);
 		for(int i = 0; i < code.length; i++) {
-			map.put(code[i], (byte)i);
+			values[code[i]] = (byte)i;
 		}
+		values['\r'] = SKIP;
+		values['\n'] = SKIP;
+		values[' '] = SKIP;
+		values['\t'] = SKIP;
 	}
 
 	/**
-	 * Decode a base64 encoded string to a byte array.
+	 * Decode a base64 encoded string to a byte array. Line breaks and other
+	 * whitespace are ignored.
 	 *
 	 * @param in A string representing a base64 encoding.
 	 * @return The decoded byte array.
 	 */
 	public static byte[] decode(String in) {
+		return decode(in, 0, in.length());
+	}
 
-		in = in.replaceAll("\\r|\\n","");
-		if(in.length() % 4 != 0) {
-			throw new IllegalArgumentException("The length of the input string must be a multiple of four.");
+	/**
+	 * Decode base64 encoded characters to a byte array. Line breaks and other
+	 * whitespace are ignored.
+	 *
+	 * @param in An array containing a base64 encoding.
+	 * @param offset The index of the first character of the encoding.
+	 * @param length The number of characters of the encoding.
+	 * @return The decoded byte array.
+	 */
+	public static byte[] decode(char[] in, int offset, int length) {
+		return decode(CharBuffer.wrap(in), offset, offset + length);
+	}
+
+	private static byte[] decode(CharSequence in, int start, int end) {
+
+		// Without whitespace inside, this is the exact length of the output
+		int last = end;
+		while(last > start && isPaddingOrSkipped(in.charAt(last - 1))) {
+			last--;
 		}
+		byte[] out = new byte[(int)((last - start) * 6L / 8)];
 
-		if(!in.matches("^[A-Za-z0-9+/]*[=]{0,3}$")) {
-			throw new IllegalArgumentException("The argument contains illegal characters.");
+		int outi = 0;
+		int bits = 0;
+		int count = 0;
+		int padding = 0;
+		for(int i = start; i < end; i++) {
+			char c = in.charAt(i);
+			int value = c < values.length ? values[c] : INVALID;
+			if(value >= 0) {
+				if(padding > 0) {
+					throw new IllegalArgumentException("The argument contains illegal characters.");
+				}
+				bits = bits << 6 | value;
+				if(++count == 4) {
+					if(outi + 3 > out.length) {
+						out = Arrays.copyOf(out, outi + 3);
+					}
+					out[outi++] = (byte)(bits >> 16);
+					out[outi++] = (byte)(bits >> 8);
+					out[outi++] = (byte)bits;
+					bits = 0;
+					count = 0;
+				}
+			} else if(c == '=') {
+				padding++;
+			} else if(value != SKIP) {
+				throw new IllegalArgumentException("The argument contains illegal characters.");
+			}
+		}
+
+		if(count + padding != 0 && (count + padding != 4 || count < 2)) {
+			throw new IllegalArgumentException("The length of the input string must be a multiple of four.");
+		}
+		if(count > 0) {
+			// The last group is padded, it encodes one or two bytes
+			if(outi + count - 1 > out.length) {
+				out = Arrays.copyOf(out, outi + count - 1);
+			}
+			bits <<= 6 * padding;
+			out[outi++] = (byte)(bits >> 16);
+			if(count == 3) {
+				out[outi++] = (byte)(bits >> 8);
+			}
 		}
 
-		byte[] out = new byte[(in.length()*3)/4];
+		return outi == out.length ? out : Arrays.copyOf(out, outi);
 
-		char[] input = in.toCharArray();
+	}
 
-		int outi = 0;
-		int b1, b2, b3, b4;
-		for(int i = 0; i < input.length; i+=4) {
-			b1 = map.get(input[i]) - 1;
-			b2 = map.get(input[i+1]) - 1;
-			b3 = map.get(input[i+2]) - 1;
-			b4 = map.get(input[i+3]) - 1;
-			out[outi++] = (byte)(b1 << 2 | b2 >>> 4);
-			out[outi++] = (byte)((b2 & 0x0F) << 4 | b3 >>> 2);
-			out[outi++] = (byte)((b3 & 0x03) << 6 | (b4 & 0x3F));
+	/**
+	 * Decodes base64 encoded characters incrementally to a stream. The
+	 * characters can be handed over in parts of any length, only a small
+	 * buffer of decoded bytes is kept. Line breaks and other whitespace are
+	 * ignored.
+	 */
+	public static class Decoder {
+
+		private final OutputStream out;
+		private final byte[] buffer = new byte[8190];
+		private int position;
+		private long length;
+
+		private int bits;
+		private int count;
+		private int padding;
+
+		/**
+		 * Create a new decoder.
+		 *
+		 * @param out The stream to write the decoded bytes to.
+		 */
+		public Decoder(OutputStream out) {
+			this.out = out;
 		}
 
-		if(in.endsWith("=")) {
-			byte[] trimmed = new byte[out.length - (in.length() - in.indexOf("="))];
-			System.arraycopy(out, 0, trimmed, 0, trimmed.length);
-			return trimmed;
+		/**
+		 * Decode the next part of the encoding.
+		 *
+		 * @param in An array containing the next part of the encoding.
+		 * @param offset The index of the first character of the part.
+		 * @param length The number of characters of the part.
+		 * @throws IOException Will be thrown if writing to the stream fails.
+		 * @throws IllegalArgumentException Will be thrown if the encoding is invalid.
+		 */
+		public void decode(char[] in, int offset, int length) throws IOException {
+			int end = offset + length;
+			for(int i = offset; i < end; i++) {
+				char c = in[i];
+				int value = c < values.length ? values[c] : INVALID;
+				if(value >= 0) {
+					if(padding > 0) {
+						throw new IllegalArgumentException("The argument contains illegal characters.");
+					}
+					bits = bits << 6 | value;
+					if(++count == 4) {
+						if(position + 3 > buffer.length) {
+							flushBuffer();
+						}
+						buffer[position++] = (byte)(bits >> 16);
+						buffer[position++] = (byte)(bits >> 8);
+						buffer[position++] = (byte)bits;
+						bits = 0;
+						count = 0;
+					}
+				} else if(c == '=') {
+					padding++;
+				} else if(value != SKIP) {
+					throw new IllegalArgumentException("The argument contains illegal characters.");
+				}
+			}
 		}
 
-		return out;
+		/**
+		 * Decode the end of the encoding and flush the decoded bytes to the
+		 * stream. The stream isn't closed.
+		 *
+		 * @return The total number of decoded bytes.
+		 * @throws IOException Will be thrown if writing to the stream fails.
+		 * @throws IllegalArgumentException Will be thrown if the encoding is incomplete.
+		 */
+		public long finish() throws IOException {
+			if(count + padding != 0 && (count + padding != 4 || count < 2)) {
+				throw new IllegalArgumentException("The length of the input string must be a multiple of four.");
+			}
+			if(count > 0) {
+				if(position + 2 > buffer.length) {
+					flushBuffer();
+				}
+				bits <<= 6 * padding;
+				buffer[position++] = (byte)(bits >> 16);
+				if(count == 3) {
+					buffer[position++] = (byte)(bits >> 8);
+				}
+				count = 0;
+			}
+			flushBuffer();
+			out.flush();
+			return length;
+		}
+
+		private void flushBuffer() throws IOException {
+			out.write(buffer, 0, position);
+			length += position;
+			position = 0;
+		}
 
 	}
 
+	private static boolean isPaddingOrSkipped(char c) {
+		return c == '=' || (c < values.length && values[c] == SKIP);
+	}
+
 	/**
 	 * Decode a base64 encoded string to a string.
 	 *
@@ -100,20 +261,75 @@ public class Base64 {
 	}
 
 	/**
-	 * Encode a byte array and return the encoded string.
+	 * Encode a byte array and return the encoded string. A line break is
+	 * inserted after every 72 characters.
 	 *
 	 * @param in A string to encode.
 	 * @return The encoded byte array.
 	 */
 	public static String encode(byte[] in) {
-		StringBuilder builder = new StringBuilder(4 * ((in.length+2)/3));
-		byte[] encoded = encodeAsBytes(in);
-		for(int i = 0; i < encoded.length; i++) {
-			builder.append(code[encoded[i]+1]);
-			if(i % 72 == 71)
-				builder.append("\n");
+		char[] out = new char[encodedLength(in.length)];
+		encode(in, 0, in.length, out, 0);
+		return new String(out);
+	}
+
+	/**
+	 * Returns the number of characters {@link #encode(byte[], int, int, char[], int)}
+	 * writes for the given number of bytes, including line breaks.
+	 *
+	 * @param length The number of bytes to encode.
+	 * @return The number of encoded characters.
+	 */
+	public static int encodedLength(int length) {
+		int chars = 4 * ((length + 2) / 3);
+		return chars + chars / LINE_LENGTH;
+	}
+
+	/**
+	 * Encode a part of a byte array into a character array, starting at the
+	 * beginning of a line. A line break is inserted after every 72 characters.
+	 * A long input can be encoded part by part: as long as all parts but the
+	 * last one are a multiple of {@link #LINE_BYTES} long, the concatenated
+	 * characters are the same as when encoding the input at once.
+	 *
+	 * @param in The array containing the bytes to encode.
+	 * @param offset The index of the first byte to encode.
+	 * @param length The number of bytes to encode.
+	 * @param out The array to write the encoded characters to. It must have
+	 *		room for {@link #encodedLength(int)} characters.
+	 * @param outOffset The index to write the first character to.
+	 * @return The number of characters written.
+	 */
+	public static int encode(byte[] in, int offset, int length, char[] out, int outOffset) {
+		int end = offset + length;
+		int outi = outOffset;
+		int line = 0;
+		int i = offset;
+		for(; i + 3 <= end; i += 3) {
+			int bits = (in[i] & 0xFF) << 16 | (in[i+1] & 0xFF) << 8 | (in[i+2] & 0xFF);
+			out[outi++] = code[bits >>> 18];
+			out[outi++] = code[(bits >>> 12) & 0x3F];
+			out[outi++] = code[(bits >>> 6) & 0x3F];
+			out[outi++] = code[bits & 0x3F];
+			line += 4;
+			if(line == LINE_LENGTH) {
+				out[outi++] = '\n';
+				line = 0;
+			}
+		}
+		int remaining = end - i;
+		if(remaining > 0) {
+			int bits = (in[i] & 0xFF) << 16 | (remaining == 2 ? (in[i+1] & 0xFF) << 8 : 0);
+			out[outi++] = code[bits >>> 18];
+			out[outi++] = code[(bits >>> 12) & 0x3F];
+			out[outi++] = remaining == 2 ? code[(bits >>> 6) & 0x3F] : '=';
+			out[outi++] = '=';
+			line += 4;
+			if(line == LINE_LENGTH) {
+				out[outi++] = '\n';
+			}
 		}
-		return builder.toString();
+		return outi - outOffset;
 	}
 
 	/**
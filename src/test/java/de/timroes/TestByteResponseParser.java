@@ -0,0 +1,24 @@
+package de.timroes;
+
+import de.timroes.axmlrpc.ByteResponseParser;
+import de.timroes.axmlrpc.ResponseParser;
+import de.timroes.axmlrpc.XMLRPCException;
+import org.junit.Test;
+
+/**
+ * Runs the same tests as {@link TestResponseParser}, with the byte parser.
+ */
+public class TestByteResponseParser extends TestResponseParser {
+
+    @Override
+    protected ResponseParser newParser() {
+        return new ByteResponseParser();
+    }
+
+    @Override
+    @Test(expected = XMLRPCException.class)
+    public void testUTF16Response() throws Exception {
+        // Only UTF-8 responses are supported by this parser
+        super.testUTF16Response();
+    }
+}
@@ -20,7 +20,7 @@ public class TestResponseParser {
 
     @Test
     public void testSimpleResponse() throws Exception {
-        ResponseParser sut = new ResponseParser();
+        ResponseParser sut = newParser();
         Object actual = sut.parse(sh, strToStream(xmlDecl +
                 "<methodResponse>" +
                 "  <params>" +
@@ -34,7 +34,7 @@ public class TestResponseParser {
 
     @Test
     public void testWithTrailingWhitespaceInTags() throws Exception {
-        ResponseParser sut = new ResponseParser();
+        ResponseParser sut = newParser();
         Object actual = sut.parse(sh, strToStream(xmlDecl +
                 "<methodResponse >" +
                 "  <params>" +
@@ -48,7 +48,7 @@ public class TestResponseParser {
 
     @Test
     public void testWithTrailingEndlineInTags() throws Exception {
-        ResponseParser sut = new ResponseParser();
+        ResponseParser sut = newParser();
         Object actual = sut.parse(sh, strToStream(xmlDecl +
                 "<methodResponse\n>" +
                 "  <params>" +
@@ -62,7 +62,7 @@ public class TestResponseParser {
 
     @Test
     public void testWithTrailingTabInTags() throws Exception {
-        ResponseParser sut = new ResponseParser();
+        ResponseParser sut = newParser();
         Object actual = sut.parse(sh, strToStream(xmlDecl +
                 "<methodResponse\t>" +
                 "  <params>" +
@@ -76,7 +76,7 @@ public class TestResponseParser {
 
     @Test
     public void testResponseWithNonAsciiCharacter() throws Exception {
-        ResponseParser sut = new ResponseParser();
+        ResponseParser sut = newParser();
         Object actual = sut.parse(sh, strToStream(xmlDecl +
                 "<methodResponse>" +
                 "  <params>" +
@@ -90,7 +90,7 @@ public class TestResponseParser {
 
     @Test
     public void testUTF16Response() throws Exception {
-        ResponseParser sut = new ResponseParser();
+        ResponseParser sut = newParser();
         Object actual = sut.parse(sh, bytesToStream((xmlDecl +
                 "<methodResponse>" +
                 "  <params>" +
@@ -104,7 +104,7 @@ public class TestResponseParser {
 
     @Test
     public void testResponseWithComplexValue() throws Exception {
-        ResponseParser sut = new ResponseParser();
+        ResponseParser sut = newParser();
         Object actual = sut.parse(sh, strToStream(xmlDecl +
                 "<methodResponse>" +
                 "  <params>" +
@@ -142,9 +142,28 @@ public class TestResponseParser {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void testResponseWithArrayValue() throws Exception {
+        ResponseParser sut = newParser();
+        Object actual = sut.parse(sh, strToStream(xmlDecl +
+                "<methodResponse>" +
+                "  <params>" +
+                "    <param>" +
+                "      <value><array><data>" +
+                "        <value><int>-7</int></value>" +
+                "        <value><string>a &amp; b</string></value>" +
+                "        <value><array><data><value><boolean>1</boolean></value></data></array></value>" +
+                "        <value><array><data/></array></value>" +
+                "      </data></array></value>" +
+                "    </param>" +
+                "  </params>" +
+                "</methodResponse>"), false);
+        assertArrayEquals(new Object[]{ -7, "a & b", new Object[]{ true }, new Object[0] }, (Object[]) actual);
+    }
+
     @Test
     public void testResponseWithBase64Value() throws Exception {
-        ResponseParser sut = new ResponseParser();
+        ResponseParser sut = newParser();
         Object actual = sut.parse(sh, strToStream(xmlDecl +
                 "<methodResponse>" +
                 "  <params>" +
@@ -166,7 +185,7 @@ public class TestResponseParser {
      * for years, I guess it's better to avoid breaking retro compatibility.
      */
     public void testAcceptMissingHeader() throws Exception {
-        ResponseParser sut = new ResponseParser();
+        ResponseParser sut = newParser();
         Object actual = sut.parse(sh, strToStream("<methodResponse>" +
                 "  <params>" +
                 "    <param>" +
@@ -179,7 +198,7 @@ public class TestResponseParser {
 
     @Test
     public void testXmlrpcError() throws Exception {
-        ResponseParser sut = new ResponseParser();
+        ResponseParser sut = newParser();
         try {
             sut.parse(sh, strToStream("<methodResponse>" +
                     "  <fault>" +
@@ -206,7 +225,7 @@ public class TestResponseParser {
 
     @Test
     public void testResponseWithXmlComment() throws Exception {
-        ResponseParser sut = new ResponseParser();
+        ResponseParser sut = newParser();
         Object actual = sut.parse(sh, strToStream("<methodResponse>" +
                 "  <params>" +
                 "    <param>" +
@@ -220,7 +239,7 @@ public class TestResponseParser {
 
     @Test
     public void testResponseWithInlineXmlComment() throws Exception {
-        ResponseParser sut = new ResponseParser();
+        ResponseParser sut = newParser();
         Object actual = sut.parse(sh, strToStream("<methodResponse>" +
                 "  <params>" +
                 "    <param>" +
@@ -233,7 +252,7 @@ public class TestResponseParser {
 
     @Test
     public void testResponseWithSpecialChars() throws Exception {
-        ResponseParser sut = new ResponseParser();
+        ResponseParser sut = newParser();
         Object actual = sut.parse(sh, strToStream("<methodResponse>" +
                 "  <params>" +
                 "    <param>" +
@@ -246,7 +265,7 @@ public class TestResponseParser {
 
     @Test(expected = XMLRPCException.class)
     public void testErrorMissingMethodResponseTag() throws Exception {
-        ResponseParser sut = new ResponseParser();
+        ResponseParser sut = newParser();
         Object actual = sut.parse(sh, strToStream(
                 "  <params>" +
                 "    <param>" +
@@ -257,7 +276,7 @@ public class TestResponseParser {
 
     @Test(expected = XMLRPCException.class)
     public void testErrorMissingParamsTag() throws Exception {
-        ResponseParser sut = new ResponseParser();
+        ResponseParser sut = newParser();
         Object actual = sut.parse(sh, strToStream("<methodResponse>" +
                 "    <param>" +
                 "      <value><string>toto</string></value>" +
@@ -267,7 +286,7 @@ public class TestResponseParser {
 
     @Test(expected = XMLRPCException.class)
     public void testErrorMissingParamTag() throws Exception {
-        ResponseParser sut = new ResponseParser();
+        ResponseParser sut = newParser();
         Object actual = sut.parse(sh, strToStream("<methodResponse>" +
                 "  <params>" +
                 "      <value><string>toto</string></value>" +
@@ -275,6 +294,10 @@ public class TestResponseParser {
                 "</methodResponse>"), false);
     }
 
+    protected ResponseParser newParser() {
+        return new ResponseParser();
+    }
+
     private static InputStream strToStream(String str){
         return bytesToStream(str.getBytes(StandardCharsets.UTF_8));
     }
@@ -0,0 +1,15 @@
+package de.timroes;
+
+import de.timroes.axmlrpc.ResponseParser;
+import de.timroes.axmlrpc.StreamingResponseParser;
+
+/**
+ * Runs the same tests as {@link TestResponseParser}, with the streaming parser.
+ */
+public class TestStreamingResponseParser extends TestResponseParser {
+
+    @Override
+    protected ResponseParser newParser() {
+        return new StreamingResponseParser();
+    }
+}
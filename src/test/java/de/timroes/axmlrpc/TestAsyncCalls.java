@@ -0,0 +1,218 @@
+package de.timroes.axmlrpc;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import de.timroes.axmlrpc.transport.HttpURLConnectionTransport;
+import de.timroes.axmlrpc.transport.Transport;
+import de.timroes.axmlrpc.transport.TransportConnection;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestAsyncCalls {
+	private final int port = 8080;
+	private final String endPoint = "/dummyEndPoint";
+
+	@Rule
+	public WireMockRule wireMockRule = new WireMockRule(port);
+
+	@Test
+	public void futureGivesTheResult() throws Exception {
+		setMockWithXmlRpcContent("<params><param><value><string>toto</string></value></param></params>", 0);
+		Future<Object> future = newClient().callFuture("dummy_method");
+		assertEquals("toto", future.get(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void futureGivesTheServerError() throws Exception {
+		setMockWithXmlRpcContent("<fault><value><struct>"
+				+ "<member><name>faultCode</name><value><int>4</int></value></member>"
+				+ "<member><name>faultString</name><value><string>Too many parameters.</string></value></member>"
+				+ "</struct></value></fault>", 0);
+		try {
+			newClient().callFuture("dummy_method").get(10, TimeUnit.SECONDS);
+			fail("Should have thrown the server error");
+		} catch(ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof XMLRPCServerException);
+		}
+	}
+
+	@Test
+	public void callbackGetsTheResult() throws Exception {
+		setMockWithXmlRpcContent("<params><param><value><i4>15</i4></value></param></params>", 0);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicReference<Object> result = new AtomicReference<Object>();
+		newClient().callAsync(new XMLRPCCallback() {
+			public void onResponse(long id, Object r) {
+				result.set(r);
+				latch.countDown();
+			}
+			public void onError(long id, XMLRPCException error) {
+				result.set(error);
+				latch.countDown();
+			}
+			public void onServerError(long id, XMLRPCServerException error) {
+				result.set(error);
+				latch.countDown();
+			}
+		}, "add", 5, 10);
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals(15, result.get());
+	}
+
+	@Test
+	public void callbackGetsErrors() throws Exception {
+		final AssertionError failure = new AssertionError("broken transport");
+		XMLRPCClient client = newClient();
+		client.setTransport(new Transport() {
+			public TransportConnection openConnection(URL url, int connectTimeout, int readTimeout) {
+				throw failure;
+			}
+		});
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicReference<Object> result = new AtomicReference<Object>();
+		client.callAsync(new XMLRPCCallback() {
+			public void onResponse(long id, Object r) {
+				result.set(r);
+				latch.countDown();
+			}
+			public void onError(long id, XMLRPCException error) {
+				result.set(error);
+				latch.countDown();
+			}
+			public void onServerError(long id, XMLRPCServerException error) {
+				result.set(error);
+				latch.countDown();
+			}
+		}, "dummy_method");
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertTrue(result.get() instanceof XMLRPCException);
+		assertSame(failure, ((XMLRPCException)result.get()).getCause());
+	}
+
+	@Test
+	public void callsWorkWithVirtualThreadsFlag() throws Exception {
+		setMockWithXmlRpcContent("<params><param><value><string>toto</string></value></param></params>", 0);
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint),
+				XMLRPCClient.FLAGS_VIRTUAL_THREADS);
+		final Transport transport = new HttpURLConnectionTransport(XMLRPCClient.FLAGS_VIRTUAL_THREADS);
+		final AtomicReference<Thread> caller = new AtomicReference<Thread>();
+		client.setTransport(new Transport() {
+			public TransportConnection openConnection(URL url, int connectTimeout, int readTimeout) throws IOException {
+				caller.set(Thread.currentThread());
+				return transport.openConnection(url, connectTimeout, readTimeout);
+			}
+		});
+		assertEquals("toto", client.callFuture("dummy_method").get(10, TimeUnit.SECONDS));
+
+		// Virtual threads are a preview on Java 19 and 20, only used with --enable-preview
+		int version = javaVersion();
+		Assume.assumeTrue(version < 19 || version >= 21);
+		boolean isVirtual = false;
+		try {
+			isVirtual = (Boolean)Thread.class.getMethod("isVirtual").invoke(caller.get());
+		} catch(NoSuchMethodException ex) {
+			// No virtual threads before Java 19, the call ran on a platform thread
+		}
+		assertEquals(version >= 21, isVirtual);
+		if(version < 21) {
+			assertTrue(caller.get().getName().startsWith("aXMLRPC-call-"));
+		}
+	}
+
+	@Test
+	public void boundedExecutorRejectsCalls() throws Exception {
+		setMockWithXmlRpcContent("<params><param><value><i4>1</i4></value></param></params>", 500);
+		XMLRPCClient client = newClient();
+		ExecutorService executor = XMLRPCClient.newExecutorService(1, 1);
+		client.setExecutorService(executor);
+		try {
+			Future<Object> running = client.callFuture("slow");
+			Future<Object> queued = client.callFuture("slow");
+			try {
+				client.callFuture("slow");
+				fail("Should have rejected the third call");
+			} catch(RejectedExecutionException ex) {
+				// Expected
+			}
+			assertEquals(1, running.get(10, TimeUnit.SECONDS));
+			assertEquals(1, queued.get(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void callsStartedTogetherHaveDistinctIdsAndCanBeCanceled() throws Exception {
+		setMockWithXmlRpcContent("<params><param><value><i4>1</i4></value></param></params>", 500);
+		XMLRPCClient client = newClient();
+		ExecutorService executor = XMLRPCClient.newExecutorService(1, 10);
+		client.setExecutorService(executor);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicReference<Long> notified = new AtomicReference<Long>();
+		XMLRPCCallback listener = new XMLRPCCallback() {
+			public void onResponse(long id, Object result) {
+				notify(id);
+			}
+			public void onError(long id, XMLRPCException error) {
+				notify(id);
+			}
+			public void onServerError(long id, XMLRPCServerException error) {
+				notify(id);
+			}
+			private void notify(long id) {
+				notified.compareAndSet(null, id);
+				latch.countDown();
+			}
+		};
+		try {
+			long first = client.callAsync(listener, "slow");
+			long second = client.callAsync(listener, "slow");
+			assertNotEquals(first, second);
+
+			// The second call is still queued, it must be canceled anyway
+			client.cancel(second);
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+			assertEquals(Long.valueOf(first), notified.get());
+		} finally {
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		}
+		verify(1, postRequestedFor(urlEqualTo(endPoint)));
+	}
+
+	/**
+	 * Returns the feature version of the running Java, e.g. 8 for 1.8 or 21.
+	 */
+	private static int javaVersion() {
+		String version = System.getProperty("java.specification.version");
+		if(version.startsWith("1.")) {
+			version = version.substring(2);
+		}
+		return Integer.parseInt(version);
+	}
+
+	private XMLRPCClient newClient() throws Exception {
+		return new XMLRPCClient(new URL("http://localhost:" + port + endPoint));
+	}
+
+	private void setMockWithXmlRpcContent(String content, int delay) {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse()
+						.withStatus(200)
+						.withFixedDelay(delay)
+						.withBody("<methodResponse>" + content + "</methodResponse>")
+						));
+	}
+}
@@ -0,0 +1,80 @@
+package de.timroes.axmlrpc;
+
+import static org.junit.Assert.*;
+
+import de.timroes.axmlrpc.serializer.SerializerHandler;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+import org.junit.Test;
+
+public class TestByteResponseParser {
+
+	@Test
+	public void parsesNestedValues() throws Exception {
+		Map<?, ?> struct = (Map<?, ?>)parseValue("<value><struct>"
+				+ "<member><name>a</name><value><i4>5</i4></value></member>"
+				+ "<member><name>b</name><value><array><data><value><string/></value></data></array></value></member>"
+				+ "</struct></value>");
+		assertEquals(5, struct.get("a"));
+		assertArrayEquals(new Object[] { "" }, (Object[])struct.get("b"));
+	}
+
+	@Test
+	public void refusesMismatchedEndTagOfText() throws Exception {
+		assertRefused("<value><string>x</int></value>");
+	}
+
+	@Test
+	public void refusesMismatchedEndTagOfInt() throws Exception {
+		assertRefused("<value><i4>5</foo></bar>");
+		assertRefused("<value><i4>5</i4></bar>");
+	}
+
+	@Test
+	public void refusesMismatchedEndTagOfBoolean() throws Exception {
+		assertRefused("<value><boolean>1</string></value>");
+	}
+
+	@Test
+	public void refusesMismatchedEndTagsInStructs() throws Exception {
+		assertRefused("<value><struct><member><name>a</value><value><i4>1</i4></value></member></struct></value>");
+		assertRefused("<value><struct><member><name>a</name><value><i4>1</i4></value></name></struct></value>");
+		assertRefused("<value><struct><member><name>a</name><value><i4>1</i4></value></member></array></value>");
+	}
+
+	@Test
+	public void refusesMismatchedEndTagsInArrays() throws Exception {
+		assertRefused("<value><array><data><value><i4>1</i4></value></value></array></value>");
+		assertRefused("<value><array><data></data></struct></value>");
+	}
+
+	@Test
+	public void refusesMismatchedEndTagsAroundValues() throws Exception {
+		assertRefused("<value><i4>1</i4></param>");
+		assertRefusedResponse("<methodResponse><params><param><value><i4>1</i4></value></params></params></methodResponse>");
+		assertRefusedResponse("<methodResponse><fault><value><i4>1</i4></value></params></methodResponse>");
+	}
+
+	private Object parseValue(String value) throws XMLRPCException {
+		return parse("<methodResponse><params><param>" + value + "</param></params></methodResponse>");
+	}
+
+	private Object parse(String response) throws XMLRPCException {
+		return new ByteResponseParser().parse(new SerializerHandler(),
+				new ByteArrayInputStream(response.getBytes(Charset.forName("UTF-8"))), false);
+	}
+
+	private void assertRefused(String value) {
+		assertRefusedResponse("<methodResponse><params><param>" + value + "</param></params></methodResponse>");
+	}
+
+	private void assertRefusedResponse(String response) {
+		try {
+			fail("Parsed " + parse(response));
+		} catch(XMLRPCException ex) {
+			// expected
+		}
+	}
+
+}
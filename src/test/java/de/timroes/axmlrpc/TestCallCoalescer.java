@@ -0,0 +1,104 @@
+package de.timroes.axmlrpc;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestCallCoalescer {
+	private final int port = 8080;
+	private final String endPoint = "/dummyEndPoint";
+
+	@Rule
+	public WireMockRule wireMockRule = new WireMockRule(port);
+
+	@Test
+	public void fullBatchIsSentAsOneMulticall() throws Exception {
+		setMockWithResults("<value><array><data><value><i4>3</i4></value></data></array></value>"
+				+ "<value><array><data><value><i4>7</i4></value></data></array></value>");
+
+		CallCoalescer coalescer = new CallCoalescer(newClient(), 10000, 2);
+		try {
+			Future<Object> first = coalescer.call("add", 1, 2);
+			Future<Object> second = coalescer.call("add", 3, 4);
+			assertEquals(3, first.get(10, TimeUnit.SECONDS));
+			assertEquals(7, second.get(10, TimeUnit.SECONDS));
+		} finally {
+			coalescer.close();
+		}
+		verify(1, postRequestedFor(urlEqualTo(endPoint)));
+	}
+
+	@Test
+	public void batchIsSentAfterTheWindow() throws Exception {
+		setMockWithResults("<value><array><data><value><string>toto</string></value></data></array></value>");
+
+		CallCoalescer coalescer = new CallCoalescer(newClient(), 20, 64);
+		try {
+			assertEquals("toto", coalescer.call("test").get(10, TimeUnit.SECONDS));
+		} finally {
+			coalescer.close();
+		}
+	}
+
+	@Test
+	public void canceledCallsAreLeftOut() throws Exception {
+		setMockWithResults("<value><array><data><value><string>kept</string></value></data></array></value>");
+
+		CallCoalescer coalescer = new CallCoalescer(newClient(), 10000, 64);
+		try {
+			Future<Object> kept = coalescer.call("kept");
+			Future<Object> canceled = coalescer.call("canceled");
+			assertTrue(canceled.cancel(true));
+			coalescer.flush();
+			assertEquals("kept", kept.get(10, TimeUnit.SECONDS));
+		} finally {
+			coalescer.close();
+		}
+		verify(postRequestedFor(urlEqualTo(endPoint)).withRequestBody(notMatching("(?s).*<string>canceled</string>.*")));
+	}
+
+	@Test
+	public void errorsOfTheMulticallFailTheCalls() throws Exception {
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint)) {
+			@Override
+			public Object[] multicall(Multicall calls) {
+				throw new StackOverflowError();
+			}
+		};
+
+		CallCoalescer coalescer = new CallCoalescer(client, 10000, 64);
+		try {
+			Future<Object> call = coalescer.call("test");
+			coalescer.flush();
+			try {
+				call.get(10, TimeUnit.SECONDS);
+				fail("The call should have failed");
+			} catch(ExecutionException ex) {
+				assertTrue(ex.getCause() instanceof StackOverflowError);
+			}
+		} finally {
+			coalescer.close();
+		}
+	}
+
+	private XMLRPCClient newClient() throws Exception {
+		return new XMLRPCClient(new URL("http://localhost:" + port + endPoint));
+	}
+
+	private void setMockWithResults(String results) {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse()
+						.withStatus(200)
+						.withBody("<methodResponse><params><param><value><array><data>"
+								+ results
+								+ "</data></array></value></param></params></methodResponse>")
+						));
+	}
+}
@@ -0,0 +1,118 @@
+package de.timroes.axmlrpc;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestCompression {
+	private final int port = 8080;
+	private final String endPoint = "/dummyEndPoint";
+	private final String response = "<methodResponse><params><param><value><string>toto</string></value></param></params></methodResponse>";
+
+	@Rule
+	public WireMockRule wireMockRule = new WireMockRule(port);
+
+	@Test
+	public void decompressesGzipResponses() throws Exception {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(body);
+		gzip.write(response.getBytes("UTF-8"));
+		gzip.close();
+		stubFor(post(urlEqualTo(endPoint))
+				.withHeader("Accept-Encoding", containing("gzip"))
+				.willReturn(aResponse()
+						.withStatus(200)
+						.withHeader("Content-Encoding", "gzip")
+						.withBody(body.toByteArray())));
+
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint), XMLRPCClient.FLAGS_COMPRESSION);
+		assertEquals("toto", client.call("dummy_method"));
+	}
+
+	@Test
+	public void decompressesDeflateResponses() throws Exception {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		DeflaterOutputStream deflate = new DeflaterOutputStream(body);
+		deflate.write(response.getBytes("UTF-8"));
+		deflate.close();
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse()
+						.withStatus(200)
+						.withHeader("Content-Encoding", "deflate")
+						.withBody(body.toByteArray())));
+
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint), XMLRPCClient.FLAGS_COMPRESSION);
+		assertEquals("toto", client.call("dummy_method"));
+	}
+
+	@Test
+	public void compressesRequestsAboveThreshold() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(200).withBody(response)));
+
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint));
+		client.setRequestCompressionThreshold(1000);
+		StringBuilder large = new StringBuilder();
+		for(int i = 0; i < 1000; i++) {
+			large.append("repetitive ");
+		}
+		assertEquals("toto", client.call("dummy_method", "small"));
+		assertEquals("toto", client.call("dummy_method", large.toString()));
+
+		verify(1, postRequestedFor(urlEqualTo(endPoint))
+				.withoutHeader("Content-Encoding")
+				.withRequestBody(containing("small")));
+		verify(1, postRequestedFor(urlEqualTo(endPoint))
+				.withHeader("Content-Encoding", equalTo("gzip"))
+				.withHeader("Content-Length", matching("[0-9]+"))
+				.withRequestBody(containing("repetitive repetitive")));
+	}
+
+	@Test
+	public void sendsRequestsAboveTheBufferLimitUncompressed() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(200).withBody(response)));
+
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint));
+		client.setRequestCompressionThreshold(1000);
+		client.setRequestBufferLimit(5000);
+		assertEquals("toto", client.call("dummy_method", repeat(1000)));
+
+		// The compressed length isn't known without keeping the whole request
+		verify(postRequestedFor(urlEqualTo(endPoint))
+				.withoutHeader("Content-Encoding")
+				.withHeader("Content-Length", matching("[0-9]+"))
+				.withRequestBody(containing("repetitive repetitive")));
+	}
+
+	@Test
+	public void compressesChunkedRequestsWhileTheyAreSent() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(200).withBody(response)));
+
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint),
+				XMLRPCClient.FLAGS_CHUNKED_REQUESTS);
+		client.setRequestCompressionThreshold(1000);
+		assertEquals("toto", client.call("dummy_method", repeat(1000)));
+
+		verify(postRequestedFor(urlEqualTo(endPoint))
+				.withHeader("Content-Encoding", equalTo("gzip"))
+				.withHeader("Transfer-Encoding", equalTo("chunked"))
+				.withRequestBody(containing("repetitive repetitive")));
+	}
+
+	private static String repeat(int count) {
+		StringBuilder large = new StringBuilder();
+		for(int i = 0; i < count; i++) {
+			large.append("repetitive ");
+		}
+		return large.toString();
+	}
+}
@@ -0,0 +1,45 @@
+package de.timroes.axmlrpc;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.Assert.*;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import de.timroes.axmlrpc.transport.HandshakeStatistics;
+import java.net.URL;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestHandshakeStatistics {
+	private final String endPoint = "/dummyEndPoint";
+
+	@Rule
+	public WireMockRule wireMockRule = new WireMockRule(options().dynamicPort().dynamicHttpsPort());
+
+	@Test
+	public void countsHandshakes() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse()
+						.withStatus(200)
+						// Every call needs a new connection and handshake
+						.withHeader("Connection", "close")
+						.withBody("<methodResponse><params><param><value><string>toto</string></value></param></params></methodResponse>")
+						));
+
+		XMLRPCClient client = new XMLRPCClient(new URL("https://localhost:" + wireMockRule.httpsPort() + endPoint),
+				XMLRPCClient.FLAGS_SSL_IGNORE_ERRORS);
+		client.setTLSSessionCache(100, 3600);
+		assertEquals("toto", client.call("dummy_method"));
+		assertEquals("toto", client.call("dummy_method"));
+
+		HandshakeStatistics statistics = client.getHandshakeStatistics();
+		// The listener may be notified from another thread
+		for(int i = 0; i < 100 && statistics.getFullHandshakes() + statistics.getResumedHandshakes() < 2; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, statistics.getFullHandshakes());
+		// The second connection resumes the session of the first one
+		assertEquals(1, statistics.getResumedHandshakes());
+		assertTrue(statistics.getMaxHandshakeMillis() > 0);
+	}
+}
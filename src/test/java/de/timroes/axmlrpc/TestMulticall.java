@@ -0,0 +1,130 @@
+package de.timroes.axmlrpc;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import java.net.URL;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestMulticall {
+	private final int port = 8080;
+	private final String endPoint = "/dummyEndPoint";
+
+	@Rule
+	public WireMockRule wireMockRule = new WireMockRule(port);
+
+	@Test
+	public void splitsResultsAndFaults() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.withRequestBody(containing("<methodName>system.multicall</methodName>"))
+				.willReturn(xmlRpcResponse("<params><param><value><array><data>"
+						+ "<value><array><data><value><i4>15</i4></value></data></array></value>"
+						+ faultValue(4, "Too many parameters.")
+						+ "</data></array></value></param></params>")));
+
+		Multicall calls = new Multicall();
+		assertEquals(0, calls.add("add", 5, 10));
+		assertEquals(1, calls.add("add", 1, 2, 3));
+
+		Object[] results = newClient().multicall(calls);
+		assertEquals(2, results.length);
+		assertEquals(15, results[0]);
+		assertEquals(4, ((XMLRPCServerException)results[1]).getErrorNr());
+
+		verify(1, postRequestedFor(urlEqualTo(endPoint))
+				.withRequestBody(containing("<name>methodName</name>"))
+				.withRequestBody(containing("<string>add</string>")));
+	}
+
+	@Test
+	public void fallsBackToSingleCalls() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.withRequestBody(containing("<methodName>system.multicall</methodName>"))
+				.willReturn(xmlRpcResponse(fault(-32601, "Method not found."))));
+		stubFor(post(urlEqualTo(endPoint))
+				.withRequestBody(containing("<methodName>first</methodName>"))
+				.willReturn(xmlRpcResponse("<params><param><value><string>one</string></value></param></params>")));
+		stubFor(post(urlEqualTo(endPoint))
+				.withRequestBody(containing("<methodName>second</methodName>"))
+				.willReturn(xmlRpcResponse(fault(3, "Failed."))));
+
+		XMLRPCClient client = newClient();
+		Multicall calls = new Multicall();
+		calls.add("first");
+		calls.add("second");
+
+		Object[] results = client.multicall(calls);
+		assertEquals("one", results[0]);
+		assertEquals(3, ((XMLRPCServerException)results[1]).getErrorNr());
+
+		// The next multicall isn't tried again
+		client.multicall(calls);
+		verify(1, postRequestedFor(urlEqualTo(endPoint))
+				.withRequestBody(containing("<methodName>system.multicall</methodName>")));
+	}
+
+	@Test
+	public void fallsBackWhenTheServerNamesTheUnknownMethod() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.withRequestBody(containing("<methodName>system.multicall</methodName>"))
+				.willReturn(xmlRpcResponse(fault(1, "method \"system.multicall\" is not supported"))));
+		stubFor(post(urlEqualTo(endPoint))
+				.withRequestBody(containing("<methodName>first</methodName>"))
+				.willReturn(xmlRpcResponse("<params><param><value><string>one</string></value></param></params>")));
+
+		Multicall calls = new Multicall();
+		calls.add("first");
+		assertEquals("one", newClient().multicall(calls)[0]);
+	}
+
+	@Test
+	public void throwsOtherFaultsOfTheMulticall() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.withRequestBody(containing("<methodName>system.multicall</methodName>"))
+				.willReturn(xmlRpcResponse(fault(5, "Server busy."))));
+		stubFor(post(urlEqualTo(endPoint))
+				.withRequestBody(containing("<methodName>first</methodName>"))
+				.willReturn(xmlRpcResponse("<params><param><value><string>one</string></value></param></params>")));
+
+		XMLRPCClient client = newClient();
+		Multicall calls = new Multicall();
+		calls.add("first");
+		for(int i = 0; i < 2; i++) {
+			try {
+				client.multicall(calls);
+				fail("Should have thrown the fault of the multicall");
+			} catch(XMLRPCServerException ex) {
+				assertEquals(5, ex.getErrorNr());
+			}
+		}
+
+		// Multicalls are still tried, and no call is sent on its own
+		verify(2, postRequestedFor(urlEqualTo(endPoint))
+				.withRequestBody(containing("<methodName>system.multicall</methodName>")));
+		verify(0, postRequestedFor(urlEqualTo(endPoint))
+				.withRequestBody(containing("<methodName>first</methodName>")));
+	}
+
+	private XMLRPCClient newClient() throws Exception {
+		return new XMLRPCClient(new URL("http://localhost:" + port + endPoint));
+	}
+
+	private static String fault(int code, String message) {
+		return "<fault>" + faultValue(code, message) + "</fault>";
+	}
+
+	private static String faultValue(int code, String message) {
+		return "<value><struct>"
+				+ "<member><name>faultCode</name><value><int>" + code + "</int></value></member>"
+				+ "<member><name>faultString</name><value><string>" + message + "</string></value></member>"
+				+ "</struct></value>";
+	}
+
+	private static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder xmlRpcResponse(String content) {
+		return aResponse()
+				.withStatus(200)
+				.withBody("<?xml version=\"1.0\"?><methodResponse>" + content + "</methodResponse>");
+	}
+}
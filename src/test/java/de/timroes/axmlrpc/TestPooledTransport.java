@@ -0,0 +1,560 @@
+package de.timroes.axmlrpc;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
+import static org.junit.Assert.*;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import de.timroes.axmlrpc.transport.ConnectionPool;
+import de.timroes.axmlrpc.transport.PooledTransport;
+import de.timroes.axmlrpc.transport.TransportConnection;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestPooledTransport {
+	private final int port = 8080;
+	private final int httpsPort = 8443;
+	private final String endPoint = "/dummyEndPoint";
+	private final String response = "<methodResponse><params><param><value><string>toto</string></value></param></params></methodResponse>";
+
+	@Rule
+	public WireMockRule wireMockRule = new WireMockRule(options().port(port).httpsPort(httpsPort));
+
+	@Test
+	public void reusesConnections() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(200).withBody(response)));
+
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint));
+		PooledTransport transport = new PooledTransport(0);
+		client.setTransport(transport);
+		assertEquals("toto", client.call("dummy_method"));
+		assertEquals("toto", client.call("dummy_method"));
+		assertEquals("toto", client.call("dummy_method"));
+
+		ConnectionPool pool = transport.getPool();
+		assertEquals(1, pool.getMisses());
+		assertEquals(2, pool.getHits());
+		assertEquals(1, pool.getIdleConnections());
+	}
+
+	@Test
+	public void freesConnectionsOfFailedCalls() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(500).withBody("error")));
+
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint));
+		client.setTimeout(1);
+		PooledTransport transport = new PooledTransport(0, new ConnectionPool(1, 30000, 0));
+		client.setTransport(transport);
+		for(int i = 0; i < 3; i++) {
+			try {
+				client.call("dummy_method");
+				fail("The call must fail");
+			} catch(XMLRPCTimeoutException ex) {
+				fail("The connection of the previous call has not been freed");
+			} catch(XMLRPCException ex) {
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void doesNotResendTimedOutRequests() throws Exception {
+		stubFor(post(urlEqualTo(endPoint)).inScenario("timeout")
+				.whenScenarioStateIs(STARTED)
+				.willReturn(aResponse().withStatus(200).withBody(response))
+				.willSetStateTo("slow"));
+		stubFor(post(urlEqualTo(endPoint)).inScenario("timeout")
+				.whenScenarioStateIs("slow")
+				.willReturn(aResponse().withStatus(200).withFixedDelay(3000).withBody(response)));
+
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint));
+		client.setTimeout(1);
+		PooledTransport transport = new PooledTransport(0);
+		client.setTransport(transport);
+		assertEquals("toto", client.call("dummy_method"));
+		try {
+			client.call("dummy_method");
+			fail("The call must time out");
+		} catch(XMLRPCException ex) {
+			// Expected
+		}
+
+		// The request timed out on a reused connection, it must not be sent again
+		assertEquals(1, transport.getPool().getHits());
+		verify(2, postRequestedFor(urlEqualTo(endPoint)));
+	}
+
+	@Test
+	public void evictsIdleConnections() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(200).withBody(response)));
+
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint));
+		ConnectionPool pool = new ConnectionPool(5, 200, 0);
+		client.setTransport(new PooledTransport(0, pool));
+		assertEquals("toto", client.call("dummy_method"));
+		Thread.sleep(300);
+		pool.evictIdle();
+		assertEquals(0, pool.getIdleConnections());
+		assertEquals("toto", client.call("dummy_method"));
+
+		assertEquals(2, pool.getMisses());
+		assertEquals(0, pool.getHits());
+		assertEquals(1, pool.getEvictions());
+	}
+
+	@Test
+	public void evictsConnectionsAfterTheirLifetime() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(200).withBody(response)));
+
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint));
+		ConnectionPool pool = new ConnectionPool(5, 0, 300);
+		client.setTransport(new PooledTransport(0, pool));
+		assertEquals("toto", client.call("dummy_method"));
+		assertEquals("toto", client.call("dummy_method"));
+		Thread.sleep(400);
+		// The connection is too old, although it has just been used
+		assertEquals("toto", client.call("dummy_method"));
+
+		assertEquals(2, pool.getMisses());
+		assertEquals(1, pool.getHits());
+		assertEquals(1, pool.getEvictions());
+	}
+
+	@Test
+	public void evictsConnectionsClosedByTheServer() throws Exception {
+		RawServer server = new RawServer(1, okResponse());
+		try {
+			XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + server.getPort() + endPoint));
+			PooledTransport transport = new PooledTransport(0);
+			client.setTransport(transport);
+			assertEquals("toto", client.call("dummy_method"));
+			// Only connections idle for a while are checked
+			Thread.sleep(1200);
+			assertEquals("toto", client.call("dummy_method"));
+
+			ConnectionPool pool = transport.getPool();
+			assertEquals(2, pool.getMisses());
+			assertEquals(0, pool.getHits());
+			assertEquals(1, pool.getEvictions());
+			assertEquals(2, server.getRequests().size());
+		} finally {
+			server.close();
+		}
+	}
+
+	@Test
+	public void resendsRequestsOnConnectionsClosedByTheServer() throws Exception {
+		RawServer server = new RawServer(1, okResponse());
+		try {
+			XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + server.getPort() + endPoint));
+			PooledTransport transport = new PooledTransport(0);
+			client.setTransport(transport);
+			assertEquals("toto", client.call("dummy_method"));
+			// The connection is reused without checking it, the request is sent again
+			assertEquals("toto", client.call("dummy_method"));
+
+			assertEquals(1, transport.getPool().getHits());
+			assertEquals(2, transport.getPool().getMisses());
+			assertEquals(2, server.getRequests().size());
+		} finally {
+			server.close();
+		}
+	}
+
+	@Test
+	public void waitsForAConnectionAtTheHostLimit() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(200).withFixedDelay(500).withBody(response)));
+
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint));
+		client.setTimeout(5);
+		ConnectionPool pool = new ConnectionPool(1, 30000, 0);
+		client.setTransport(new PooledTransport(0, pool));
+		Future<Object> first = client.callFuture("dummy_method");
+		Thread.sleep(200);
+		assertEquals("toto", client.call("dummy_method"));
+		assertEquals("toto", first.get(10, TimeUnit.SECONDS));
+
+		// The second call has waited for the connection of the first one
+		assertEquals(1, pool.getMisses());
+		assertEquals(1, pool.getHits());
+	}
+
+	@Test
+	public void timesOutWaitingAtTheHostLimit() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(200).withFixedDelay(3000).withBody(response)));
+
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint));
+		client.setConnectTimeout(1);
+		ConnectionPool pool = new ConnectionPool(1, 30000, 0);
+		client.setTransport(new PooledTransport(0, pool));
+		Future<Object> first = client.callFuture("dummy_method");
+		Thread.sleep(200);
+		try {
+			client.call("dummy_method");
+			fail("The call must time out waiting for a connection");
+		} catch(XMLRPCTimeoutException ex) {
+			// Expected
+		}
+		assertEquals("toto", first.get(10, TimeUnit.SECONDS));
+		verify(1, postRequestedFor(urlEqualTo(endPoint)));
+	}
+
+	@Test
+	public void discardsConnectionsWithUnreadResponses() throws Exception {
+		StringBuilder body = new StringBuilder(response);
+		for(int i = 0; i < 2000; i++) {
+			body.append("<!-- padding -->");
+		}
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(200).withBody(body.toString())));
+
+		PooledTransport transport = new PooledTransport(0);
+		URL url = new URL("http://localhost:" + port + endPoint);
+		TransportConnection connection = transport.openConnection(url, 0, 0);
+		OutputStream out = connection.getRequestBody();
+		out.write("<methodCall><methodName>dummy_method</methodName></methodCall>".getBytes("UTF-8"));
+		out.close();
+		assertEquals(200, connection.getStatusCode());
+		InputStream in = connection.getResponseBody();
+		assertEquals('<', in.read());
+		// Too much is left to be read, the connection is closed
+		in.close();
+
+		ConnectionPool pool = transport.getPool();
+		assertEquals(1, pool.getDiscarded());
+		assertEquals(0, pool.getIdleConnections());
+
+		// A short remainder is read, to reuse the connection
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(200).withBody(response)));
+		XMLRPCClient client = new XMLRPCClient(url);
+		client.setTransport(transport);
+		assertEquals("toto", client.call("dummy_method"));
+		connection = transport.openConnection(url, 0, 0);
+		connection.getRequestBody().close();
+		in = connection.getResponseBody();
+		assertEquals('<', in.read());
+		in.close();
+		assertEquals(1, pool.getDiscarded());
+		assertEquals(1, pool.getIdleConnections());
+	}
+
+	@Test
+	public void readsChunkedResponses() throws Exception {
+		String chunked = "HTTP/1.1 200 OK\r\nContent-Type: text/xml\r\nTransfer-Encoding: chunked\r\n\r\n"
+				+ "10;name=value\r\n" + response.substring(0, 16) + "\r\n"
+				+ Integer.toHexString(response.length() - 16) + "\r\n" + response.substring(16) + "\r\n"
+				+ "0\r\nX-Trailer: 1\r\n\r\n";
+		RawServer server = new RawServer(2, chunked);
+		try {
+			XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + server.getPort() + endPoint));
+			PooledTransport transport = new PooledTransport(0);
+			client.setTransport(transport);
+			assertEquals("toto", client.call("dummy_method"));
+			assertEquals("toto", client.call("dummy_method"));
+
+			// The whole body including the trailer has been read
+			assertEquals(1, transport.getPool().getHits());
+			assertEquals(1, server.getConnections());
+		} finally {
+			server.close();
+		}
+	}
+
+	@Test
+	public void rejectsHeadersSplittingTheRequest() throws Exception {
+		PooledTransport transport = new PooledTransport(0);
+		TransportConnection connection = transport.openConnection(new URL("http://localhost:" + port + endPoint), 0, 0);
+		String[][] invalid = { { "X-Test", "a\r\nX-Injected: b" }, { "X-Test", "a\nb" },
+				{ "X-Test", "a\u0000b" }, { "X Test", "a" }, { "X-Test:", "a" }, { "", "a" } };
+		for(String[] header : invalid) {
+			try {
+				connection.setRequestHeader(header[0], header[1]);
+				fail("Should have refused the header " + header[0] + ": " + header[1]);
+			} catch(IllegalArgumentException ex) {
+				// expected
+			}
+		}
+		connection.setRequestHeader("X-Test", "a\tb");
+		connection.disconnect();
+	}
+
+	@Test
+	public void rejectsTooManyResponseHeaders() throws Exception {
+		StringBuilder head = new StringBuilder("HTTP/1.1 200 OK\r\n");
+		for(int i = 0; i < 1000; i++) {
+			head.append("X-Header-").append(i).append(": ").append(i).append("\r\n");
+		}
+		RawServer server = new RawServer(1, head + "Content-Length: " + response.length() + "\r\n\r\n" + response);
+		try {
+			XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + server.getPort() + endPoint));
+			client.setTransport(new PooledTransport(0));
+			try {
+				client.call("dummy_method");
+				fail("Should have refused the response headers");
+			} catch(XMLRPCException ex) {
+				// expected
+			}
+		} finally {
+			server.close();
+		}
+	}
+
+	@Test
+	public void tunnelsHttpsThroughProxies() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(200).withBody(response)));
+
+		TunnelProxy proxy = new TunnelProxy(httpsPort);
+		try {
+			XMLRPCClient client = new XMLRPCClient(new URL("https://localhost:" + httpsPort + endPoint));
+			PooledTransport transport = new PooledTransport(XMLRPCClient.FLAGS_SSL_IGNORE_ERRORS);
+			transport.setProxy(new Proxy(Proxy.Type.HTTP, new InetSocketAddress("localhost", proxy.getPort())));
+			client.setTransport(transport);
+			assertEquals("toto", client.call("dummy_method"));
+			assertEquals("toto", client.call("dummy_method"));
+
+			assertEquals("CONNECT localhost:" + httpsPort + " HTTP/1.1", proxy.getRequestLine());
+			assertEquals(1, transport.getPool().getHits());
+		} finally {
+			proxy.close();
+		}
+	}
+
+	@Test
+	public void cancelDiscardsTheConnection() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(200).withFixedDelay(3000).withBody(response)));
+
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint));
+		PooledTransport transport = new PooledTransport(0);
+		client.setTransport(transport);
+		final CountDownLatch notified = new CountDownLatch(1);
+		long id = client.callAsync(new XMLRPCCallback() {
+			public void onResponse(long id, Object result) {
+				notified.countDown();
+			}
+			public void onError(long id, XMLRPCException error) {
+				notified.countDown();
+			}
+			public void onServerError(long id, XMLRPCServerException error) {
+				notified.countDown();
+			}
+		}, "dummy_method");
+		Thread.sleep(300);
+		client.cancel(id);
+
+		ConnectionPool pool = transport.getPool();
+		for(int i = 0; i < 100 && pool.getDiscarded() == 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, pool.getDiscarded());
+		assertEquals(0, pool.getIdleConnections());
+		assertFalse(notified.await(500, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void worksOverHttps() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(200).withBody(response)));
+
+		XMLRPCClient client = new XMLRPCClient(new URL("https://localhost:" + httpsPort + endPoint));
+		PooledTransport transport = new PooledTransport(XMLRPCClient.FLAGS_SSL_IGNORE_ERRORS);
+		client.setTransport(transport);
+		assertEquals("toto", client.call("dummy_method"));
+		assertEquals("toto", client.call("dummy_method"));
+
+		assertEquals(1, transport.getPool().getMisses());
+		assertEquals(1, transport.getPool().getHits());
+	}
+
+	private String okResponse() {
+		return "HTTP/1.1 200 OK\r\nContent-Type: text/xml\r\nContent-Length: " + response.length()
+				+ "\r\n\r\n" + response;
+	}
+
+	/**
+	 * Reads a line of a request or response head.
+	 */
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while((b = in.read()) != '\n') {
+			if(b == -1) {
+				return null;
+			}
+			if(b != '\r') {
+				line.write(b);
+			}
+		}
+		return line.toString("ISO-8859-1");
+	}
+
+	/**
+	 * A HTTP server sending the same response to every request. It closes
+	 * each connection after a number of requests, without telling the client.
+	 */
+	private static class RawServer extends Thread {
+
+		private final ServerSocket server = new ServerSocket(0);
+		private final int requestsPerConnection;
+		private final byte[] response;
+		private final List<String> requests = new CopyOnWriteArrayList<String>();
+		private volatile int connections;
+
+		RawServer(int requestsPerConnection, String response) throws IOException {
+			this.requestsPerConnection = requestsPerConnection;
+			this.response = response.getBytes("ISO-8859-1");
+			setDaemon(true);
+			start();
+		}
+
+		int getPort() {
+			return server.getLocalPort();
+		}
+
+		List<String> getRequests() {
+			return requests;
+		}
+
+		int getConnections() {
+			return connections;
+		}
+
+		@Override
+		public void run() {
+			while(!server.isClosed()) {
+				try {
+					Socket socket = server.accept();
+					connections++;
+					try {
+						InputStream in = socket.getInputStream();
+						for(int i = 0; i < requestsPerConnection; i++) {
+							String requestLine = readLine(in);
+							if(requestLine == null) {
+								break;
+							}
+							long length = 0;
+							String line;
+							while((line = readLine(in)) != null && line.length() > 0) {
+								if(line.toLowerCase().startsWith("content-length:")) {
+									length = Long.parseLong(line.substring(15).trim());
+								}
+							}
+							for(long n = 0; n < length; n++) {
+								in.read();
+							}
+							requests.add(requestLine);
+							socket.getOutputStream().write(response);
+							socket.getOutputStream().flush();
+						}
+					} finally {
+						socket.close();
+					}
+				} catch(IOException ex) {
+					// The server has been closed
+				}
+			}
+		}
+
+		void close() throws IOException {
+			server.close();
+		}
+
+	}
+
+	/**
+	 * A HTTP proxy tunneling the connections to a local port.
+	 */
+	private static class TunnelProxy extends Thread {
+
+		private final ServerSocket server = new ServerSocket(0);
+		private final int targetPort;
+		private volatile String requestLine;
+
+		TunnelProxy(int targetPort) throws IOException {
+			this.targetPort = targetPort;
+			setDaemon(true);
+			start();
+		}
+
+		int getPort() {
+			return server.getLocalPort();
+		}
+
+		String getRequestLine() {
+			return requestLine;
+		}
+
+		@Override
+		public void run() {
+			while(!server.isClosed()) {
+				try {
+					Socket client = server.accept();
+					InputStream in = client.getInputStream();
+					requestLine = readLine(in);
+					String line;
+					while((line = readLine(in)) != null && line.length() > 0) { }
+					Socket target = new Socket("localhost", targetPort);
+					client.getOutputStream().write("HTTP/1.1 200 Connection established\r\n\r\n".getBytes("ISO-8859-1"));
+					client.getOutputStream().flush();
+					pipe(in, target.getOutputStream(), target);
+					pipe(target.getInputStream(), client.getOutputStream(), client);
+				} catch(IOException ex) {
+					// The proxy has been closed
+				}
+			}
+		}
+
+		private static void pipe(final InputStream in, final OutputStream out, final Socket socket) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					byte[] buffer = new byte[8192];
+					int n;
+					try {
+						while((n = in.read(buffer)) != -1) {
+							out.write(buffer, 0, n);
+							out.flush();
+						}
+					} catch(IOException ex) {
+						// The connection has been closed
+					}
+					try {
+						socket.close();
+					} catch(IOException ex) {
+						// Ignore this
+					}
+				}
+			};
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		void close() throws IOException {
+			server.close();
+		}
+
+	}
+}
@@ -0,0 +1,104 @@
+package de.timroes.axmlrpc;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestProxy {
+	private final int port = 8080;
+	private final String endPoint = "/dummyEndPoint";
+
+	@Rule
+	public WireMockRule wireMockRule = new WireMockRule(port);
+
+	public interface Api {
+		int add(int a, int b) throws XMLRPCException;
+
+		@XMLRPCMethod("system.listMethods")
+		List<String> listMethods();
+
+		void ping(String message);
+	}
+
+	public interface InvalidApi {
+		@XMLRPCMethod("not valid")
+		void call();
+	}
+
+	@Test
+	public void callsRemoteMethods() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.withRequestBody(containing("<methodName>add</methodName>"))
+				.withRequestBody(containing("<int>5</int>"))
+				.willReturn(xmlRpcResponse("<params><param><value><i4>15</i4></value></param></params>")));
+		stubFor(post(urlEqualTo(endPoint))
+				.withRequestBody(containing("<methodName>system.listMethods</methodName>"))
+				.willReturn(xmlRpcResponse("<params><param><value><array><data>"
+						+ "<value><string>add</string></value><value><string>ping</string></value>"
+						+ "</data></array></value></param></params>")));
+		stubFor(post(urlEqualTo(endPoint))
+				.withRequestBody(containing("<methodName>ping</methodName>"))
+				.withRequestBody(containing("<string>hello</string>"))
+				.willReturn(xmlRpcResponse("<params><param><value><string>pong</string></value></param></params>")));
+
+		Api api = newClient(XMLRPCClient.FLAGS_STRICT).proxy(Api.class);
+		assertEquals(15, api.add(5, 10));
+		assertEquals(15, api.add(5, 10));
+		assertEquals(Arrays.asList("add", "ping"), api.listMethods());
+		api.ping("hello");
+		assertEquals(api, api);
+		verify(2, postRequestedFor(urlEqualTo(endPoint))
+				.withRequestBody(containing("<methodName>add</methodName>")));
+	}
+
+	@Test
+	public void throwsUndeclaredErrorsAsRuntimeExceptions() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(xmlRpcResponse("<fault><value><struct>"
+						+ "<member><name>faultCode</name><value><int>4</int></value></member>"
+						+ "<member><name>faultString</name><value><string>Failed.</string></value></member>"
+						+ "</struct></value></fault>")));
+
+		Api api = newClient(XMLRPCClient.FLAGS_NONE).proxy(Api.class);
+		try {
+			api.add(1, 2);
+			fail("Should have thrown a server exception");
+		} catch(XMLRPCServerException ex) {
+			assertEquals(4, ex.getErrorNr());
+		}
+		try {
+			api.ping("hello");
+			fail("Should have thrown a runtime exception");
+		} catch(XMLRPCRuntimeException ex) {
+			assertTrue(ex.getCause() instanceof XMLRPCServerException);
+		}
+	}
+
+	@Test
+	public void checksMethodNamesOnce() throws Exception {
+		try {
+			newClient(XMLRPCClient.FLAGS_STRICT).proxy(InvalidApi.class);
+			fail("Should have refused the method name");
+		} catch(XMLRPCRuntimeException ex) {
+			// expected
+		}
+		assertNotNull(newClient(XMLRPCClient.FLAGS_NONE).proxy(InvalidApi.class));
+	}
+
+	private XMLRPCClient newClient(int flags) throws Exception {
+		return new XMLRPCClient(new URL("http://localhost:" + port + endPoint), flags);
+	}
+
+	private static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder xmlRpcResponse(String content) {
+		return aResponse()
+				.withStatus(200)
+				.withHeader("Content-Type", "text/xml; charset=utf-8")
+				.withBody("<?xml version=\"1.0\"?><methodResponse>" + content + "</methodResponse>");
+	}
+}
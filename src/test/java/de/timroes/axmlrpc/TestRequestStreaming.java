@@ -0,0 +1,133 @@
+package de.timroes.axmlrpc;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import de.timroes.axmlrpc.transport.PooledTransport;
+import de.timroes.base64.Base64;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestRequestStreaming {
+	private final int port = 8080;
+	private final String endPoint = "/dummyEndPoint";
+	private final String response = "<methodResponse><params><param><value><string>toto</string></value></param></params></methodResponse>";
+
+	@Rule
+	public WireMockRule wireMockRule = new WireMockRule(port);
+
+	@Test
+	public void streamsRequests() throws Exception {
+		checkStreaming(new XMLRPCClient(new URL("http://localhost:" + port + endPoint)), false);
+	}
+
+	@Test
+	public void streamsRequestsWithPooledTransport() throws Exception {
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint));
+		client.setTransport(new PooledTransport(XMLRPCClient.FLAGS_NONE));
+		checkStreaming(client, false);
+	}
+
+	@Test
+	public void streamsChunkedRequestsIfEnabled() throws Exception {
+		checkStreaming(new XMLRPCClient(new URL("http://localhost:" + port + endPoint),
+				XMLRPCClient.FLAGS_CHUNKED_REQUESTS), true);
+	}
+
+	@Test
+	public void streamsChunkedRequestsIfEnabledWithPooledTransport() throws Exception {
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint),
+				XMLRPCClient.FLAGS_CHUNKED_REQUESTS);
+		client.setTransport(new PooledTransport(XMLRPCClient.FLAGS_NONE));
+		checkStreaming(client, true);
+	}
+
+	private void checkStreaming(XMLRPCClient client, boolean chunked) throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(200).withBody(response)));
+
+		StringBuilder large = new StringBuilder();
+		while(large.length() < 200000) {
+			large.append("0123456789");
+		}
+		assertEquals("toto", client.call("dummy_method", "small"));
+		assertEquals("toto", client.call("dummy_method", large.toString()));
+
+		verify(1, postRequestedFor(urlEqualTo(endPoint))
+				.withHeader("Content-Length", matching("[0-9]+"))
+				.withRequestBody(containing("small")));
+		if(chunked) {
+			verify(1, postRequestedFor(urlEqualTo(endPoint))
+					.withHeader("Transfer-Encoding", equalTo("chunked"))
+					.withRequestBody(containing(large.toString())));
+		} else {
+			verify(1, postRequestedFor(urlEqualTo(endPoint))
+					.withHeader("Content-Length", matching("[0-9]+"))
+					.withoutHeader("Transfer-Encoding")
+					.withRequestBody(containing(large.toString())));
+		}
+	}
+
+	@Test
+	public void countsTheLengthOfBinarySources() throws Exception {
+		checkBinarySources(new XMLRPCClient(new URL("http://localhost:" + port + endPoint)));
+	}
+
+	@Test
+	public void countsTheLengthOfBinarySourcesWithPooledTransport() throws Exception {
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint));
+		client.setTransport(new PooledTransport(XMLRPCClient.FLAGS_NONE));
+		checkBinarySources(client);
+	}
+
+	private void checkBinarySources(XMLRPCClient client) throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(200).withBody(response)));
+
+		byte[] data = new byte[200001];
+		new Random(42).nextBytes(data);
+		File file = File.createTempFile("axmlrpc", ".bin");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			try {
+				out.write(data);
+			} finally {
+				out.close();
+			}
+			// The lengths of the data sources are counted, an InputStream is kept in memory
+			Object[] sources = { data, file, ByteBuffer.wrap(data), new ByteArrayInputStream(data) };
+			for(Object source : sources) {
+				assertEquals("toto", client.call("dummy_method", source, "end"));
+			}
+		} finally {
+			file.delete();
+		}
+
+		verify(4, postRequestedFor(urlEqualTo(endPoint))
+				.withHeader("Content-Length", matching("[0-9]+"))
+				.withoutHeader("Transfer-Encoding")
+				.withRequestBody(containing(Base64.encode(data)))
+				.withRequestBody(containing("<string>end</string>")));
+	}
+
+	@Test
+	public void reportsUnauthorizedStreamedRequests() throws Exception {
+		stubFor(post(urlEqualTo(endPoint))
+				.willReturn(aResponse().withStatus(401)));
+
+		XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint));
+		try {
+			client.call("dummy_method");
+			fail("The call must fail");
+		} catch(XMLRPCException ex) {
+			assertEquals("Invalid status code '401' returned from server.", ex.getMessage());
+		}
+	}
+}
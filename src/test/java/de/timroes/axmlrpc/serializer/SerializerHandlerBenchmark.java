@@ -0,0 +1,180 @@
+package de.timroes.axmlrpc.serializer;
+
+import de.timroes.axmlrpc.XMLRPCClient;
+import de.timroes.axmlrpc.XMLRPCException;
+import de.timroes.axmlrpc.XMLUtil;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.w3c.dom.Element;
+
+/**
+ * Compares the lookup of the type elements of the {@link SerializerHandler}
+ * in a table with the chain of string comparisons it used before, on a
+ * wide array of mixed values and on deeply nested structs. Run it with:
+ *
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/classpath.txt) \
+ *     de.timroes.axmlrpc.serializer.SerializerHandlerBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerHandlerBenchmark {
+
+	@Param({ "wide", "deep" })
+	public String shape;
+
+	private Element value;
+	private SerializerHandler handler;
+	private SerializerHandler legacyHandler;
+
+	@Setup
+	public void setUp() throws Exception {
+		StringBuilder xml = new StringBuilder();
+		if(shape.equals("wide")) {
+			String[] values = { "<i4>42</i4>", "<string>text</string>", "<double>2.5</double>",
+					"<boolean>1</boolean>", "<base64>AQID</base64>" };
+			xml.append("<value><array><data>");
+			for(int i = 0; i < 200000; i++) {
+				xml.append("\n<value>").append(values[i % values.length]).append("</value>");
+			}
+			xml.append("</data></array></value>");
+		} else {
+			int depth = 500;
+			for(int i = 0; i < depth; i++) {
+				xml.append("<value><struct><member><name>id</name><value><i4>").append(i)
+						.append("</i4></value></member><member><name>name</name><value><string>level</string>")
+						.append("</value></member><member><name>child</name>");
+			}
+			xml.append("<value><nil/></value>");
+			for(int i = 0; i < depth; i++) {
+				xml.append("</member></struct></value>");
+			}
+		}
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		value = factory.newDocumentBuilder()
+				.parse(new ByteArrayInputStream(xml.toString().getBytes("UTF-8")))
+				.getDocumentElement();
+		handler = new SerializerHandler(XMLRPCClient.FLAGS_NIL);
+		legacyHandler = new LegacySerializerHandler(XMLRPCClient.FLAGS_NIL);
+	}
+
+	@Benchmark
+	public Object deserializeWithEqualsChain() throws XMLRPCException {
+		return legacyHandler.deserialize(value);
+	}
+
+	@Benchmark
+	public Object deserializeWithLookupTable() throws XMLRPCException {
+		return handler.deserialize(value);
+	}
+
+	/**
+	 * The dispatch of the type elements as it has been before.
+	 */
+	private static class LegacySerializerHandler extends SerializerHandler {
+
+		private final int flags;
+		private final StringSerializer string = new StringSerializer(true, true);
+		private final BooleanSerializer bool = new BooleanSerializer();
+		private final IntSerializer integer = new IntSerializer();
+		private final LongSerializer long8 = new LongSerializer();
+		private final StructSerializer struct = new StructSerializer(this);
+		private final DoubleSerializer floating = new DoubleSerializer();
+		private final DateTimeSerializer datetime = new DateTimeSerializer(false);
+		private final ArraySerializer array = new ArraySerializer(this);
+		private final Base64Serializer base64 = new Base64Serializer();
+		private final NullSerializer nil = new NullSerializer();
+
+		LegacySerializerHandler(int flags) {
+			super(flags);
+			this.flags = flags;
+		}
+
+		@Override
+		public Object deserialize(Element element) throws XMLRPCException {
+
+			if(!XMLRPCClient.VALUE.equals(element.getNodeName())) {
+				throw new XMLRPCException("Value tag is missing around value.");
+			}
+
+			if(!XMLUtil.hasChildElement(element.getChildNodes())) {
+				if((flags & XMLRPCClient.FLAGS_DEFAULT_TYPE_STRING) != 0) {
+					return string.deserialize(element);
+				} else {
+					throw new XMLRPCException("Missing type element inside of value element.");
+				}
+			}
+
+			Element childElement = XMLUtil.getOnlyChildElement(element.getChildNodes());
+
+			String type;
+			if((flags & XMLRPCClient.FLAGS_IGNORE_NAMESPACES) != 0) {
+				type = childElement.getLocalName() == null ? childElement.getNodeName() : childElement.getLocalName();
+			} else {
+				type = childElement.getNodeName();
+			}
+
+			Serializer s;
+			if((flags & XMLRPCClient.FLAGS_NIL) != 0 && TYPE_NULL.equals(type)) {
+				s = nil;
+			} else if(TYPE_STRING.equals(type)) {
+				s = string;
+			} else if(TYPE_BOOLEAN.equals(type)) {
+				s = bool;
+			} else if(TYPE_DOUBLE.equals(type)) {
+				s = floating;
+			} else if (TYPE_INT.equals(type) || TYPE_INT2.equals(type)) {
+				s = integer;
+			} else if(TYPE_DATETIME.equals(type)) {
+				s = datetime;
+			} else if (TYPE_LONG.equals(type)) {
+				if((flags & XMLRPCClient.FLAGS_8BYTE_INT) != 0) {
+					s = long8;
+				} else {
+					throw new XMLRPCException("8 byte integer is not in the specification. "
+							+ "You must use FLAGS_8BYTE_INT to enable the i8 tag.");
+				}
+			} else if(TYPE_STRUCT.equals(type)) {
+				s = struct;
+			} else if(TYPE_ARRAY.equals(type)) {
+				s = array;
+			} else if(TYPE_BASE64.equals(type)) {
+				s = base64;
+			} else {
+				throw new XMLRPCException("No deserializer found for type '" + type + "'.");
+			}
+
+			return s.deserialize(childElement);
+
+		}
+
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder()
+				.include(SerializerHandlerBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+
+}
@@ -0,0 +1,85 @@
+package de.timroes.axmlrpc.serializer;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the single pass escaping of the {@link StringSerializer} with the
+ * regular expressions it used before. Run it with:
+ *
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/classpath.txt) \
+ *     de.timroes.axmlrpc.serializer.StringSerializerBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringSerializerBenchmark {
+
+	@Param({ "plain", "escaped" })
+	public String kind;
+
+	@Param({ "16", "1024" })
+	public int length;
+
+	private String decoded;
+	private String encoded;
+
+	@Setup
+	public void setUp() {
+		String unit = kind.equals("plain") ? "abcdefghij" : "a<b&c]]>de";
+		StringBuilder builder = new StringBuilder(length);
+		while(builder.length() < length) {
+			builder.append(unit);
+		}
+		decoded = builder.substring(0, length);
+		encoded = StringSerializer.escape(decoded);
+	}
+
+	@Benchmark
+	public String escapeWithRegularExpressions() {
+		return decoded
+				.replaceAll("&", "&amp;")
+				.replaceAll("<", "&lt;")
+				.replaceAll("]]>", "]]&gt;");
+	}
+
+	@Benchmark
+	public String escapeInSinglePass() {
+		return StringSerializer.escape(decoded);
+	}
+
+	@Benchmark
+	public String unescapeWithRegularExpressions() {
+		return encoded.replaceAll("&lt;", "<").replaceAll("&amp;", "&");
+	}
+
+	@Benchmark
+	public String unescapeInSinglePass() {
+		return StringSerializer.unescape(encoded);
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder()
+				.include(StringSerializerBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+
+}
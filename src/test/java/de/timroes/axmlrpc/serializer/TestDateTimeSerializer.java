@@ -3,7 +3,12 @@ package de.timroes.axmlrpc.serializer;
 import static org.junit.Assert.*;
 import org.junit.*;
 
+import de.timroes.axmlrpc.XMLRPCClient;
+import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.Date;
+import java.util.Random;
 import java.util.TimeZone;
 
 public class TestDateTimeSerializer {
@@ -129,6 +134,55 @@ public class TestDateTimeSerializer {
 		assertEquals(expectedSerialization, actualSerialization);
 	}
 
+	@Test
+	public void formatsLikeSimpleDateFormat() throws Exception {
+		String[] patterns = { DateTimeSerializer.DEFAULT_DATETIME_FORMAT, "yyyyMMdd'T'HH:mm:ss",
+				"yy-M-d H:m:s.SSS ''", "EEE, d MMM yyyy HH:mm:ss" };
+		String[] zones = { "UTC", "Europe/Berlin", "America/Los_Angeles", "Asia/Kolkata" };
+		Random random = new Random(42);
+		for(String zone : zones) {
+			TimeZone.setDefault(TimeZone.getTimeZone(zone));
+			for(String pattern : patterns) {
+				DateTimeFormat format = new DateTimeFormat(pattern, TimeZone.getDefault());
+				SimpleDateFormat expected = new SimpleDateFormat(pattern);
+				for(int i = 0; i < 1000; i++) {
+					// From 1000 to 2100, including dates of the Julian calendar
+					long millis = -30610224000000L + (long)(random.nextDouble() * 35000000000000L);
+					assertEquals(expected.format(new Date(millis)), format.format(millis));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void parsesCommonFormsLikeIso8601Parser() throws Exception {
+		String[] zones = { "UTC", "Europe/Berlin", "America/Los_Angeles" };
+		String[] dates = { "19850304T122136", "1985-03-04T12:21:36", "1985-03-04T12:21:36Z",
+				"20240331T023000", "20241027T023000", "16000229T000000" };
+		for(String zone : zones) {
+			TimeZone.setDefault(TimeZone.getTimeZone(zone));
+			for(String date : dates) {
+				assertEquals(fr.turri.jiso8601.Iso8601Deserializer.toDate(date),
+						new DateTimeSerializer(false).deserialize(date));
+			}
+		}
+	}
+
+	@Test
+	public void supportsJavaTime() throws Exception {
+		DateTimeSerializer serializer = new DateTimeSerializer(false, DateTimeSerializer.DEFAULT_DATETIME_FORMAT, true);
+		LocalDateTime local = LocalDateTime.of(1985, 3, 4, 12, 21, 36);
+		assertEquals(local, serializer.deserialize("19850304T122136"));
+		assertEquals(local.atOffset(ZoneOffset.UTC), serializer.deserialize("1985-03-04T12:21:36Z"));
+		assertEquals(local.atOffset(ZoneOffset.ofHoursMinutes(11, 30)), serializer.deserialize("1985-03-04T12:21:36+11:30"));
+
+		SerializerHandler handler = new SerializerHandler(XMLRPCClient.FLAGS_NONE);
+		String expected = handler.serialize(new Date(85, 2, 4, 12, 21, 36)).toString();
+		assertEquals(expected, handler.serialize(local).toString());
+		assertEquals(expected, handler.serialize(local.toInstant(ZoneOffset.UTC)).toString());
+		assertEquals(expected, handler.serialize(local.atOffset(ZoneOffset.ofHours(2)).plusHours(2)).toString());
+	}
+
 	private void assertDeserializeEquals(Date expected, String toDeserialize) throws Exception {
 		Date date = (Date) new DateTimeSerializer(false).deserialize(toDeserialize);
 		assertEquals(expected, date);
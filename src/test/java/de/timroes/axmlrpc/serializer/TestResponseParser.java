@@ -1,7 +1,16 @@
 package de.timroes.axmlrpc.serializer;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.Type;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Random;
 import java.util.TimeZone;
 
 import org.junit.Test;
@@ -10,18 +19,27 @@ import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.Assert.*;
 
 import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
 
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 
 import de.timroes.axmlrpc.*;
+import de.timroes.base64.Base64;
 
 public class TestResponseParser {
 	private final int port = 8080;
 	private final String endPoint = "/dummyEndPoint";
 
+	/** The flags selecting each of the response parsers. */
+	private static final int[] PARSER_FLAGS = { XMLRPCClient.FLAGS_NONE, XMLRPCClient.FLAGS_STREAMING_PARSER,
+			XMLRPCClient.FLAGS_BYTE_PARSER };
+
 	@Rule
 	public WireMockRule wireMockRule = new WireMockRule(port);
 
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 	@Test
 	public void canParseString() throws Exception {
 		setMockWithXmlRpcContent("<value><string>toto</string></value>");
@@ -74,11 +92,25 @@ public class TestResponseParser {
 
 	@Test
 	public void robustToCWE611() throws Exception {
+		assertRobustToCWE611(XMLRPCClient.FLAGS_NONE);
+	}
+
+	@Test
+	public void robustToCWE611WithStreamingParser() throws Exception {
+		assertRobustToCWE611(XMLRPCClient.FLAGS_STREAMING_PARSER);
+	}
+
+	@Test
+	public void robustToCWE611WithByteParser() throws Exception {
+		assertRobustToCWE611(XMLRPCClient.FLAGS_BYTE_PARSER);
+	}
+
+	private void assertRobustToCWE611(int flags) throws Exception {
 		setMockWithRawContent("<?xml version=\"1.0\"?> <!DOCTYPE replace [<!ENTITY ent SYSTEM \"http://localhost/malware\"> ]><methodResponse><params><param><value><string>&ent;</string></value></param></params></methodResponse>");
 		boolean didThrowExpectedException = false;
 
 		try {
-		  makeDummyCall(XMLRPCClient.FLAGS_NONE);
+		  makeDummyCall(flags);
 		} catch(XMLRPCException e) {
 			didThrowExpectedException = isCWE611ExceptedException(e);
 			if (!didThrowExpectedException) {
@@ -98,6 +130,199 @@ public class TestResponseParser {
 		assertEquals("ab<&>cd", makeDummyCall());
 	}
 
+	@Test
+	public void decodesBase64ValuesToSink() throws Exception {
+		byte[] data = new byte[100000];
+		new Random(42).nextBytes(data);
+		setMockWithXmlRpcContent("<value><array><data><value><base64>" + Base64.encode(data)
+				+ "</base64></value><value><base64>AQID</base64></value></data></array></value>");
+
+		for(int flags : PARSER_FLAGS) {
+			XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint), flags);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			client.setBase64Sink(Base64Sink.toStream(out));
+			Object[] values = (Object[])client.call("dummy_method");
+			BinaryValue first = (BinaryValue)values[0];
+			BinaryValue second = (BinaryValue)values[1];
+			assertEquals(0, first.getOffset());
+			assertEquals(data.length, first.getLength());
+			assertEquals(data.length, second.getOffset());
+			assertEquals(3, second.getLength());
+			assertArrayEquals(data, Arrays.copyOf(out.toByteArray(), data.length));
+
+			client.setBase64Sink(Base64Sink.toTempFiles(null));
+			File file = ((BinaryValue)((Object[])client.call("dummy_method"))[0]).getFile();
+			try {
+				assertEquals(data.length, file.length());
+			} finally {
+				file.delete();
+			}
+		}
+	}
+
+	@Test
+	public void countsCutOffBase64ValuesOfSink() throws Exception {
+		// Values long enough to be written to the stream in part
+		String encoded = Base64.encode(new byte[100000]);
+		String[] broken = { "<value><base64>" + encoded + "</int></value>",
+				"<value><base64>" + encoded + "*</base64></value>" };
+		for(int flags : PARSER_FLAGS) {
+			XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint), flags);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			client.setBase64Sink(Base64Sink.toStream(out));
+			for(String value : broken) {
+				setMockWithXmlRpcContent(value);
+				try {
+					client.call("dummy_method");
+					fail("Should have refused " + value);
+				} catch(XMLRPCException ex) {
+					// expected, the decoded bytes may stay in the stream
+				}
+			}
+
+			setMockWithXmlRpcContent("<value><base64>AQID</base64></value>");
+			BinaryValue value = (BinaryValue)client.call("dummy_method");
+			assertEquals(out.size() - 3, value.getOffset());
+			assertArrayEquals(new byte[] { 1, 2, 3 }, Arrays.copyOfRange(out.toByteArray(), (int)value.getOffset(), out.size()));
+		}
+	}
+
+	@Test
+	public void deletesTempFilesOfCutOffResponses() throws Exception {
+		// The first value is finished before the response fails within the second one
+		String encoded = Base64.encode(new byte[100000]);
+		String finished = "<methodResponse><params><param><value><array><data>"
+				+ "<value><base64>" + encoded + "</base64></value>";
+		String[] broken = { finished + "<value><base64>" + encoded + "</int></value>",
+				finished + "<value><base64>" + encoded.substring(0, encoded.length() / 2),
+				finished + "<value><base64>" + encoded + "</base64></value><value><i4>x</i4></value>"
+						+ "</data></array></value></param></params></methodResponse>" };
+		File directory = temporaryFolder.newFolder();
+		for(int flags : PARSER_FLAGS) {
+			XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint), flags);
+			client.setBase64Sink(Base64Sink.toTempFiles(directory));
+			for(String response : broken) {
+				if(flags == XMLRPCClient.FLAGS_NONE && response.endsWith("</methodResponse>")) {
+					// The DOM parser decodes the values only once the whole document is read
+					continue;
+				}
+				setMockWithRawContent(response);
+				try {
+					client.call("dummy_method");
+					fail("Should have refused " + response);
+				} catch(XMLRPCException ex) {
+					// expected
+				}
+				assertArrayEquals(new String[0], directory.list());
+			}
+		}
+	}
+
+	@Test
+	public void bindsResultsToTypes() throws Exception {
+		setMockWithXmlRpcContent("<value><struct>"
+				+ "<member><name>name</name><value><string>toto</string></value></member>"
+				+ "<member><name>id</name><value><i4>42</i4></value></member>"
+				+ "<member><name>unknown</name><value><i4>1</i4></value></member>"
+				+ "<member><name>scores</name><value><array><data>"
+				+ "<value><i4>1</i4></value><value><i4>2</i4></value></data></array></value></member>"
+				+ "<member><name>children</name><value><array><data><value><struct>"
+				+ "<member><name>name</name><value>child</value></member>"
+				+ "</struct></value></data></array></value></member>"
+				+ "</struct></value>");
+
+		for(int flags : PARSER_FLAGS) {
+			XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint),
+					flags | XMLRPCClient.FLAGS_DEFAULT_TYPE_STRING);
+			Person person = client.call(Person.class, "dummy_method");
+			assertEquals("toto", person.name);
+			assertEquals(42L, person.id);
+			assertEquals(Arrays.asList(1, 2), person.scores);
+			assertEquals(1, person.children.length);
+			assertEquals("child", person.children[0].name);
+			assertNull(person.children[0].scores);
+		}
+
+		setMockWithXmlRpcContent("<value><i4>32</i4></value>");
+		for(int flags : PARSER_FLAGS) {
+			XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint), flags);
+			assertEquals(Long.valueOf(32), client.call(long.class, "dummy_method"));
+			assertEquals("32", client.call(String.class, "dummy_method"));
+		}
+	}
+
+	@Test
+	public void refusesToNarrowBoundNumbers() throws Exception {
+		for(int flags : PARSER_FLAGS) {
+			XMLRPCClient client = new XMLRPCClient(new URL("http://localhost:" + port + endPoint),
+					flags | XMLRPCClient.FLAGS_8BYTE_INT);
+
+			setMockWithXmlRpcContent("<value><i8>4294967296</i8></value>");
+			assertEquals(Long.valueOf(4294967296L), client.call(long.class, "dummy_method"));
+			assertBindingFails(client, int.class);
+			assertBindingFails(client, short.class);
+			assertBindingFails(client, byte.class);
+
+			setMockWithXmlRpcContent("<value><i4>200</i4></value>");
+			assertEquals(Short.valueOf((short)200), client.call(short.class, "dummy_method"));
+			assertBindingFails(client, byte.class);
+
+			setMockWithXmlRpcContent("<value><double>2.5</double></value>");
+			assertBindingFails(client, int.class);
+			assertBindingFails(client, long.class);
+
+			setMockWithXmlRpcContent("<value><double>2.0</double></value>");
+			assertEquals(Integer.valueOf(2), client.call(int.class, "dummy_method"));
+
+			setMockWithXmlRpcContent("<value><struct>"
+					+ "<member><name>id</name><value><double>1.5</double></value></member>"
+					+ "</struct></value>");
+			assertBindingFails(client, Person.class);
+		}
+	}
+
+	private void assertBindingFails(XMLRPCClient client, Class<?> type) throws Exception {
+		try {
+			client.call(type, "dummy_method");
+			fail("Should have refused to bind to " + type.getName());
+		} catch(XMLRPCException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void bindsNestedStructsWhileParsing() throws Exception {
+		byte[] response = ("<methodResponse><params><param><value><struct>"
+				+ "<member><name>partner</name><value><struct>"
+				+ "<member><name>name</name><value><string>toto</string></value></member>"
+				+ "</struct></value></member>"
+				+ "</struct></value></param></params></methodResponse>").getBytes("UTF-8");
+
+		ResponseParser[] parsers = { new ResponseParser(), new StreamingResponseParser(), new ByteResponseParser() };
+		for(ResponseParser parser : parsers) {
+			final List<Type> targets = new ArrayList<Type>();
+			SerializerHandler handler = new SerializerHandler() {
+				@Override
+				public ValueBuilder newValueBuilder(String type, Type target) throws XMLRPCException {
+					targets.add(target);
+					return super.newValueBuilder(type, target);
+				}
+			};
+			Person person = (Person)parser.parse(handler, new ByteArrayInputStream(response), false, Person.class);
+			assertEquals("toto", person.partner.name);
+			// The nested struct is built as a Person, not as a map converted afterwards
+			assertEquals(parser.getClass().getSimpleName(), 2, Collections.frequency(targets, Person.class));
+		}
+	}
+
+	public static class Person {
+		String name;
+		long id;
+		List<Integer> scores;
+		Person[] children;
+		Person partner;
+	}
+
 	private void setMockWithXmlRpcContent(String content){
 	  setMockWithRawContent("<methodResponse><params><param>" + content + "</param></params></methodResponse>");
 	}
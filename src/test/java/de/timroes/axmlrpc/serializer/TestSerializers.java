@@ -2,13 +2,28 @@ package de.timroes.axmlrpc.serializer;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
 import java.util.TimeZone;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.w3c.dom.Element;
 
+import de.timroes.axmlrpc.Call;
+import de.timroes.axmlrpc.XMLRPCClient;
+import de.timroes.axmlrpc.XMLRPCException;
+import de.timroes.axmlrpc.XMLUtil;
 import de.timroes.axmlrpc.xmlcreator.XmlElement;
 
 public class TestSerializers {
@@ -79,6 +94,95 @@ public class TestSerializers {
 		assertFalse("encoded string shouldn't contain ]]> since it's reserved for CData", serialized.toString().contains("]]>"));
 	}
 
+	@Test
+	public void escapesLikeTheRegularExpressions(){
+		String[] texts = { "", "plain", "&", "<<", "a]]>b", "]]]>", "]]>]]>", "] ]>", "&amp;lt;", "&lt;&amp;&gt;", "&unknown;&" };
+		for(String text : texts) {
+			assertEquals(text.replaceAll("&", "&amp;").replaceAll("<", "&lt;").replaceAll("]]>", "]]&gt;"),
+					StringSerializer.escape(text));
+			assertEquals(text.replaceAll("&lt;", "<").replaceAll("&amp;", "&"),
+					StringSerializer.unescape(text));
+		}
+		String plain = "nothing to escape";
+		assertSame(plain, StringSerializer.escape(plain));
+		assertSame(plain, StringSerializer.unescape(plain));
+	}
+
+	@Test
+	public void streamedCallIsTheSameAsBuiltCall() throws Exception {
+		Map<String, Object> struct = new HashMap<String, Object>();
+		struct.put("name", "te<&>st");
+		struct.put("cdata", "]]> & ]]]>");
+		struct.put("empty", new HashMap<String, Object>());
+		struct.put("list", Arrays.asList(1, 2.5, true));
+		struct.put("emptyList", new ArrayList<Object>());
+		struct.put("nothing", null);
+		Object[] params = { "", 4, 5L, new byte[]{ 1, 2, 3 }, new Date(85, 4, 3, 12, 23, 34), struct };
+		SerializerHandler serializerHandler = new SerializerHandler(XMLRPCClient.FLAGS_NIL);
+
+		Call call = new Call(serializerHandler, "method", params);
+		ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		call.writeXML(streamed, false);
+
+		assertEquals(call.getXML(false), streamed.toString("UTF-8"));
+	}
+
+	@Test
+	public void streamsBinarySourcesLikeByteArrays() throws Exception {
+		byte[] data = new byte[20000];
+		new Random(42).nextBytes(data);
+		File file = File.createTempFile("axmlrpc", ".bin");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(data);
+			out.close();
+			SerializerHandler serializerHandler = new SerializerHandler(0);
+			String expected = streamed(serializerHandler, data);
+
+			assertEquals(expected, streamed(serializerHandler, new ByteArrayInputStream(data)));
+			assertEquals(expected, streamed(serializerHandler, file));
+			assertEquals(expected, streamed(serializerHandler, file.toPath()));
+			assertEquals(expected, streamed(serializerHandler, ByteBuffer.wrap(data)));
+			assertEquals(expected, new Call(serializerHandler, "method", new Object[]{ file }).getXML(false));
+			assertEquals(streamed(serializerHandler, new byte[0]),
+					streamed(serializerHandler, new ByteArrayInputStream(new byte[0])));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void usesRegisteredSerializers() throws Exception {
+		SerializerHandler serializerHandler = new SerializerHandler(0);
+		serializerHandler.addSerializer(CharSequence.class, new Serializer() {
+			public Object deserialize(Element content) {
+				throw new UnsupportedOperationException();
+			}
+
+			public XmlElement serialize(Object object) {
+				return XMLUtil.makeXmlTag(SerializerHandler.TYPE_STRING, object.toString().toUpperCase());
+			}
+		});
+
+		assertExpectedSerialized("<string>TOTO</string>", serializerHandler.serialize(new StringBuilder("toto")));
+		assertExpectedSerialized("<string>TOTO</string>", serializerHandler.serialize("toto"));
+		assertExpectedSerialized("<int>4</int>", serializerHandler.serialize(4L));
+		assertEquals(new Call(serializerHandler, "method", new Object[]{ new StringBuilder("a") }).getXML(false),
+				streamed(serializerHandler, new StringBuilder("a")));
+		try {
+			serializerHandler.serialize(1L << 40);
+			fail("Long values outside the int range must be rejected");
+		} catch(XMLRPCException ex) {
+			// expected
+		}
+	}
+
+	private static String streamed(SerializerHandler serializerHandler, Object param) throws Exception {
+		ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		new Call(serializerHandler, "method", new Object[]{ param }).writeXML(streamed, false);
+		return streamed.toString("UTF-8");
+	}
+
 	private static void assertExpectedSerialized(String expected, XmlElement actual){
 		assertEquals(expected, actual.toString().trim());
 	}
@@ -2,6 +2,7 @@ package de.timroes.base64;
 
 import static org.junit.Assert.*;
 
+import java.util.Random;
 import org.junit.Test;
 
 import de.timroes.base64.Base64;
@@ -21,4 +22,39 @@ public class TestBase64 {
 		assertEquals("Ma", Base64.decodeAsString("TWE="));
 		assertEquals("M", Base64.decodeAsString("TQ=="));
 	}
+
+	@Test
+	public void breaksLinesAfter72Characters(){
+		String encoded = Base64.encode(new byte[108]);
+		assertEquals(146, encoded.length());
+		assertEquals('\n', encoded.charAt(72));
+		assertEquals('\n', encoded.charAt(145));
+	}
+
+	@Test
+	public void canDecodeWhatItEncodes(){
+		Random random = new Random(42);
+		for(int length = 0; length < 300; length++) {
+			byte[] data = new byte[length];
+			random.nextBytes(data);
+			String encoded = Base64.encode(data);
+			assertArrayEquals(data, Base64.decode(encoded));
+			assertArrayEquals(data, Base64.decode(encoded.replace("\n", "\r\n")));
+			char[] chars = ("  " + encoded + "  ").toCharArray();
+			assertArrayEquals(data, Base64.decode(chars, 2, encoded.length()));
+		}
+	}
+
+	@Test
+	public void rejectsInvalidInput(){
+		String[] invalid = { "TQ=", "TWF", "T===", "TQ==TWFu", "TW!u", "TWFu=", "TWFé" };
+		for(String in : invalid) {
+			try {
+				Base64.decode(in);
+				fail("'" + in + "' must be rejected");
+			} catch(IllegalArgumentException ex) {
+				// Expected
+			}
+		}
+	}
 }